@@ -0,0 +1,53 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InvalidAttributeValueException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DuplicateRegistrationException;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementAgent;
+
+/**
+ * Time to register the managed objects of an apartment with five flats to the
+ * managed object server of an agent. Registering again unregisters the
+ * previously registered managed objects first, which is included in the
+ * measurement.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApartmentRegisterBenchmark {
+	private EnergyMeasurementAgent agent;
+	private Apartment apartment;
+
+	@Setup
+	public void setUp() throws IOException {
+		// the agent is not started, only its managed object server is used
+		agent = new EnergyMeasurementAgent("127.0.0.1/0");
+		apartment = Apartments.create("62TerenureEast", 5);
+	}
+
+	@Benchmark
+	public void registerMOs() throws DuplicateRegistrationException, InvalidAttributeValueException {
+		apartment.registerMOs(agent);
+	}
+}
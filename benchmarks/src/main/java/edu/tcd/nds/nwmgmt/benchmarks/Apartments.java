@@ -0,0 +1,39 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.Flat;
+import edu.tcd.nds.nwmgmt.models.HeapMeasurementStore;
+import edu.tcd.nds.nwmgmt.models.MeasurementStore;
+
+/**
+ * Build apartment model objects with the default values the agent uses.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+final class Apartments {
+	private Apartments() {
+	}
+
+	static Apartment create(String deviceId, int flatCount) {
+		return create(deviceId, flatCount, new HeapMeasurementStore());
+	}
+
+	static Apartment create(String deviceId, int flatCount, MeasurementStore measurementStore) {
+		Apartment apartment = new Apartment(measurementStore);
+		apartment.setDeviceIdMOValue(deviceId);
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		for (int i = 1; i <= flatCount; i++) {
+			Flat flat = new Flat();
+			flat.setDeviceIdValue("FlatNo_" + i);
+			flat.setEnergyConsumptionMOValue(30);
+			flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+			flat.setEnergyConsumptionByLightingMOValue(5);
+			flat.setEnergyConsumptionByMiscMOValue(10);
+			apartment.addFlat(flat);
+		}
+		return apartment;
+	}
+}
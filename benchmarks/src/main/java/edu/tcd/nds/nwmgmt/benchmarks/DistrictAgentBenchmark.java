@@ -0,0 +1,148 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementAgent;
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementManager;
+import edu.tcd.nds.nwmgmt.utils.Constants;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * An agent serving a whole district at several numbers of apartments, each
+ * with five flats. The start of agent is measured once per fork from
+ * defaults, like a fresh start from the command line, and the GET of a cell
+ * of the district apartment and flat tables is sampled over loopback for
+ * apartments picked at random.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DistrictAgentBenchmark {
+	public static final String AGENT_ADDRESS = "127.0.0.1/16102";
+	private static final int FLATS_PER_APARTMENT = 5;
+	private static final int CELL_COUNT = 1024;
+
+	/**
+	 * An agent which is started by the benchmark, the model snapshot and
+	 * change log of an earlier run are deleted so it starts from defaults.
+	 */
+	@State(Scope.Benchmark)
+	public static class StoppedAgent {
+		@Param({ "10000", "20000" })
+		public int apartmentCount;
+
+		EnergyMeasurementAgent agent;
+
+		@Setup
+		public void setUp() throws IOException {
+			deleteState();
+			agent = new EnergyMeasurementAgent("127.0.0.1/0", apartmentCount);
+		}
+
+		@TearDown
+		public void tearDown() {
+			agent.stop();
+		}
+	}
+
+	/**
+	 * A started agent and a manager, with the OIDs of random cells of the
+	 * district tables.
+	 */
+	@State(Scope.Benchmark)
+	public static class RunningAgent {
+		@Param({ "10000", "20000" })
+		public int apartmentCount;
+
+		EnergyMeasurementAgent agent;
+		EnergyMeasurementManager manager;
+		final OID[] apartmentCells = new OID[CELL_COUNT];
+		final OID[] flatCells = new OID[CELL_COUNT];
+		int next;
+
+		@Setup
+		public void setUp() throws IOException {
+			deleteState();
+			agent = new EnergyMeasurementAgent(AGENT_ADDRESS, apartmentCount);
+			agent.start();
+			manager = new EnergyMeasurementManager(AGENT_ADDRESS);
+			Random random = new Random(42);
+			for (int i = 0; i < CELL_COUNT; i++) {
+				int apartmentNo = 1 + random.nextInt(apartmentCount);
+				// column 2 holds the consumption in both tables
+				apartmentCells[i] = new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + ".2." + apartmentNo);
+				flatCells[i] = new OID(MOIdentifiers.DISTRICT_FLAT_TABLE_OID + ".2." + apartmentNo + "."
+						+ (1 + random.nextInt(FLATS_PER_APARTMENT)));
+			}
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			manager.stop();
+			agent.stop();
+		}
+
+		int nextCell() {
+			next = (next + 1) % CELL_COUNT;
+			return next;
+		}
+	}
+
+	private static void deleteState() {
+		new File(Constants.MODEL_SNAPSHOT_FILE).delete();
+		File[] segments = new File(Constants.CHANGE_LOG_DIRECTORY).listFiles();
+		if (segments != null) {
+			for (File segment : segments) {
+				segment.delete();
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(value = 3, jvmArgs = { "-Xmx4g" })
+	public EnergyMeasurementAgent start(StoppedAgent state) throws IOException {
+		state.agent.start();
+		return state.agent;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+	public int getApartmentCell(RunningAgent state) throws IOException {
+		return state.manager.getAsInt(state.apartmentCells[state.nextCell()]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+	public int getFlatCell(RunningAgent state) throws IOException {
+		return state.manager.getAsInt(state.flatCells[state.nextCell()]);
+	}
+}
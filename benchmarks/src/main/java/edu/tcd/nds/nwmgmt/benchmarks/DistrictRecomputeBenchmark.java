@@ -0,0 +1,78 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.models.DistrictBalance;
+import edu.tcd.nds.nwmgmt.models.MeasurementStore;
+import edu.tcd.nds.nwmgmt.models.OffHeapMeasurementStore;
+
+/**
+ * Time to recompute a whole district in a fork/join pool of given
+ * parallelism. The speed-up is the score at parallelism 1 divided by the
+ * score at higher parallelism, measured on a machine with at least as many
+ * cores. The flat measurements are kept in a store per apartment on the heap
+ * or in one store outside the heap shared by all apartments, as the agent
+ * keeps them when started with offheap.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class DistrictRecomputeBenchmark {
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int parallelism;
+
+	@Param({ "20000" })
+	public int apartmentCount;
+
+	@Param({ "5" })
+	public int flatsPerApartment;
+
+	@Param({ "heap", "offheap" })
+	public String store;
+
+	private District district;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setUp() {
+		district = new District();
+		MeasurementStore offHeapStore = new OffHeapMeasurementStore();
+		for (int i = 1; i <= apartmentCount; i++) {
+			district.addApartment("offheap".equals(store)
+					? Apartments.create("Apartment_" + i, flatsPerApartment, offHeapStore)
+					: Apartments.create("Apartment_" + i, flatsPerApartment));
+		}
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public DistrictBalance recompute() {
+		return district.recompute(pool);
+	}
+}
@@ -0,0 +1,123 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.snmp.traps.SolarEnergyGenerationTrapReceiver;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * Cost of a solar energy generation change and the balancing of apartment
+ * which follows it, with the measurements held as strings as they were
+ * before they were typed and with the typed measurements of
+ * {@link Apartment}. The solar generation alternates between two values, so
+ * every operation balances the storage and hydro generation.
+ *
+ * The string values are kept in scalars of {@link OctetString}, read with
+ * toString and Integer.parseInt and written as new strings, the way the trap
+ * receiver balanced them before, without its console output. Run it with the
+ * GC profiler to compare the bytes allocated per change.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyBalanceBenchmark {
+	private static final int[] SOLAR_VALUES = { 40, 20 };
+
+	private MOScalar solar;
+	private MOScalar hydro;
+	private MOScalar storage;
+	private MOScalar generation;
+
+	private Apartment apartment;
+	private SolarEnergyGenerationTrapReceiver receiver;
+	private VariableBinding binding;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		solar = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, MOAccessImpl.ACCESS_READ_WRITE,
+				new OctetString("20"));
+		hydro = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO, MOAccessImpl.ACCESS_READ_WRITE,
+				new OctetString("120"));
+		storage = new MOScalar(MOIdentifiers.APPT_ENERGY_STORAGE, MOAccessImpl.ACCESS_READ_WRITE,
+				new OctetString("10"));
+		generation = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION, MOAccessImpl.ACCESS_READ_ONLY,
+				new OctetString("150"));
+
+		apartment = Apartments.create("62TerenureEast", 5);
+		receiver = new SolarEnergyGenerationTrapReceiver(apartment, 0);
+		binding = new VariableBinding(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, new Integer32(40));
+	}
+
+	@TearDown
+	public void tearDown() {
+		receiver.shutdown();
+	}
+
+	@Benchmark
+	public MOScalar stringValues() {
+		solar.setValue(new OctetString("" + nextSolar()));
+		int generatedBySolar = 0;
+		int generationByHydro = 0;
+		int energyStorage = 0;
+		int totalEnergyGeneration = 0;
+		try {
+			generatedBySolar = Integer.parseInt(solar.getValue().toString());
+			generationByHydro = Integer.parseInt(hydro.getValue().toString());
+			energyStorage = Integer.parseInt(storage.getValue().toString());
+			totalEnergyGeneration = Integer.parseInt(generation.getValue().toString());
+		} catch (NumberFormatException ex) {
+			throw new IllegalStateException(ex);
+		}
+		int energySurplus = (generatedBySolar + generationByHydro + energyStorage) - totalEnergyGeneration;
+		if (energySurplus > 0) {
+			int energySurplusAfterStorage = energySurplus - energyStorage;
+			if (energySurplusAfterStorage > 0) {
+				storage.setValue(new OctetString("0"));
+				hydro.setValue(new OctetString("" + (generationByHydro - energySurplusAfterStorage)));
+			}
+		} else if (energySurplus < 0) {
+			energyStorage = 10;
+			generationByHydro = totalEnergyGeneration - (energyStorage + generatedBySolar);
+			storage.setValue(new OctetString("" + energyStorage));
+			hydro.setValue(new OctetString("" + generationByHydro));
+		}
+		return hydro;
+	}
+
+	@Benchmark
+	public Apartment typedValues() {
+		apartment.setGenerationBySolarMOValue(nextSolar());
+		receiver.handleTrap(null, binding);
+		return apartment;
+	}
+
+	private int nextSolar() {
+		next = (next + 1) % SOLAR_VALUES.length;
+		return SOLAR_VALUES[next];
+	}
+}
@@ -0,0 +1,74 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.Flat;
+
+/**
+ * Time to remove a flat from the flats table of an apartment with given
+ * number of flats and add it again, at the first, middle or last flat. The
+ * table keeps its columns in sorted arrays, which move the flats after the
+ * changed one. The same change of a {@link TreeMap} from flat number to the
+ * values of flat is measured as the baseline of a table with updates in
+ * O(log n).
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatTableBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int flatCount;
+
+	@Param({ "first", "middle", "last" })
+	public String position;
+
+	private Apartment apartment;
+	private Flat flat;
+	private TreeMap<Integer, int[]> flats;
+	private Integer flatNo;
+
+	@Setup
+	public void setUp() {
+		apartment = Apartments.create("Apartment_1", flatCount);
+		int no = "first".equals(position) ? 1 : "middle".equals(position) ? flatCount / 2 : flatCount;
+		flat = apartment.getFlat(no);
+		flats = new TreeMap<Integer, int[]>();
+		for (int i = 1; i <= flatCount; i++) {
+			flats.put(i, new int[] { 30, 15, 5, 10 });
+		}
+		flatNo = no;
+	}
+
+	@Benchmark
+	public Apartment removeAndAdd() {
+		apartment.removeFlat(flat);
+		apartment.addFlat(flat);
+		return apartment;
+	}
+
+	@Benchmark
+	public TreeMap<Integer, int[]> treeMapRemoveAndAdd() {
+		flats.put(flatNo, flats.remove(flatNo));
+		return flats;
+	}
+}
@@ -0,0 +1,64 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementAgent;
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementManager;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * Round trip of a GET and a SET from {@link EnergyMeasurementManager} to an
+ * {@link EnergyMeasurementAgent} running in the same process over loopback.
+ * The latency is sampled so that the JSON result carries its percentiles.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+	public static final String AGENT_ADDRESS = "127.0.0.1/16101";
+
+	private EnergyMeasurementAgent agent;
+	private EnergyMeasurementManager manager;
+
+	@Setup
+	public void setUp() throws IOException {
+		agent = new EnergyMeasurementAgent(AGENT_ADDRESS);
+		agent.start();
+		manager = new EnergyMeasurementManager(AGENT_ADDRESS);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		manager.stop();
+		agent.stop();
+	}
+
+	@Benchmark
+	public int get() throws IOException {
+		return manager.getAsInt(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR);
+	}
+
+	@Benchmark
+	public void set() throws IOException {
+		manager.setAsInt(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, 20);
+	}
+}
@@ -0,0 +1,111 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOQuery;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import edu.tcd.nds.nwmgmt.snmp.TrieMOServer;
+
+/**
+ * Time to look up a managed object for a GET, a GETNEXT and a GET of an OID
+ * which is not registered in the default server of SNMP4J and in the trie
+ * server of agent, with given number of registered scalars. A GETNEXT of the
+ * last instance of a scalar is looked up twice like the command processor
+ * does, once for the scalar and once for the one after it.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class MOServerLookupBenchmark {
+	private static final int[] BASE_OID = new OID("1.3.6.1.4.1.99999.1").getValue();
+	private static final OctetString CONTEXT = new OctetString("public");
+	private static final int QUERY_COUNT = 4096;
+
+	@Param({ "default", "trie" })
+	public String server;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int registeredCount;
+
+	private DefaultMOServer moServer;
+	private OID[] oids;
+	private OID unknownOID;
+	private int next;
+
+	@Setup
+	public void setUp() throws DuplicateRegistrationException {
+		moServer = "trie".equals(server) ? new TrieMOServer() : new DefaultMOServer();
+		// registered in order of their OIDs, as the agent registers its groups
+		for (int i = 0; i < registeredCount; i++) {
+			moServer.register(new MOScalar(scalarOID(i), MOAccessImpl.ACCESS_READ_ONLY, new Integer32(i)), null);
+		}
+		Random random = new Random(42);
+		oids = new OID[QUERY_COUNT];
+		for (int i = 0; i < oids.length; i++) {
+			oids[i] = scalarOID(random.nextInt(registeredCount));
+		}
+		// before all registered scalars, so the default server passes all of them
+		unknownOID = new OID(BASE_OID, new int[] { 0, 0, 0 });
+	}
+
+	private static OID scalarOID(int i) {
+		return new OID(BASE_OID, new int[] { i / 1000 + 1, i % 1000 + 1, 0 });
+	}
+
+	private OID nextOID() {
+		next = (next + 1) & (QUERY_COUNT - 1);
+		return oids[next];
+	}
+
+	@Benchmark
+	public ManagedObject get() {
+		OID oid = nextOID();
+		return moServer.lookup(new DefaultMOQuery(new DefaultMOContextScope(CONTEXT, oid, true, oid, true)));
+	}
+
+	@Benchmark
+	public OID getNext() {
+		DefaultMOContextScope scope = new DefaultMOContextScope(CONTEXT, nextOID(), false, null, false);
+		ManagedObject mo = moServer.lookup(new DefaultMOQuery(scope));
+		OID found = mo.find(scope);
+		if (found == null) {
+			scope = new DefaultMOContextScope(CONTEXT, mo.getScope().getUpperBound(), true, null, false);
+			mo = moServer.lookup(new DefaultMOQuery(scope));
+			found = mo == null ? null : mo.find(scope);
+		}
+		return found;
+	}
+
+	@Benchmark
+	public ManagedObject getUnknown() {
+		return moServer.lookup(new DefaultMOQuery(new DefaultMOContextScope(CONTEXT, unknownOID, true, unknownOID,
+				true)));
+	}
+}
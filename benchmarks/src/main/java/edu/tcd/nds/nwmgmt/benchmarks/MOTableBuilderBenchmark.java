@@ -0,0 +1,59 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.SMIConstants;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
+
+/**
+ * Time to build the flat table with given number of rows using
+ * {@link MOTableBuilder}. The rows are added to the builder as part of the
+ * measurement because that is how the builder is used.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MOTableBuilderBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int rows;
+
+	@Benchmark
+	public MOTable build() {
+		MOTableBuilder builder = new MOTableBuilder(MOIdentifiers.FLAT_BASE_OID)
+			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY)
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE)
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE)
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE)
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE);
+		for (int i = 1; i <= rows; i++) {
+			builder.addRowValue(new OctetString("FlatNo_" + i))
+				.addRowValue(new Gauge32(30))
+				.addRowValue(new Gauge32(15))
+				.addRowValue(new Gauge32(5))
+				.addRowValue(new Gauge32(10));
+		}
+		return builder.build();
+	}
+}
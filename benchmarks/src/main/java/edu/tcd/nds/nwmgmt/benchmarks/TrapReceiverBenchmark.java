@@ -0,0 +1,70 @@
+package edu.tcd.nds.nwmgmt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.snmp.traps.SolarEnergyGenerationTrapReceiver;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * Throughput of {@link SolarEnergyGenerationTrapReceiver#processPdu} for solar
+ * energy generation traps received by the dispatcher threads of snmp4j. The
+ * receiver is used with its default coalescing window, as in the agent.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(5)
+public class TrapReceiverBenchmark {
+	private SolarEnergyGenerationTrapReceiver receiver;
+	private CommandResponderEvent event;
+
+	@Setup
+	public void setUp() {
+		receiver = new SolarEnergyGenerationTrapReceiver(Apartments.create("62TerenureEast", 5));
+		PDU pdu = new PDU();
+		pdu.setType(PDU.NOTIFICATION);
+		pdu.add(new VariableBinding(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, new Integer32(40)));
+		event = new CommandResponderEvent(new MessageDispatcherImpl(), null, new UdpAddress("127.0.0.1/50000"), MPv2c.ID,
+				SecurityModel.SECURITY_MODEL_SNMPv2c, "public".getBytes(), SecurityLevel.NOAUTH_NOPRIV,
+				new PduHandle(1), pdu, 65535, null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		receiver.getDispatcher().shutdown();
+	}
+
+	@Benchmark
+	public void processPdu() {
+		receiver.processPdu(event);
+	}
+}
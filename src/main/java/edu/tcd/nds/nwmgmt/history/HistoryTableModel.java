@@ -0,0 +1,181 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.snmp4j.agent.mo.DefaultMOTableRow;
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * A read-only table model over the samples of time series. The rows are not
+ * held but decoded from the compressed series when they are read. A row is
+ * indexed by series number, time of sample in seconds and sample number, so
+ * a manager walks the samples of one series within a window of time by
+ * bounding the walk with the indexes (series, from second) and (series, to
+ * second + 1).
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class HistoryTableModel implements MOTableModel {
+	private static final int COLUMN_COUNT = 2;
+	/** The number of samples decoded at once by an iterator */
+	private static final int BATCH_SIZE = 16;
+
+	private final List<TimeSeries> series;
+
+	/**
+	 * @param series
+	 *            the time series, series number n is at position n - 1
+	 */
+	HistoryTableModel(List<TimeSeries> series) {
+		this.series = series;
+	}
+
+	public int getColumnCount() {
+		return COLUMN_COUNT;
+	}
+
+	public int getRowCount() {
+		int count = 0;
+		for (TimeSeries timeSeries : series) {
+			count += timeSeries.size();
+		}
+		return count;
+	}
+
+	public boolean containsRow(OID index) {
+		return getRow(index) != null;
+	}
+
+	public MOTableRow getRow(OID index) {
+		if (index == null || index.size() != 3) {
+			return null;
+		}
+		TimeSeries timeSeries = getSeries(index.getUnsigned(0));
+		if (timeSeries == null) {
+			return null;
+		}
+		Sample sample = timeSeries.getSample(index.getUnsigned(2));
+		if (sample == null || sample.getTimeMillis() / 1000 != index.getUnsigned(1)) {
+			return null;
+		}
+		return toRow(index.getUnsigned(0), sample);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Iterator iterator() {
+		return tailIterator(null);
+	}
+
+	/**
+	 * Return an iterator over the rows from given index on which decodes the
+	 * samples in small batches, a GETNEXT reads only the first rows.
+	 */
+	@SuppressWarnings("rawtypes")
+	public Iterator tailIterator(OID lowerBound) {
+		long seriesNo = 1;
+		long second = 0;
+		long sampleNo = 0;
+		if (lowerBound != null && lowerBound.size() > 0) {
+			seriesNo = Math.max(1, lowerBound.getUnsigned(0));
+			if (lowerBound.getUnsigned(0) > 0) {
+				second = lowerBound.size() > 1 ? lowerBound.getUnsigned(1) : 0;
+				sampleNo = lowerBound.size() > 2 ? lowerBound.getUnsigned(2) : 0;
+				if (lowerBound.size() > 3) {
+					// an index below a row sorts after that row
+					sampleNo++;
+				}
+			}
+		}
+		return new RowIterator(seriesNo, second, sampleNo);
+	}
+
+	public OID lastIndex() {
+		MOTableRow row = lastRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	public OID firstIndex() {
+		MOTableRow row = firstRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public MOTableRow firstRow() {
+		Iterator rows = iterator();
+		return rows.hasNext() ? (MOTableRow) rows.next() : null;
+	}
+
+	public MOTableRow lastRow() {
+		for (int i = series.size(); i > 0; i--) {
+			Sample sample = series.get(i - 1).last();
+			if (sample != null) {
+				return toRow(i, sample);
+			}
+		}
+		return null;
+	}
+
+	private TimeSeries getSeries(long seriesNo) {
+		return seriesNo < 1 || seriesNo > series.size() ? null : series.get((int) (seriesNo - 1));
+	}
+
+	private static MOTableRow toRow(long seriesNo, Sample sample) {
+		OID index = new OID(new int[] { (int) seriesNo, (int) (sample.getTimeMillis() / 1000),
+				(int) sample.getSampleNo() });
+		return new DefaultMOTableRow(index,
+				new Variable[] { new Counter64(sample.getTimeMillis()), new Integer32((int) sample.getValue()) });
+	}
+
+	private class RowIterator implements Iterator<MOTableRow> {
+		private long seriesNo;
+		private long second;
+		private long sampleNo;
+		private Iterator<Sample> batch;
+
+		RowIterator(long seriesNo, long second, long sampleNo) {
+			this.seriesNo = seriesNo;
+			this.second = second;
+			this.sampleNo = sampleNo;
+		}
+
+		public boolean hasNext() {
+			while (batch == null || !batch.hasNext()) {
+				TimeSeries timeSeries = getSeries(seriesNo);
+				if (timeSeries == null) {
+					return false;
+				}
+				List<Sample> samples = timeSeries.samplesFrom(second, sampleNo, BATCH_SIZE);
+				if (samples.isEmpty()) {
+					seriesNo++;
+					second = 0;
+					sampleNo = 0;
+				} else {
+					Sample last = samples.get(samples.size() - 1);
+					second = last.getTimeMillis() / 1000;
+					sampleNo = last.getSampleNo() + 1;
+					batch = samples.iterator();
+				}
+			}
+			return true;
+		}
+
+		public MOTableRow next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return toRow(seriesNo, batch.next());
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("The history table is read-only.");
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InvalidAttributeValueException;
+
+import org.snmp4j.agent.BaseAgent;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Variable;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.BaseModel;
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.models.MeasurementListener;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
+
+/**
+ * The recent history of energy measurements kept inside the agent. Every
+ * measurement which changes gets its own {@link TimeSeries} of fixed size, so
+ * the memory used does not grow with the uptime of agent.
+ *
+ * The history is served by two tables. The series table lists the measured
+ * OID and the number of samples held of every series. The history table
+ * holds the samples of all series indexed by series number, second and sample
+ * number, its rows are decoded from the series when they are read.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class MeasurementHistory extends BaseModel implements MeasurementListener {
+	private final int blockCount;
+	private final int blockWords;
+	private final ConcurrentMap<OID, TimeSeries> seriesByOid = new ConcurrentHashMap<OID, TimeSeries>();
+	private final List<TimeSeries> series = new CopyOnWriteArrayList<TimeSeries>();
+	private final MOTable seriesTable;
+	private final MOTable historyTable;
+
+	public MeasurementHistory() {
+		this(TimeSeries.DEFAULT_BLOCK_COUNT, TimeSeries.DEFAULT_BLOCK_WORDS);
+	}
+
+	/**
+	 * @param blockCount
+	 *            the number of blocks of every series
+	 * @param blockWords
+	 *            the number of 64-bit words of every block
+	 */
+	public MeasurementHistory(int blockCount, int blockWords) {
+		this.blockCount = blockCount;
+		this.blockWords = blockWords;
+		seriesTable = new MOTableBuilder(MOIdentifiers.HISTORY_SERIES_TABLE_OID)
+			.addColumnType(SMIConstants.SYNTAX_OBJECT_IDENTIFIER, MOAccessImpl.ACCESS_READ_ONLY) // measured OID
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_ONLY) // samples held
+			.build();
+		historyTable = new MOTableBuilder(MOIdentifiers.HISTORY_TABLE_OID, 3)
+			.addColumnType(SMIConstants.SYNTAX_COUNTER64, MOAccessImpl.ACCESS_READ_ONLY) // time in milliseconds
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_ONLY) // value
+			.build(new HistoryTableModel(series));
+	}
+
+	/**
+	 * Keep the history of given apartment, the current values of its energy
+	 * scalars and flats are recorded as first samples.
+	 */
+	@SuppressWarnings("rawtypes")
+	public void track(Apartment apartment) {
+		long now = System.currentTimeMillis();
+		MOScalar[] scalars = new MOScalar[] { apartment.getEnergyConsumptionMO(), apartment.getEnergyGenerationMO(),
+				apartment.getEnergyStorageMO(), apartment.getEnergyGenerationBySolarMO(),
+				apartment.getEnergyGenerationByHydroMO(), apartment.getEnergyConsumptionByHeatingCoolingMO(),
+				apartment.getEnergyConsumptionByLightingMO(), apartment.getEnergyConsumptionByMiscMO() };
+		for (MOScalar scalar : scalars) {
+			if (scalar.getValue() != null) {
+				record(scalar.getOid(), now, scalar.getValue().toInt());
+			}
+		}
+		synchronized (apartment.getFlatsTable().getModel()) {
+			for (Iterator rows = apartment.getFlatsTable().getModel().iterator(); rows.hasNext();) {
+				MOTableRow row = (MOTableRow) rows.next();
+				// column 1 holds the flat id, the other columns are measurements
+				for (int i = 1; i < row.size(); i++) {
+					OID cellOID = new OID(MOIdentifiers.FLAT_BASE_OID);
+					cellOID.append(i + 1);
+					cellOID.append(row.getIndex());
+					record(cellOID, now, row.getValue(i).toInt());
+				}
+			}
+		}
+		apartment.addMeasurementListener(this);
+	}
+
+	/**
+	 * Keep the history of an apartment of a district under the OIDs of its
+	 * cells in the district tables, so the apartments of district keep a
+	 * series each. The series of a measurement is created when it changes
+	 * first, a series per measurement of every apartment up front would take
+	 * a few KB per measurement of an idle district. The measurements which
+	 * the district tables do not serve are not kept.
+	 *
+	 * @see District#getDistrictOID(int, OID)
+	 */
+	public void track(Apartment apartment, final int apartmentNo) {
+		apartment.addMeasurementListener(new MeasurementListener() {
+			public void measurementChanged(OID oid, int value) {
+				OID districtOID = District.getDistrictOID(apartmentNo, oid);
+				if (districtOID != null) {
+					record(districtOID, System.currentTimeMillis(), value);
+				}
+			}
+		});
+	}
+
+	public void measurementChanged(OID oid, int value) {
+		record(oid, System.currentTimeMillis(), value);
+	}
+
+	/**
+	 * Append a sample to the series of given OID, the series is created when
+	 * the OID is recorded first.
+	 */
+	public void record(OID oid, long timeMillis, long value) {
+		TimeSeries timeSeries = seriesByOid.get(oid);
+		if (timeSeries == null) {
+			timeSeries = createSeries(oid);
+		}
+		timeSeries.append(timeMillis, value);
+	}
+
+	/**
+	 * Return the samples of given OID whose time is within given range.
+	 *
+	 * @param oid
+	 *            the OID of the scalar or of the flat table cell
+	 * @param fromMillis
+	 *            the lowest time, inclusive
+	 * @param toMillis
+	 *            the highest time, inclusive
+	 * @return the samples in order of time, empty if the OID has no history
+	 */
+	public List<Sample> query(OID oid, long fromMillis, long toMillis) {
+		TimeSeries timeSeries = seriesByOid.get(oid);
+		if (timeSeries == null) {
+			return Collections.emptyList();
+		}
+		return timeSeries.query(fromMillis, toMillis);
+	}
+
+	/**
+	 * Return the series of given OID or null if the OID has no history.
+	 */
+	public TimeSeries getSeries(OID oid) {
+		return seriesByOid.get(oid);
+	}
+
+	public int getSeriesCount() {
+		return series.size();
+	}
+
+	public MOTable getSeriesTable() {
+		return seriesTable;
+	}
+
+	public MOTable getHistoryTable() {
+		return historyTable;
+	}
+
+	private synchronized TimeSeries createSeries(OID oid) {
+		TimeSeries timeSeries = seriesByOid.get(oid);
+		if (timeSeries == null) {
+			timeSeries = new TimeSeries(blockCount, blockWords);
+			series.add(timeSeries);
+			seriesTable.addRow(new SeriesRow(series.size(), new OID(oid), timeSeries));
+			seriesByOid.put(oid, timeSeries);
+		}
+		return timeSeries;
+	}
+
+	/**
+	 * Register the history tables to Managed Object Server
+	 */
+	public void registerMOs(BaseAgent agent) throws DuplicateRegistrationException, InvalidAttributeValueException {
+		DefaultMOServer server = agent.getServer();
+
+		// making sure that the manage object is not already registered
+		server.unregister(seriesTable, null);
+		server.unregister(historyTable, null);
+
+		// its safe to register now the manage object, registering
+		server.register(seriesTable, null);
+		server.register(historyTable, null);
+	}
+
+	/**
+	 * A row of the series table, the number of samples held is read from the
+	 * series.
+	 */
+	private static class SeriesRow implements MOTableRow {
+		private final OID index;
+		private final OID measuredOID;
+		private final TimeSeries timeSeries;
+
+		SeriesRow(int seriesNo, OID measuredOID, TimeSeries timeSeries) {
+			this.index = new OID(new int[] { seriesNo });
+			this.measuredOID = measuredOID;
+			this.timeSeries = timeSeries;
+		}
+
+		public OID getIndex() {
+			return index;
+		}
+
+		public Variable getValue(int column) {
+			return column == 0 ? measuredOID : new Gauge32(timeSeries.size());
+		}
+
+		public MOTableRow getBaseRow() {
+			return null;
+		}
+
+		public void setBaseRow(MOTableRow baseRow) {
+		}
+
+		public int size() {
+			return 2;
+		}
+	}
+}
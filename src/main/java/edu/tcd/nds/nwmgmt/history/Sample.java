@@ -0,0 +1,38 @@
+package edu.tcd.nds.nwmgmt.history;
+
+/**
+ * One sample of a {@link TimeSeries}, the value of a measurement at a point
+ * of time. Samples are numbered in the order they were appended to the
+ * series, starting from 0.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public final class Sample {
+	private final long sampleNo;
+	private final long timeMillis;
+	private final long value;
+
+	public Sample(long sampleNo, long timeMillis, long value) {
+		this.sampleNo = sampleNo;
+		this.timeMillis = timeMillis;
+		this.value = value;
+	}
+
+	public long getSampleNo() {
+		return sampleNo;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public long getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "Sample[no=" + sampleNo + ",time=" + timeMillis + ",value=" + value + "]";
+	}
+}
@@ -0,0 +1,350 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The history of one measurement held in a fixed amount of memory. Samples
+ * are compressed into a ring of blocks of 64-bit words: the first sample of a
+ * block is stored in full, later timestamps as the delta of their delta and
+ * later values as the XOR with the previous value, written with as few bits
+ * as the difference needs. Measurements taken at a regular interval which
+ * change rarely take a few bits per sample. When the ring is full the oldest
+ * block is overwritten, so the series always holds the most recent samples.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TimeSeries {
+	public static final int DEFAULT_BLOCK_COUNT = 16;
+	public static final int DEFAULT_BLOCK_WORDS = 64;
+	/** The most bits one sample can take, 4 + 64 for time and 2 + 12 + 64 for value */
+	private static final int MAX_SAMPLE_BITS = 146;
+
+	private final Block[] blocks;
+	private int current = -1;
+	private long sampleCount;
+
+	// state of the encoder, reset at the start of every block
+	private long lastTime;
+	private long lastDelta;
+	private long lastValue;
+	private int lastLeading;
+	private int lastTrailing;
+
+	public TimeSeries() {
+		this(DEFAULT_BLOCK_COUNT, DEFAULT_BLOCK_WORDS);
+	}
+
+	/**
+	 * @param blockCount
+	 *            the number of blocks in the ring
+	 * @param blockWords
+	 *            the number of 64-bit words of each block
+	 */
+	public TimeSeries(int blockCount, int blockWords) {
+		if (blockCount < 2 || blockWords * 64 < 128 + MAX_SAMPLE_BITS) {
+			throw new IllegalArgumentException(
+					"At least 2 blocks of " + ((128 + MAX_SAMPLE_BITS + 63) / 64) + " words are needed.");
+		}
+		blocks = new Block[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			blocks[i] = new Block(blockWords);
+		}
+	}
+
+	/**
+	 * Append a sample. A time before the time of previous sample is taken as
+	 * the time of previous sample, so the samples stay in order of time.
+	 */
+	public synchronized void append(long timeMillis, long value) {
+		if (sampleCount > 0 && timeMillis < lastTime) {
+			timeMillis = lastTime;
+		}
+		Block block = current < 0 ? null : blocks[current];
+		if (block == null || block.remainingBits() < MAX_SAMPLE_BITS) {
+			current = (current + 1) % blocks.length;
+			block = blocks[current];
+			block.reset(sampleCount, timeMillis);
+			block.write(timeMillis, 64);
+			block.write(value, 64);
+			lastDelta = 0;
+			lastLeading = -1;
+		} else {
+			long delta = timeMillis - lastTime;
+			writeTimestamp(block, delta - lastDelta);
+			writeValue(block, value ^ lastValue);
+			lastDelta = delta;
+		}
+		block.count++;
+		block.lastTime = timeMillis;
+		lastTime = timeMillis;
+		lastValue = value;
+		sampleCount++;
+	}
+
+	/**
+	 * Return the number of samples held.
+	 */
+	public synchronized int size() {
+		int size = 0;
+		for (Block block : blocks) {
+			size += block.count;
+		}
+		return size;
+	}
+
+	/**
+	 * Return the number of samples appended since the series was created,
+	 * including the samples which have been overwritten.
+	 */
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Return the number of bytes used by the compressed samples.
+	 */
+	public synchronized long getCompressedBytes() {
+		long bits = 0;
+		for (Block block : blocks) {
+			bits += block.bitPos;
+		}
+		return (bits + 7) / 8;
+	}
+
+	/**
+	 * Return the samples held whose time is within given range.
+	 *
+	 * @param fromMillis
+	 *            the lowest time, inclusive
+	 * @param toMillis
+	 *            the highest time, inclusive
+	 * @return the samples in order of time
+	 */
+	public synchronized List<Sample> query(long fromMillis, long toMillis) {
+		List<Sample> samples = new ArrayList<Sample>();
+		for (int i = 1; i <= blocks.length; i++) {
+			Block block = blocks[(current + i) % blocks.length];
+			if (block.count == 0 || block.lastTime < fromMillis || block.firstTime > toMillis) {
+				continue;
+			}
+			for (Sample sample : decode(block)) {
+				if (sample.getTimeMillis() >= fromMillis && sample.getTimeMillis() <= toMillis) {
+					samples.add(sample);
+				}
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * Return the samples held from the first sample at or after given second
+	 * and sample number on. Since the time does not go back, the samples in
+	 * order of second and sample number are the samples in order of number.
+	 *
+	 * @param second
+	 *            the lowest time in seconds
+	 * @param sampleNo
+	 *            the lowest sample number within that second
+	 * @param limit
+	 *            the most samples returned
+	 * @return the samples in order of number
+	 */
+	public synchronized List<Sample> samplesFrom(long second, long sampleNo, int limit) {
+		List<Sample> samples = new ArrayList<Sample>();
+		for (int i = 1; i <= blocks.length && samples.size() < limit; i++) {
+			Block block = blocks[(current + i) % blocks.length];
+			if (block.count == 0 || !isAtOrAfter(block.lastTime / 1000, block.firstSampleNo + block.count - 1,
+					second, sampleNo)) {
+				continue;
+			}
+			for (Sample sample : decode(block)) {
+				if (samples.size() < limit
+						&& isAtOrAfter(sample.getTimeMillis() / 1000, sample.getSampleNo(), second, sampleNo)) {
+					samples.add(sample);
+				}
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * Return the sample of given number or null if it is not held.
+	 */
+	public synchronized Sample getSample(long sampleNo) {
+		for (Block block : blocks) {
+			if (block.count > 0 && sampleNo >= block.firstSampleNo && sampleNo < block.firstSampleNo + block.count) {
+				return decode(block).get((int) (sampleNo - block.firstSampleNo));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the most recent sample or null if the series is empty.
+	 */
+	public synchronized Sample last() {
+		return sampleCount == 0 ? null : getSample(sampleCount - 1);
+	}
+
+	private static boolean isAtOrAfter(long second, long sampleNo, long lowerSecond, long lowerSampleNo) {
+		return second > lowerSecond || (second == lowerSecond && sampleNo >= lowerSampleNo);
+	}
+
+	private static void writeTimestamp(Block block, long deltaOfDelta) {
+		if (deltaOfDelta == 0) {
+			block.write(0, 1);
+		} else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+			block.write(0x2, 2);
+			block.write(deltaOfDelta, 7);
+		} else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+			block.write(0x6, 3);
+			block.write(deltaOfDelta, 9);
+		} else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+			block.write(0xE, 4);
+			block.write(deltaOfDelta, 12);
+		} else {
+			block.write(0xF, 4);
+			block.write(deltaOfDelta, 64);
+		}
+	}
+
+	private void writeValue(Block block, long xor) {
+		if (xor == 0) {
+			block.write(0, 1);
+			return;
+		}
+		block.write(1, 1);
+		int leading = Long.numberOfLeadingZeros(xor);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if (lastLeading >= 0 && leading >= lastLeading && trailing >= lastTrailing) {
+			// the changed bits fit into the window of previous value
+			block.write(0, 1);
+			block.write(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+		} else {
+			int length = 64 - leading - trailing;
+			block.write(1, 1);
+			block.write(leading, 6);
+			block.write(length - 1, 6);
+			block.write(xor >>> trailing, length);
+			lastLeading = leading;
+			lastTrailing = trailing;
+		}
+	}
+
+	/**
+	 * Decode all samples of a block, the decoder mirrors the encoder state.
+	 */
+	private static List<Sample> decode(Block block) {
+		List<Sample> samples = new ArrayList<Sample>(block.count);
+		BitReader reader = new BitReader(block.words);
+		long time = reader.read(64);
+		long value = reader.read(64);
+		long delta = 0;
+		int leading = -1;
+		int trailing = 0;
+		samples.add(new Sample(block.firstSampleNo, time, value));
+		for (int i = 1; i < block.count; i++) {
+			delta += readTimestamp(reader);
+			time += delta;
+			if (reader.read(1) != 0) {
+				if (reader.read(1) != 0) {
+					leading = (int) reader.read(6);
+					int length = (int) reader.read(6) + 1;
+					trailing = 64 - leading - length;
+				}
+				value ^= reader.read(64 - leading - trailing) << trailing;
+			}
+			samples.add(new Sample(block.firstSampleNo + i, time, value));
+		}
+		return samples;
+	}
+
+	private static long readTimestamp(BitReader reader) {
+		if (reader.read(1) == 0) {
+			return 0;
+		} else if (reader.read(1) == 0) {
+			return signExtend(reader.read(7), 7);
+		} else if (reader.read(1) == 0) {
+			return signExtend(reader.read(9), 9);
+		} else if (reader.read(1) == 0) {
+			return signExtend(reader.read(12), 12);
+		}
+		return reader.read(64);
+	}
+
+	private static long signExtend(long bits, int length) {
+		return (bits << (64 - length)) >> (64 - length);
+	}
+
+	/**
+	 * One block of the ring, the samples of a block are decoded from its
+	 * first sample on.
+	 */
+	private static class Block {
+		private final long[] words;
+		private int bitPos;
+		private int count;
+		private long firstSampleNo;
+		private long firstTime;
+		private long lastTime;
+
+		Block(int wordCount) {
+			words = new long[wordCount];
+		}
+
+		void reset(long firstSampleNo, long firstTime) {
+			Arrays.fill(words, 0);
+			bitPos = 0;
+			count = 0;
+			this.firstSampleNo = firstSampleNo;
+			this.firstTime = firstTime;
+		}
+
+		int remainingBits() {
+			return words.length * 64 - bitPos;
+		}
+
+		/**
+		 * Write the low bits of given value, the most significant bit first.
+		 */
+		void write(long value, int length) {
+			if (length < 64) {
+				value &= (1L << length) - 1;
+			}
+			int word = bitPos >>> 6;
+			int free = 64 - (bitPos & 63);
+			if (length <= free) {
+				words[word] |= value << (free - length);
+			} else {
+				words[word] |= value >>> (length - free);
+				words[word + 1] |= value << (64 - (length - free));
+			}
+			bitPos += length;
+		}
+	}
+
+	private static class BitReader {
+		private final long[] words;
+		private int bitPos;
+
+		BitReader(long[] words) {
+			this.words = words;
+		}
+
+		long read(int length) {
+			int word = bitPos >>> 6;
+			int free = 64 - (bitPos & 63);
+			long value;
+			if (length <= free) {
+				value = words[word] >>> (free - length);
+			} else {
+				value = (words[word] << (length - free)) | (words[word + 1] >>> (64 - (length - free)));
+			}
+			bitPos += length;
+			return length == 64 ? value : value & ((1L << length) - 1);
+		}
+	}
+}
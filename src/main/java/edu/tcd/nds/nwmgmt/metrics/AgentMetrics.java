@@ -0,0 +1,219 @@
+package edu.tcd.nds.nwmgmt.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InvalidAttributeValueException;
+
+import org.snmp4j.agent.BaseAgent;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Variable;
+
+import edu.tcd.nds.nwmgmt.models.BaseModel;
+import edu.tcd.nds.nwmgmt.utils.LatencyHistogram;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
+
+/**
+ * The performance metrics of the agent, served as own MIB subtree and as
+ * plain text by the {@link MetricsEndpoint}.
+ *
+ * The request table lists the number of requests and their latency
+ * percentiles by PDU type and by OID subtree, see {@link RequestMetrics}. The
+ * value table lists named values which are read when they are requested,
+ * e.g. trap counts, queue depths and table sizes. Its value column holds
+ * counters and gauges alike as Counter64.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class AgentMetrics extends BaseModel {
+	private final RequestMetrics requestMetrics = new RequestMetrics();
+	private final List<MetricRow> metricRows = new CopyOnWriteArrayList<MetricRow>();
+	private final MOTable requestTable;
+	private final MOTable valueTable;
+
+	public AgentMetrics() {
+		requestTable = new MOTableBuilder(MOIdentifiers.METRICS_REQUEST_TABLE_OID)
+			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY) // name
+			.addColumnType(SMIConstants.SYNTAX_COUNTER64, MOAccessImpl.ACCESS_READ_ONLY) // requests
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_ONLY) // p50 latency in microseconds
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_ONLY) // p99 latency in microseconds
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_ONLY) // max latency in microseconds
+			.build();
+		valueTable = new MOTableBuilder(MOIdentifiers.METRICS_VALUE_TABLE_OID)
+			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY) // name
+			.addColumnType(SMIConstants.SYNTAX_COUNTER64, MOAccessImpl.ACCESS_READ_ONLY) // value
+			.build();
+	}
+
+	/**
+	 * A named value of the agent which is read when it is requested.
+	 */
+	public interface Metric {
+		long getValue();
+	}
+
+	/**
+	 * Return the request statistics, which the request processor records to.
+	 */
+	public RequestMetrics getRequestMetrics() {
+		return requestMetrics;
+	}
+
+	/**
+	 * Count the requests of given OID subtree on their own.
+	 */
+	public void addSubtree(String name, OID subtree) {
+		requestMetrics.addSubtree(name, subtree);
+	}
+
+	/**
+	 * Add a value to the value table, values can be added after the table has
+	 * been registered.
+	 */
+	public synchronized void addMetric(String name, Metric metric) {
+		MetricRow row = new MetricRow(metricRows.size() + 1, name, metric);
+		metricRows.add(row);
+		valueTable.addRow(row);
+	}
+
+	/**
+	 * Write all metrics as plain text, one metric per line.
+	 */
+	public void dump(StringBuilder out) {
+		List<RequestStats> stats = requestMetrics.getStats();
+		for (RequestStats requestStats : stats) {
+			String prefix = "requests." + requestStats.getName().replace(' ', '.');
+			LatencyHistogram latency = requestStats.getLatency();
+			out.append(prefix).append(".count ").append(requestStats.getCount()).append('\n');
+			out.append(prefix).append(".p50_us ").append(latency.getPercentileMicros(50)).append('\n');
+			out.append(prefix).append(".p99_us ").append(latency.getPercentileMicros(99)).append('\n');
+			out.append(prefix).append(".max_us ").append(latency.getMaxMicros()).append('\n');
+		}
+		for (MetricRow row : metricRows) {
+			out.append(row.name).append(' ').append(row.metric.getValue()).append('\n');
+		}
+	}
+
+	public MOTable getRequestTable() {
+		return requestTable;
+	}
+
+	public MOTable getValueTable() {
+		return valueTable;
+	}
+
+	/**
+	 * Register the metrics tables to Managed Object Server. The rows of
+	 * request table are added here, all subtrees have to be added before.
+	 */
+	public void registerMOs(BaseAgent agent) throws DuplicateRegistrationException, InvalidAttributeValueException {
+		List<RequestStats> stats = requestMetrics.getStats();
+		for (int i = 0; i < stats.size(); i++) {
+			requestTable.addRow(new RequestStatsRow(i + 1, stats.get(i)));
+		}
+
+		DefaultMOServer server = agent.getServer();
+
+		// making sure that the manage object is not already registered
+		server.unregister(requestTable, null);
+		server.unregister(valueTable, null);
+
+		// its safe to register now the manage object, registering
+		server.register(requestTable, null);
+		server.register(valueTable, null);
+	}
+
+	/**
+	 * A row of request table read from the statistics when it is requested.
+	 */
+	private static class RequestStatsRow implements MOTableRow {
+		private final OID index;
+		private final RequestStats stats;
+		private final OctetString name;
+
+		RequestStatsRow(int rowNo, RequestStats stats) {
+			this.index = new OID(new int[] { rowNo });
+			this.stats = stats;
+			this.name = new OctetString(stats.getName());
+		}
+
+		public OID getIndex() {
+			return index;
+		}
+
+		public Variable getValue(int column) {
+			switch (column) {
+			case 0:
+				return name;
+			case 1:
+				return new Counter64(stats.getCount());
+			case 2:
+				return gauge(stats.getLatency().getPercentileMicros(50));
+			case 3:
+				return gauge(stats.getLatency().getPercentileMicros(99));
+			default:
+				return gauge(stats.getLatency().getMaxMicros());
+			}
+		}
+
+		private static Gauge32 gauge(long value) {
+			return new Gauge32(Math.min(value, 0xFFFFFFFFL));
+		}
+
+		public MOTableRow getBaseRow() {
+			return null;
+		}
+
+		public void setBaseRow(MOTableRow baseRow) {
+		}
+
+		public int size() {
+			return 5;
+		}
+	}
+
+	/**
+	 * A row of value table read from the metric when it is requested.
+	 */
+	private static class MetricRow implements MOTableRow {
+		private final OID index;
+		private final Metric metric;
+		private final OctetString name;
+
+		MetricRow(int rowNo, String name, Metric metric) {
+			this.index = new OID(new int[] { rowNo });
+			this.metric = metric;
+			this.name = new OctetString(name);
+		}
+
+		public OID getIndex() {
+			return index;
+		}
+
+		public Variable getValue(int column) {
+			return column == 0 ? name : new Counter64(metric.getValue());
+		}
+
+		public MOTableRow getBaseRow() {
+			return null;
+		}
+
+		public void setBaseRow(MOTableRow baseRow) {
+		}
+
+		public int size() {
+			return 2;
+		}
+	}
+}
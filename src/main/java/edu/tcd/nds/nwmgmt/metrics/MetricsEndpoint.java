@@ -0,0 +1,76 @@
+package edu.tcd.nds.nwmgmt.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Write the metrics of agent as plain text to every connection on a local
+ * port and close it, e.g. read them with
+ * <code>nc localhost 2003</code>. The port is bound to the loopback address
+ * only.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class MetricsEndpoint implements Runnable, Closeable {
+	private final AgentMetrics metrics;
+	private final ServerSocket serverSocket;
+
+	/**
+	 * Bind the endpoint to given port of loopback address.
+	 *
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public MetricsEndpoint(AgentMetrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		this.serverSocket = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * Serve connections in a daemon thread.
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "MetricsEndpoint");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				try {
+					StringBuilder out = new StringBuilder(4096);
+					metrics.dump(out);
+					OutputStream stream = socket.getOutputStream();
+					stream.write(out.toString().getBytes(StandardCharsets.US_ASCII));
+					stream.flush();
+				} finally {
+					socket.close();
+				}
+			} catch (IOException ex) {
+				if (!serverSocket.isClosed()) {
+					ex.printStackTrace();
+				}
+			}
+		}
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+}
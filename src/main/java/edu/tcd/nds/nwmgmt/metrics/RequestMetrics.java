@@ -0,0 +1,100 @@
+package edu.tcd.nds.nwmgmt.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OID;
+
+/**
+ * The request statistics of the agent by PDU type and by OID subtree. A
+ * request is counted once for its PDU type and once for the subtree of its
+ * first variable binding, the longest added subtree containing it or "other"
+ * if there is none.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RequestMetrics {
+	private static final int[] PDU_TYPES = new int[] { PDU.GET, PDU.GETNEXT, PDU.GETBULK, PDU.SET };
+
+	private final RequestStats[] byType = new RequestStats[PDU_TYPES.length];
+	private final RequestStats otherType = new RequestStats("type other");
+	private volatile Subtree[] subtrees = new Subtree[0];
+	private final RequestStats otherSubtree = new RequestStats("subtree other");
+
+	public RequestMetrics() {
+		for (int i = 0; i < PDU_TYPES.length; i++) {
+			byType[i] = new RequestStats("type " + PDU.getTypeString(PDU_TYPES[i]));
+		}
+	}
+
+	/**
+	 * Count the requests of given subtree on their own. Subtrees are added
+	 * when the agent starts, before requests are recorded.
+	 */
+	public synchronized void addSubtree(String name, OID subtree) {
+		Subtree[] updated = Arrays.copyOf(subtrees, subtrees.length + 1);
+		updated[subtrees.length] = new Subtree(new OID(subtree), new RequestStats("subtree " + name));
+		subtrees = updated;
+	}
+
+	/**
+	 * Record a processed request.
+	 *
+	 * @param request
+	 *            the request PDU
+	 * @param nanos
+	 *            the time from receiving the request until it was answered
+	 */
+	public void record(PDU request, long nanos) {
+		getTypeStats(request.getType()).record(nanos);
+		getSubtreeStats(request.size() == 0 ? null : request.get(0).getOid()).record(nanos);
+	}
+
+	private RequestStats getTypeStats(int pduType) {
+		for (int i = 0; i < PDU_TYPES.length; i++) {
+			if (PDU_TYPES[i] == pduType) {
+				return byType[i];
+			}
+		}
+		return otherType;
+	}
+
+	private RequestStats getSubtreeStats(OID oid) {
+		Subtree longest = null;
+		if (oid != null) {
+			for (Subtree subtree : subtrees) {
+				if (oid.startsWith(subtree.oid) && (longest == null || subtree.oid.size() > longest.oid.size())) {
+					longest = subtree;
+				}
+			}
+		}
+		return longest == null ? otherSubtree : longest.stats;
+	}
+
+	/**
+	 * Return the statistics of all PDU types followed by those of all
+	 * subtrees.
+	 */
+	public List<RequestStats> getStats() {
+		List<RequestStats> stats = new ArrayList<RequestStats>(Arrays.asList(byType));
+		stats.add(otherType);
+		for (Subtree subtree : subtrees) {
+			stats.add(subtree.stats);
+		}
+		stats.add(otherSubtree);
+		return stats;
+	}
+
+	private static class Subtree {
+		private final OID oid;
+		private final RequestStats stats;
+
+		Subtree(OID oid, RequestStats stats) {
+			this.oid = oid;
+			this.stats = stats;
+		}
+	}
+}
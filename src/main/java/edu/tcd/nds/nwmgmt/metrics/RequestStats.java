@@ -0,0 +1,51 @@
+package edu.tcd.nds.nwmgmt.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.tcd.nds.nwmgmt.utils.LatencyHistogram;
+
+/**
+ * The number and latency of the requests of one kind, e.g. of one PDU type or
+ * of one OID subtree. Recording neither locks nor allocates.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RequestStats {
+	private final String name;
+	private final LongAdder count = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	public RequestStats(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Record one processed request.
+	 *
+	 * @param nanos
+	 *            the time from receiving the request until it was answered
+	 */
+	public void record(long nanos) {
+		count.increment();
+		latency.record(nanos);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return name + "[count=" + getCount() + ",p50=" + latency.getPercentileMicros(50) + "us,p99="
+				+ latency.getPercentileMicros(99) + "us,max=" + latency.getMaxMicros() + "us]";
+	}
+}
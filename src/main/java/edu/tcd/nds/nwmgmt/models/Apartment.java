@@ -1,7 +1,9 @@
 package edu.tcd.nds.nwmgmt.models;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.InvalidAttributeValueException;
 
@@ -10,6 +12,9 @@ import org.snmp4j.agent.DefaultMOServer;
 import org.snmp4j.agent.DuplicateRegistrationException;
 import org.snmp4j.agent.mo.MOAccessImpl;
 import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.SMIConstants;
 
 import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
@@ -20,56 +25,276 @@ import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
  * energy simulation for smart district project. Please check usecase in
  * documentation
  * 
+ * The energy values of apartment are held as one {@link EnergyBalance} record
+ * which is replaced by compare-and-set. The energy scalars are views over this
+ * record, therefore readers always see a balance which adds up. Every change
+ * of a numeric measurement is reported to the {@link MeasurementListener}s of
+ * the apartment.
+ * 
+ * The energy consumption of apartment and its split into heating and cooling,
+ * lighting and misc are totals over the flats table. Each change of a flat
+ * value adds its difference to the total, so reading a total costs the same
+ * whatever the number of flats.
+ * 
+ * The flats are kept column by column in a {@link FlatTableModel}, the values
+ * of a flat row are made only when the row is read by a request. The
+ * measurements of flats are kept in a {@link MeasurementStore}, on the heap
+ * unless the apartment is given another store, e.g. an
+ * {@link OffHeapMeasurementStore} shared by all apartments of a district.
+ * 
  * @author Sachin Hadke and Farhan Ahmad
  *
  */
 public class Apartment extends BaseModel {
+	private int apartmentNo;
 	private MOScalar deviceIdMO;
 	private MOScalar energyConsumptionMO;
 	private MOScalar energyStorageMO;
 	private MOScalar energyGenerationMO;
 	private MOScalar energyGenerationBySolarMO;
 	private MOScalar energyGenerationByHydroMO;
-	
+	private MOScalar energyConsumptionByHeatingCoolingMO;
+	private MOScalar energyConsumptionByLightingMO;
+	private MOScalar energyConsumptionByMiscMO;
+	private final AtomicReference<EnergyBalance> energyBalance = new AtomicReference<EnergyBalance>(new EnergyBalance());
+	private final List<MeasurementListener> measurementListeners = new CopyOnWriteArrayList<MeasurementListener>();
+
+	/**
+	 * The scalar OIDs of energy balance fields in order of field numbers of
+	 * {@link EnergyBalance}
+	 */
+	private static final OID[] ENERGY_BALANCE_OIDS = new OID[] {
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION,
+			MOIdentifiers.APPT_ENERGY_GENERATION,
+			MOIdentifiers.APPT_ENERGY_STORAGE,
+			MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+			MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_HEATING_COOLING,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_LIGHTING,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_MISC };
+
+	/**
+	 * The energy balance fields which total the measurement columns of flats
+	 * table, column 1 holds the flat id
+	 */
+	private static final int[] FLAT_TOTAL_FIELDS = new int[] {
+			EnergyBalance.CONSUMPTION,
+			EnergyBalance.CONSUMPTION_BY_HEATING_COOLING,
+			EnergyBalance.CONSUMPTION_BY_LIGHTING,
+			EnergyBalance.CONSUMPTION_BY_MISC };
 
-	private MOTableBuilder builder; 
-	private List<Flat> flats;
+	private MOTable flatsTable; 
+	private final FlatTableModel flatsModel;
+	private MOTable recentFlatValuesTable;
 	
 	/**
 	 * Build a Apartment model object and initialize managed object that are
 	 * handled by this model object.
 	 */
 	public Apartment(){
+		this(new HeapMeasurementStore());
+	}
+	
+	/**
+	 * Build a Apartment model object whose flat measurements are kept in
+	 * given store.
+	 */
+	public Apartment(MeasurementStore measurementStore){
+		flatsModel = new FlatTableModel(this, measurementStore);
 		deviceIdMO = new MOScalar(MOIdentifiers.APPT_IDENTIFIER, MOAccessImpl.ACCESS_READ_ONLY, null);
-		energyConsumptionMO = new MOScalar(MOIdentifiers.APPT_ENERGY_CONSUMPTION, MOAccessImpl.ACCESS_READ_WRITE, null);
-		energyStorageMO = new MOScalar(MOIdentifiers.APPT_ENERGY_STORAGE, MOAccessImpl.ACCESS_READ_WRITE, null);
-		energyGenerationMO = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION, MOAccessImpl.ACCESS_READ_WRITE, null);
-		energyGenerationBySolarMO = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, MOAccessImpl.ACCESS_READ_WRITE, null);
-		energyGenerationByHydroMO = new MOScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO, MOAccessImpl.ACCESS_READ_WRITE, null);
+		energyConsumptionMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_CONSUMPTION, MOAccessImpl.ACCESS_READ_ONLY, this, EnergyBalance.CONSUMPTION);
+		energyStorageMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_STORAGE, MOAccessImpl.ACCESS_READ_WRITE, this, EnergyBalance.STORAGE);
+		energyGenerationMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_GENERATION, MOAccessImpl.ACCESS_READ_WRITE, this, EnergyBalance.GENERATION);
+		energyGenerationBySolarMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, MOAccessImpl.ACCESS_READ_WRITE, this, EnergyBalance.GENERATION_BY_SOLAR);
+		energyGenerationByHydroMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO, MOAccessImpl.ACCESS_READ_WRITE, this, EnergyBalance.GENERATION_BY_HYDRO);
+		energyConsumptionByHeatingCoolingMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_HEATING_COOLING, MOAccessImpl.ACCESS_READ_ONLY, this, EnergyBalance.CONSUMPTION_BY_HEATING_COOLING);
+		energyConsumptionByLightingMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_LIGHTING, MOAccessImpl.ACCESS_READ_ONLY, this, EnergyBalance.CONSUMPTION_BY_LIGHTING);
+		energyConsumptionByMiscMO = new EnergyBalanceScalar(MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_MISC, MOAccessImpl.ACCESS_READ_ONLY, this, EnergyBalance.CONSUMPTION_BY_MISC);
 		
-		flats = new ArrayList<Flat>();
 		flatsTable();
+		recentFlatValuesTable();
+	}
+	
+	public void setApartmentNo(int apartmentNo){
+		this.apartmentNo = apartmentNo; // index of row in apartment table of district
+	}
+	public int getApartmentNo(){
+		return apartmentNo;
 	}
 	
 	public void setDeviceIdMOValue(String moValue){
 		deviceIdMO.setValue(getVariable(moValue));
 	}
-	public void setConsumptionMOValue(String moValue){
-		energyConsumptionMO.setValue(getVariable(moValue));
-	}
-	public void setStorageMOValue(String moValue){
+	public void setStorageMOValue(int moValue){
 		energyStorageMO.setValue(getVariable(moValue));
 	}
-	public void setGenerationMOValue(String moValue){
+	public void setGenerationMOValue(int moValue){
 		energyGenerationMO.setValue(getVariable(moValue));
 	}
-	public void setGenerationBySolarMOValue(String moValue){
+	public void setGenerationBySolarMOValue(int moValue){
 		energyGenerationBySolarMO.setValue(getVariable(moValue));
 	}
-	public void setGenerationByHydroMOValue(String moValue){
+	public void setGenerationByHydroMOValue(int moValue){
 		energyGenerationByHydroMO.setValue(getVariable(moValue));
 	}
 	
+	public int getConsumptionMOValue(){
+		return energyBalance.get().getConsumption();
+	}
+	public int getStorageMOValue(){
+		return energyBalance.get().getStorage();
+	}
+	public int getGenerationMOValue(){
+		return energyBalance.get().getGeneration();
+	}
+	public int getGenerationBySolarMOValue(){
+		return energyBalance.get().getGenerationBySolar();
+	}
+	public int getGenerationByHydroMOValue(){
+		return energyBalance.get().getGenerationByHydro();
+	}
+	public int getConsumptionByHeatingCoolingMOValue(){
+		return energyBalance.get().getConsumptionByHeatingCooling();
+	}
+	public int getConsumptionByLightingMOValue(){
+		return energyBalance.get().getConsumptionByLighting();
+	}
+	public int getConsumptionByMiscMOValue(){
+		return energyBalance.get().getConsumptionByMisc();
+	}
+	
+	/**
+	 * Return the current energy balance record. Values read from one record
+	 * are consistent with each other.
+	 */
+	public EnergyBalance getEnergyBalance(){
+		return energyBalance.get();
+	}
+	
+	/**
+	 * Replace the energy balance record if it is still the expected one. The
+	 * caller reads the record, derives the updated record and retries if
+	 * another update came in between.
+	 * 
+	 * @return true if the record was replaced
+	 */
+	public boolean compareAndSetEnergyBalance(EnergyBalance expected, EnergyBalance updated){
+		if(!energyBalance.compareAndSet(expected, updated)){
+			return false;
+		}
+		if(!measurementListeners.isEmpty()){
+			fireEnergyBalanceChanged(expected, updated);
+		}
+		return true;
+	}
+	
+	/**
+	 * Set the measurement of given OID, which is either one of the energy
+	 * scalars or a measurement cell of the flats table, e.g. when changes are
+	 * replayed after a restart. The change is reported to the measurement
+	 * listeners like any other change. The consumption totals follow the
+	 * flats and cannot be set.
+	 *
+	 * @return false if the OID is not a measurement of this apartment which
+	 *         can be set
+	 */
+	public boolean setMeasurement(OID oid, int value){
+		for (int field = 0; field < ENERGY_BALANCE_OIDS.length; field++) {
+			if(ENERGY_BALANCE_OIDS[field].equals(oid)){
+				if(isFlatTotal(field)){
+					return false;
+				}
+				EnergyBalance balance;
+				do {
+					balance = energyBalance.get();
+				} while (!compareAndSetEnergyBalance(balance, balance.with(field, value)));
+				return true;
+			}
+		}
+		OID base = MOIdentifiers.FLAT_BASE_OID;
+		// column 1 holds the flat id, the other columns are measurements
+		if(oid.size() != base.size() + 2 || !oid.startsWith(base) || oid.get(base.size()) < 2 || oid.get(base.size()) > 5){
+			return false;
+		}
+		return flatsModel.setMeasurement(oid.last(), oid.get(base.size()) - 1, value);
+	}
+	
+	/**
+	 * Called by the flats table model after a measurement of a flat has
+	 * changed. The difference is added to the consumption total of the column
+	 * and the change is reported to the measurement listeners.
+	 */
+	void flatValueChanged(int flatNo, int column, int oldValue, int newValue){
+		// column 0 holds the flat id, the other columns are measurements
+		if(column < 1 || column > FLAT_TOTAL_FIELDS.length || oldValue == newValue){
+			return;
+		}
+		addToEnergyBalance(FLAT_TOTAL_FIELDS[column - 1], newValue - oldValue);
+		if(!measurementListeners.isEmpty()){
+			OID cellOID = new OID(MOIdentifiers.FLAT_BASE_OID);
+			cellOID.append(column + 1);
+			cellOID.append(flatNo);
+			fireMeasurementChanged(cellOID, newValue);
+		}
+	}
+	
+	private void addToEnergyBalance(int field, int delta){
+		EnergyBalance balance;
+		do {
+			balance = energyBalance.get();
+		} while (!compareAndSetEnergyBalance(balance, balance.add(field, delta)));
+	}
+	
+	/**
+	 * Called by the flats table model when a flat is added or removed, add or
+	 * subtract all its measurements to the consumption totals in one step.
+	 * 
+	 * @param values
+	 *            the measurements of flat in order of the measurement columns
+	 */
+	void flatMeasurementsAdded(int[] values, int sign){
+		EnergyBalance balance;
+		EnergyBalance updated;
+		do {
+			balance = energyBalance.get();
+			updated = balance;
+			for (int i = 0; i < FLAT_TOTAL_FIELDS.length; i++) {
+				updated = updated.add(FLAT_TOTAL_FIELDS[i], sign * values[i]);
+			}
+		} while (!compareAndSetEnergyBalance(balance, updated));
+	}
+	
+	private static boolean isFlatTotal(int field){
+		for (int totalField : FLAT_TOTAL_FIELDS) {
+			if(totalField == field){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void addMeasurementListener(MeasurementListener listener){
+		measurementListeners.add(listener);
+	}
+	
+	public void removeMeasurementListener(MeasurementListener listener){
+		measurementListeners.remove(listener);
+	}
+	
+	private void fireEnergyBalanceChanged(EnergyBalance oldBalance, EnergyBalance newBalance){
+		for (int field = 0; field < ENERGY_BALANCE_OIDS.length; field++) {
+			if(newBalance.isSet(field) && (!oldBalance.isSet(field) || oldBalance.get(field) != newBalance.get(field))){
+				fireMeasurementChanged(ENERGY_BALANCE_OIDS[field], newBalance.get(field));
+			}
+		}
+	}
+	
+	private void fireMeasurementChanged(OID oid, int value){
+		for (MeasurementListener listener : measurementListeners) {
+			listener.measurementChanged(oid, value);
+		}
+	}
+	
 	public MOScalar getDeviceIdMO() {
 		return deviceIdMO;
 	}
@@ -85,6 +310,15 @@ public class Apartment extends BaseModel {
 	public MOScalar getEnergyGenerationBySolarMO() {
 		return energyGenerationBySolarMO;
 	}
+	public MOScalar getEnergyConsumptionByHeatingCoolingMO() {
+		return energyConsumptionByHeatingCoolingMO;
+	}
+	public MOScalar getEnergyConsumptionByLightingMO() {
+		return energyConsumptionByLightingMO;
+	}
+	public MOScalar getEnergyConsumptionByMiscMO() {
+		return energyConsumptionByMiscMO;
+	}
 	public MOScalar getEnergyGenerationByHydroMO() {
 		return energyGenerationByHydroMO;
 	}
@@ -94,82 +328,237 @@ public class Apartment extends BaseModel {
 	 * and then call addFlat method. This method will first validate the flat
 	 * object then add new data row in managed object table of flat.
 	 * 
+	 * The flat is added directly to the model of the flats table, therefore a
+	 * flat can be added even after the table has been registered with the
+	 * agent. If flat number is not set the next free flat number is assigned.
+	 * The flat object is not kept, its values are copied into the table.
+	 * 
 	 * @param flat
 	 *            the flat object to be added to this apartment
 	 */
-	public void addFlat(Flat flat) {
+	public synchronized void addFlat(Flat flat) {
 		if(!flat.isValid()){
 			throw new IllegalArgumentException("Flat object or its values of managed object cannot be null.");
 		}
-		flat.addNewRowForManagedObject(builder);
-		
-		if(flats.contains(flat)){
+		if(flat.getFlatNo() <= 0){
+			flat.setFlatNo(flatsModel.lastFlatNo() + 1);
+		}
+		if(!flatsModel.add(flat.getFlatNo(), flat.getDeviceIdValue().getBytes(), getMeasurements(flat))){
 			System.out.println("Flat "+flat.getDeviceIdValue()+" is already added to "+deviceIdMO+" appartment.");
-			return;
 		}
-		flats.add(flat);
+	}
+	
+	/**
+	 * Add flats given column by column without a flat object per flat, e.g.
+	 * when they are loaded from a snapshot. Flats numbered in ascending order
+	 * after the last flat are appended at once, a flat whose number is
+	 * already added is skipped.
+	 * 
+	 * @param count
+	 *            the number of flats
+	 * @param flatNos
+	 *            the flat numbers
+	 * @param deviceIds
+	 *            the device ids of the flats one after the other
+	 * @param deviceIdLengths
+	 *            the length in bytes of the device id of every flat
+	 * @param measurements
+	 *            the {@link MeasurementStore#MEASUREMENT_COUNT} measurements
+	 *            of every flat one after the other, in order of the
+	 *            measurement columns
+	 */
+	public synchronized void addFlats(int count, int[] flatNos, byte[] deviceIds, int[] deviceIdLengths, int[] measurements) {
+		flatsModel.addAll(count, flatNos, deviceIds, deviceIdLengths, measurements);
+	}
+	
+	/**
+	 * Return the measurements of flat in order of the measurement columns.
+	 */
+	private static int[] getMeasurements(Flat flat) {
+		return new int[] {
+				flat.getEnergyConsumptionMOValue(),
+				flat.getEnergyConsumptionByHeatingCoolingMOValue(),
+				flat.getEnergyConsumptionByLightingMOValue(),
+				flat.getEnergyConsumptionByMiscMOValue() };
+	}
+	
+	/**
+	 * Remove the flat and its data row from managed object table of flat.
+	 * 
+	 * @param flat
+	 *            the flat object to be removed from this apartment
+	 * @return true if flat was part of this apartment otherwise false
+	 */
+	public synchronized boolean removeFlat(Flat flat) {
+		return flatsModel.remove(flat.getFlatNo()) != null;
+	}
+	
+	/**
+	 * Remove all flats of this apartment, which frees their records in the
+	 * measurement store, e.g. before dropping an apartment built on a shared
+	 * store.
+	 */
+	public synchronized void removeAllFlats() {
+		flatsModel.clear();
+	}
+	
+	/**
+	 * Write the current values of given flat object into its existing data row
+	 * in managed object table of flat. Only the row of this flat is touched.
+	 * 
+	 * @param flat
+	 *            the flat object whose values have been changed
+	 */
+	public synchronized void updateFlat(Flat flat) {
+		if(!flat.isValid()){
+			throw new IllegalArgumentException("Flat object or its values of managed object cannot be null.");
+		}
+		int[] values = getMeasurements(flat);
+		synchronized (flatsModel) {
+			if(!flatsModel.contains(flat.getFlatNo())){
+				throw new IllegalArgumentException("Flat "+flat.getDeviceIdValue()+" is not part of "+deviceIdMO+" appartment.");
+			}
+			flatsModel.setValue(flat.getFlatNo(), 0, new OctetString(flat.getDeviceIdValue()));
+			for (int i = 0; i < values.length; i++) {
+				flatsModel.setMeasurement(flat.getFlatNo(), i + 1, values[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Return a flat object with the current values of given flat number.
+	 * 
+	 * @param flatNo
+	 *            the flat number
+	 * @return the flat object or null if there is no such flat
+	 */
+	public Flat getFlat(int flatNo) {
+		return flatsModel.getFlat(flatNo);
+	}
+	
+	/**
+	 * Return the previous values of a measurement of given flat followed by
+	 * its current value, oldest first. Only as many previous values are kept
+	 * as the measurement store of apartment is built to keep.
+	 * 
+	 * @param flatNo
+	 *            the flat number
+	 * @param column
+	 *            the column of measurement in the flats table, 2 to 5
+	 * @return the values or null if there is no such flat or column
+	 */
+	public int[] getRecentFlatValues(int flatNo, int column) {
+		return flatsModel.getRecentValues(flatNo, column - 1);
+	}
+	
+	public int getFlatCount() {
+		return flatsModel.getRowCount();
+	}
+	
+	public MOTable getFlatsTable() {
+		return flatsTable;
+	}
+	
+	public MOTable getRecentFlatValuesTable() {
+		return recentFlatValuesTable;
+	}
+	
+	FlatTableModel getFlatsModel() {
+		return flatsModel;
 	}
 	
 	/**
 	 * Generate table headers of a table that will store managed object
-	 * information of flat. The flat class will add actual data based on values
-	 * that have been set to the flat object.
+	 * information of flat. The table is build only once over the flats table
+	 * model, the rows are added based on values that have been set to the
+	 * flat object.
 	 */
 	public void flatsTable(){
-		builder = new MOTableBuilder(MOIdentifiers.FLAT_BASE_OID)
+		flatsTable = new MOTableBuilder(MOIdentifiers.FLAT_BASE_OID)
 			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY) // flat no
-			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_WRITE) // consumption
-			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_WRITE) // consumption by heating and cooling
-			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_WRITE) // consumption by lighting
-			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_WRITE); // consumption by misc
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by heating and cooling
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by lighting
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by misc
+			.build(flatsModel);
+	}
+	
+	/**
+	 * Generate the table of recent values of flat measurements, whose rows
+	 * are made from the measurement store when they are read.
+	 */
+	public void recentFlatValuesTable(){
+		recentFlatValuesTable = new MOTableBuilder(MOIdentifiers.FLAT_RECENT_VALUES_TABLE_OID, 3)
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_ONLY) // value
+			.build(new RecentFlatValuesTableModel(this));
 	}
 	
 	/**
 	 * Based on aggregation of different energy sources the total energy
 	 * consumption is build and updated into managed object.
 	 */
-	private void updateTotalEnergyGeneration(){
-		String energyGenerationBySolarStr = energyGenerationBySolarMO.getValue().toString();
-		String energyGenerationByHydroStr = energyGenerationByHydroMO.getValue().toString();
-		String energyStorageStr = energyStorageMO.getValue().toString();
-		
-		int totalEnergyGeneration = 0;
-		int energyGenerationBySolar = 0;
-		int energyGenerationByHydro = 0;
-		int energyStorage = 0;
-		
-		try{
-			energyGenerationBySolar = Integer.parseInt(energyGenerationBySolarStr);
-			energyGenerationByHydro = Integer.parseInt(energyGenerationByHydroStr);
-			energyStorage = Integer.parseInt(energyStorageStr);
-		} catch (NumberFormatException ex){
-			System.out.println("The value set for energy generated by hydro or solar is not a integer.");
-		}
-		totalEnergyGeneration = energyGenerationBySolar + energyGenerationByHydro + energyStorage;
-		setGenerationMOValue(""+totalEnergyGeneration);
+	void updateTotalEnergyGeneration(){
+		EnergyBalance balance;
+		do {
+			balance = energyBalance.get();
+		} while (!compareAndSetEnergyBalance(balance, withTotalEnergyGeneration(balance)));
+	}
+	
+	private static EnergyBalance withTotalEnergyGeneration(EnergyBalance balance){
+		int totalEnergyGeneration = balance.getGenerationBySolar() + balance.getGenerationByHydro() + balance.getStorage();
+		return balance.with(EnergyBalance.GENERATION, totalEnergyGeneration);
 	}
 	
 	/**
-	 * Register the managed objects handled by this model object to Managed
-	 * Object Server
+	 * Return the record derived from given record by replacing the
+	 * consumption totals with totals summed up from the flat rows and the
+	 * total energy generation with the total of its sources.
+	 * 
+	 * @param flatTotals
+	 *            the totals of the measurement columns of flats table
 	 */
-	public void registerMOs(BaseAgent agent) throws DuplicateRegistrationException, InvalidAttributeValueException {
-		updateTotalEnergyGeneration();
-		
-		// making sure that all manage objects are having appropriate default value.
+	static EnergyBalance recomputedBalance(EnergyBalance balance, int[] flatTotals){
+		int[] fields = Arrays.copyOf(FLAT_TOTAL_FIELDS, FLAT_TOTAL_FIELDS.length + 1);
+		int[] values = Arrays.copyOf(flatTotals, FLAT_TOTAL_FIELDS.length + 1);
+		fields[FLAT_TOTAL_FIELDS.length] = EnergyBalance.GENERATION;
+		values[FLAT_TOTAL_FIELDS.length] = balance.getGenerationBySolar() + balance.getGenerationByHydro() + balance.getStorage();
+		return balance.with(fields, values);
+	}
+	
+	static int getFlatTotalCount(){
+		return FLAT_TOTAL_FIELDS.length;
+	}
+	
+	/**
+	 * Making sure that all manage objects are having appropriate default value.
+	 * 
+	 * @throws InvalidAttributeValueException
+	 *             if value of any managed object is not set
+	 */
+	void validateMOValues() throws InvalidAttributeValueException {
+		EnergyBalance balance = energyBalance.get();
 		if(deviceIdMO.getValue() == null){
 			throw new InvalidAttributeValueException("DeviceId manage object value cannot be null before registering manage object.");
-		} else if(energyConsumptionMO.getValue() == null){
+		} else if(!balance.isSet(EnergyBalance.CONSUMPTION)){
 			throw new InvalidAttributeValueException("Energy consumption manage object value cannot be null before registering manage object.");
-		} else if(energyStorageMO.getValue() == null){
+		} else if(!balance.isSet(EnergyBalance.STORAGE)){
 			throw new InvalidAttributeValueException("Energy storage manage object value cannot be null before registering manage object.");
-		} else if(energyGenerationMO.getValue() == null){
+		} else if(!balance.isSet(EnergyBalance.GENERATION)){
 			throw new InvalidAttributeValueException("Energy generation manage object value cannot be null before registering manage object.");
-		} else if(energyGenerationBySolarMO.getValue() == null){
+		} else if(!balance.isSet(EnergyBalance.GENERATION_BY_SOLAR)){
 			throw new InvalidAttributeValueException("Energy generation by solar manage object value cannot be null before registering manage object.");
-		} else if(energyGenerationByHydroMO.getValue() == null){
+		} else if(!balance.isSet(EnergyBalance.GENERATION_BY_HYDRO)){
 			throw new InvalidAttributeValueException("Energy generation by hydro manage object value cannot be null before registering manage object.");
 		}
+	}
+	
+	/**
+	 * Register the managed objects handled by this model object to Managed
+	 * Object Server
+	 */
+	public void registerMOs(BaseAgent agent) throws DuplicateRegistrationException, InvalidAttributeValueException {
+		updateTotalEnergyGeneration();
+		validateMOValues();
 
 		DefaultMOServer server = agent.getServer();
 		
@@ -180,9 +569,12 @@ public class Apartment extends BaseModel {
 		server.unregister(energyGenerationMO, null);
 		server.unregister(energyGenerationBySolarMO, null);
 		server.unregister(energyGenerationByHydroMO, null);
+		server.unregister(energyConsumptionByHeatingCoolingMO, null);
+		server.unregister(energyConsumptionByLightingMO, null);
+		server.unregister(energyConsumptionByMiscMO, null);
 		
-		server.unregister(builder.build(), null);
-		
+		server.unregister(flatsTable, null);
+		server.unregister(recentFlatValuesTable, null);
 		
 		// its safe to register now the manage object, registering
 		server.register(deviceIdMO, null);
@@ -191,7 +583,11 @@ public class Apartment extends BaseModel {
 		server.register(energyGenerationMO, null);
 		server.register(energyGenerationBySolarMO, null);
 		server.register(energyGenerationByHydroMO, null);
+		server.register(energyConsumptionByHeatingCoolingMO, null);
+		server.register(energyConsumptionByLightingMO, null);
+		server.register(energyConsumptionByMiscMO, null);
 		
-		server.register(builder.build(), null);
+		server.register(flatsTable, null);
+		server.register(recentFlatValuesTable, null);
 	}
 }
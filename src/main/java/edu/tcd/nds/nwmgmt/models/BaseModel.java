@@ -4,6 +4,7 @@ import javax.management.InvalidAttributeValueException;
 
 import org.snmp4j.agent.BaseAgent;
 import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.Variable;
 
@@ -36,4 +37,17 @@ public abstract class BaseModel {
 		
 		return new OctetString(value);
 	}
+	
+	/**
+	 * Given a int value return a typed {@link Integer32} Variable object so
+	 * that energy measurements are exchanged as numbers rather than strings
+	 * 
+	 * @param value
+	 *            the input to be set to managed object
+	 * @return the Variable object that is used as value parameter of managed
+	 *         object by snmp4j
+	 */
+	protected Variable getVariable(int value) {
+		return new Integer32(value);
+	}
 }
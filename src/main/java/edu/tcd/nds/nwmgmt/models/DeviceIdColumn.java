@@ -0,0 +1,131 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Arrays;
+
+/**
+ * The device id column of a flats table, the ids of all flats packed into
+ * one byte array instead of an array per flat. An id is addressed by the
+ * position of its flat in the table, its offset and length are kept in int
+ * arrays in the order of the flats. A changed id which does not fit its old
+ * place is appended, the space left behind is reclaimed by packing the ids
+ * again once it is more than half of the bytes used.
+ *
+ * The column is not synchronized, it is guarded by the lock of its table.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class DeviceIdColumn {
+	private static final int INITIAL_BYTES = 64;
+
+	private int size;
+	private int[] offsets;
+	private int[] lengths;
+	private byte[] bytes = new byte[INITIAL_BYTES];
+	private int end;
+	private int unused;
+
+	DeviceIdColumn(int capacity) {
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+	}
+
+	/**
+	 * Insert an id at given position, the ids from that position on move one
+	 * position up.
+	 */
+	void insert(int position, byte[] deviceId) {
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+		}
+		System.arraycopy(offsets, position, offsets, position + 1, size - position);
+		System.arraycopy(lengths, position, lengths, position + 1, size - position);
+		size++;
+		lengths[position] = 0;
+		offsets[position] = end;
+		set(position, deviceId);
+	}
+
+	/**
+	 * Append the ids of given lengths, which follow each other in given
+	 * bytes, after the last id.
+	 */
+	void appendAll(byte[] deviceIds, int[] deviceIdLengths, int count) {
+		if (size + count > offsets.length) {
+			int capacity = Math.max(offsets.length * 2, size + count);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		int byteCount = 0;
+		for (int i = 0; i < count; i++) {
+			offsets[size + i] = end + byteCount;
+			lengths[size + i] = deviceIdLengths[i];
+			byteCount += deviceIdLengths[i];
+		}
+		if (end + byteCount > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, end + byteCount));
+		}
+		System.arraycopy(deviceIds, 0, bytes, end, byteCount);
+		end += byteCount;
+		size += count;
+	}
+
+	/**
+	 * Remove the id at given position, the ids after it move one position
+	 * down.
+	 */
+	void remove(int position) {
+		unused += lengths[position];
+		System.arraycopy(offsets, position + 1, offsets, position, size - position - 1);
+		System.arraycopy(lengths, position + 1, lengths, position, size - position - 1);
+		size--;
+		if (size == 0) {
+			end = 0;
+			unused = 0;
+		}
+	}
+
+	byte[] get(int position) {
+		return Arrays.copyOfRange(bytes, offsets[position], offsets[position] + lengths[position]);
+	}
+
+	void set(int position, byte[] deviceId) {
+		int length = deviceId.length;
+		if (length > lengths[position]) {
+			unused += lengths[position];
+			lengths[position] = 0;
+			if (end + length > bytes.length) {
+				if (unused > end / 2) {
+					pack();
+				}
+				if (end + length > bytes.length) {
+					bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, end + length));
+				}
+			}
+			offsets[position] = end;
+			end += length;
+		} else {
+			unused += lengths[position] - length;
+		}
+		System.arraycopy(deviceId, 0, bytes, offsets[position], length);
+		lengths[position] = length;
+	}
+
+	/**
+	 * Move the ids together in order of the flats, so the unused space is at
+	 * the end.
+	 */
+	private void pack() {
+		byte[] packed = new byte[bytes.length];
+		int packedEnd = 0;
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(bytes, offsets[i], packed, packedEnd, lengths[i]);
+			offsets[i] = packedEnd;
+			packedEnd += lengths[i];
+		}
+		bytes = packed;
+		end = packedEnd;
+		unused = 0;
+	}
+}
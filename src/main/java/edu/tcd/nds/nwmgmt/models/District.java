@@ -0,0 +1,388 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.InvalidAttributeValueException;
+
+import org.snmp4j.agent.BaseAgent;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.mo.DefaultMOTable;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOColumn;
+import org.snmp4j.agent.mo.MOMutableTableRow;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.agent.mo.MOTableCellInfo;
+import org.snmp4j.agent.mo.MOTableIndex;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.SMIConstants;
+import org.snmp4j.smi.Variable;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
+
+/**
+ * A model class that represents a district made of many apartments. All
+ * apartments are served by one agent under two tables, an apartment table
+ * indexed by apartment number and a flat table indexed by apartment number and
+ * flat number. Only these two tables are registered with the managed object
+ * server, therefore the number of registered managed objects does not grow
+ * with the number of apartments.
+ *
+ * The rows of both tables are views over the apartment and its flats table,
+ * a value changed through the district is seen by the apartment and the other
+ * way round. The energy columns of the apartment table are read from the
+ * energy balance record pinned to the request and the columns set by one
+ * request are published in one step, like the energy scalars of an apartment.
+ * The flat table is a {@link DistrictFlatTableModel} over the flats table
+ * models of apartments, it holds no row per flat.
+ *
+ * After a bulk change of many apartments, e.g. an import of meter readings or
+ * a scenario touching every apartment, {@link #recompute()} derives the
+ * balance of all apartments and the district totals again in parallel.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class District extends BaseModel {
+	// the apartment scalar of each column of apartment table
+	private static final OID[] APARTMENT_COLUMN_OIDS = { MOIdentifiers.APPT_IDENTIFIER,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION, MOIdentifiers.APPT_ENERGY_GENERATION,
+			MOIdentifiers.APPT_ENERGY_STORAGE, MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+			MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO };
+
+	private MOTable apartmentsTable;
+	private MOTable flatsTable;
+	private final DistrictFlatTableModel flatsModel = new DistrictFlatTableModel();
+	private Map<Integer, Apartment> apartments;
+	private int lastApartmentNo;
+	private final AtomicReference<DistrictBalance> districtBalance = new AtomicReference<DistrictBalance>(DistrictBalance.EMPTY);
+
+	/**
+	 * Build a District model object and initialize the tables that are
+	 * handled by this model object.
+	 */
+	public District() {
+		apartments = new HashMap<Integer, Apartment>();
+		MOTableBuilder apartmentsBuilder = new MOTableBuilder(MOIdentifiers.DISTRICT_APPT_TABLE_OID)
+			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY) // apartment id
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_ONLY) // consumption, total of flats
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_WRITE) // generation
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_WRITE) // storage
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_WRITE) // generation by solar
+			.addColumnType(SMIConstants.SYNTAX_INTEGER, MOAccessImpl.ACCESS_READ_WRITE); // generation by hydro
+		apartmentsTable = new ApartmentTable(MOIdentifiers.DISTRICT_APPT_TABLE_OID, apartmentsBuilder.getIndexDef(),
+				apartmentsBuilder.getColumns());
+		flatsTable = new MOTableBuilder(MOIdentifiers.DISTRICT_FLAT_TABLE_OID, 2)
+			.addColumnType(SMIConstants.SYNTAX_OCTET_STRING, MOAccessImpl.ACCESS_READ_ONLY) // flat no
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by heating and cooling
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by lighting
+			.addColumnType(SMIConstants.SYNTAX_GAUGE32, MOAccessImpl.ACCESS_READ_WRITE) // consumption by misc
+			.build(flatsModel);
+	}
+
+	/**
+	 * Add the apartment and all its flats to the district tables. The flats
+	 * added to or removed from the apartment later on are reflected in the
+	 * district flat table as well. If apartment number is not set the next
+	 * free apartment number is assigned.
+	 *
+	 * @param apartment
+	 *            the apartment to be added to this district
+	 */
+	public synchronized void addApartment(Apartment apartment) {
+		apartment.updateTotalEnergyGeneration();
+		try {
+			apartment.validateMOValues();
+		} catch (InvalidAttributeValueException ex) {
+			throw new IllegalArgumentException(ex.getMessage());
+		}
+		if (apartment.getApartmentNo() <= 0) {
+			apartment.setApartmentNo(lastApartmentNo + 1);
+		}
+		if (apartments.containsKey(apartment.getApartmentNo())) {
+			System.out.println("Apartment " + apartment.getApartmentNo() + " is already added to district.");
+			return;
+		}
+		apartments.put(apartment.getApartmentNo(), apartment);
+		lastApartmentNo = Math.max(lastApartmentNo, apartment.getApartmentNo());
+		apartmentsTable.addRow(new ApartmentRow(apartment));
+		flatsModel.addApartment(apartment);
+	}
+
+	/**
+	 * Return the apartment for given apartment number. The lookup does not
+	 * depend on number of apartments in the district.
+	 *
+	 * @param apartmentNo
+	 *            the apartment number
+	 * @return the apartment or null if there is no such apartment
+	 */
+	public synchronized Apartment getApartment(int apartmentNo) {
+		return apartments.get(apartmentNo);
+	}
+
+	/**
+	 * Return the apartments of this district in order of apartment number.
+	 */
+	public synchronized List<Apartment> getApartments() {
+		List<Apartment> list = new ArrayList<Apartment>(apartments.size());
+		for (Integer apartmentNo : new TreeSet<Integer>(apartments.keySet())) {
+			list.add(apartments.get(apartmentNo));
+		}
+		return list;
+	}
+
+	public synchronized int getApartmentCount() {
+		return apartments.size();
+	}
+
+	/**
+	 * Recompute the energy balance of all apartments from their flats and the
+	 * district totals in the common fork/join pool.
+	 *
+	 * @see #recompute(ForkJoinPool)
+	 */
+	public DistrictBalance recompute() {
+		return recompute(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Recompute the consumption totals of every apartment from its flat rows,
+	 * its total energy generation from its sources and the district totals
+	 * over all apartments. The work is split into fork/join tasks of given
+	 * pool and nothing is published before all tasks are done, then every
+	 * apartment record is replaced and the district totals are published in
+	 * one step. No apartment is added while recomputing.
+	 *
+	 * @param pool
+	 *            the pool running the tasks, its parallelism bounds the
+	 *            speed-up
+	 * @return the published district totals
+	 */
+	public synchronized DistrictBalance recompute(ForkJoinPool pool) {
+		DistrictBalance balance = new DistrictRecompute(getApartments()).run(pool);
+		districtBalance.set(balance);
+		return balance;
+	}
+
+	/**
+	 * Return the district totals published by the last recompute, or
+	 * {@link DistrictBalance#EMPTY} if the district has not been recomputed.
+	 */
+	public DistrictBalance getDistrictBalance() {
+		return districtBalance.get();
+	}
+
+	/**
+	 * Return the OID under which the district tables serve given measurement
+	 * of the apartment of given number, so the measurements of the apartments
+	 * of a district are kept apart, e.g. in the history. The columns of the
+	 * apartment table follow the apartment scalars and the columns of the
+	 * flat table follow the flats table.
+	 *
+	 * @param apartmentNo
+	 *            the number of apartment in the district
+	 * @param oid
+	 *            the OID of an apartment scalar or of a flats table cell
+	 * @return the OID of the cell or null if the district tables do not serve
+	 *         the measurement, e.g. the consumption by heating and cooling,
+	 *         lighting and misc of an apartment
+	 */
+	public static OID getDistrictOID(int apartmentNo, OID oid) {
+		OID flatBase = MOIdentifiers.FLAT_BASE_OID;
+		if (oid.size() == flatBase.size() + 2 && oid.startsWith(flatBase)) {
+			OID cellOID = new OID(MOIdentifiers.DISTRICT_FLAT_TABLE_OID);
+			cellOID.append(oid.get(flatBase.size()));
+			cellOID.append(apartmentNo);
+			cellOID.append(oid.last());
+			return cellOID;
+		}
+		for (int column = 0; column < APARTMENT_COLUMN_OIDS.length; column++) {
+			if (APARTMENT_COLUMN_OIDS[column].equals(oid)) {
+				OID cellOID = new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID);
+				cellOID.append(column + 1);
+				cellOID.append(apartmentNo);
+				return cellOID;
+			}
+		}
+		return null;
+	}
+
+	public MOTable getApartmentsTable() {
+		return apartmentsTable;
+	}
+
+	public MOTable getFlatsTable() {
+		return flatsTable;
+	}
+
+	/**
+	 * Register the apartment table and flat table of district to Managed
+	 * Object Server
+	 */
+	public void registerMOs(BaseAgent agent) throws DuplicateRegistrationException, InvalidAttributeValueException {
+		DefaultMOServer server = agent.getServer();
+
+		// making sure that the manage object is not already registered
+		server.unregister(apartmentsTable, null);
+		server.unregister(flatsTable, null);
+
+		// its safe to register now the manage object, registering
+		server.register(apartmentsTable, null);
+		server.register(flatsTable, null);
+	}
+
+	/**
+	 * The apartment table, whose energy columns are served from the energy
+	 * balance record of the apartment in a row. A GET or GETNEXT reads the
+	 * record pinned to its request and the energy columns set by a SET join
+	 * the change of the apartment on the request, which the energy scalars of
+	 * the apartment join as well.
+	 */
+	private static class ApartmentTable extends DefaultMOTable implements EnergyBalanceWriter {
+		// the energy balance field of each column, -1 for the apartment id
+		private static final int[] FIELDS = { -1, EnergyBalance.CONSUMPTION, EnergyBalance.GENERATION,
+				EnergyBalance.STORAGE, EnergyBalance.GENERATION_BY_SOLAR, EnergyBalance.GENERATION_BY_HYDRO };
+
+		ApartmentTable(OID oid, MOTableIndex indexDef, MOColumn[] columns) {
+			super(oid, indexDef, columns);
+			setVolatile(true);
+		}
+
+		@Override
+		public void get(SubRequest request) {
+			super.get(request);
+			readPinned(request);
+		}
+
+		@Override
+		public boolean next(SubRequest request) {
+			if (!super.next(request)) {
+				return false;
+			}
+			readPinned(request);
+			return true;
+		}
+
+		@Override
+		public void commit(SubRequest request) {
+			ApartmentRow row = getEnergyRow(request);
+			if (row == null || request.getRequest() == null) {
+				super.commit(request);
+				return;
+			}
+			EnergyBalanceScalar.commit(row.apartment, getField(request), request);
+		}
+
+		/**
+		 * Restore the value a cell had, nothing is restored if the change of
+		 * request has not been published.
+		 */
+		@Override
+		public void undo(SubRequest request) {
+			ApartmentRow row = getEnergyRow(request);
+			if (row != null && !EnergyBalanceScalar.isPublished(row.apartment, request)) {
+				request.getStatus().setPhaseComplete(true);
+				return;
+			}
+			super.undo(request);
+		}
+
+		public boolean setsEnergyBalanceOf(Apartment apartment, SubRequest request) {
+			ApartmentRow row = getEnergyRow(request);
+			return row != null && row.apartment == apartment;
+		}
+
+		/**
+		 * Replace the value read for the cell of given request by the value
+		 * of the record pinned to the request.
+		 */
+		private void readPinned(SubRequest request) {
+			ApartmentRow row = getEnergyRow(request);
+			if (row == null) {
+				return;
+			}
+			Variable value = EnergyBalanceScalar.toVariable(EnergyBalanceScalar.pin(row.apartment, request),
+					getField(request));
+			if (value != null) {
+				request.getVariableBinding().setVariable(value);
+			}
+		}
+
+		/**
+		 * Return the row of the cell of given request if the cell is an
+		 * energy column, null otherwise.
+		 */
+		private ApartmentRow getEnergyRow(SubRequest request) {
+			MOTableCellInfo cell = getCellInfo(request.getVariableBinding().getOid());
+			if (cell.getIndex() == null || cell.getColumn() < 0 || cell.getColumn() >= FIELDS.length
+					|| FIELDS[cell.getColumn()] < 0) {
+				return null;
+			}
+			MOTableRow row = getModel().getRow(cell.getIndex());
+			return row instanceof ApartmentRow ? (ApartmentRow) row : null;
+		}
+
+		private int getField(SubRequest request) {
+			return FIELDS[getCellInfo(request.getVariableBinding().getOid()).getColumn()];
+		}
+	}
+
+	/**
+	 * A row of apartment table that reads and writes the scalar managed
+	 * objects of the apartment. Column order follows the apartment scalars
+	 * in {@link MOIdentifiers}.
+	 */
+	private static class ApartmentRow implements MOMutableTableRow {
+		private final Apartment apartment;
+		private final OID index;
+		private final MOScalar[] scalars;
+
+		ApartmentRow(Apartment apartment) {
+			this.apartment = apartment;
+			this.index = new OID(new int[] { apartment.getApartmentNo() });
+			this.scalars = new MOScalar[] {
+					apartment.getDeviceIdMO(),
+					apartment.getEnergyConsumptionMO(),
+					apartment.getEnergyGenerationMO(),
+					apartment.getEnergyStorageMO(),
+					apartment.getEnergyGenerationBySolarMO(),
+					apartment.getEnergyGenerationByHydroMO() };
+		}
+
+		public OID getIndex() {
+			return index;
+		}
+
+		public Variable getValue(int column) {
+			return scalars[column].getValue();
+		}
+
+		public void setValue(int column, Variable value) {
+			scalars[column].setValue(value);
+		}
+
+		public MOTableRow getBaseRow() {
+			return null;
+		}
+
+		public void setBaseRow(MOTableRow baseRow) {
+			// apartment rows have no base row
+		}
+
+		public int size() {
+			return scalars.length;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package edu.tcd.nds.nwmgmt.models;
+
+/**
+ * The energy balance of a whole district as one immutable record, the totals
+ * of the {@link EnergyBalance} fields over all apartments. The record is
+ * published by {@link District#recompute()} in one step when all apartments
+ * have been recomputed, therefore a reader never sees the totals of a
+ * recompute which is still running.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public final class DistrictBalance {
+	/** the balance of a district which has not been recomputed yet */
+	public static final DistrictBalance EMPTY = new DistrictBalance(new long[EnergyBalance.FIELD_COUNT], 0, 0);
+
+	private final long[] totals;
+	private final int apartmentCount;
+	private final int flatCount;
+
+	DistrictBalance(long[] totals, int apartmentCount, int flatCount) {
+		this.totals = totals;
+		this.apartmentCount = apartmentCount;
+		this.flatCount = flatCount;
+	}
+
+	/**
+	 * Return the total of given {@link EnergyBalance} field over all
+	 * apartments.
+	 */
+	public long get(int field) {
+		return totals[field];
+	}
+
+	public long getConsumption() {
+		return totals[EnergyBalance.CONSUMPTION];
+	}
+
+	public long getGeneration() {
+		return totals[EnergyBalance.GENERATION];
+	}
+
+	public long getStorage() {
+		return totals[EnergyBalance.STORAGE];
+	}
+
+	public long getGenerationBySolar() {
+		return totals[EnergyBalance.GENERATION_BY_SOLAR];
+	}
+
+	public long getGenerationByHydro() {
+		return totals[EnergyBalance.GENERATION_BY_HYDRO];
+	}
+
+	public int getApartmentCount() {
+		return apartmentCount;
+	}
+
+	public int getFlatCount() {
+		return flatCount;
+	}
+
+	@Override
+	public String toString() {
+		return "DistrictBalance[apartments=" + apartmentCount + ",flats=" + flatCount + ",consumption="
+				+ getConsumption() + ",generation=" + getGeneration() + ",storage=" + getStorage() + ",solar="
+				+ getGenerationBySolar() + ",hydro=" + getGenerationByHydro() + ",heatingCooling="
+				+ totals[EnergyBalance.CONSUMPTION_BY_HEATING_COOLING] + ",lighting="
+				+ totals[EnergyBalance.CONSUMPTION_BY_LIGHTING] + ",misc=" + totals[EnergyBalance.CONSUMPTION_BY_MISC]
+				+ "]";
+	}
+}
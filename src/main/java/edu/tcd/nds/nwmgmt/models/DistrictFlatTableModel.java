@@ -0,0 +1,167 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.OID;
+
+/**
+ * The table model of the flat table of district, a view on the flats table
+ * models of its apartments. A row is indexed by apartment number and flat
+ * number and reads and writes the columns of the flat in the model of its
+ * apartment, so the district table holds nothing per flat and follows the
+ * flats added to or removed from an apartment.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class DistrictFlatTableModel implements MOTableModel {
+	private final ConcurrentNavigableMap<Integer, Apartment> apartments = new ConcurrentSkipListMap<Integer, Apartment>();
+
+	void addApartment(Apartment apartment) {
+		apartments.put(apartment.getApartmentNo(), apartment);
+	}
+
+	public int getColumnCount() {
+		return FlatTableModel.COLUMN_COUNT;
+	}
+
+	public int getRowCount() {
+		int count = 0;
+		for (Apartment apartment : apartments.values()) {
+			count += apartment.getFlatCount();
+		}
+		return count;
+	}
+
+	public boolean containsRow(OID index) {
+		return getRow(index) != null;
+	}
+
+	public MOTableRow getRow(OID index) {
+		if (index == null || index.size() != 2) {
+			return null;
+		}
+		Apartment apartment = apartments.get(index.get(0));
+		return apartment == null ? null : apartment.getFlatsModel().getRow(index.get(1), index);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Iterator iterator() {
+		return tailIterator(null);
+	}
+
+	/**
+	 * Return an iterator over the rows from given index on, which looks up
+	 * the next flat on every step.
+	 */
+	@SuppressWarnings("rawtypes")
+	public Iterator tailIterator(OID lowerBound) {
+		if (lowerBound == null || lowerBound.size() == 0) {
+			return new RowIterator(apartments, -1);
+		}
+		long apartmentNo = lowerBound.getUnsigned(0);
+		if (apartmentNo > Integer.MAX_VALUE) {
+			return new RowIterator(apartments.tailMap(Integer.MAX_VALUE, false), -1);
+		}
+		if (lowerBound.size() == 1) {
+			return new RowIterator(apartments.tailMap((int) apartmentNo, true), -1);
+		}
+		// an index below a row sorts after that row
+		long flatNo = lowerBound.getUnsigned(1);
+		return new RowIterator(apartments.tailMap((int) apartmentNo, true), (int) apartmentNo,
+				lowerBound.size() > 2 ? flatNo : flatNo - 1);
+	}
+
+	public OID lastIndex() {
+		MOTableRow row = lastRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	public OID firstIndex() {
+		MOTableRow row = firstRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public MOTableRow firstRow() {
+		Iterator rows = iterator();
+		return rows.hasNext() ? (MOTableRow) rows.next() : null;
+	}
+
+	public MOTableRow lastRow() {
+		for (Apartment apartment : apartments.descendingMap().values()) {
+			int flatNo = apartment.getFlatsModel().lastFlatNo();
+			if (flatNo > 0) {
+				return apartment.getFlatsModel().getRow(flatNo, getFlatIndex(apartment.getApartmentNo(), flatNo));
+			}
+		}
+		return null;
+	}
+
+	private static OID getFlatIndex(int apartmentNo, long flatNo) {
+		return new OID(new int[] { apartmentNo, (int) flatNo });
+	}
+
+	private static class RowIterator implements Iterator<MOTableRow> {
+		private final Iterator<Map.Entry<Integer, Apartment>> apartments;
+		private final int firstApartmentNo;
+		private final long firstAfter;
+		private Apartment apartment;
+		private long flatNo;
+		private long next = -1;
+
+		RowIterator(Map<Integer, Apartment> apartments, long after) {
+			this(apartments, -1, after);
+		}
+
+		/**
+		 * @param firstApartmentNo
+		 *            the apartment whose rows start after given flat number,
+		 *            the rows of the other apartments start at their first
+		 *            flat
+		 */
+		RowIterator(Map<Integer, Apartment> apartments, int firstApartmentNo, long after) {
+			this.apartments = apartments.entrySet().iterator();
+			this.firstApartmentNo = firstApartmentNo;
+			this.firstAfter = after;
+		}
+
+		public boolean hasNext() {
+			while (next < 0) {
+				if (apartment != null && flatNo < 0xFFFFFFFFL) {
+					next = apartment.getFlatsModel().nextFlatNo(flatNo);
+					if (next >= 0) {
+						break;
+					}
+				}
+				if (!apartments.hasNext()) {
+					return false;
+				}
+				Map.Entry<Integer, Apartment> entry = apartments.next();
+				apartment = entry.getValue();
+				flatNo = entry.getKey() == firstApartmentNo ? firstAfter : -1;
+			}
+			return true;
+		}
+
+		public MOTableRow next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			flatNo = next;
+			next = -1;
+			// a flat removed meanwhile reads null
+			return new FlatTableRow(apartment.getFlatsModel(), (int) flatNo, getFlatIndex(apartment.getApartmentNo(), flatNo));
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("Flats are removed from their apartment.");
+		}
+	}
+}
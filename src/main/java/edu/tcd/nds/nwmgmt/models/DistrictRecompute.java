@@ -0,0 +1,179 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Recompute the energy balance of every apartment of a district from its flat
+ * rows and the district totals from the apartments, split into fork/join
+ * tasks along the district, apartment and flat hierarchy. Ranges of
+ * apartments are split until a task holds a few apartments, the flat rows of
+ * an apartment with many flats are split into ranges of flats as well.
+ *
+ * Nothing is changed while the tasks run. When all tasks are done the
+ * results are published, every apartment gets its recomputed record by one
+ * compare-and-set and then the district totals are published as one record.
+ * An apartment which has been changed meanwhile is recomputed again before
+ * it is published, so no concurrent change is lost.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+final class DistrictRecompute {
+	/** the number of apartments up to which a task does not split */
+	static final int APARTMENTS_PER_TASK = 32;
+	/** the number of flats up to which the flats of an apartment are not split */
+	static final int FLATS_PER_TASK = 1024;
+
+	private final List<Apartment> apartments;
+	private final ApartmentResult[] results;
+
+	DistrictRecompute(List<Apartment> apartments) {
+		this.apartments = apartments;
+		this.results = new ApartmentResult[apartments.size()];
+	}
+
+	/**
+	 * Recompute all apartments in given pool and publish the results.
+	 *
+	 * @return the district totals of the published apartment records
+	 */
+	DistrictBalance run(ForkJoinPool pool) {
+		pool.invoke(new ApartmentRangeTask(0, apartments.size()));
+		long[] totals = new long[EnergyBalance.FIELD_COUNT];
+		int flatCount = 0;
+		for (ApartmentResult result : results) {
+			EnergyBalance published = result.publish();
+			for (int field = 0; field < totals.length; field++) {
+				totals[field] += published.get(field);
+			}
+			flatCount += result.flatCount;
+		}
+		return new DistrictBalance(totals, apartments.size(), flatCount);
+	}
+
+	/**
+	 * The recomputed record of one apartment and the record it was derived
+	 * from, which it replaces when published.
+	 */
+	private static class ApartmentResult {
+		private final Apartment apartment;
+		private EnergyBalance expected;
+		private EnergyBalance updated;
+		private int flatCount;
+
+		ApartmentResult(Apartment apartment) {
+			this.apartment = apartment;
+		}
+
+		/**
+		 * Derive the record from the flat rows, forking ranges of flats if
+		 * called from a fork/join task.
+		 */
+		void compute(boolean fork) {
+			FlatTableModel flats = apartment.getFlatsModel();
+			int count;
+			// no flat is added or removed while the record and the count are read
+			synchronized (flats) {
+				expected = apartment.getEnergyBalance();
+				count = flats.getRowCount();
+			}
+			int[] flatTotals;
+			if (fork && count > FLATS_PER_TASK) {
+				flatTotals = new FlatRangeTask(flats, 0, count).invoke();
+			} else {
+				flatTotals = sum(flats, 0, count);
+			}
+			updated = Apartment.recomputedBalance(expected, flatTotals);
+			flatCount = count;
+		}
+
+		/**
+		 * Replace the record of apartment, an apartment changed since it was
+		 * recomputed is recomputed again.
+		 *
+		 * @return the published record
+		 */
+		EnergyBalance publish() {
+			while (true) {
+				if (updated.hasSameValues(expected)) {
+					// nothing to publish if the apartment has not changed since
+					if (apartment.getEnergyBalance() == expected) {
+						return expected;
+					}
+				} else if (apartment.compareAndSetEnergyBalance(expected, updated)) {
+					return updated;
+				}
+				compute(false);
+			}
+		}
+	}
+
+	private static int[] sum(FlatTableModel flats, int from, int to) {
+		int[] totals = new int[Apartment.getFlatTotalCount()];
+		flats.addMeasurementsTo(totals, from, to);
+		return totals;
+	}
+
+	/**
+	 * Recompute a range of apartments.
+	 */
+	private class ApartmentRangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		ApartmentRangeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= APARTMENTS_PER_TASK) {
+				for (int i = from; i < to; i++) {
+					ApartmentResult result = new ApartmentResult(apartments.get(i));
+					result.compute(true);
+					results[i] = result;
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ApartmentRangeTask(from, middle), new ApartmentRangeTask(middle, to));
+		}
+	}
+
+	/**
+	 * Sum up the measurements of a range of flat rows of one apartment.
+	 */
+	private static class FlatRangeTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+		private final FlatTableModel flats;
+		private final int from;
+		private final int to;
+
+		FlatRangeTask(FlatTableModel flats, int from, int to) {
+			this.flats = flats;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from <= FLATS_PER_TASK) {
+				return sum(flats, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			FlatRangeTask left = new FlatRangeTask(flats, from, middle);
+			left.fork();
+			int[] totals = new FlatRangeTask(flats, middle, to).compute();
+			int[] leftTotals = left.join();
+			for (int i = 0; i < totals.length; i++) {
+				totals[i] += leftTotals[i];
+			}
+			return totals;
+		}
+	}
+}
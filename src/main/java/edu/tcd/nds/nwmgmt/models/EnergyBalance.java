@@ -0,0 +1,165 @@
+package edu.tcd.nds.nwmgmt.models;
+
+/**
+ * The energy balance of an apartment as one immutable record. Every change
+ * creates a new record with a higher version, therefore a reader holding a
+ * record always sees values which belong together. The {@link Apartment}
+ * replaces its record by compare-and-set and serves the energy scalars as
+ * views over the current record.
+ *
+ * The consumption fields are totals over the flats of the apartment. They
+ * start at 0 and are changed by the difference of a flat value whenever it
+ * changes, so they are never summed up again.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public final class EnergyBalance {
+	public static final int CONSUMPTION = 0;
+	public static final int GENERATION = 1;
+	public static final int STORAGE = 2;
+	public static final int GENERATION_BY_SOLAR = 3;
+	public static final int GENERATION_BY_HYDRO = 4;
+	public static final int CONSUMPTION_BY_HEATING_COOLING = 5;
+	public static final int CONSUMPTION_BY_LIGHTING = 6;
+	public static final int CONSUMPTION_BY_MISC = 7;
+	static final int FIELD_COUNT = 8;
+
+	private final long version;
+	private final int[] values;
+	// a bit per field which has been set
+	private final int setFields;
+
+	/**
+	 * Build the initial record of version 0 in which only the consumption
+	 * totals are set, to 0.
+	 */
+	public EnergyBalance() {
+		this(0, new int[FIELD_COUNT], 1 << CONSUMPTION | 1 << CONSUMPTION_BY_HEATING_COOLING
+				| 1 << CONSUMPTION_BY_LIGHTING | 1 << CONSUMPTION_BY_MISC);
+	}
+
+	private EnergyBalance(long version, int[] values, int setFields) {
+		this.version = version;
+		this.values = values;
+		this.setFields = setFields;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Return true if the value of given field has been set.
+	 */
+	public boolean isSet(int field) {
+		return (setFields & 1 << field) != 0;
+	}
+
+	/**
+	 * Return the value of given field or 0 if it has not been set.
+	 */
+	public int get(int field) {
+		return values[field];
+	}
+
+	public int getConsumption() {
+		return get(CONSUMPTION);
+	}
+
+	public int getGeneration() {
+		return get(GENERATION);
+	}
+
+	public int getStorage() {
+		return get(STORAGE);
+	}
+
+	public int getGenerationBySolar() {
+		return get(GENERATION_BY_SOLAR);
+	}
+
+	public int getGenerationByHydro() {
+		return get(GENERATION_BY_HYDRO);
+	}
+
+	public int getConsumptionByHeatingCooling() {
+		return get(CONSUMPTION_BY_HEATING_COOLING);
+	}
+
+	public int getConsumptionByLighting() {
+		return get(CONSUMPTION_BY_LIGHTING);
+	}
+
+	public int getConsumptionByMisc() {
+		return get(CONSUMPTION_BY_MISC);
+	}
+
+	/**
+	 * Return a new record of next version in which given field has the value.
+	 * This record is not changed.
+	 */
+	public EnergyBalance with(int field, int value) {
+		int[] newValues = values.clone();
+		newValues[field] = value;
+		return new EnergyBalance(version + 1, newValues, setFields | 1 << field);
+	}
+
+	/**
+	 * Return a new record of next version in which each of given fields has
+	 * the value at the same position. This record is not changed.
+	 */
+	public EnergyBalance with(int[] fields, int[] fieldValues) {
+		int[] newValues = values.clone();
+		int newSetFields = setFields;
+		for (int i = 0; i < fields.length; i++) {
+			newValues[fields[i]] = fieldValues[i];
+			newSetFields |= 1 << fields[i];
+		}
+		return new EnergyBalance(version + 1, newValues, newSetFields);
+	}
+
+	/**
+	 * Return a new record of next version in which given delta is added to
+	 * the value of given field. This record is not changed.
+	 */
+	public EnergyBalance add(int field, int delta) {
+		return with(field, get(field) + delta);
+	}
+
+	/**
+	 * Return true if every field of given record is set like in this record
+	 * and has the same value, the versions are not compared.
+	 */
+	public boolean hasSameValues(EnergyBalance other) {
+		for (int field = 0; field < FIELD_COUNT; field++) {
+			if (isSet(field) != other.isSet(field) || get(field) != other.get(field)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return a new record of next version in which storage and generation by
+	 * hydro have the given values.
+	 */
+	public EnergyBalance withStorageAndHydro(int storage, int generationByHydro) {
+		int[] newValues = values.clone();
+		newValues[STORAGE] = storage;
+		newValues[GENERATION_BY_HYDRO] = generationByHydro;
+		return new EnergyBalance(version + 1, newValues, setFields | 1 << STORAGE | 1 << GENERATION_BY_HYDRO);
+	}
+
+	@Override
+	public String toString() {
+		return "EnergyBalance[version=" + version + ",consumption=" + toString(CONSUMPTION) + ",generation="
+				+ toString(GENERATION) + ",storage=" + toString(STORAGE) + ",solar=" + toString(GENERATION_BY_SOLAR)
+				+ ",hydro=" + toString(GENERATION_BY_HYDRO) + ",heatingCooling=" + toString(CONSUMPTION_BY_HEATING_COOLING)
+				+ ",lighting=" + toString(CONSUMPTION_BY_LIGHTING) + ",misc=" + toString(CONSUMPTION_BY_MISC) + "]";
+	}
+
+	private String toString(int field) {
+		return isSet(field) ? String.valueOf(values[field]) : "null";
+	}
+}
@@ -0,0 +1,236 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Arrays;
+
+import org.snmp4j.PDU;
+import org.snmp4j.agent.MOAccess;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.agent.request.Request;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * A scalar managed object which is a view of one field of the
+ * {@link EnergyBalance} record of an apartment. A SET replaces the record by
+ * compare-and-set. The scalars of one SET request are collected on the
+ * request and replace the record by one compare-and-set when the last of them
+ * commits, so a reader never sees some of them changed and others not. All
+ * scalars of one GET request read the same record, which
+ * is pinned to the request by the first scalar reading it, so a request never
+ * sees a balance which is half old and half new. The district apartment table
+ * reads and writes its energy columns through the same pinned record and
+ * change, see {@link #pin(Apartment, SubRequest)} and
+ * {@link #commit(Apartment, int, SubRequest)}.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class EnergyBalanceScalar extends MOScalar implements EnergyBalanceWriter {
+	private final Apartment apartment;
+	private final int field;
+
+	EnergyBalanceScalar(OID id, MOAccess access, Apartment apartment, int field) {
+		super(id, access, null);
+		this.apartment = apartment;
+		this.field = field;
+	}
+
+	@Override
+	public Variable getValue() {
+		return toVariable(apartment.getEnergyBalance(), field);
+	}
+
+	@Override
+	public int setValue(Variable value) {
+		EnergyBalance current;
+		do {
+			current = apartment.getEnergyBalance();
+		} while (!apartment.compareAndSetEnergyBalance(current, current.with(field, value.toInt())));
+		return PDU.noError;
+	}
+
+	/**
+	 * Add the value of this scalar to the change of its request, the change
+	 * is published when the last scalar of this apartment commits.
+	 */
+	@Override
+	public void commit(SubRequest request) {
+		if (request.getRequest() == null) {
+			super.commit(request);
+			return;
+		}
+		commit(apartment, field, request);
+	}
+
+	/**
+	 * Restore the value this scalar had, nothing is restored if the change
+	 * of request has not been published.
+	 */
+	@Override
+	public void undo(SubRequest request) {
+		if (!isPublished(apartment, request)) {
+			request.getStatus().setPhaseComplete(true);
+			return;
+		}
+		super.undo(request);
+	}
+
+	public boolean setsEnergyBalanceOf(Apartment apartment, SubRequest request) {
+		return this.apartment == apartment;
+	}
+
+	/**
+	 * Add the value of given sub-request to the change of the apartment on
+	 * its request, the change is published by one compare-and-set when no
+	 * later sub-request of the request sets the energy balance of the
+	 * apartment.
+	 */
+	static void commit(Apartment apartment, int field, SubRequest request) {
+		Request whole = request.getRequest();
+		request.setUndoValue(toVariable(apartment.getEnergyBalance(), field));
+		ChangeKey key = new ChangeKey(apartment);
+		PendingChange change = (PendingChange) whole.getProcessingUserObject(key);
+		if (change == null) {
+			change = new PendingChange();
+			whole.setProcessingUserObject(key, change);
+		}
+		change.add(field, request.getVariableBinding().getVariable().toInt());
+		if (isLastOfApartment(apartment, request)) {
+			EnergyBalance current;
+			EnergyBalance updated;
+			do {
+				current = apartment.getEnergyBalance();
+				updated = current.with(change.getFields(), change.getValues());
+			} while (!apartment.compareAndSetEnergyBalance(current, updated));
+			change.published = true;
+		}
+		request.getStatus().setPhaseComplete(true);
+	}
+
+	/**
+	 * Return false if the change of the apartment on the request of given
+	 * sub-request has not been published, so there is nothing to undo.
+	 */
+	static boolean isPublished(Apartment apartment, SubRequest request) {
+		Request whole = request.getRequest();
+		PendingChange change = whole == null ? null : (PendingChange) whole.getProcessingUserObject(new ChangeKey(apartment));
+		return change == null || change.published;
+	}
+
+	/**
+	 * Return whether no sub-request setting the energy balance of the same
+	 * apartment follows given sub-request in its request.
+	 */
+	private static boolean isLastOfApartment(Apartment apartment, SubRequest request) {
+		Request whole = request.getRequest();
+		for (int i = request.getIndex() + 1; i < whole.size(); i++) {
+			SubRequest next = whole.get(i);
+			Object target = next.getTargetMO();
+			if (target instanceof EnergyBalanceWriter && ((EnergyBalanceWriter) target).setsEnergyBalanceOf(apartment, next)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void get(SubRequest request) {
+		if (checkRequestScope(request)) {
+			if (getAccess().isAccessibleForRead()) {
+				VariableBinding vb = request.getVariableBinding();
+				vb.setOid(getOid());
+				vb.setVariable(toVariable(pin(apartment, request), field));
+				request.completed();
+			} else {
+				request.getStatus().setErrorStatus(PDU.noAccess);
+			}
+		}
+	}
+
+	@Override
+	public boolean next(SubRequest request) {
+		if (getAccess().isAccessibleForRead() && request.getScope().isCovered(getSingleInstanceScope())) {
+			VariableBinding vb = request.getVariableBinding();
+			vb.setOid(getOid());
+			vb.setVariable(toVariable(pin(apartment, request), field));
+			request.completed();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the record of the apartment read by the given request, the
+	 * current record is pinned to the request when it is read first.
+	 */
+	static EnergyBalance pin(Apartment apartment, SubRequest subRequest) {
+		Request request = subRequest.getRequest();
+		if (request == null) {
+			return apartment.getEnergyBalance();
+		}
+		EnergyBalance pinned = (EnergyBalance) request.getProcessingUserObject(apartment);
+		if (pinned == null) {
+			pinned = apartment.getEnergyBalance();
+			request.setProcessingUserObject(apartment, pinned);
+		}
+		return pinned;
+	}
+
+	static Variable toVariable(EnergyBalance record, int field) {
+		return record.isSet(field) ? new Integer32(record.get(field)) : null;
+	}
+
+	/**
+	 * The key of the change of an apartment on a request, the pinned record
+	 * of a GET is keyed by the apartment itself.
+	 */
+	private static class ChangeKey {
+		private final Apartment apartment;
+
+		ChangeKey(Apartment apartment) {
+			this.apartment = apartment;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof ChangeKey && ((ChangeKey) other).apartment == apartment;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(apartment);
+		}
+	}
+
+	/**
+	 * The fields and values set by the scalars of one SET request which have
+	 * committed so far.
+	 */
+	private static class PendingChange {
+		private int[] fields = new int[EnergyBalance.FIELD_COUNT];
+		private int[] values = new int[EnergyBalance.FIELD_COUNT];
+		private int count;
+		private boolean published;
+
+		void add(int field, int value) {
+			if (count == fields.length) {
+				fields = Arrays.copyOf(fields, count * 2);
+				values = Arrays.copyOf(values, count * 2);
+			}
+			fields[count] = field;
+			values[count] = value;
+			count++;
+		}
+
+		int[] getFields() {
+			return Arrays.copyOf(fields, count);
+		}
+
+		int[] getValues() {
+			return Arrays.copyOf(values, count);
+		}
+	}
+}
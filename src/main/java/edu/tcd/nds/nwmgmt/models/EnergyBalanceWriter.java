@@ -0,0 +1,20 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import org.snmp4j.agent.request.SubRequest;
+
+/**
+ * A managed object which sets fields of the energy balance of apartments. The
+ * fields set by all sub-requests of one SET request for the same apartment are
+ * published together by the last of them.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+interface EnergyBalanceWriter {
+
+	/**
+	 * Return whether given sub-request sets a field of the energy balance of
+	 * given apartment.
+	 */
+	boolean setsEnergyBalanceOf(Apartment apartment, SubRequest request);
+}
@@ -4,9 +4,6 @@ import javax.management.InvalidAttributeValueException;
 
 import org.snmp4j.agent.BaseAgent;
 import org.snmp4j.agent.DuplicateRegistrationException;
-import org.snmp4j.smi.OctetString;
-
-import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
 
 /**
  * A model class that represents flat in actual usecase defined by Group2
@@ -17,59 +14,76 @@ import edu.tcd.nds.nwmgmt.utils.MOTableBuilder;
  *
  */
 public class Flat extends BaseModel {
-	private String[] flatRowData;
+	/** the value of a measurement which has not been set */
+	public static final int UNSET = -1;
+	
+	private int flatNo;
+	private String deviceId;
+	private int energyConsumption;
+	private int energyConsumptionByHeatingCooling;
+	private int energyConsumptionByLighting;
+	private int energyConsumptionByMisc;
 	
 	/**
-	 * Default constructor
+	 * Default constructor, the measurements are {@link #UNSET} until they are
+	 * set.
 	 */
 	public Flat(){
-		flatRowData = new String[5];
+		energyConsumption = UNSET;
+		energyConsumptionByHeatingCooling = UNSET;
+		energyConsumptionByLighting = UNSET;
+		energyConsumptionByMisc = UNSET;
 	}
 	
 	/**
 	 * Make sure that the flat object is valid by checking managed object values
-	 * are set properly.
+	 * are set properly. A measurement which was never set is {@link #UNSET},
+	 * therefore it fails the check like a negative value.
 	 * 
 	 * @return true if all managed object values are set otherwise false
 	 */
 	public boolean isValid(){
-		if(flatRowData[0] == null || flatRowData[1] == null || flatRowData[2] == null || flatRowData[3] == null || flatRowData[4] == null){
+		if(deviceId == null || energyConsumption < 0 || energyConsumptionByHeatingCooling < 0 || energyConsumptionByLighting < 0 || energyConsumptionByMisc < 0){
 			return false;
 		}
 		return true;
 	}
 	
-	/**
-	 * Add a new row of managed objects in managed object table
-	 * 
-	 * @param builder
-	 *            the #MOTableBuilder utility class
-	 */
-	public void addNewRowForManagedObject(MOTableBuilder builder){
-		builder.addRowValue(new OctetString(flatRowData[0]))
-		.addRowValue(new OctetString(flatRowData[1]))
-		.addRowValue(new OctetString(flatRowData[2]))
-		.addRowValue(new OctetString(flatRowData[3]))
-		.addRowValue(new OctetString(flatRowData[4]));
+	public void setFlatNo(int flatNo){
+		this.flatNo = flatNo; // index of row in managed object table
+	}
+	public int getFlatNo(){
+		return flatNo;
 	}
-	
 	public void setDeviceIdValue(String moValue){
-		flatRowData[0] = moValue; // 0 - device id
+		deviceId = moValue; // device id
 	}
-	public void setEnergyConsumptionMOValue(String moValue){
-		flatRowData[1] = moValue; // 1 - energy consumption
+	public void setEnergyConsumptionMOValue(int moValue){
+		energyConsumption = moValue; // energy consumption
 	}
-	public void setEnergyConsumptionByHeatingCoolingMOValue(String moValue){
-		flatRowData[2] = moValue; // 2 - energy consumption by heating and cooling
+	public void setEnergyConsumptionByHeatingCoolingMOValue(int moValue){
+		energyConsumptionByHeatingCooling = moValue; // energy consumption by heating and cooling
 	}
-	public void setEnergyConsumptionByLightingMOValue(String moValue){
-		flatRowData[3] = moValue; // 3 - energy consumption by lighting
+	public void setEnergyConsumptionByLightingMOValue(int moValue){
+		energyConsumptionByLighting = moValue; // energy consumption by lighting
 	}
-	public void setEnergyConsumptionByMiscMOValue(String moValue){
-		flatRowData[4] = moValue; // 4 - energy consumption by miscellaneous 
+	public void setEnergyConsumptionByMiscMOValue(int moValue){
+		energyConsumptionByMisc = moValue; // energy consumption by miscellaneous 
 	}	
 	public String getDeviceIdValue(){
-		return flatRowData[0];
+		return deviceId;
+	}
+	public int getEnergyConsumptionMOValue(){
+		return energyConsumption;
+	}
+	public int getEnergyConsumptionByHeatingCoolingMOValue(){
+		return energyConsumptionByHeatingCooling;
+	}
+	public int getEnergyConsumptionByLightingMOValue(){
+		return energyConsumptionByLighting;
+	}
+	public int getEnergyConsumptionByMiscMOValue(){
+		return energyConsumptionByMisc;
 	}
 	
 	/**
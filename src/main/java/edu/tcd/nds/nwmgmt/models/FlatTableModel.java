@@ -0,0 +1,516 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.snmp4j.agent.mo.DefaultMOTableRow;
+import org.snmp4j.agent.mo.MOMutableTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.agent.mo.MOTableRowFactory;
+import org.snmp4j.agent.mo.MOTableRowFilter;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+
+/**
+ * The table model of the flats of an apartment, which keeps every column in
+ * an array instead of a row object per flat. The flat numbers are kept
+ * sorted in an int array which is the index of table and the device ids are
+ * packed into one {@link DeviceIdColumn}. The measurements are kept in a record per flat of a
+ * {@link MeasurementStore}, which may be outside the heap, the table keeps
+ * the slot of record in an int array. A row is a {@link FlatTableRow} view
+ * on the arrays made when the row is read, and the value of a cell is made
+ * when the cell is read.
+ *
+ * Every change of a measurement is reported to the apartment, so the
+ * apartment totals are kept by applying the difference of old and new value.
+ * A flat is added to and removed from the totals of the apartment while the
+ * model is locked, the same lock as of the agent when it reads or sets the
+ * table, so the totals are never read half way through a change. The lock
+ * makes the model the single writer of the records of its flats.
+ *
+ * Adding or removing a flat moves the flats after it in the arrays, O(n) in
+ * the number of flats. Flats are numbered in ascending order, so they are
+ * appended and nothing moves, a flat in the middle is added or removed
+ * rarely. The arrays are kept over a tree of the flats, which changes in
+ * O(log n), because the recompute of the district sums the measurements of
+ * the flats over ranges of positions, see
+ * {@link #addMeasurementsTo(int[], int, int)}, and a tree would take an
+ * object per flat. FlatTableBenchmark measures the cost of both.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class FlatTableModel implements MOMutableTableModel {
+	/** column 0 holds the flat id, the other columns are measurements */
+	static final int COLUMN_COUNT = 5;
+	static final int MEASUREMENT_COUNT = MeasurementStore.MEASUREMENT_COUNT;
+	private static final int INITIAL_CAPACITY = 4;
+
+	private final Apartment apartment;
+	private final MeasurementStore store;
+	private int size;
+	private int[] flatNos = new int[INITIAL_CAPACITY];
+	private final DeviceIdColumn deviceIds = new DeviceIdColumn(INITIAL_CAPACITY);
+	private int[] slots = new int[INITIAL_CAPACITY];
+
+	FlatTableModel(Apartment apartment, MeasurementStore store) {
+		this.apartment = apartment;
+		this.store = store;
+	}
+
+	/**
+	 * Binary search of a flat number, which compares unsigned like an OID.
+	 *
+	 * @return the position of flat, or (-(insertion point) - 1)
+	 */
+	private int search(int flatNo) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = Integer.compareUnsigned(flatNos[middle], flatNo);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Add a flat with given values of its measurement columns and add them to
+	 * the totals of apartment.
+	 *
+	 * @return false if there is a flat of this number already
+	 */
+	synchronized boolean add(int flatNo, byte[] deviceId, int[] values) {
+		int position = search(flatNo);
+		if (position >= 0) {
+			return false;
+		}
+		position = -position - 1;
+		if (size == flatNos.length) {
+			int capacity = size * 2;
+			flatNos = Arrays.copyOf(flatNos, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+		}
+		int moved = size - position;
+		System.arraycopy(flatNos, position, flatNos, position + 1, moved);
+		System.arraycopy(slots, position, slots, position + 1, moved);
+		flatNos[position] = flatNo;
+		deviceIds.insert(position, deviceId);
+		slots[position] = store.allocate(values);
+		size++;
+		apartment.flatMeasurementsAdded(values, 1);
+		return true;
+	}
+
+	/**
+	 * Add flats given column by column and add their measurements to the
+	 * totals of apartment at once. Flats numbered in ascending order after the
+	 * last flat are appended to the arrays, any other flats are added one by
+	 * one.
+	 *
+	 * @see Apartment#addFlats(int, int[], byte[], int[], int[])
+	 */
+	synchronized void addAll(int count, int[] flatNos, byte[] deviceIds, int[] deviceIdLengths, int[] values) {
+		if (!follows(count, flatNos)) {
+			int offset = 0;
+			for (int i = 0; i < count; i++) {
+				add(flatNos[i], Arrays.copyOfRange(deviceIds, offset, offset + deviceIdLengths[i]),
+						Arrays.copyOfRange(values, i * MEASUREMENT_COUNT, (i + 1) * MEASUREMENT_COUNT));
+				offset += deviceIdLengths[i];
+			}
+			return;
+		}
+		if (size + count > this.flatNos.length) {
+			int capacity = Math.max(size * 2, size + count);
+			this.flatNos = Arrays.copyOf(this.flatNos, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+		}
+		System.arraycopy(flatNos, 0, this.flatNos, size, count);
+		this.deviceIds.appendAll(deviceIds, deviceIdLengths, count);
+		store.allocateAll(values, count, slots, size);
+		size += count;
+		int[] totals = new int[MEASUREMENT_COUNT];
+		for (int i = 0; i < count * MEASUREMENT_COUNT; i++) {
+			totals[i % MEASUREMENT_COUNT] += values[i];
+		}
+		apartment.flatMeasurementsAdded(totals, 1);
+	}
+
+	/**
+	 * Return true if given flat numbers ascend, unsigned like an OID, from
+	 * after the last flat of the table.
+	 */
+	private boolean follows(int count, int[] flatNos) {
+		for (int i = 0; i < count; i++) {
+			int previous = i > 0 ? flatNos[i - 1] : size > 0 ? this.flatNos[size - 1] : 0;
+			if ((i > 0 || size > 0) && Integer.compareUnsigned(previous, flatNos[i]) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the flat and subtract its measurements from the totals of
+	 * apartment.
+	 *
+	 * @return the values of its measurement columns or null if there is no
+	 *         such flat
+	 */
+	synchronized int[] remove(int flatNo) {
+		int position = search(flatNo);
+		if (position < 0) {
+			return null;
+		}
+		int[] values = getMeasurements(position);
+		store.free(slots[position]);
+		int moved = size - position - 1;
+		System.arraycopy(flatNos, position + 1, flatNos, position, moved);
+		deviceIds.remove(position);
+		System.arraycopy(slots, position + 1, slots, position, moved);
+		size--;
+		apartment.flatMeasurementsAdded(values, -1);
+		return values;
+	}
+
+	private int[] getMeasurements(int position) {
+		int[] values = new int[MEASUREMENT_COUNT];
+		for (int column = 0; column < MEASUREMENT_COUNT; column++) {
+			values[column] = store.get(slots[position], column);
+		}
+		return values;
+	}
+
+	synchronized boolean contains(int flatNo) {
+		return search(flatNo) >= 0;
+	}
+
+	/**
+	 * Return the largest flat number, 0 if there is no flat.
+	 */
+	synchronized int lastFlatNo() {
+		return size == 0 ? 0 : flatNos[size - 1];
+	}
+
+	/**
+	 * Return the number of first flat after given flat number.
+	 *
+	 * @param after
+	 *            the unsigned flat number, -1 for the first flat
+	 * @return the flat number or -1 if there is no flat after it
+	 */
+	synchronized long nextFlatNo(long after) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if ((flatNos[middle] & 0xFFFFFFFFL) <= after) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low < size ? flatNos[low] & 0xFFFFFFFFL : -1;
+	}
+
+	/**
+	 * Return the value of given column of a flat, made when it is read.
+	 *
+	 * @return the value or null if there is no such flat
+	 */
+	synchronized Variable getValue(int flatNo, int column) {
+		int position = search(flatNo);
+		if (position < 0 || column < 0 || column >= COLUMN_COUNT) {
+			return null;
+		}
+		if (column == 0) {
+			return new OctetString(deviceIds.get(position));
+		}
+		return new Gauge32(store.get(slots[position], column - 1) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Set the value of given column of a flat, a changed measurement is
+	 * reported to the apartment while the model is locked, so the changes of
+	 * one cell are reported in the order they are made.
+	 *
+	 * @return false if there is no such flat
+	 */
+	synchronized boolean setValue(int flatNo, int column, Variable value) {
+		if (column == 0) {
+			int position = search(flatNo);
+			if (position < 0) {
+				return false;
+			}
+			deviceIds.set(position, value == null ? new byte[0] : ((OctetString) value).getValue());
+			return true;
+		}
+		return setMeasurement(flatNo, column, value == null ? 0 : value.toInt());
+	}
+
+	/**
+	 * Set the measurement of given column of a flat.
+	 *
+	 * @return false if there is no such flat or column
+	 */
+	synchronized boolean setMeasurement(int flatNo, int column, int value) {
+		int position = search(flatNo);
+		if (position < 0 || column < 1 || column >= COLUMN_COUNT) {
+			return false;
+		}
+		int oldValue = store.set(slots[position], column - 1, value);
+		apartment.flatValueChanged(flatNo, column, oldValue, value);
+		return true;
+	}
+
+	/**
+	 * Add the measurements of flats at given positions to given totals, in
+	 * order of the measurement columns. Positions beyond the last flat are
+	 * ignored.
+	 */
+	synchronized void addMeasurementsTo(int[] totals, int from, int to) {
+		to = Math.min(to, size);
+		for (int column = 0; column < MEASUREMENT_COUNT; column++) {
+			int total = 0;
+			for (int i = from; i < to; i++) {
+				total += store.get(slots[i], column);
+			}
+			totals[column] += total;
+		}
+	}
+
+	/**
+	 * Return the previous values of given measurement column of a flat
+	 * followed by its current value, oldest first. The store keeps a fixed
+	 * number of previous values, none unless it is built to keep them.
+	 *
+	 * @return the values or null if there is no such flat or column
+	 */
+	synchronized int[] getRecentValues(int flatNo, int column) {
+		int position = search(flatNo);
+		if (position < 0 || column < 1 || column >= COLUMN_COUNT) {
+			return null;
+		}
+		return store.getRecent(slots[position], column - 1);
+	}
+
+	/**
+	 * Return a flat object with the current values of a flat.
+	 *
+	 * @return the flat or null if there is no such flat
+	 */
+	synchronized Flat getFlat(int flatNo) {
+		int position = search(flatNo);
+		if (position < 0) {
+			return null;
+		}
+		Flat flat = new Flat();
+		flat.setFlatNo(flatNo);
+		flat.setDeviceIdValue(new String(deviceIds.get(position)));
+		int[] values = getMeasurements(position);
+		flat.setEnergyConsumptionMOValue(values[0]);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(values[1]);
+		flat.setEnergyConsumptionByLightingMOValue(values[2]);
+		flat.setEnergyConsumptionByMiscMOValue(values[3]);
+		return flat;
+	}
+
+	/**
+	 * Return the row of given flat under given index, e.g. the index of flat
+	 * in the flat table of district.
+	 *
+	 * @return the row or null if there is no such flat
+	 */
+	FlatTableRow getRow(int flatNo, OID index) {
+		return contains(flatNo) ? new FlatTableRow(this, flatNo, index) : null;
+	}
+
+	public int getColumnCount() {
+		return COLUMN_COUNT;
+	}
+
+	public synchronized int getRowCount() {
+		return size;
+	}
+
+	public boolean containsRow(OID index) {
+		return index != null && index.size() == 1 && contains(index.get(0));
+	}
+
+	public MOTableRow getRow(OID index) {
+		if (index == null || index.size() != 1) {
+			return null;
+		}
+		return getRow(index.get(0), index);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Iterator iterator() {
+		return new RowIterator(-1);
+	}
+
+	/**
+	 * Return an iterator over the rows from given index on. It looks up the
+	 * next flat on every step, so flats may be added or removed while
+	 * iterating.
+	 */
+	@SuppressWarnings("rawtypes")
+	public Iterator tailIterator(OID lowerBound) {
+		if (lowerBound == null || lowerBound.size() == 0) {
+			return new RowIterator(-1);
+		}
+		// an index below a row sorts after that row
+		long flatNo = lowerBound.getUnsigned(0);
+		return new RowIterator(lowerBound.size() > 1 ? flatNo : flatNo - 1);
+	}
+
+	public OID lastIndex() {
+		MOTableRow row = lastRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	public OID firstIndex() {
+		MOTableRow row = firstRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	public MOTableRow firstRow() {
+		long flatNo = nextFlatNo(-1);
+		return flatNo < 0 ? null : new FlatTableRow(this, (int) flatNo, new OID(new int[] { (int) flatNo }));
+	}
+
+	public synchronized MOTableRow lastRow() {
+		return size == 0 ? null : new FlatTableRow(this, flatNos[size - 1], new OID(new int[] { flatNos[size - 1] }));
+	}
+
+	/**
+	 * Add the values of given row as a flat, the values of an existing flat
+	 * are set instead.
+	 *
+	 * @return a row holding the values of the existing flat before they were
+	 *         set or null if the flat is added
+	 */
+	public synchronized MOTableRow addRow(MOTableRow row) {
+		int flatNo = row.getIndex().get(0);
+		if (contains(flatNo)) {
+			MOTableRow previous = copyRow(flatNo, row.getIndex());
+			for (int column = 0; column < COLUMN_COUNT && column < row.size(); column++) {
+				setValue(flatNo, column, row.getValue(column));
+			}
+			return previous;
+		}
+		Variable deviceId = row.getValue(0);
+		int[] values = new int[MEASUREMENT_COUNT];
+		for (int column = 1; column < COLUMN_COUNT && column < row.size(); column++) {
+			Variable value = row.getValue(column);
+			values[column - 1] = value == null ? 0 : value.toInt();
+		}
+		add(flatNo, deviceId == null ? new byte[0] : ((OctetString) deviceId).getValue(), values);
+		return null;
+	}
+
+	/**
+	 * Remove the flat of given index.
+	 *
+	 * @return a row holding the values of removed flat or null if there is no
+	 *         such flat
+	 */
+	public synchronized MOTableRow removeRow(OID index) {
+		if (index == null || index.size() != 1) {
+			return null;
+		}
+		if (!contains(index.get(0))) {
+			return null;
+		}
+		MOTableRow row = copyRow(index.get(0), index);
+		remove(index.get(0));
+		return row;
+	}
+
+	/**
+	 * Return a row holding the current values of a flat, which unlike a
+	 * {@link FlatTableRow} keeps them when the flat changes.
+	 */
+	private MOTableRow copyRow(int flatNo, OID index) {
+		Variable[] values = new Variable[COLUMN_COUNT];
+		for (int column = 0; column < COLUMN_COUNT; column++) {
+			values[column] = getValue(flatNo, column);
+		}
+		return new DefaultMOTableRow(index, values);
+	}
+
+	public synchronized void clear() {
+		while (size > 0) {
+			remove(flatNos[size - 1]);
+		}
+	}
+
+	/**
+	 * Remove the flats whose rows do not pass given filter.
+	 */
+	public synchronized void clear(MOTableRowFilter filter) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (!filter.passesFilter(new FlatTableRow(this, flatNos[i], new OID(new int[] { flatNos[i] })))) {
+				remove(flatNos[i]);
+			}
+		}
+	}
+
+	/**
+	 * Rows are not created by SET requests, flats are added by the
+	 * apartment.
+	 */
+	public MOTableRow createRow(OID index, Variable[] values) throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("Flats are added by their apartment.");
+	}
+
+	public void freeRow(MOTableRow row) {
+		// rows are views, there is nothing to free
+	}
+
+	public void setRowFactory(MOTableRowFactory rowFactory) {
+		throw new UnsupportedOperationException("Flats are added by their apartment.");
+	}
+
+	private class RowIterator implements Iterator<MOTableRow> {
+		private long flatNo;
+		private long next = -2;
+
+		/**
+		 * @param after
+		 *            the flat number the rows start after, -1 for all rows
+		 */
+		RowIterator(long after) {
+			this.flatNo = after;
+		}
+
+		public boolean hasNext() {
+			if (next == -2) {
+				next = flatNo < 0xFFFFFFFFL ? nextFlatNo(flatNo) : -1;
+			}
+			return next >= 0;
+		}
+
+		public MOTableRow next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			flatNo = next;
+			next = -2;
+			return new FlatTableRow(FlatTableModel.this, (int) flatNo, new OID(new int[] { (int) flatNo }));
+		}
+
+		public void remove() {
+			FlatTableModel.this.remove((int) flatNo);
+		}
+	}
+}
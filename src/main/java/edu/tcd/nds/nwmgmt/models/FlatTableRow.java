@@ -0,0 +1,59 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import org.snmp4j.agent.mo.MOMutableTableRow;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * A row of the flats table of an apartment, which is a view on the columns
+ * of its flat in the {@link FlatTableModel}. All changes of a flat row go
+ * through the model, whether they come from a SET request on the apartment
+ * or the district flat table, from updating a flat object or from replaying
+ * the change log, so the apartment is told about every changed value. A
+ * value is made when it is read, a row of a removed flat reads null.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class FlatTableRow implements MOMutableTableRow {
+	private final FlatTableModel model;
+	private final int flatNo;
+	private final OID index;
+
+	/**
+	 * @param index
+	 *            the index of row, which is the flat number in the flats table
+	 *            of apartment and the apartment and flat number in the flat
+	 *            table of district
+	 */
+	FlatTableRow(FlatTableModel model, int flatNo, OID index) {
+		this.model = model;
+		this.flatNo = flatNo;
+		this.index = index;
+	}
+
+	public OID getIndex() {
+		return index;
+	}
+
+	public Variable getValue(int column) {
+		return model.getValue(flatNo, column);
+	}
+
+	public void setValue(int column, Variable value) {
+		model.setValue(flatNo, column, value);
+	}
+
+	public MOTableRow getBaseRow() {
+		return null;
+	}
+
+	public void setBaseRow(MOTableRow baseRow) {
+		// flat rows have no base row
+	}
+
+	public int size() {
+		return FlatTableModel.COLUMN_COUNT;
+	}
+}
@@ -0,0 +1,44 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Arrays;
+
+/**
+ * A measurement store whose records are kept in int arrays on the heap, the
+ * store every apartment gets unless it is given another one.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class HeapMeasurementStore extends MeasurementStore {
+	private volatile int[][] chunks = new int[0][];
+
+	public HeapMeasurementStore() {
+		this(0);
+	}
+
+	/**
+	 * @param recentCount
+	 *            the number of previous values kept of every column, 0 to keep
+	 *            the current values only
+	 */
+	public HeapMeasurementStore(int recentCount) {
+		super(recentCount);
+	}
+
+	@Override
+	void addChunk(int records) {
+		int[][] added = Arrays.copyOf(chunks, chunks.length + 1);
+		added[chunks.length] = new int[records * recordWords];
+		chunks = added;
+	}
+
+	@Override
+	int getWord(int slot, int word) {
+		return chunks[chunkOf(slot)][offsetOf(slot) * recordWords + word];
+	}
+
+	@Override
+	void putWord(int slot, int word, int value) {
+		chunks[chunkOf(slot)][offsetOf(slot) * recordWords + word] = value;
+	}
+}
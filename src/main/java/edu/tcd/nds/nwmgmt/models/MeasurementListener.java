@@ -0,0 +1,23 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import org.snmp4j.smi.OID;
+
+/**
+ * A listener which is told about every change of a numeric energy
+ * measurement of an {@link Apartment}, whether the change came from a SET
+ * request, a trap or the model object itself.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public interface MeasurementListener {
+	/**
+	 * Called after a measurement has changed.
+	 * 
+	 * @param oid
+	 *            the OID of the scalar or of the flat table cell which changed
+	 * @param value
+	 *            the new value of measurement
+	 */
+	void measurementChanged(OID oid, int value);
+}
@@ -0,0 +1,251 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.Arrays;
+
+/**
+ * The measurements of flats kept as fixed-width records, one record per flat.
+ * A record holds the current value of the four measurement columns and,
+ * if the store keeps recent values, a ring of the previous values of each
+ * column. A flat keeps its record while it is part of the flats table, so a
+ * record never moves and a store can be shared by the flats tables of all
+ * apartments of a district.
+ *
+ * The records are kept in chunks which are never moved or copied once
+ * allocated. The first chunks double in size up to 65536 records, further
+ * chunks are of that size, so a small store stays small and a large one
+ * grows without copying. A record is written by one thread at a time, the
+ * flats table it belongs to serializes its writers, therefore records are
+ * read and written without locking the store. Only allocating and freeing a
+ * record lock the store.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public abstract class MeasurementStore {
+	/** the number of measurement columns of a record */
+	public static final int MEASUREMENT_COUNT = 4;
+	/** the largest number of previous values kept per column */
+	public static final int MAX_RECENT_VALUES = 127;
+
+	private static final int FIRST_CHUNK_BITS = 3;
+	private static final int MAX_CHUNK_BITS = 16;
+	static final int MAX_CHUNK_RECORDS = 1 << MAX_CHUNK_BITS;
+	// the chunks up to the first one of MAX_CHUNK_RECORDS records
+	private static final int DOUBLING_CHUNKS = MAX_CHUNK_BITS - FIRST_CHUNK_BITS + 1;
+
+	// words of a record, the state holds the ring position of every column in a byte
+	private static final int STATE = MEASUREMENT_COUNT;
+	private static final int RING = STATE + 1;
+	private static final int RING_FULL = 0x80;
+
+	private final int recentCount;
+	/** the number of 32-bit words of a record */
+	final int recordWords;
+	private int capacity;
+	private int slotCount;
+	private int usedCount;
+	private int[] freeSlots = new int[16];
+	private int freeCount;
+
+	/**
+	 * @param recentCount
+	 *            the number of previous values kept of every column, 0 to keep
+	 *            the current values only
+	 */
+	MeasurementStore(int recentCount) {
+		if (recentCount < 0 || recentCount > MAX_RECENT_VALUES) {
+			throw new IllegalArgumentException("The number of recent values must be between 0 and "
+					+ MAX_RECENT_VALUES + ", not " + recentCount + ".");
+		}
+		this.recentCount = recentCount;
+		this.recordWords = recentCount == 0 ? MEASUREMENT_COUNT : RING + MEASUREMENT_COUNT * recentCount;
+	}
+
+	/**
+	 * Return the chunk of given record.
+	 */
+	static int chunkOf(int slot) {
+		if (slot >= MAX_CHUNK_RECORDS) {
+			return (slot >>> MAX_CHUNK_BITS) + DOUBLING_CHUNKS - 1;
+		}
+		return 32 - Integer.numberOfLeadingZeros(slot >>> FIRST_CHUNK_BITS);
+	}
+
+	/**
+	 * Return the position of given record in its chunk.
+	 */
+	static int offsetOf(int slot) {
+		if (slot >= MAX_CHUNK_RECORDS) {
+			return slot & (MAX_CHUNK_RECORDS - 1);
+		}
+		int chunk = chunkOf(slot);
+		return chunk == 0 ? slot : slot - (1 << (FIRST_CHUNK_BITS + chunk - 1));
+	}
+
+	/**
+	 * Return the number of records of given chunk.
+	 */
+	static int chunkRecords(int chunk) {
+		if (chunk == 0) {
+			return 1 << FIRST_CHUNK_BITS;
+		}
+		return chunk < DOUBLING_CHUNKS ? 1 << (FIRST_CHUNK_BITS + chunk - 1) : MAX_CHUNK_RECORDS;
+	}
+
+	/**
+	 * Allocate the next chunk of given number of records, the chunks
+	 * allocated before are not touched.
+	 */
+	abstract void addChunk(int records);
+
+	abstract int getWord(int slot, int word);
+
+	abstract void putWord(int slot, int word, int value);
+
+	/**
+	 * Allocate a record holding given current values of the measurement
+	 * columns and no previous values.
+	 *
+	 * @return the slot of record
+	 */
+	synchronized int allocate(int[] values) {
+		return allocate(values, 0);
+	}
+
+	/**
+	 * Allocate a record for each flat of given measurements with one lock of
+	 * the store, e.g. when flats are loaded from a snapshot.
+	 *
+	 * @param values
+	 *            the values of the measurement columns of every record one
+	 *            after the other
+	 * @param count
+	 *            the number of records
+	 * @param slots
+	 *            receives the slots of records from given offset on
+	 */
+	synchronized void allocateAll(int[] values, int count, int[] slots, int offset) {
+		for (int i = 0; i < count; i++) {
+			slots[offset + i] = allocate(values, i * MEASUREMENT_COUNT);
+		}
+	}
+
+	private int allocate(int[] values, int from) {
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (slotCount == capacity) {
+				int records = chunkRecords(chunkOf(capacity));
+				addChunk(records);
+				capacity += records;
+			}
+			slot = slotCount++;
+		}
+		for (int column = 0; column < MEASUREMENT_COUNT; column++) {
+			putWord(slot, column, values[from + column]);
+		}
+		if (recentCount > 0) {
+			putWord(slot, STATE, 0);
+		}
+		usedCount++;
+		return slot;
+	}
+
+	/**
+	 * Free given record, it is reused by the next record allocated.
+	 */
+	synchronized void free(int slot) {
+		if (freeCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		}
+		freeSlots[freeCount++] = slot;
+		usedCount--;
+	}
+
+	/**
+	 * Return the current value of given measurement column of a record.
+	 */
+	int get(int slot, int column) {
+		return getWord(slot, column);
+	}
+
+	/**
+	 * Set the current value of given measurement column of a record. A
+	 * changed value is kept as previous value if the store keeps recent
+	 * values, the oldest previous value is dropped when the ring is full.
+	 *
+	 * @return the value it replaces
+	 */
+	int set(int slot, int column, int value) {
+		int oldValue = getWord(slot, column);
+		if (oldValue == value) {
+			return oldValue;
+		}
+		if (recentCount > 0) {
+			int state = getWord(slot, STATE);
+			int shift = column * 8;
+			int columnState = (state >>> shift) & 0xFF;
+			int head = columnState & ~RING_FULL;
+			putWord(slot, RING + column * recentCount + head, oldValue);
+			head++;
+			if (head == recentCount) {
+				head = 0;
+				columnState = RING_FULL;
+			}
+			columnState = (columnState & RING_FULL) | head;
+			putWord(slot, STATE, (state & ~(0xFF << shift)) | (columnState << shift));
+		}
+		putWord(slot, column, value);
+		return oldValue;
+	}
+
+	/**
+	 * Return the previous values of given measurement column of a record
+	 * followed by its current value, oldest first.
+	 */
+	int[] getRecent(int slot, int column) {
+		if (recentCount == 0) {
+			return new int[] { getWord(slot, column) };
+		}
+		int columnState = (getWord(slot, STATE) >>> (column * 8)) & 0xFF;
+		int head = columnState & ~RING_FULL;
+		boolean full = (columnState & RING_FULL) != 0;
+		int count = full ? recentCount : head;
+		int first = full ? head : 0;
+		int[] values = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			values[i] = getWord(slot, RING + column * recentCount + (first + i) % recentCount);
+		}
+		values[count] = getWord(slot, column);
+		return values;
+	}
+
+	/**
+	 * The number of previous values kept of every column.
+	 */
+	public int getRecentCount() {
+		return recentCount;
+	}
+
+	/**
+	 * The number of bytes of a record.
+	 */
+	public int getRecordSize() {
+		return recordWords * 4;
+	}
+
+	/**
+	 * The number of records in use.
+	 */
+	public synchronized int getRecordCount() {
+		return usedCount;
+	}
+
+	/**
+	 * The number of records the allocated chunks hold.
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+}
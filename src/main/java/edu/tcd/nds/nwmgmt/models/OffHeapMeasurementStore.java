@@ -0,0 +1,62 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A measurement store whose records are kept in direct byte buffers outside
+ * the heap, so the garbage collector neither copies nor scans the
+ * measurements however many flats are kept. The heap holds one buffer
+ * object per chunk of up to 65536 records. The memory of a chunk is freed
+ * when the store is no longer referenced, the direct memory the agent may
+ * allocate is limited by -XX:MaxDirectMemorySize.
+ *
+ * One store is meant to be shared by all apartments of an agent, since every
+ * store allocates its own chunks.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class OffHeapMeasurementStore extends MeasurementStore {
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+	private long allocatedBytes;
+
+	public OffHeapMeasurementStore() {
+		this(0);
+	}
+
+	/**
+	 * @param recentCount
+	 *            the number of previous values kept of every column, 0 to keep
+	 *            the current values only
+	 */
+	public OffHeapMeasurementStore(int recentCount) {
+		super(recentCount);
+	}
+
+	@Override
+	void addChunk(int records) {
+		ByteBuffer[] added = Arrays.copyOf(chunks, chunks.length + 1);
+		added[chunks.length] = ByteBuffer.allocateDirect(records * recordWords * 4).order(ByteOrder.nativeOrder());
+		allocatedBytes += (long) records * recordWords * 4;
+		chunks = added;
+	}
+
+	@Override
+	int getWord(int slot, int word) {
+		return chunks[chunkOf(slot)].getInt((offsetOf(slot) * recordWords + word) * 4);
+	}
+
+	@Override
+	void putWord(int slot, int word, int value) {
+		chunks[chunkOf(slot)].putInt((offsetOf(slot) * recordWords + word) * 4, value);
+	}
+
+	/**
+	 * The number of bytes of direct memory allocated by this store.
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+}
@@ -0,0 +1,184 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.snmp4j.agent.mo.DefaultMOTableRow;
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * A read-only table model over the recent values of the flat measurements
+ * of an apartment. A row is indexed by flat number, column of measurement in
+ * the flats table and position, the previous values kept by the measurement
+ * store come first, oldest first, and the current value last. The rows are
+ * not held but made from the store when they are read.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+class RecentFlatValuesTableModel implements MOTableModel {
+	private static final int COLUMN_COUNT = 1;
+	// column 1 of flats table holds the flat id, the other columns are measurements
+	private static final int FIRST_COLUMN = 2;
+	private static final int LAST_COLUMN = FlatTableModel.COLUMN_COUNT;
+
+	private final Apartment apartment;
+
+	RecentFlatValuesTableModel(Apartment apartment) {
+		this.apartment = apartment;
+	}
+
+	public int getColumnCount() {
+		return COLUMN_COUNT;
+	}
+
+	public int getRowCount() {
+		int count = 0;
+		for (long flatNo = apartment.getFlatsModel().nextFlatNo(-1); flatNo >= 0; flatNo = apartment.getFlatsModel()
+				.nextFlatNo(flatNo)) {
+			count += getRows(flatNo, 0, 0).size();
+		}
+		return count;
+	}
+
+	public boolean containsRow(OID index) {
+		return getRow(index) != null;
+	}
+
+	public MOTableRow getRow(OID index) {
+		if (index == null || index.size() != 3) {
+			return null;
+		}
+		int[] values = apartment.getRecentFlatValues(index.get(0), index.get(1));
+		long position = index.getUnsigned(2);
+		if (values == null || position < 1 || position > values.length) {
+			return null;
+		}
+		return toRow(index.get(0), index.get(1), (int) position, values[(int) position - 1]);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Iterator iterator() {
+		return tailIterator(null);
+	}
+
+	/**
+	 * Return an iterator over the rows from given index on, which makes the
+	 * rows of one flat at a time.
+	 */
+	@SuppressWarnings("rawtypes")
+	public Iterator tailIterator(OID lowerBound) {
+		if (lowerBound == null || lowerBound.size() == 0) {
+			return new RowIterator(-1, 0, 0);
+		}
+		long column = lowerBound.size() > 1 ? lowerBound.getUnsigned(1) : 0;
+		long position = lowerBound.size() > 2 ? lowerBound.getUnsigned(2) : 0;
+		if (lowerBound.size() > 3) {
+			// an index below a row sorts after that row
+			position++;
+		}
+		return new RowIterator(lowerBound.getUnsigned(0), column, position);
+	}
+
+	public OID lastIndex() {
+		MOTableRow row = lastRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	public OID firstIndex() {
+		MOTableRow row = firstRow();
+		return row == null ? null : row.getIndex();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public MOTableRow firstRow() {
+		Iterator rows = iterator();
+		return rows.hasNext() ? (MOTableRow) rows.next() : null;
+	}
+
+	public MOTableRow lastRow() {
+		int flatNo = apartment.getFlatsModel().lastFlatNo();
+		int[] values = flatNo == 0 ? null : apartment.getRecentFlatValues(flatNo, LAST_COLUMN);
+		return values == null ? null : toRow(flatNo, LAST_COLUMN, values.length, values[values.length - 1]);
+	}
+
+	/**
+	 * Return the rows of given flat from given column and position on, empty
+	 * if the flat has been removed.
+	 */
+	private List<MOTableRow> getRows(long flatNo, long fromColumn, long fromPosition) {
+		List<MOTableRow> rows = new ArrayList<MOTableRow>();
+		for (int column = FIRST_COLUMN; column <= LAST_COLUMN; column++) {
+			if (column < fromColumn) {
+				continue;
+			}
+			int[] values = apartment.getRecentFlatValues((int) flatNo, column);
+			if (values == null) {
+				break;
+			}
+			for (int i = column == fromColumn ? (int) Math.max(0, fromPosition - 1) : 0; i < values.length; i++) {
+				rows.add(toRow((int) flatNo, column, i + 1, values[i]));
+			}
+		}
+		return rows;
+	}
+
+	private static MOTableRow toRow(int flatNo, int column, int position, int value) {
+		return new DefaultMOTableRow(new OID(new int[] { flatNo, column, position }),
+				new Variable[] { new Gauge32(value & 0xFFFFFFFFL) });
+	}
+
+	private class RowIterator implements Iterator<MOTableRow> {
+		private long flatNo;
+		private long fromColumn;
+		private long fromPosition;
+		private Iterator<MOTableRow> rows;
+
+		/**
+		 * @param firstFlatNo
+		 *            the flat whose rows start at given column and position,
+		 *            the rows of the flats after it start at their first row
+		 */
+		RowIterator(long firstFlatNo, long fromColumn, long fromPosition) {
+			this.flatNo = firstFlatNo < 0 ? -1 : firstFlatNo - 1;
+			this.fromColumn = fromColumn;
+			this.fromPosition = fromPosition;
+		}
+
+		public boolean hasNext() {
+			while (rows == null || !rows.hasNext()) {
+				long next = flatNo < 0xFFFFFFFFL ? apartment.getFlatsModel().nextFlatNo(flatNo) : -1;
+				if (next < 0) {
+					return false;
+				}
+				if (next != flatNo + 1) {
+					// the first flat asked for is not there
+					fromColumn = 0;
+					fromPosition = 0;
+				}
+				flatNo = next;
+				rows = getRows(flatNo, fromColumn, fromPosition).iterator();
+				fromColumn = 0;
+				fromPosition = 0;
+			}
+			return true;
+		}
+
+		public MOTableRow next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return rows.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("The recent values are read-only.");
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package edu.tcd.nds.nwmgmt.notifications;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.snmp4j.smi.OID;
+
+/**
+ * A rule which matches changes of the measurements of one OID or of all OIDs
+ * below it, e.g. of one column of the flats table.
+ *
+ * A threshold rule matches when a measurement crosses its limit, i.e. it
+ * matches once when the value goes above (or below) the limit and again only
+ * after the value has been back on the other side. A delta rule matches when
+ * a measurement has moved by at least its limit since it last matched, the
+ * current value of a measurement when it is tracked, or else the first value
+ * seen, is its starting point.
+ *
+ * The matches of a rule are notified at most once per interval for every
+ * measurement, so a rule on a subtree limits each flat on its own. A match
+ * within the interval is counted as suppressed and the rule stays armed, the
+ * next change of the measurement which still matches is notified once the
+ * interval has passed. A threshold is only taken as crossed and a delta
+ * rule only moves its starting point when the match is notified.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class NotificationRule {
+	/** matches when the value goes above the limit */
+	public static final int ABOVE = 0;
+	/** matches when the value goes below the limit */
+	public static final int BELOW = 1;
+	/** matches when the value moved by at least the limit */
+	public static final int DELTA = 2;
+	private static final String[] TYPE_NAMES = { "above", "below", "delta" };
+
+	private final String name;
+	private final OID oid;
+	private final int type;
+	private final int limit;
+	private final long minIntervalNanos;
+
+	private final Map<OID, State> states = new HashMap<OID, State>();
+
+	private final LongAdder matchedCount = new LongAdder();
+	private final LongAdder suppressedCount = new LongAdder();
+
+	/**
+	 * @param name
+	 *            the name of rule sent with its notifications
+	 * @param oid
+	 *            the OID of measurement or of the subtree of measurements
+	 * @param type
+	 *            {@link #ABOVE}, {@link #BELOW} or {@link #DELTA}
+	 * @param limit
+	 *            the threshold or the delta
+	 * @param minIntervalMillis
+	 *            the time between two notifications of the rule at least, 0
+	 *            notifies every match
+	 */
+	public NotificationRule(String name, OID oid, int type, int limit, long minIntervalMillis) {
+		if (type < ABOVE || type > DELTA) {
+			throw new IllegalArgumentException("Unknown rule type " + type);
+		}
+		if (type == DELTA && limit <= 0) {
+			throw new IllegalArgumentException("The delta of a rule must be > 0");
+		}
+		if (minIntervalMillis < 0) {
+			throw new IllegalArgumentException("The interval of a rule must be >= 0");
+		}
+		this.name = name;
+		this.oid = new OID(oid);
+		this.type = type;
+		this.limit = limit;
+		this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+	}
+
+	/**
+	 * Return whether the rule applies to the measurement of given OID.
+	 */
+	public boolean appliesTo(OID measurement) {
+		return measurement.startsWith(oid);
+	}
+
+	/**
+	 * Take the current value of a measurement this rule applies to as its
+	 * starting point, without matching.
+	 */
+	public synchronized void seed(OID measurement, int value) {
+		State state = getState(measurement);
+		if (type == DELTA) {
+			state.value = value;
+		} else {
+			state.value = (type == ABOVE ? value > limit : value < limit) ? 1 : 0;
+		}
+		state.seeded = true;
+	}
+
+	private State getState(OID measurement) {
+		State state = states.get(measurement);
+		if (state == null) {
+			state = new State(System.nanoTime());
+			states.put(measurement, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Evaluate the changed value of a measurement this rule applies to. A
+	 * match is notified if the interval of the measurement has passed, else
+	 * it is counted as suppressed and the rule stays armed for the next
+	 * change.
+	 *
+	 * @return true if the change is to be notified
+	 */
+	public synchronized boolean evaluate(OID measurement, int value) {
+		State state = getState(measurement);
+		boolean matched;
+		if (type == DELTA) {
+			if (!state.seeded) {
+				// the first value seen is the starting point
+				state.value = value;
+				state.seeded = true;
+				return false;
+			}
+			matched = Math.abs((long) value - state.value) >= limit;
+		} else {
+			boolean beyond = type == ABOVE ? value > limit : value < limit;
+			if (!beyond) {
+				state.value = 0;
+				state.seeded = true;
+				return false;
+			}
+			matched = state.value == 0;
+		}
+		if (!matched) {
+			return false;
+		}
+		matchedCount.increment();
+		long now = System.nanoTime();
+		if (now - state.nextNotification < 0) {
+			suppressedCount.increment();
+			return false;
+		}
+		state.nextNotification = now + minIntervalNanos;
+		state.value = type == DELTA ? value : 1;
+		state.seeded = true;
+		return true;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public OID getOid() {
+		return oid;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public long getMinIntervalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(minIntervalNanos);
+	}
+
+	/**
+	 * The number of changes which matched the rule so far.
+	 */
+	public long getMatchedCount() {
+		return matchedCount.sum();
+	}
+
+	/**
+	 * The number of matches not notified because of the interval of rule.
+	 */
+	public long getSuppressedCount() {
+		return suppressedCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "NotificationRule[name=" + name + ",oid=" + oid + "," + TYPE_NAMES[type] + "=" + limit
+				+ ",minIntervalMillis=" + getMinIntervalMillis() + ",matched=" + getMatchedCount() + ",suppressed="
+				+ getSuppressedCount() + "]";
+	}
+
+	/**
+	 * The state of a measurement, whether its value is beyond the threshold
+	 * or the value of last notified match of a delta rule, and the time from
+	 * which its next match may be notified.
+	 */
+	private static class State {
+		private int value;
+		private boolean seeded;
+		private long nextNotification;
+
+		State(long nextNotification) {
+			this.nextNotification = nextNotification;
+		}
+	}
+}
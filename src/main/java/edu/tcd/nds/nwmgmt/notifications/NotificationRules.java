@@ -0,0 +1,246 @@
+package edu.tcd.nds.nwmgmt.notifications;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.snmp4j.agent.BaseAgent;
+import org.snmp4j.agent.NotificationOriginator;
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.models.MeasurementListener;
+import edu.tcd.nds.nwmgmt.utils.Constants;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The notification rules of the agent, evaluated whenever a measurement of a
+ * tracked apartment changes. A change matching a rule is sent as notification
+ * to the notification targets of agent, so managers are told about events
+ * such as an empty storage instead of polling for them.
+ *
+ * A threshold rule sends {@link MOIdentifiers#THRESHOLD_NOTIFICATION_OID} and
+ * a delta rule {@link MOIdentifiers#DELTA_NOTIFICATION_OID}, both with the
+ * changed measurement, the name of rule and its limit as variable bindings.
+ * The rules are evaluated on the thread which changed the measurement, the
+ * notifications are sent by a thread of their own so that a change never
+ * waits for the network.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class NotificationRules implements MeasurementListener {
+	public static final int QUEUE_CAPACITY = 1024;
+
+	private final BaseAgent agent;
+	private final List<NotificationRule> rules = new CopyOnWriteArrayList<NotificationRule>();
+	private final ExecutorService sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NotificationSender");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	private final LongAdder sentCount = new LongAdder();
+	private final LongAdder droppedCount = new LongAdder();
+
+	/**
+	 * @param agent
+	 *            the agent whose notification originator sends the
+	 *            notifications
+	 */
+	public NotificationRules(BaseAgent agent) {
+		this.agent = agent;
+	}
+
+	/**
+	 * Evaluate the rules on every change of the measurements of given
+	 * apartment. The current measurements are the starting point of rules,
+	 * so a measurement which is beyond a threshold already is not notified.
+	 */
+	public void track(Apartment apartment) {
+		seedAll(apartment, 0);
+		apartment.addMeasurementListener(this);
+	}
+
+	/**
+	 * Evaluate the rules on every change of the measurements of an apartment
+	 * of a district. The rules match the measurements by their OIDs in the
+	 * apartment, but the state of rules and the notifications take the OIDs
+	 * of their cells in the district tables, so the apartments are told
+	 * apart. The measurements which the district tables do not serve are not
+	 * evaluated.
+	 *
+	 * @see District#getDistrictOID(int, OID)
+	 */
+	public void track(Apartment apartment, final int apartmentNo) {
+		seedAll(apartment, apartmentNo);
+		apartment.addMeasurementListener(new MeasurementListener() {
+			public void measurementChanged(OID oid, int value) {
+				OID districtOID = District.getDistrictOID(apartmentNo, oid);
+				if (districtOID != null) {
+					evaluate(oid, districtOID, value);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Seed the rules with the current measurements of apartment, under the
+	 * OIDs of the district tables unless the apartment number is 0.
+	 */
+	private void seedAll(Apartment apartment, int apartmentNo) {
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_CONSUMPTION, apartment.getConsumptionMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_GENERATION, apartment.getGenerationMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_STORAGE, apartment.getStorageMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, apartment.getGenerationBySolarMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO, apartment.getGenerationByHydroMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_HEATING_COOLING, apartment.getConsumptionByHeatingCoolingMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_LIGHTING, apartment.getConsumptionByLightingMOValue());
+		seed(apartmentNo, MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_MISC, apartment.getConsumptionByMiscMOValue());
+		MOTableModel flats = apartment.getFlatsTable().getModel();
+		synchronized (flats) {
+			for (Iterator<?> it = flats.iterator(); it.hasNext();) {
+				MOTableRow row = (MOTableRow) it.next();
+				// column 0 holds the flat id, the other columns are measurements
+				for (int column = 1; column < row.size(); column++) {
+					Variable value = row.getValue(column);
+					if (value != null) {
+						OID cellOID = new OID(MOIdentifiers.FLAT_BASE_OID);
+						cellOID.append(column + 1);
+						cellOID.append(row.getIndex());
+						seed(apartmentNo, cellOID, value.toInt());
+					}
+				}
+			}
+		}
+	}
+
+	private void seed(int apartmentNo, OID oid, int value) {
+		OID measurement = null;
+		for (NotificationRule rule : rules) {
+			if (rule.appliesTo(oid)) {
+				if (measurement == null) {
+					measurement = apartmentNo == 0 ? oid : District.getDistrictOID(apartmentNo, oid);
+					if (measurement == null) {
+						return;
+					}
+				}
+				rule.seed(measurement, value);
+			}
+		}
+	}
+
+	/**
+	 * Add a rule, a rule of same name is replaced.
+	 */
+	public synchronized void addRule(NotificationRule rule) {
+		removeRule(rule.getName());
+		rules.add(rule);
+	}
+
+	/**
+	 * Remove the rule of given name.
+	 *
+	 * @return true if there was such rule
+	 */
+	public synchronized boolean removeRule(String name) {
+		for (NotificationRule rule : rules) {
+			if (rule.getName().equals(name)) {
+				return rules.remove(rule);
+			}
+		}
+		return false;
+	}
+
+	public List<NotificationRule> getRules() {
+		return rules;
+	}
+
+	public void measurementChanged(OID oid, int value) {
+		evaluate(oid, oid, value);
+	}
+
+	/**
+	 * Evaluate the rules which apply to given OID of the apartment for the
+	 * measurement of given OID.
+	 */
+	private void evaluate(OID oid, OID measurement, int value) {
+		for (NotificationRule rule : rules) {
+			if (rule.appliesTo(oid) && rule.evaluate(measurement, value)) {
+				send(rule, measurement, value);
+			}
+		}
+	}
+
+	private void send(final NotificationRule rule, final OID oid, final int value) {
+		try {
+			sender.execute(new Runnable() {
+				public void run() {
+					NotificationOriginator originator = agent.getNotificationOriginator();
+					if (originator == null) {
+						droppedCount.increment();
+						return;
+					}
+					OID notificationID = rule.getType() == NotificationRule.DELTA ? MOIdentifiers.DELTA_NOTIFICATION_OID
+							: MOIdentifiers.THRESHOLD_NOTIFICATION_OID;
+					originator.notify(new OctetString(Constants.COMMUNITY), notificationID, new VariableBinding[] {
+							new VariableBinding(oid, new Integer32(value)),
+							new VariableBinding(MOIdentifiers.NOTIFICATION_RULE_NAME_OID, new OctetString(rule.getName())),
+							new VariableBinding(MOIdentifiers.NOTIFICATION_RULE_LIMIT_OID, new Integer32(rule.getLimit())) });
+					sentCount.increment();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			droppedCount.increment();
+		}
+	}
+
+	/**
+	 * The number of notifications handed to the notification originator.
+	 */
+	public long getSentCount() {
+		return sentCount.sum();
+	}
+
+	/**
+	 * The number of matches not notified because of the interval of their
+	 * rule.
+	 */
+	public long getSuppressedCount() {
+		long suppressed = 0;
+		for (NotificationRule rule : rules) {
+			suppressed += rule.getSuppressedCount();
+		}
+		return suppressed;
+	}
+
+	/**
+	 * The number of notifications dropped because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * Stop sending, the notifications still queued are dropped.
+	 */
+	public void shutdown() {
+		sender.shutdownNow();
+	}
+}
@@ -0,0 +1,507 @@
+package edu.tcd.nds.nwmgmt.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.models.MeasurementListener;
+
+/**
+ * An append-only log of measurement changes which lets the agent come back
+ * with the values it had before a restart. Every change is appended as a
+ * binary record to a segment file which is mapped into memory, so an append
+ * is a copy of a few bytes and does not wait for the disk. The mapped pages
+ * are forced to disk by a background thread at a fixed interval, one force
+ * covers all records appended within the interval (group commit). A crash of
+ * the process loses nothing since the pages belong to the operating system, a
+ * crash of the machine loses at most the last interval.
+ *
+ * When a segment is full the log rolls over to a new segment. When there are
+ * more than the given number of segments, the latest value of every
+ * measurement is written to a snapshot and the segments it covers are
+ * deleted. On startup {@link #replay(MeasurementListener)} applies the
+ * snapshot and then the records of remaining segments in order. A record
+ * which was only partly written fails its checksum and ends the replay of
+ * its segment.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ChangeLog implements MeasurementListener, Closeable {
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	public static final int DEFAULT_MAX_SEGMENTS = 4;
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+	private static final int SEGMENT_MAGIC = 0x454d434c; // EMCL
+	private static final int SNAPSHOT_MAGIC = 0x454d5353; // EMSS
+	private static final int SEGMENT_HEADER_SIZE = 16;
+	/** length and checksum in front of the body of every record */
+	private static final int RECORD_HEADER_SIZE = 8;
+	/** time, number of sub-identifiers and value in the body of every record */
+	private static final int RECORD_FIXED_SIZE = 8 + 2 + 4;
+	private static final int MAX_OID_SIZE = 128;
+	private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+	private final long flushIntervalMillis;
+
+	/** the latest value of every measurement, written to the snapshot */
+	private final Map<OID, Integer> latest = new HashMap<OID, Integer>();
+	private final List<Long> segments = new ArrayList<Long>();
+	private final byte[] scratch = new byte[RECORD_HEADER_SIZE + RECORD_FIXED_SIZE + 4 * MAX_OID_SIZE];
+	private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch);
+	private final CRC32 crc = new CRC32();
+
+	private ScheduledExecutorService flusher;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long segmentNo;
+	private boolean dirty;
+	private boolean compacting;
+	private boolean replayed;
+
+	private final AtomicLong appendCount = new AtomicLong();
+	private final AtomicLong forceCount = new AtomicLong();
+
+	public ChangeLog(File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param directory
+	 *            the directory of segments and snapshot, created if missing
+	 * @param segmentSize
+	 *            the size of a segment file in bytes
+	 * @param maxSegments
+	 *            the number of segments after which a snapshot is taken
+	 * @param flushIntervalMillis
+	 *            the interval at which appended records are forced to disk
+	 */
+	public ChangeLog(File directory, int segmentSize, int maxSegments, long flushIntervalMillis) {
+		if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + RECORD_FIXED_SIZE + 4 * MAX_OID_SIZE) {
+			throw new IllegalArgumentException("The segment size " + segmentSize + " is too small.");
+		}
+		if (maxSegments < 1 || flushIntervalMillis <= 0) {
+			throw new IllegalArgumentException("Number of segments and flush interval must be positive.");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Apply the snapshot and then the records of all segments to given
+	 * listener, in the order in which the changes happened. Must be called
+	 * before {@link #open()}.
+	 *
+	 * @return the number of changes applied
+	 */
+	public synchronized int replay(MeasurementListener target) throws IOException {
+		if (channel != null) {
+			throw new IllegalStateException("The change log is already open.");
+		}
+		replayed = true;
+		if (!directory.isDirectory()) {
+			return 0;
+		}
+		int applied = 0;
+		long firstSegmentNo = 0;
+		File snapshot = new File(directory, SNAPSHOT_FILE);
+		if (snapshot.exists()) {
+			DataInputStream in = new DataInputStream(new FileInputStream(snapshot));
+			try {
+				firstSegmentNo = readSnapshot(in, target);
+				applied += latest.size();
+			} finally {
+				in.close();
+			}
+		}
+		segments.clear();
+		for (long segment : listSegments()) {
+			if (segment >= firstSegmentNo) {
+				applied += replaySegment(segment, target);
+				segments.add(segment);
+			} else {
+				// left over by a compaction which did not finish
+				Files.deleteIfExists(segmentFile(segment).toPath());
+			}
+		}
+		System.out.println("Replayed " + applied + " changes from " + directory + ".");
+		return applied;
+	}
+
+	/**
+	 * Start a new segment for appending and start forcing appended records to
+	 * disk.
+	 */
+	public synchronized void open() throws IOException {
+		if (channel != null) {
+			return;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create change log directory " + directory);
+		}
+		List<Long> existing = listSegments();
+		if (!replayed && !existing.isEmpty()) {
+			// a snapshot taken now would miss the values of existing segments
+			throw new IllegalStateException("The change log in " + directory + " must be replayed before it is opened.");
+		}
+		segmentNo = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+		openSegment();
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ChangeLogFlusher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		compactIfNeeded();
+	}
+
+	public void measurementChanged(OID oid, int value) {
+		append(System.currentTimeMillis(), oid, value);
+	}
+
+	/**
+	 * Append a change to the log. The record is in the mapped segment when
+	 * this method returns and is forced to disk by next flush.
+	 */
+	public synchronized void append(long timeMillis, OID oid, int value) {
+		if (channel == null) {
+			throw new IllegalStateException("The change log is not open.");
+		}
+		if (oid.size() > MAX_OID_SIZE) {
+			throw new IllegalArgumentException("The OID " + oid + " is too long for the change log.");
+		}
+		int bodySize = RECORD_FIXED_SIZE + 4 * oid.size();
+		if (buffer.remaining() < RECORD_HEADER_SIZE + bodySize) {
+			rollOver();
+		}
+		scratchBuffer.clear();
+		scratchBuffer.position(RECORD_HEADER_SIZE);
+		scratchBuffer.putLong(timeMillis);
+		scratchBuffer.putShort((short) oid.size());
+		for (int i = 0; i < oid.size(); i++) {
+			scratchBuffer.putInt(oid.get(i));
+		}
+		scratchBuffer.putInt(value);
+		crc.reset();
+		crc.update(scratch, RECORD_HEADER_SIZE, bodySize);
+		scratchBuffer.putInt(0, bodySize);
+		scratchBuffer.putInt(4, (int) crc.getValue());
+		buffer.put(scratch, 0, RECORD_HEADER_SIZE + bodySize);
+		latest.put(oid, value);
+		dirty = true;
+		appendCount.incrementAndGet();
+	}
+
+	/**
+	 * Force the records appended since last flush to disk.
+	 */
+	public void flush() {
+		MappedByteBuffer toForce;
+		synchronized (this) {
+			if (!dirty || buffer == null) {
+				return;
+			}
+			dirty = false;
+			toForce = buffer;
+		}
+		toForce.force();
+		forceCount.incrementAndGet();
+	}
+
+	/**
+	 * Force all appended records to disk and close the log.
+	 */
+	public void close() {
+		ScheduledExecutorService toStop;
+		synchronized (this) {
+			toStop = flusher;
+			flusher = null;
+		}
+		if (toStop != null) {
+			toStop.shutdown();
+			try {
+				toStop.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			if (channel == null) {
+				return;
+			}
+			buffer.force();
+			closeSegment();
+		}
+	}
+
+	public long getAppendCount() {
+		return appendCount.get();
+	}
+
+	/**
+	 * Return the number of times records have been forced to disk, every
+	 * force covers all records appended since the previous one.
+	 */
+	public long getForceCount() {
+		return forceCount.get();
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	private void openSegment() throws IOException {
+		RandomAccessFile file = new RandomAccessFile(segmentFile(segmentNo), "rw");
+		file.setLength(segmentSize);
+		channel = file.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		buffer.putInt(SEGMENT_MAGIC);
+		buffer.putInt(1);
+		buffer.putLong(segmentNo);
+		segments.add(segmentNo);
+	}
+
+	private void closeSegment() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+		buffer = null;
+	}
+
+	/**
+	 * Seal the full segment and continue in a new one, a snapshot is taken in
+	 * background when there are too many segments.
+	 */
+	private void rollOver() {
+		buffer.force();
+		closeSegment();
+		segmentNo++;
+		try {
+			openSegment();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not roll over change log to segment " + segmentNo, e);
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * Take a snapshot in background which covers all segments before the
+	 * current one when there are too many segments.
+	 */
+	private void compactIfNeeded() {
+		if (segments.size() > maxSegments && !compacting && flusher != null) {
+			compacting = true;
+			final Map<OID, Integer> values = new HashMap<OID, Integer>(latest);
+			final long firstSegmentNo = segmentNo;
+			flusher.execute(new Runnable() {
+				public void run() {
+					compact(values, firstSegmentNo);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write a snapshot of given values which covers all segments before given
+	 * segment and delete these segments.
+	 */
+	private void compact(Map<OID, Integer> values, long firstSegmentNo) {
+		try {
+			writeSnapshot(values, firstSegmentNo);
+			List<Long> covered = new ArrayList<Long>();
+			synchronized (this) {
+				for (Long segment : segments) {
+					if (segment < firstSegmentNo) {
+						covered.add(segment);
+					}
+				}
+				segments.removeAll(covered);
+			}
+			for (Long segment : covered) {
+				Files.deleteIfExists(segmentFile(segment).toPath());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			synchronized (this) {
+				compacting = false;
+			}
+		}
+	}
+
+	private void writeSnapshot(Map<OID, Integer> values, long firstSegmentNo) throws IOException {
+		File temp = new File(directory, SNAPSHOT_FILE + ".tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+		try {
+			CRC32 checksum = new CRC32();
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(firstSegmentNo);
+			out.writeInt(values.size());
+			for (Map.Entry<OID, Integer> entry : values.entrySet()) {
+				byte[] bytes = encodeEntry(entry.getKey(), entry.getValue());
+				checksum.update(bytes);
+				out.write(bytes);
+			}
+			out.writeInt((int) checksum.getValue());
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), new File(directory, SNAPSHOT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a snapshot and apply its values, a snapshot which is damaged is
+	 * ignored.
+	 *
+	 * @return the first segment not covered by the snapshot
+	 */
+	private long readSnapshot(DataInputStream in, MeasurementListener target) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			System.out.println("Ignoring damaged change log snapshot.");
+			return 0;
+		}
+		long firstSegmentNo = in.readLong();
+		int count = in.readInt();
+		CRC32 checksum = new CRC32();
+		Map<OID, Integer> values = new HashMap<OID, Integer>();
+		for (int i = 0; i < count; i++) {
+			short size = in.readShort();
+			int[] subIds = new int[size];
+			for (int j = 0; j < size; j++) {
+				subIds[j] = in.readInt();
+			}
+			int value = in.readInt();
+			OID oid = new OID(subIds);
+			checksum.update(encodeEntry(oid, value));
+			values.put(oid, value);
+		}
+		if (in.readInt() != (int) checksum.getValue()) {
+			System.out.println("Ignoring damaged change log snapshot.");
+			return 0;
+		}
+		for (Map.Entry<OID, Integer> entry : values.entrySet()) {
+			target.measurementChanged(entry.getKey(), entry.getValue());
+		}
+		latest.putAll(values);
+		return firstSegmentNo;
+	}
+
+	private static byte[] encodeEntry(OID oid, int value) {
+		ByteBuffer entry = ByteBuffer.allocate(2 + 4 * oid.size() + 4);
+		entry.putShort((short) oid.size());
+		for (int i = 0; i < oid.size(); i++) {
+			entry.putInt(oid.get(i));
+		}
+		entry.putInt(value);
+		return entry.array();
+	}
+
+	/**
+	 * Apply the records of a segment up to its end or to the first record
+	 * which was not completely written.
+	 */
+	private int replaySegment(long segment, MeasurementListener target) throws IOException {
+		byte[] bytes = Files.readAllBytes(segmentFile(segment).toPath());
+		ByteBuffer in = ByteBuffer.wrap(bytes);
+		if (bytes.length < SEGMENT_HEADER_SIZE || in.getInt() != SEGMENT_MAGIC) {
+			System.out.println("Ignoring damaged change log segment " + segment + ".");
+			return 0;
+		}
+		in.position(SEGMENT_HEADER_SIZE);
+		int applied = 0;
+		CRC32 checksum = new CRC32();
+		try {
+			while (in.remaining() >= RECORD_HEADER_SIZE) {
+				int bodySize = in.getInt();
+				int expected = in.getInt();
+				if (bodySize < RECORD_FIXED_SIZE || bodySize > in.remaining()) {
+					break;
+				}
+				checksum.reset();
+				checksum.update(bytes, in.position(), bodySize);
+				if ((int) checksum.getValue() != expected) {
+					System.out.println("Change log segment " + segment + " ends with an incomplete record.");
+					break;
+				}
+				in.getLong(); // time of change
+				int[] subIds = new int[in.getShort()];
+				for (int i = 0; i < subIds.length; i++) {
+					subIds[i] = in.getInt();
+				}
+				int value = in.getInt();
+				OID oid = new OID(subIds);
+				target.measurementChanged(oid, value);
+				latest.put(oid, value);
+				applied++;
+			}
+		} catch (BufferUnderflowException e) {
+			System.out.println("Change log segment " + segment + " ends with an incomplete record.");
+		}
+		return applied;
+	}
+
+	private List<Long> listSegments() {
+		List<Long> found = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith("changes-") && name.endsWith(".log")) {
+					try {
+						found.add(Long.parseLong(name.substring(8, name.length() - 4)));
+					} catch (NumberFormatException e) {
+						// not a segment of this log
+					}
+				}
+			}
+		}
+		Collections.sort(found);
+		return found;
+	}
+
+	private File segmentFile(long segment) {
+		return new File(directory, String.format("changes-%010d.log", segment));
+	}
+}
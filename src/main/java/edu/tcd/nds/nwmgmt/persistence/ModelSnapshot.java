@@ -0,0 +1,261 @@
+package edu.tcd.nds.nwmgmt.persistence;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.Variable;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.EnergyBalance;
+import edu.tcd.nds.nwmgmt.models.MeasurementStore;
+
+/**
+ * A compact binary snapshot of the apartments and their flats, so an agent
+ * serving a whole district comes back with the values it had without
+ * building the model from defaults. The snapshot holds the device id and
+ * energy balance of every apartment and the row of every flat as it is in the
+ * flats table, including values changed by SET requests.
+ *
+ * The snapshot is written to a temporary file which replaces the previous
+ * snapshot when it is complete, and is loaded with one mapped read of the
+ * whole file. A snapshot which fails its checksum is not loaded. The flats of
+ * an apartment are read column by column into arrays shared by all
+ * apartments and added to the flats table at once, without an object per
+ * flat.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ModelSnapshot {
+	private static final int MAGIC = 0x454d4d53; // EMMS
+	private static final int VERSION = 1;
+	/** magic, version, apartment count and flat count */
+	private static final int HEADER_SIZE = 16;
+	private static final int BALANCE_FIELD_COUNT = 5;
+
+	private ModelSnapshot() {
+	}
+
+	/**
+	 * Write a snapshot of given apartments.
+	 *
+	 * @param file
+	 *            the snapshot file, replaced when the snapshot is complete
+	 * @param apartments
+	 *            the apartments in order of apartment number
+	 * @return the size of snapshot in bytes
+	 */
+	public static long write(File file, List<Apartment> apartments) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + apartments.size() * 256);
+		out.position(HEADER_SIZE);
+		int flatCount = 0;
+		for (Apartment apartment : apartments) {
+			out = ensureCapacity(out, 64);
+			out.putInt(apartment.getApartmentNo());
+			out = putString(out, apartment.getDeviceIdMO().getValue());
+			out = ensureCapacity(out, 32);
+			EnergyBalance balance = apartment.getEnergyBalance();
+			int setFields = 0;
+			for (int field = 0; field < BALANCE_FIELD_COUNT; field++) {
+				if (balance.isSet(field)) {
+					setFields |= 1 << field;
+				}
+			}
+			out.put((byte) setFields);
+			for (int field = 0; field < BALANCE_FIELD_COUNT; field++) {
+				out.putInt(balance.get(field));
+			}
+			MOTableModel model = apartment.getFlatsTable().getModel();
+			synchronized (model) {
+				out.putInt(model.getRowCount());
+				for (Iterator<?> rows = model.iterator(); rows.hasNext();) {
+					MOTableRow row = (MOTableRow) rows.next();
+					out = ensureCapacity(out, 64);
+					out.putInt(row.getIndex().get(0));
+					out = putString(out, row.getValue(0));
+					out = ensureCapacity(out, 4 * row.size());
+					// column 1 holds the flat id, the other columns are measurements
+					for (int i = 1; i < row.size(); i++) {
+						out.putInt(row.getValue(i) == null ? 0 : row.getValue(i).toInt());
+					}
+					flatCount++;
+				}
+			}
+		}
+		out = ensureCapacity(out, 4);
+		CRC32 checksum = new CRC32();
+		checksum.update(out.array(), HEADER_SIZE, out.position() - HEADER_SIZE);
+		out.putInt((int) checksum.getValue());
+		out.putInt(0, MAGIC);
+		out.putInt(4, VERSION);
+		out.putInt(8, apartments.size());
+		out.putInt(12, flatCount);
+
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			stream.write(out.array(), 0, out.position());
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return out.position();
+	}
+
+	/**
+	 * Load the apartments of a snapshot. The energy generation of apartments
+	 * is taken as it was and not computed again.
+	 *
+	 * @param file
+	 *            the snapshot file
+	 * @return the apartments in the order they were written
+	 * @throws IOException
+	 *             if the file cannot be read or is not a complete snapshot
+	 */
+	public static List<Apartment> load(File file) throws IOException {
+		return load(file, null);
+	}
+
+	/**
+	 * Load the apartments of a snapshot whose flat measurements are kept in
+	 * given store.
+	 *
+	 * @param file
+	 *            the snapshot file
+	 * @param measurementStore
+	 *            the store shared by the apartments, null to give every
+	 *            apartment its own store on the heap
+	 * @return the apartments in the order they were written
+	 * @throws IOException
+	 *             if the file cannot be read or is not a complete snapshot
+	 */
+	public static List<Apartment> load(File file, MeasurementStore measurementStore) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer in;
+		try {
+			in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if (in.limit() < HEADER_SIZE + 4 || in.getInt(0) != MAGIC || in.getInt(4) != VERSION) {
+			throw new IOException("The file " + file + " is not a model snapshot.");
+		}
+		int bodyEnd = in.limit() - 4;
+		int expected = in.getInt(bodyEnd);
+		in.position(HEADER_SIZE);
+		in.limit(bodyEnd);
+		CRC32 checksum = new CRC32();
+		checksum.update(in);
+		if ((int) checksum.getValue() != expected) {
+			throw new IOException("The model snapshot " + file + " is damaged.");
+		}
+		in.position(HEADER_SIZE);
+		int apartmentCount = in.getInt(8);
+		List<Apartment> apartments = new ArrayList<Apartment>(apartmentCount);
+		int[] flatNos = new int[0];
+		int[] deviceIdLengths = new int[0];
+		int[] measurements = new int[0];
+		byte[] deviceIds = new byte[0];
+		for (int n = 0; n < apartmentCount; n++) {
+			Apartment apartment = measurementStore == null ? new Apartment() : new Apartment(measurementStore);
+			apartment.setApartmentNo(in.getInt());
+			apartment.setDeviceIdMOValue(getString(in));
+			int setFields = in.get();
+			int[] values = new int[BALANCE_FIELD_COUNT];
+			for (int field = 0; field < BALANCE_FIELD_COUNT; field++) {
+				values[field] = in.getInt();
+			}
+			setBalance(apartment, setFields, values);
+			int flatCount = in.getInt();
+			if (flatNos.length < flatCount) {
+				flatNos = new int[flatCount];
+				deviceIdLengths = new int[flatCount];
+				measurements = new int[flatCount * MeasurementStore.MEASUREMENT_COUNT];
+			}
+			int deviceIdsEnd = 0;
+			for (int i = 0; i < flatCount; i++) {
+				flatNos[i] = in.getInt();
+				int length = in.getShort() & 0xFFFF;
+				if (deviceIdsEnd + length > deviceIds.length) {
+					deviceIds = Arrays.copyOf(deviceIds, Math.max(deviceIds.length * 2, deviceIdsEnd + length));
+				}
+				in.get(deviceIds, deviceIdsEnd, length);
+				deviceIdsEnd += length;
+				deviceIdLengths[i] = length;
+				for (int column = 0; column < MeasurementStore.MEASUREMENT_COUNT; column++) {
+					measurements[i * MeasurementStore.MEASUREMENT_COUNT + column] = in.getInt();
+				}
+			}
+			apartment.addFlats(flatCount, flatNos, deviceIds, deviceIdLengths, measurements);
+			apartments.add(apartment);
+		}
+		return apartments;
+	}
+
+	/**
+	 * Set the loaded fields of the energy balance of apartment with one
+	 * compare-and-set. The consumption is the total of flats and follows
+	 * from adding the flats.
+	 */
+	private static void setBalance(Apartment apartment, int setFields, int[] values) {
+		int[] fields = new int[BALANCE_FIELD_COUNT];
+		int[] fieldValues = new int[BALANCE_FIELD_COUNT];
+		int count = 0;
+		for (int field = 0; field < BALANCE_FIELD_COUNT; field++) {
+			if (field != EnergyBalance.CONSUMPTION && (setFields & (1 << field)) != 0) {
+				fields[count] = field;
+				fieldValues[count] = values[field];
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		fields = Arrays.copyOf(fields, count);
+		fieldValues = Arrays.copyOf(fieldValues, count);
+		EnergyBalance balance;
+		do {
+			balance = apartment.getEnergyBalance();
+		} while (!apartment.compareAndSetEnergyBalance(balance, balance.with(fields, fieldValues)));
+	}
+
+	private static ByteBuffer putString(ByteBuffer out, Variable value) {
+		byte[] bytes = value == null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8);
+		out = ensureCapacity(out, 2 + bytes.length);
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+		return out;
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer ensureCapacity(ByteBuffer out, int needed) {
+		if (out.remaining() >= needed) {
+			return out;
+		}
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + needed));
+		out.flip();
+		larger.put(out);
+		return larger;
+	}
+}
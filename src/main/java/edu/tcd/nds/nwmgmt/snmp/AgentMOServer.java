@@ -0,0 +1,78 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.ManagedObject;
+
+/**
+ * The managed object server of the agent. The locking of managed objects of
+ * {@link DefaultMOServer} does not hold up when two requests processed in
+ * parallel set the same managed object, the second request spins while
+ * holding the monitor of server and the first one never gets to unlock. This
+ * server keeps its own locks, a request waiting for a managed object locked
+ * by another request releases the monitor until the lock is released or its
+ * timeout is over.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class AgentMOServer extends DefaultMOServer {
+	private final Map<ManagedObject, Lock> locks = new HashMap<ManagedObject, Lock>();
+
+	/**
+	 * Lock the managed object for given owner, the lock is reentrant for the
+	 * same owner.
+	 *
+	 * @param timeoutMillis
+	 *            the time to wait for a lock held by another owner, 0 or less
+	 *            waits until it is released
+	 * @return false if the lock could not be acquired in time
+	 */
+	@Override
+	public synchronized boolean lock(Object owner, ManagedObject managedObject, long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		Lock lock = locks.get(managedObject);
+		while (lock != null && lock.owner != owner) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (timeoutMillis > 0 && remaining <= 0) {
+				return false;
+			}
+			try {
+				wait(timeoutMillis > 0 ? remaining : 0);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			lock = locks.get(managedObject);
+		}
+		if (lock == null) {
+			locks.put(managedObject, new Lock(owner));
+		} else {
+			lock.count++;
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized void unlock(Object owner, ManagedObject managedObject) {
+		Lock lock = locks.get(managedObject);
+		if (lock == null || lock.owner != owner) {
+			return;
+		}
+		if (--lock.count == 0) {
+			locks.remove(managedObject);
+			notifyAll();
+		}
+	}
+
+	private static class Lock {
+		private final Object owner;
+		private int count = 1;
+
+		Lock(Object owner) {
+			this.owner = owner;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of apartment managed objects and its flats table as
+ * fetched by {@link EnergyMeasurementManager#getApartmentSnapshot()}. The
+ * snapshot also records how long it took to fetch it end to end.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ApartmentSnapshot {
+	private final String deviceId;
+	private final int consumption;
+	private final int generation;
+	private final int storage;
+	private final int generationBySolar;
+	private final int generationByHydro;
+	private final int consumptionByHeatingCooling;
+	private final int consumptionByLighting;
+	private final int consumptionByMisc;
+	private final List<TableRow> flats;
+	private final long latencyNanos;
+
+	public ApartmentSnapshot(String deviceId, int consumption, int generation, int storage, int generationBySolar,
+			int generationByHydro, int consumptionByHeatingCooling, int consumptionByLighting, int consumptionByMisc,
+			List<TableRow> flats, long latencyNanos) {
+		this.deviceId = deviceId;
+		this.consumption = consumption;
+		this.generation = generation;
+		this.storage = storage;
+		this.generationBySolar = generationBySolar;
+		this.generationByHydro = generationByHydro;
+		this.consumptionByHeatingCooling = consumptionByHeatingCooling;
+		this.consumptionByLighting = consumptionByLighting;
+		this.consumptionByMisc = consumptionByMisc;
+		this.flats = Collections.unmodifiableList(new ArrayList<TableRow>(flats));
+		this.latencyNanos = latencyNanos;
+	}
+
+	public String getDeviceId() {
+		return deviceId;
+	}
+
+	public int getConsumption() {
+		return consumption;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public int getStorage() {
+		return storage;
+	}
+
+	public int getGenerationBySolar() {
+		return generationBySolar;
+	}
+
+	public int getGenerationByHydro() {
+		return generationByHydro;
+	}
+
+	public int getConsumptionByHeatingCooling() {
+		return consumptionByHeatingCooling;
+	}
+
+	public int getConsumptionByLighting() {
+		return consumptionByLighting;
+	}
+
+	public int getConsumptionByMisc() {
+		return consumptionByMisc;
+	}
+
+	/**
+	 * @return the rows of flats table, columns are flat id, consumption,
+	 *         consumption by heating and cooling, by lighting and by misc
+	 */
+	public List<TableRow> getFlats() {
+		return flats;
+	}
+
+	/**
+	 * @return the time taken to fetch this snapshot in nano seconds
+	 */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+}
@@ -2,24 +2,33 @@ package edu.tcd.nds.nwmgmt.snmp;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.InvalidAttributeValueException;
 
 import org.snmp4j.TransportMapping;
 import org.snmp4j.agent.BaseAgent;
-import org.snmp4j.agent.CommandProcessor;
 import org.snmp4j.agent.DuplicateRegistrationException;
 import org.snmp4j.agent.MOGroup;
+import org.snmp4j.agent.MOServer;
 import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.io.DefaultMOPersistenceProvider;
 import org.snmp4j.agent.mo.MOTableRow;
 import org.snmp4j.agent.mo.snmp.RowStatus;
 import org.snmp4j.agent.mo.snmp.SnmpCommunityMIB;
 import org.snmp4j.agent.mo.snmp.SnmpNotificationMIB;
 import org.snmp4j.agent.mo.snmp.SnmpTargetMIB;
 import org.snmp4j.agent.mo.snmp.StorageType;
+import org.snmp4j.agent.mo.snmp.TransportDomains;
 import org.snmp4j.agent.mo.snmp.VacmMIB;
 import org.snmp4j.agent.security.MutableVACM;
 import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.MessageProcessingModel;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.SecurityModel;
 import org.snmp4j.security.USM;
@@ -28,13 +37,28 @@ import org.snmp4j.smi.GenericAddress;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.Variable;
 import org.snmp4j.transport.TransportMappings;
 
+import edu.tcd.nds.nwmgmt.history.MeasurementHistory;
+import edu.tcd.nds.nwmgmt.metrics.AgentMetrics;
+import edu.tcd.nds.nwmgmt.metrics.MetricsEndpoint;
 import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.models.DistrictBalance;
 import edu.tcd.nds.nwmgmt.models.Flat;
+import edu.tcd.nds.nwmgmt.models.MeasurementListener;
+import edu.tcd.nds.nwmgmt.models.MeasurementStore;
+import edu.tcd.nds.nwmgmt.models.OffHeapMeasurementStore;
+import edu.tcd.nds.nwmgmt.notifications.NotificationRule;
+import edu.tcd.nds.nwmgmt.notifications.NotificationRules;
+import edu.tcd.nds.nwmgmt.persistence.ChangeLog;
+import edu.tcd.nds.nwmgmt.persistence.ModelSnapshot;
 import edu.tcd.nds.nwmgmt.snmp.traps.SolarEnergyGenerationTrapReceiver;
+import edu.tcd.nds.nwmgmt.snmp.traps.TrapDispatcher;
 import edu.tcd.nds.nwmgmt.utils.Constants;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
 
 /**
  * The implementation of Agent class using SNMP4J library. To run this class
@@ -50,8 +74,30 @@ import edu.tcd.nds.nwmgmt.utils.Constants;
  * managed objects. As of now it gives very basic security access, i.e. write
  * access to all managed object except devide ID.
  * 
+ * When started with more than one apartment the agent serves a whole district,
+ * the first apartment is still registered under the apartment scalars and all
+ * apartments are registered under the district apartment and flat tables.
+ * 
+ * Every change of a measurement of the apartments is appended to a change log,
+ * on restart the log is replayed so the agent keeps the values it had instead
+ * of falling back to the defaults. The model of all apartments is written to
+ * a binary snapshot at a fixed interval and on shutdown, which is loaded on
+ * next start instead of building the apartments from defaults.
+ * 
+ * The flat measurements of all apartments can be kept in one
+ * {@link MeasurementStore} outside the heap, so a district of millions of
+ * flats does not lengthen the pauses of the garbage collector.
+ * 
+ * Requests are processed concurrently by a {@link RequestProcessor}, GET and
+ * SET requests in one queue and table walks in another. The number of
+ * requests in flight is capped, requests beyond the cap are dropped.
+ * 
+ * The request counts and latencies by PDU type and subtree, trap counts,
+ * queue depths and table sizes are served under the metrics tables and as
+ * plain text on a local port.
+ * 
  * The trap receivers are registered here which run in separate thread. The
- * spawned new thread has wait infinitely and dies along with the agent.
+ * spawned new thread waits until the agent is stopped.
  * Whenever a managed object value is changed and a notification trap is fired
  * then the receiving trap gets callback. The callback method then manipulate
  * other managed object parameters
@@ -62,58 +108,617 @@ import edu.tcd.nds.nwmgmt.utils.Constants;
 public class EnergyMeasurementAgent extends BaseAgent {
 
 	private String address;
+	private int apartmentCount;
+	private final MeasurementStore measurementStore;
 	Apartment appartment = null;
+	District district = null;
+	MeasurementHistory history = null;
+	ChangeLog changeLog = null;
+	AgentMetrics metrics = null;
+	NotificationRules notificationRules = null;
+	private MetricsEndpoint metricsEndpoint;
+	private ScheduledExecutorService snapshotScheduler;
+	private SolarEnergyGenerationTrapReceiver trapReceiver;
+	private Thread shutdownHook;
+	private boolean stopped;
+	private long trapCoalescingWindowMillis = SolarEnergyGenerationTrapReceiver.DEFAULT_COALESCING_WINDOW_MILLIS;
+	
+	/** the interval at which the model snapshot is written while running */
+	public static final long SNAPSHOT_INTERVAL_MILLIS = 5 * 60 * 1000;
 	
 	public EnergyMeasurementAgent(String address) throws IOException {
-		super(new File("conf.agent"), new File("bootCounter.agent"), 
-				new CommandProcessor(new OctetString(MPv3.createLocalEngineID())));
+		this(address, 1);
+	}
+	
+	/**
+	 * Construct an agent serving given number of apartments. More than one
+	 * apartment makes this agent serve a district.
+	 */
+	public EnergyMeasurementAgent(String address, int apartmentCount) throws IOException {
+		this(address, apartmentCount, createRequestProcessor(Constants.REQUEST_WORKERS, false));
+	}
+	
+	/**
+	 * Construct an agent serving given number of apartments whose requests
+	 * are processed by given request processor.
+	 */
+	public EnergyMeasurementAgent(String address, int apartmentCount, RequestProcessor requestProcessor) throws IOException {
+		this(address, apartmentCount, requestProcessor, new TrieMOServer());
+	}
+	
+	/**
+	 * Construct an agent serving given number of apartments whose managed
+	 * objects are looked up by given server, e.g. an {@link AgentMOServer}
+	 * instead of the default {@link TrieMOServer}.
+	 */
+	public EnergyMeasurementAgent(String address, int apartmentCount, RequestProcessor requestProcessor,
+			AgentMOServer moServer) throws IOException {
+		this(address, apartmentCount, requestProcessor, moServer, null);
+	}
+	
+	/**
+	 * Construct an agent whose apartments keep their flat measurements in
+	 * given store, e.g. an {@link OffHeapMeasurementStore}.
+	 * 
+	 * @param measurementStore
+	 *            the store shared by all apartments, null to give every
+	 *            apartment its own store on the heap
+	 */
+	public EnergyMeasurementAgent(String address, int apartmentCount, RequestProcessor requestProcessor,
+			AgentMOServer moServer, MeasurementStore measurementStore) throws IOException {
+		super(new File("conf.agent"), new File("bootCounter.agent"), requestProcessor);
 		this.address = address;
+		this.apartmentCount = apartmentCount;
+		this.measurementStore = measurementStore;
+		// requests are processed in parallel, which needs the locking of agent server
+		server = moServer;
+		defaultPersistenceProvider = new DefaultMOPersistenceProvider(new MOServer[]{server}, configFileURI);
+	}
+	
+	/**
+	 * Build a request processor whose read and walk queues have given number
+	 * of worker threads each, or which starts a virtual thread per request.
+	 * Virtual threads fall back to platform threads on a JDK without them.
+	 * 
+	 * @param workers
+	 *            the number of worker threads of each queue
+	 * @param virtualThreads
+	 *            true to process every request in a virtual thread
+	 */
+	public static RequestProcessor createRequestProcessor(int workers, boolean virtualThreads) {
+		OctetString engineID = new OctetString(MPv3.createLocalEngineID());
+		if(virtualThreads){
+			RequestQueue readQueue = RequestQueue.virtual("ReadRequests");
+			if(readQueue != null){
+				return new RequestProcessor(engineID, readQueue, RequestQueue.virtual("WalkRequests"), Constants.MAX_IN_FLIGHT_REQUESTS);
+			}
+			System.out.println("Virtual threads are not available on this JDK, using " + workers + " worker thread(s) per request queue.");
+		}
+		return new RequestProcessor(engineID,
+				new RequestQueue("ReadRequests", workers, Constants.REQUEST_QUEUE_CAPACITY),
+				new RequestQueue("WalkRequests", workers, Constants.REQUEST_QUEUE_CAPACITY),
+				Constants.MAX_IN_FLIGHT_REQUESTS);
+	}
+	
+	public RequestProcessor getRequestProcessor() {
+		return (RequestProcessor) agent;
+	}
+	
+	/**
+	 * Set the window in which the trap receiver collapses the solar energy
+	 * generation traps of one sender into the latest one. It applies to the
+	 * receiver started by {@link #start()}.
+	 * 
+	 * @param trapCoalescingWindowMillis
+	 *            the window length in milliseconds, zero handles every trap
+	 */
+	public void setTrapCoalescingWindowMillis(long trapCoalescingWindowMillis) {
+		if(trapCoalescingWindowMillis < 0){
+			throw new IllegalArgumentException("Trap coalescing window must not be negative.");
+		}
+		this.trapCoalescingWindowMillis = trapCoalescingWindowMillis;
+	}
+	
+	/**
+	 * Return the receiver of solar energy generation traps, null before the
+	 * agent is started.
+	 */
+	public SolarEnergyGenerationTrapReceiver getTrapReceiver() {
+		return trapReceiver;
 	}
 	
 	protected void registerTraps(){
-		SolarEnergyGenerationTrapReceiver solarEnergyGenerationTrapReceiver = new SolarEnergyGenerationTrapReceiver(appartment);
-		Thread trap = new Thread(solarEnergyGenerationTrapReceiver);
+		trapReceiver = new SolarEnergyGenerationTrapReceiver(appartment, trapCoalescingWindowMillis);
+		addTrapMetrics(trapReceiver.getDispatcher());
+		Thread trap = new Thread(trapReceiver);
 		trap.start();
 	}
+	
+	/**
+	 * Return the subtree of this agent which holds given managed object or
+	 * table, e.g. .1.3.6.1.2.1.2 for an apartment scalar.
+	 */
+	private static OID getSubtree(OID oid) {
+		return new OID(oid.getValue(), 0, oid.size() - 2);
+	}
+
+	/**
+	 * Build the metrics of requests, queues and tables. The requests are
+	 * counted by the subtrees of this agent.
+	 */
+	private AgentMetrics createMetrics() {
+		AgentMetrics agentMetrics = new AgentMetrics();
+		agentMetrics.addSubtree("apartment", getSubtree(MOIdentifiers.APPT_IDENTIFIER));
+		agentMetrics.addSubtree("flats", getSubtree(MOIdentifiers.FLAT_BASE_OID));
+		agentMetrics.addSubtree("flats.recent", getSubtree(MOIdentifiers.FLAT_RECENT_VALUES_TABLE_OID));
+		agentMetrics.addSubtree("district.apartments", getSubtree(MOIdentifiers.DISTRICT_APPT_TABLE_OID));
+		agentMetrics.addSubtree("district.flats", getSubtree(MOIdentifiers.DISTRICT_FLAT_TABLE_OID));
+		agentMetrics.addSubtree("history", getSubtree(MOIdentifiers.HISTORY_TABLE_OID));
+		agentMetrics.addSubtree("metrics", getSubtree(MOIdentifiers.METRICS_VALUE_TABLE_OID));
+		
+		final RequestProcessor processor = getRequestProcessor();
+		agentMetrics.addMetric("requests.inFlight", new AgentMetrics.Metric() {
+			public long getValue() {
+				return processor.getInFlightCount();
+			}
+		});
+		agentMetrics.addMetric("requests.dropped", new AgentMetrics.Metric() {
+			public long getValue() {
+				return processor.getDroppedCount();
+			}
+		});
+		addQueueMetrics(agentMetrics, processor.getReadQueue());
+		addQueueMetrics(agentMetrics, processor.getWalkQueue());
+		
+		agentMetrics.addMetric("tables.flats.rows", new AgentMetrics.Metric() {
+			public long getValue() {
+				return appartment.getFlatCount();
+			}
+		});
+		if(district != null){
+			agentMetrics.addMetric("tables.district.apartments.rows", new AgentMetrics.Metric() {
+				public long getValue() {
+					return district.getApartmentsTable().getModel().getRowCount();
+				}
+			});
+			agentMetrics.addMetric("tables.district.flats.rows", new AgentMetrics.Metric() {
+				public long getValue() {
+					return district.getFlatsTable().getModel().getRowCount();
+				}
+			});
+		}
+		if(measurementStore instanceof OffHeapMeasurementStore){
+			final OffHeapMeasurementStore offHeapStore = (OffHeapMeasurementStore) measurementStore;
+			agentMetrics.addMetric("store.records", new AgentMetrics.Metric() {
+				public long getValue() {
+					return offHeapStore.getRecordCount();
+				}
+			});
+			agentMetrics.addMetric("store.offHeapBytes", new AgentMetrics.Metric() {
+				public long getValue() {
+					return offHeapStore.getAllocatedBytes();
+				}
+			});
+		}
+		agentMetrics.addMetric("tables.history.series.rows", new AgentMetrics.Metric() {
+			public long getValue() {
+				return history.getSeriesCount();
+			}
+		});
+		agentMetrics.addMetric("notifications.sent", new AgentMetrics.Metric() {
+			public long getValue() {
+				return notificationRules.getSentCount();
+			}
+		});
+		agentMetrics.addMetric("notifications.suppressed", new AgentMetrics.Metric() {
+			public long getValue() {
+				return notificationRules.getSuppressedCount();
+			}
+		});
+		agentMetrics.addMetric("notifications.dropped", new AgentMetrics.Metric() {
+			public long getValue() {
+				return notificationRules.getDroppedCount();
+			}
+		});
+		processor.setRequestMetrics(agentMetrics.getRequestMetrics());
+		return agentMetrics;
+	}
+	
+	private static void addQueueMetrics(AgentMetrics agentMetrics, final RequestQueue queue) {
+		String prefix = "queues." + queue.getName() + ".";
+		agentMetrics.addMetric(prefix + "depth", new AgentMetrics.Metric() {
+			public long getValue() {
+				return queue.getDepth();
+			}
+		});
+		agentMetrics.addMetric(prefix + "maxDepth", new AgentMetrics.Metric() {
+			public long getValue() {
+				return queue.getMaxDepth();
+			}
+		});
+		agentMetrics.addMetric(prefix + "accepted", new AgentMetrics.Metric() {
+			public long getValue() {
+				return queue.getAcceptedCount();
+			}
+		});
+		agentMetrics.addMetric(prefix + "rejected", new AgentMetrics.Metric() {
+			public long getValue() {
+				return queue.getRejectedCount();
+			}
+		});
+		agentMetrics.addMetric(prefix + "averageWaitMicros", new AgentMetrics.Metric() {
+			public long getValue() {
+				return queue.getAverageWaitMicros();
+			}
+		});
+	}
+	
+	private void addTrapMetrics(final TrapDispatcher dispatcher) {
+		if(metrics == null){
+			return;
+		}
+		metrics.addMetric("traps.received", new AgentMetrics.Metric() {
+			public long getValue() {
+				return dispatcher.getReceivedCount();
+			}
+		});
+		metrics.addMetric("traps.coalesced", new AgentMetrics.Metric() {
+			public long getValue() {
+				return dispatcher.getCoalescedCount();
+			}
+		});
+		metrics.addMetric("traps.processed", new AgentMetrics.Metric() {
+			public long getValue() {
+				return dispatcher.getProcessedCount();
+			}
+		});
+		metrics.addMetric("traps.unrouted", new AgentMetrics.Metric() {
+			public long getValue() {
+				return dispatcher.getUnroutedCount();
+			}
+		});
+	}
+	
+	/**
+	 * Build the default notification rules, which tell the managers when the
+	 * storage of apartment runs empty, when a flat exceeds its consumption
+	 * budget and when the solar generation moves by 10 or more. Each rule
+	 * notifies once per {@link Constants#NOTIFICATION_MIN_INTERVAL_MILLIS} at
+	 * most.
+	 */
+	private NotificationRules createNotificationRules() {
+		NotificationRules rules = new NotificationRules(this);
+		rules.addRule(new NotificationRule("storage.empty", MOIdentifiers.APPT_ENERGY_STORAGE,
+				NotificationRule.BELOW, 1, Constants.NOTIFICATION_MIN_INTERVAL_MILLIS));
+		// the total consumption column of flats table
+		rules.addRule(new NotificationRule("flat.consumption.budget", new OID(MOIdentifiers.FLAT_BASE_OID + ".2"),
+				NotificationRule.ABOVE, Constants.FLAT_CONSUMPTION_BUDGET, Constants.NOTIFICATION_MIN_INTERVAL_MILLIS));
+		rules.addRule(new NotificationRule("generation.solar.delta", MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+				NotificationRule.DELTA, 10, Constants.NOTIFICATION_MIN_INTERVAL_MILLIS));
+		return rules;
+	}
+	
+	public NotificationRules getNotificationRules() {
+		return notificationRules;
+	}
+	
+	/**
+	 * Serve the metrics as plain text on the local metrics port, the agent
+	 * runs without if the port cannot be bound.
+	 */
+	private void startMetricsEndpoint() {
+		try {
+			metricsEndpoint = new MetricsEndpoint(metrics, Constants.METRICS_PORT);
+			metricsEndpoint.start();
+			System.out.println("Metrics served on localhost/" + metricsEndpoint.getPort());
+		} catch (IOException ex) {
+			System.out.println("Metrics are not served on port " + Constants.METRICS_PORT + ": " + ex.getMessage());
+		}
+	}
 
 	/**
-	 * We let clients of this agent register the MO they
-	 * need so this method does nothing
+	 * Build the apartments from the model snapshot or from defaults, one
+	 * apartment or a district of them, replay the change log, start the
+	 * history, notification rules and metrics and register the managed
+	 * objects of all of them with the server of this agent.
 	 */
 	@Override
 	protected void registerManagedObjects() {
-		appartment = new Apartment();
-		appartment.setDeviceIdMOValue("62TerenureEast");
-		appartment.setConsumptionMOValue("150");
-		appartment.setStorageMOValue("10");
-		appartment.setGenerationByHydroMOValue("120");
-		appartment.setGenerationBySolarMOValue("20");
+		List<Apartment> apartments = loadSnapshot();
+		if(apartments != null){
+			appartment = apartments.get(0);
+			if(apartmentCount > 1){
+				district = new District();
+				for (Apartment apartment : apartments) {
+					district.addApartment(apartment);
+				}
+			}
+		} else {
+			appartment = createApartment("62TerenureEast");
+			if(apartmentCount > 1){
+				district = new District();
+				district.addApartment(appartment);
+				for (int i = 2; i <= apartmentCount; i++) {
+					district.addApartment(createApartment("Apartment_"+i));
+				}
+			}
+		}
 		
-		for (int i = 1; i < 6; i++) {
-			Flat flat = new Flat();
-			flat.setDeviceIdValue("FlatNo_"+i);
-			flat.setEnergyConsumptionMOValue("30");
-			flat.setEnergyConsumptionByHeatingCoolingMOValue("15");			
-			flat.setEnergyConsumptionByLightingMOValue("5");
-			flat.setEnergyConsumptionByMiscMOValue("10");
-			appartment.addFlat(flat);
+		changeLog = openChangeLog(getApartments());
+		if(district != null){
+			long startTime = System.currentTimeMillis();
+			DistrictBalance balance = district.recompute();
+			System.out.println("Recomputed " + balance.getApartmentCount() + " apartment(s) and " + balance.getFlatCount() + " flat(s) in " + (System.currentTimeMillis() - startTime) + " ms.");
+		}
+		history = new MeasurementHistory();
+		for (Apartment apartment : getApartments()) {
+			// the first apartment is served by its own scalars and flats table as well
+			if(apartment == appartment){
+				history.track(apartment);
+			} else {
+				history.track(apartment, apartment.getApartmentNo());
+			}
+		}
+		notificationRules = createNotificationRules();
+		for (Apartment apartment : getApartments()) {
+			if(apartment == appartment){
+				notificationRules.track(apartment);
+			} else {
+				notificationRules.track(apartment, apartment.getApartmentNo());
+			}
 		}
+		metrics = createMetrics();
 		
 		try{
 			appartment.registerMOs(this);
+			if(district != null){
+				district.registerMOs(this);
+			}
+			history.registerMOs(this);
+			metrics.registerMOs(this);
 		} catch (InvalidAttributeValueException ex){
 			ex.printStackTrace();
 		} catch (DuplicateRegistrationException ex){
 			ex.printStackTrace();
 		}
 	}
+	
+	/**
+	 * Load the apartments of the model snapshot written when the agent ran
+	 * last time. A snapshot of another number of apartments is ignored.
+	 * 
+	 * @return the apartments or null if the model is to be built from defaults
+	 */
+	private List<Apartment> loadSnapshot() {
+		File file = new File(Constants.MODEL_SNAPSHOT_FILE);
+		if(!file.exists()){
+			return null;
+		}
+		try {
+			long startTime = System.currentTimeMillis();
+			List<Apartment> apartments = ModelSnapshot.load(file, measurementStore);
+			if(apartments.size() != apartmentCount){
+				if(measurementStore != null){
+					// free the records the ignored apartments hold in the shared store
+					for (Apartment apartment : apartments) {
+						apartment.removeAllFlats();
+					}
+				}
+				System.out.println("Ignoring snapshot of " + apartments.size() + " apartment(s), building " + apartmentCount + " apartment(s) from defaults.");
+				return null;
+			}
+			System.out.println("Loaded snapshot of " + apartments.size() + " apartment(s) in " + (System.currentTimeMillis() - startTime) + " ms.");
+			return apartments;
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Write the snapshot of all apartments which is loaded on next start.
+	 */
+	public synchronized void saveSnapshot() {
+		List<Apartment> apartments = getApartments();
+		try {
+			long startTime = System.currentTimeMillis();
+			long size = ModelSnapshot.write(new File(Constants.MODEL_SNAPSHOT_FILE), apartments);
+			System.out.println("Saved snapshot of " + apartments.size() + " apartment(s), " + size + " bytes in " + (System.currentTimeMillis() - startTime) + " ms.");
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Write the model snapshot at a fixed interval, so the snapshot is recent
+	 * even if the agent is not shut down cleanly.
+	 */
+	private void scheduleSnapshots() {
+		snapshotScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ModelSnapshot");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		snapshotScheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				saveSnapshot();
+			}
+		}, SNAPSHOT_INTERVAL_MILLIS, SNAPSHOT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Besides saving the agent configuration, stop the agent when the JVM is
+	 * shut down, which writes the model snapshot and closes the change log.
+	 */
+	@Override
+	protected void addShutdownHook() {
+		super.addShutdownHook();
+		shutdownHook = new Thread() {
+			public void run() {
+				EnergyMeasurementAgent.this.stop();
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+	
+	/**
+	 * Stop the agent and everything started with it, the snapshot scheduler,
+	 * the request processor, the trap receiver, the notification rules and
+	 * the metrics endpoint, then write the model snapshot and close the
+	 * change log. The ports of the agent, the trap receiver and the metrics
+	 * are released, so an agent can be started on them again in this JVM.
+	 * Stopping a stopped agent does nothing.
+	 */
+	@Override
+	public void stop() {
+		synchronized (this) {
+			if(stopped){
+				return;
+			}
+			stopped = true;
+		}
+		if(session != null){
+			super.stop();
+		}
+		if(snapshotScheduler != null){
+			snapshotScheduler.shutdownNow();
+		}
+		getRequestProcessor().shutdown();
+		if(trapReceiver != null){
+			trapReceiver.shutdown();
+		}
+		if(notificationRules != null){
+			notificationRules.shutdown();
+		}
+		if(metricsEndpoint != null){
+			metricsEndpoint.close();
+		}
+		saveSnapshot();
+		if(changeLog != null){
+			changeLog.close();
+		}
+		if(shutdownHook != null && Thread.currentThread() != shutdownHook){
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException ex) {
+				// the JVM is shutting down already
+			}
+		}
+	}
+	
+	/**
+	 * Return all apartments served, the apartments of the district in order
+	 * or the one apartment.
+	 */
+	private List<Apartment> getApartments() {
+		return district != null ? district.getApartments() : Collections.<Apartment>singletonList(appartment);
+	}
+	
+	/**
+	 * Bring the apartments back to the values they had before the agent was
+	 * stopped by replaying the change log, then log every further change. All
+	 * apartments share the same OIDs, so a change is logged under the OID of
+	 * the measurement prefixed with the number of its apartment, starting at
+	 * 1. The agent runs without a change log if it cannot be opened.
+	 */
+	private ChangeLog openChangeLog(final List<Apartment> apartments) {
+		final ChangeLog log = new ChangeLog(new File(Constants.CHANGE_LOG_DIRECTORY));
+		try {
+			log.replay(new MeasurementListener() {
+				public void measurementChanged(OID oid, int value) {
+					int apartmentNo = oid.get(0);
+					if(apartmentNo >= 1 && apartmentNo <= apartments.size()){
+						apartments.get(apartmentNo - 1).setMeasurement(new OID(oid.getValue(), 1, oid.size() - 1), value);
+					}
+				}
+			});
+			log.open();
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+		for (int i = 0; i < apartments.size(); i++) {
+			final int[] prefix = { i + 1 };
+			apartments.get(i).addMeasurementListener(new MeasurementListener() {
+				public void measurementChanged(OID oid, int value) {
+					log.measurementChanged(new OID(prefix, oid.getValue()), value);
+				}
+			});
+		}
+		return log;
+	}
+	
+	/**
+	 * Create an apartment model object with five flats and default values of
+	 * managed objects.
+	 */
+	private Apartment createApartment(String deviceId) {
+		Apartment apartment = measurementStore == null ? new Apartment() : new Apartment(measurementStore);
+		apartment.setDeviceIdMOValue(deviceId);
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		
+		for (int i = 1; i < 6; i++) {
+			Flat flat = new Flat();
+			flat.setDeviceIdValue("FlatNo_"+i);
+			flat.setEnergyConsumptionMOValue(30);
+			flat.setEnergyConsumptionByHeatingCoolingMOValue(15);			
+			flat.setEnergyConsumptionByLightingMOValue(5);
+			flat.setEnergyConsumptionByMiscMOValue(10);
+			apartment.addFlat(flat);
+		}
+		return apartment;
+	}
 
-	/*
-	 * Empty implementation
+	/**
+	 * Send the notifications of agent as SNMPv2c traps to the default
+	 * notification target. Further targets get the same tag, so they receive
+	 * the notifications as well.
 	 */
 	@Override
 	protected void addNotificationTargets(SnmpTargetMIB targetMIB,
 			SnmpNotificationMIB notificationMIB) {
+		targetMIB.addDefaultTDomains();
+		targetMIB.addTargetParams(new OctetString("v2c"), // the name of parameters
+				MessageProcessingModel.MPv2c, // the message processing model
+				SecurityModel.SECURITY_MODEL_SNMPv2c, // the security model
+				new OctetString("cpublic"), // the security name, mapped to the community
+				SecurityLevel.NOAUTH_NOPRIV, // the security level
+				StorageType.permanent); // the storage type
+		notificationMIB.addNotifyEntry(new OctetString("default"), // the name of entry
+				new OctetString("notify"), // the tag of targets
+				SnmpNotificationMIB.SnmpNotifyTypeEnum.trap, // the type of notification
+				StorageType.permanent); // the storage type
+		addNotificationTarget(targetMIB, "default", Constants.NOTIFICATION_TARGET);
+	}
+	
+	/**
+	 * Register a further address the notifications of agent are sent to, a
+	 * target of same name is replaced. Managers can register targets by SET
+	 * requests to snmpTargetAddrTable as well.
+	 * 
+	 * @param name
+	 *            the name of target
+	 * @param address
+	 *            the host and port of target, e.g. 127.0.0.1/2162
+	 */
+	public void addNotificationTarget(String name, String address) {
+		addNotificationTarget(getSnmpTargetMIB(), name, address);
+	}
+	
+	private static void addNotificationTarget(SnmpTargetMIB targetMIB, String name, String address) {
+		UdpAddress udpAddress = new UdpAddress(address);
+		targetMIB.addTargetAddress(new OctetString(name), // the name of target
+				TransportDomains.transportDomainUdpIpv4, // the transport domain
+				new OctetString(udpAddress.getValue()), // the address
+				200, // the timeout in 1/100 seconds
+				1, // the number of retries
+				new OctetString("notify"), // the tag list
+				new OctetString("v2c"), // the name of parameters
+				StorageType.permanent); // the storage type
 	}
 	
 
@@ -151,6 +756,12 @@ public class EnergyMeasurementAgent extends BaseAgent {
 				new OctetString(), 
 				VacmMIB.vacmViewIncluded,//  indicates whether the view defined by subtree and mask is included or excluded, here included
 				StorageType.nonVolatile); // the StorageType for this access entry.
+		
+		vacm.addViewTreeFamily(new OctetString("fullNotifyView"), // the view name.
+				new OID("1.3"), // the subtree OID.
+				new OctetString(), 
+				VacmMIB.vacmViewIncluded,//  indicates whether the view defined by subtree and mask is included or excluded, here included
+				StorageType.nonVolatile); // the StorageType for this access entry.
 	}
 	
 	/**
@@ -170,6 +781,8 @@ public class EnergyMeasurementAgent extends BaseAgent {
 		run();
 		sendColdStartNotification();
 		registerTraps();
+		startMetricsEndpoint();
+		scheduleSnapshots();
 	}
 	
 	
@@ -227,15 +840,43 @@ public class EnergyMeasurementAgent extends BaseAgent {
 	}
 
 	public static void main(String[] args) throws IOException, InterruptedException {
-		if(args.length != 1){
-			System.out.println("Usage: java EnergyMeasurementAgent <private_ip_address/port>");
+		if(args.length < 1 || args.length > 5){
+			System.out.println("Usage: java EnergyMeasurementAgent <private_ip_address/port> [number_of_apartments] [workers_per_queue|virtual] [heap|offheap] [trap_coalescing_window_ms]");
 			return;
 		}
 		String ipAndPort = args[0];
+		int apartmentCount = 1;
+		if(args.length >= 2){
+			apartmentCount = Integer.parseInt(args[1]);
+		}
+		int workers = Constants.REQUEST_WORKERS;
+		boolean virtualThreads = false;
+		if(args.length >= 3){
+			if("virtual".equals(args[2])){
+				virtualThreads = true;
+			} else {
+				workers = Integer.parseInt(args[2]);
+			}
+		}
 		
-		EnergyMeasurementAgent agent = new EnergyMeasurementAgent(ipAndPort);
+		long startTime = System.currentTimeMillis();
+		MeasurementStore measurementStore = null;
+		if(args.length >= 4){
+			if("offheap".equals(args[3])){
+				measurementStore = new OffHeapMeasurementStore(Constants.RECENT_MEASUREMENT_VALUES);
+			} else if(!"heap".equals(args[3])){
+				System.out.println("Unknown measurement store " + args[3] + ", only heap or offheap can be given.");
+				return;
+			}
+		}
+		EnergyMeasurementAgent agent = new EnergyMeasurementAgent(ipAndPort, apartmentCount,
+				createRequestProcessor(workers, virtualThreads), new TrieMOServer(), measurementStore);
+		if(args.length == 5){
+			agent.setTrapCoalescingWindowMillis(Long.parseLong(args[4]));
+		}
 		agent.start();
-		System.out.println("Agent running...");
+		System.out.println("Agent running with " + apartmentCount + " apartment(s), started in " + (System.currentTimeMillis() - startTime) + " ms...");
+		System.out.println(agent.getRequestProcessor());
 		while(true) {			
 			Thread.sleep(5000);
 		}
@@ -4,9 +4,20 @@ import java.awt.print.Book;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
 import org.snmp4j.CommunityTarget;
 import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
@@ -17,14 +28,19 @@ import org.snmp4j.event.ResponseListener;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.smi.Address;
 import org.snmp4j.smi.GenericAddress;
+import org.snmp4j.smi.Integer32;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
 import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 import org.snmp4j.util.DefaultPDUFactory;
 import org.snmp4j.util.TableEvent;
+import org.snmp4j.util.TableListener;
 import org.snmp4j.util.TableUtils;
 
+import edu.tcd.nds.nwmgmt.snmp.traps.NotificationEmitter;
 import edu.tcd.nds.nwmgmt.snmp.traps.SolarEnergyGenerationTrapSender;
 import edu.tcd.nds.nwmgmt.utils.Constants;
 import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
@@ -35,14 +51,50 @@ import edu.tcd.nds.nwmgmt.utils.PrintStateOfManagedObject;
  * objects. This class runs on same host and port as Agent however it just
  * listen to that port and does not bind like agent class.
  * 
+ * Besides the blocking methods the manager offers non blocking get, set and
+ * table walk methods returning {@link CompletableFuture}. Only a bounded
+ * number of these requests is in flight towards one agent at a time, the
+ * others wait in a bounded queue without blocking the caller.
+ * 
+ * An optional {@link ReadCache} serves repeated GETs and table walks without
+ * contacting the agent. It is invalidated by the SETs and traps this manager
+ * sends and by the traps it receives.
+ * 
  * @author Sachin Hadke and Farhan Ahmad
  *
  */
 public class EnergyMeasurementManager {
+	public static final int DEFAULT_MAX_REPETITIONS = 10;
+	public static final int DEFAULT_MAX_REQUESTS_IN_FLIGHT = 32;
+	public static final int MAX_QUEUED_REQUESTS = 1024;
+	
+	// the apartment scalars .1.3.6.1.2.1.2.x.1 share the subtree of their group
+	private static final OID APARTMENT_SUBTREE = new OID(MOIdentifiers.APPT_IDENTIFIER.getValue(), 0,
+			MOIdentifiers.APPT_IDENTIFIER.size() - 2);
+	private static final OID[] APARTMENT_OIDS = new OID[] {
+			MOIdentifiers.APPT_IDENTIFIER,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION,
+			MOIdentifiers.APPT_ENERGY_GENERATION,
+			MOIdentifiers.APPT_ENERGY_STORAGE,
+			MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+			MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_HEATING_COOLING,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_LIGHTING,
+			MOIdentifiers.APPT_ENERGY_CONSUMPTION_BY_MISC };
+	public static final OID[] FLAT_COLUMN_OIDS = new OID[] {
+			new OID(MOIdentifiers.FLAT_BASE_OID + ".1"),
+			new OID(MOIdentifiers.FLAT_BASE_OID + ".2"),
+			new OID(MOIdentifiers.FLAT_BASE_OID + ".3"),
+			new OID(MOIdentifiers.FLAT_BASE_OID + ".4"),
+			new OID(MOIdentifiers.FLAT_BASE_OID + ".5") };
 
-	private String address;
+	private Target target;
 	private Snmp snmp;
-	
+	private SolarEnergyGenerationTrapSender trapSender;
+	private volatile int maxRequestsInFlight = DEFAULT_MAX_REQUESTS_IN_FLIGHT;
+	private final ConcurrentMap<Address, RequestWindow> requestWindows = new ConcurrentHashMap<Address, RequestWindow>();
+	private volatile ReadCache readCache;
+	private boolean trapInvalidation;
 
 	/**
 	 * Construct the manager object with host and port given in parameter
@@ -51,7 +103,7 @@ public class EnergyMeasurementManager {
 	 *            the host and port where this manager object will listen
 	 */
 	public EnergyMeasurementManager(String address) {
-		this.address = address;
+		this.target = createTarget(address);
 		try {
 			start();
 		} catch (IOException e) {
@@ -61,11 +113,18 @@ public class EnergyMeasurementManager {
 
 	/**
 	 * Since snmp4j relies on asynch req/resp we need a listener for responses
-	 * which should be closed
+	 * which should be closed. Requests still queued for a place in the request
+	 * window fail, requests in flight fail as the session is closed.
 	 * 
 	 * @throws IOException throws {@link IOException} if IO operation fail
 	 */
 	public void stop() throws IOException {
+		// close windows first, so the session does not send queued requests
+		// while it fails the requests in flight
+		for (RequestWindow window : requestWindows.values()) {
+			window.close();
+		}
+		trapSender.close();
 		snmp.close();
 	}
 
@@ -80,6 +139,8 @@ public class EnergyMeasurementManager {
 		TransportMapping transport = new DefaultUdpTransportMapping();
 		snmp = new Snmp(transport);
 		transport.listen();
+		trapSender = new SolarEnergyGenerationTrapSender();
+		trapSender.setSnmp(snmp);
 	}
 	
 	/**
@@ -113,8 +174,46 @@ public class EnergyMeasurementManager {
 		inputParam.setVariable(new OctetString(value));
 		pdu.add(inputParam);
 		pdu.setType(PDU.SET);
+		invalidate(getTarget().getAddress(), pdu);
 		ResponseEvent event = snmp.send(pdu, getTarget(), null);
 //		System.out.println("event.getResponse() "+event.getResponse());
+		invalidate(getTarget().getAddress(), pdu);
+	}
+
+	/**
+	 * Return the value of managed object as int. The OID will decide which
+	 * managed object to look, the managed object must hold a numeric value.
+	 * 
+	 * @param oid
+	 *            the managed object to look for
+	 * @return the value of managed object
+	 * @throws IOException
+	 *             if anything goes wrong while performing IO operation
+	 */
+	public int getAsInt(OID oid) throws IOException {
+		ResponseEvent event = get(new OID[]{oid});
+		return event.getResponse().get(0).getVariable().toInt();
+	}
+
+	/**
+	 * This method help in setting numeric value of given managed object. The
+	 * value is sent as {@link Integer32} so that it matches the syntax of
+	 * energy measurement managed objects.
+	 * 
+	 * @param oid
+	 *            the managed object whoes value to set
+	 * @param value
+	 *            the value of managed object
+	 * @throws IOException
+	 *             if anything goes wrong while performing IO operation
+	 */
+	public void setAsInt(OID oid, int value) throws IOException {
+		PDU pdu = new PDU();
+		pdu.add(new VariableBinding(oid, new Integer32(value)));
+		pdu.setType(PDU.SET);
+		invalidate(getTarget().getAddress(), pdu);
+		snmp.send(pdu, getTarget(), null);
+		invalidate(getTarget().getAddress(), pdu);
 	}
 
 	/**
@@ -129,8 +228,16 @@ public class EnergyMeasurementManager {
 	 *             if anything goes wrong while performing IO operation
 	 */
 	public void getAsString(OID oids,ResponseListener listener) {
+		PDU request = getPDU(new OID[]{oids});
+		PDU cached = getCachedResponse(getTarget(), request);
+		if (cached != null) {
+			listener.onResponse(new ResponseEvent(this, getTarget().getAddress(), request, cached, null));
+			return;
+		}
 		try {
-			snmp.send(getPDU(new OID[]{oids}), getTarget(),null, listener);
+			final ReadCache cache = readCache;
+			final long generation = cache == null ? 0 : cache.getGeneration();
+			snmp.send(request, getTarget(), null, cache == null ? listener : new CachingResponseListener(cache, generation, listener));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -148,15 +255,38 @@ public class EnergyMeasurementManager {
 	}
 	
 	public ResponseEvent get(OID oids[]) throws IOException {
-	   ResponseEvent event = snmp.send(getPDU(oids), getTarget(), null);
+	   PDU request = getPDU(oids);
+	   PDU cached = getCachedResponse(getTarget(), request);
+	   if (cached != null) {
+		   return new ResponseEvent(this, getTarget().getAddress(), request, cached, null);
+	   }
+	   ReadCache cache = readCache;
+	   long generation = cache == null ? 0 : cache.getGeneration();
+	   ResponseEvent event = snmp.send(request, getTarget(), null);
 	   if(event != null) {
+		   cacheResponse(cache, generation, event);
 		   return event;
 	   }
 	   throw new RuntimeException("GET timed out");	  
 	}
 	
 	private Target getTarget() {
+		return target;
+	}
+
+	/**
+	 * Build the target of an agent once so that it can be reused for every
+	 * request sent to that agent.
+	 * 
+	 * @param address
+	 *            the host and port of agent
+	 * @return the target of agent
+	 */
+	public static Target createTarget(String address) {
 		Address targetAddress = GenericAddress.parse(address);
+		if (targetAddress == null) {
+			throw new IllegalArgumentException("Invalid agent address " + address);
+		}
 		CommunityTarget target = new CommunityTarget();
 		target.setCommunity(new OctetString(Constants.COMMUNITY));
 		target.setAddress(targetAddress);
@@ -170,29 +300,622 @@ public class EnergyMeasurementManager {
 	 * Normally this would return domain objects or something else than this...
 	 */
 	public List<List<String>> getTableAsStrings(OID[] oids) {
-		TableUtils tUtils = new TableUtils(snmp, new DefaultPDUFactory());
-		
-		@SuppressWarnings("unchecked") 
-			List<TableEvent> events = tUtils.getTable(getTarget(), oids, null, null);
-		
-		List<List<String>> list = new ArrayList<List<String>>();
-		for (TableEvent event : events) {
-			if(event.isError()) {
-				throw new RuntimeException(event.getErrorMessage());
+		final List<List<String>> list = new ArrayList<List<String>>();
+		walkTable(oids, DEFAULT_MAX_REPETITIONS, 0, new TableRowHandler() {
+			public boolean onRow(TableRow row) {
+				List<String> strList = new ArrayList<String>();
+				list.add(strList);
+				for (int i = 0; i < row.size(); i++) {
+					strList.add(row.getValue(i).toString());
+				}
+				return true;
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Walk the table using GETBULK requests and hand every row to given
+	 * handler as soon as it arrives, the rows are not collected in memory.
+	 * This method returns when the walk is finished, the handler stopped it
+	 * or the row limit is reached.
+	 * 
+	 * @param oids
+	 *            the column OIDs of the table to walk
+	 * @param maxRepetitions
+	 *            the number of rows requested in one GETBULK PDU
+	 * @param rowLimit
+	 *            the maximum number of rows to walk, 0 for no limit
+	 * @param handler
+	 *            the callback which receives the rows
+	 * @return the number of rows handed to the handler
+	 */
+	public int walkTable(OID[] oids, int maxRepetitions, int rowLimit, TableRowHandler handler) {
+		return await(walkTableAsync(getTarget(), oids, maxRepetitions, rowLimit, handler));
+	}
+
+	/**
+	 * Send a GET request without blocking for the response. The returned
+	 * future is completed with the response PDU on the listener thread of
+	 * snmp4j, therefore dependent actions which may block should use the
+	 * async variants of {@link CompletableFuture}.
+	 * 
+	 * @param target
+	 *            the agent to send request to
+	 * @param oids
+	 *            the managed objects to look for
+	 * @return the future response PDU
+	 */
+	public CompletableFuture<PDU> getAsync(final Target target, OID... oids) {
+		final PDU request = getPDU(oids);
+		PDU cached = getCachedResponse(target, request);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		final ReadCache cache = readCache;
+		if (cache == null) {
+			return sendAsync(request, target);
+		}
+		final long generation = cache.getGeneration();
+		return sendAsync(request, target).thenApply(new Function<PDU, PDU>() {
+			public PDU apply(PDU response) {
+				cacheResponse(cache, generation, new ResponseEvent(this, target.getAddress(), request, response, null));
+				return response;
+			}
+		});
+	}
+
+	public CompletableFuture<PDU> getAsync(OID... oids) {
+		return getAsync(getTarget(), oids);
+	}
+
+	/**
+	 * Send a SET request without blocking for the response.
+	 * 
+	 * @param target
+	 *            the agent to send request to
+	 * @param bindings
+	 *            the managed objects and their new values
+	 * @return the future response PDU
+	 * @see #getAsync(Target, OID...)
+	 */
+	public CompletableFuture<PDU> setAsync(final Target target, VariableBinding... bindings) {
+		final PDU pdu = new PDU();
+		for (VariableBinding binding : bindings) {
+			pdu.add(binding);
+		}
+		pdu.setType(PDU.SET);
+		invalidate(target.getAddress(), pdu);
+		return sendAsync(pdu, target).whenComplete(new BiConsumer<PDU, Throwable>() {
+			public void accept(PDU response, Throwable failure) {
+				// a GET sent while the SET was in flight may have cached the old value
+				invalidate(target.getAddress(), pdu);
+			}
+		});
+	}
+
+	public CompletableFuture<PDU> setAsync(VariableBinding... bindings) {
+		return setAsync(getTarget(), bindings);
+	}
+
+	/**
+	 * Walk the table without blocking the caller. The rows are handed to
+	 * given handler on the listener thread and the returned future is
+	 * completed with number of rows once the walk is finished.
+	 * 
+	 * If the manager has a read cache and the table is cached, the rows are
+	 * handed to the handler on the calling thread instead. A walk without row
+	 * limit which the handler did not stop caches the table.
+	 * 
+	 * @see #walkTable(OID[], int, int, TableRowHandler)
+	 */
+	public CompletableFuture<Integer> walkTableAsync(Target target, OID[] oids, int maxRepetitions, int rowLimit, TableRowHandler handler) {
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		ReadCache cache = readCache;
+		if (cache != null) {
+			List<TableRow> rows = cache.getTable(target.getAddress(), oids);
+			if (rows != null) {
+				int rowCount = 0;
+				for (TableRow row : rows) {
+					rowCount++;
+					if (!handler.onRow(row) || (rowLimit > 0 && rowCount >= rowLimit)) {
+						break;
+					}
+				}
+				future.complete(rowCount);
+				return future;
 			}
-			List<String> strList = new ArrayList<String>();
-			list.add(strList);
-			for(VariableBinding vb: event.getColumns()) {
-				strList.add(vb.getVariable().toString());
+			if (rowLimit <= 0) {
+				handler = new CachingRowHandler(cache, target.getAddress(), oids, handler, future);
 			}
 		}
-		return list;
+		final RequestWindow window = getRequestWindow(target);
+		final Target walkTarget = target;
+		final OID[] walkOids = oids;
+		final int walkMaxRepetitions = maxRepetitions;
+		final TableWalkListener listener = new TableWalkListener(rowLimit, handler, window, future);
+		window.submit(new Runnable() {
+			public void run() {
+				TableUtils tUtils = new TableUtils(snmp, new DefaultPDUFactory(PDU.GETBULK));
+				tUtils.setMaxNumRowsPerPDU(walkMaxRepetitions);
+				try {
+					tUtils.getTable(walkTarget, walkOids, listener, null, null, null);
+				} catch (RuntimeException ex) {
+					window.release();
+					future.completeExceptionally(ex);
+				}
+			}
+		}, future);
+		return future;
+	}
+
+	public CompletableFuture<Integer> walkTableAsync(OID[] oids, int maxRepetitions, int rowLimit, TableRowHandler handler) {
+		return walkTableAsync(getTarget(), oids, maxRepetitions, rowLimit, handler);
+	}
+
+	/**
+	 * Cache the values this manager reads, null turns caching off. Traps
+	 * received by this manager invalidate the cached values of their
+	 * variable bindings from then on.
+	 * 
+	 * @param readCache
+	 *            the cache to read through
+	 */
+	public synchronized void setReadCache(ReadCache readCache) {
+		this.readCache = readCache;
+		if (readCache != null && !trapInvalidation) {
+			snmp.addCommandResponder(new CommandResponder() {
+				public void processPdu(CommandResponderEvent event) {
+					PDU pdu = event.getPDU();
+					if (pdu != null && (pdu.getType() == PDU.TRAP || pdu.getType() == PDU.NOTIFICATION
+							|| pdu.getType() == PDU.INFORM)) {
+						// the trap may come from another port of the agent or
+						// be forwarded, invalidate its OIDs of all agents
+						invalidate(null, pdu);
+					}
+				}
+			});
+			trapInvalidation = true;
+		}
+	}
+
+	public ReadCache getReadCache() {
+		return readCache;
+	}
+
+	/**
+	 * Receive traps on given address as well, so that they invalidate the
+	 * read cache. Agents send their traps to this address.
+	 * 
+	 * @param address
+	 *            the local host and port to receive traps on
+	 * @throws IOException
+	 *             if the address cannot be bound
+	 */
+	public void listenForTraps(String address) throws IOException {
+		TransportMapping transport = new DefaultUdpTransportMapping(new UdpAddress(address));
+		snmp.addTransportMapping(transport);
+		transport.listen();
+	}
+
+	/**
+	 * Drop the cached values of given managed object or subtree, e.g. when
+	 * a trap received elsewhere reports a change.
+	 * 
+	 * @param address
+	 *            the agent whose values changed, null for all agents
+	 * @param oid
+	 *            the managed object or subtree which changed
+	 */
+	public void invalidate(Address address, OID oid) {
+		ReadCache cache = readCache;
+		if (cache != null) {
+			cache.invalidate(address, oid);
+		}
+	}
+
+	private void invalidate(Address address, PDU pdu) {
+		for (int i = 0; i < pdu.size(); i++) {
+			invalidate(address, pdu.get(i).getOid());
+		}
+	}
+
+	/**
+	 * Return a response built from cached values if all OIDs of the GET
+	 * request are cached, null otherwise.
+	 */
+	private PDU getCachedResponse(Target target, PDU request) {
+		ReadCache cache = readCache;
+		if (cache == null) {
+			return null;
+		}
+		OID[] oids = new OID[request.size()];
+		for (int i = 0; i < oids.length; i++) {
+			oids[i] = request.get(i).getOid();
+		}
+		Variable[] values = cache.get(target.getAddress(), oids);
+		if (values == null) {
+			return null;
+		}
+		PDU response = new PDU();
+		response.setType(PDU.RESPONSE);
+		for (int i = 0; i < oids.length; i++) {
+			response.add(new VariableBinding(oids[i], values[i]));
+		}
+		return response;
+	}
+
+	/**
+	 * Cache the values of a GET response, unless it is an error or reports a
+	 * missing managed object.
+	 */
+	private static void cacheResponse(ReadCache cache, long generation, ResponseEvent event) {
+		PDU response = event.getResponse();
+		if (cache == null || response == null || response.getErrorStatus() != PDU.noError
+				|| response.size() != event.getRequest().size()) {
+			return;
+		}
+		OID[] oids = new OID[response.size()];
+		Variable[] values = new Variable[response.size()];
+		for (int i = 0; i < oids.length; i++) {
+			VariableBinding binding = response.get(i);
+			if (binding.isException()) {
+				return;
+			}
+			oids[i] = binding.getOid();
+			values[i] = binding.getVariable();
+		}
+		cache.put(event.getPeerAddress(), oids, values, generation);
+	}
+
+	/**
+	 * Response listener that caches the response before handing it on.
+	 */
+	private static class CachingResponseListener implements ResponseListener {
+		private final ReadCache cache;
+		private final long generation;
+		private final ResponseListener listener;
+
+		CachingResponseListener(ReadCache cache, long generation, ResponseListener listener) {
+			this.cache = cache;
+			this.generation = generation;
+			this.listener = listener;
+		}
+
+		public void onResponse(ResponseEvent event) {
+			cacheResponse(cache, generation, event);
+			listener.onResponse(event);
+		}
+	}
+
+	/**
+	 * Row handler that collects the rows of a walk and caches them as table
+	 * once the walk is complete. The table is not cached if the handler
+	 * stopped the walk or it failed.
+	 */
+	private static class CachingRowHandler implements TableRowHandler {
+		private final ReadCache cache;
+		private final Address address;
+		private final OID[] columns;
+		private final TableRowHandler handler;
+		private final List<TableRow> rows = new ArrayList<TableRow>();
+		private boolean stopped;
+
+		CachingRowHandler(final ReadCache cache, final Address address, final OID[] columns, TableRowHandler handler,
+				CompletableFuture<Integer> future) {
+			this.cache = cache;
+			this.address = address;
+			this.columns = columns;
+			this.handler = handler;
+			final long generation = cache.getGeneration();
+			future.thenAccept(new Consumer<Integer>() {
+				public void accept(Integer rowCount) {
+					synchronized (CachingRowHandler.this) {
+						if (!stopped) {
+							cache.putTable(address, columns, rows, generation);
+						}
+					}
+				}
+			});
+		}
+
+		public synchronized boolean onRow(TableRow row) {
+			if (rows.size() >= cache.getMaxValues()) {
+				// too large to be cached, stop collecting
+				stopped = true;
+				rows.clear();
+			} else if (!stopped) {
+				rows.add(row);
+			}
+			if (!handler.onRow(row)) {
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Set the number of requests that may be outstanding at once towards one
+	 * agent. Once this window is full, further requests are queued and sent
+	 * in order as responses or timeouts free places in the window. Once
+	 * {@link #MAX_QUEUED_REQUESTS} are queued, a further request fails at
+	 * once. The new size applies to the requests sent from then on.
+	 * 
+	 * @param maxRequestsInFlight
+	 *            the window size per agent
+	 */
+	public void setMaxRequestsInFlight(int maxRequestsInFlight) {
+		if (maxRequestsInFlight < 1) {
+			throw new IllegalArgumentException("The number of requests in flight must be > 0");
+		}
+		this.maxRequestsInFlight = maxRequestsInFlight;
+	}
+
+	/**
+	 * @return the number of requests currently waiting for a response from
+	 *         given agent
+	 */
+	public int getRequestsInFlight(Target target) {
+		RequestWindow window = requestWindows.get(target.getAddress());
+		return window == null ? 0 : window.getInFlight();
+	}
+
+	/**
+	 * @return the number of requests currently queued until a place in the
+	 *         request window of given agent is free
+	 */
+	public int getRequestsQueued(Target target) {
+		RequestWindow window = requestWindows.get(target.getAddress());
+		return window == null ? 0 : window.getQueued();
+	}
+
+	private RequestWindow getRequestWindow(Target target) {
+		RequestWindow window = requestWindows.get(target.getAddress());
+		if (window == null) {
+			RequestWindow newWindow = new RequestWindow(target.getAddress());
+			window = requestWindows.putIfAbsent(target.getAddress(), newWindow);
+			if (window == null) {
+				window = newWindow;
+			}
+		}
+		return window;
+	}
+
+	private CompletableFuture<PDU> sendAsync(final PDU pdu, final Target target) {
+		final CompletableFuture<PDU> future = new CompletableFuture<PDU>();
+		final RequestWindow window = getRequestWindow(target);
+		window.submit(new Runnable() {
+			public void run() {
+				send(pdu, target, window, future);
+			}
+		}, future);
+		return future;
+	}
+
+	private void send(PDU pdu, Target target, final RequestWindow window, final CompletableFuture<PDU> future) {
+		try {
+			snmp.send(pdu, target, null, new ResponseListener() {
+				public void onResponse(ResponseEvent event) {
+					// always cancel async request when response has been received
+					// otherwise a memory leak is created
+					snmp.cancel(event.getRequest(), this);
+					window.release();
+					PDU response = event.getResponse();
+					if (event.getError() != null) {
+						future.completeExceptionally(event.getError());
+					} else if (response == null) {
+						future.completeExceptionally(new TimeoutException(PDU.getTypeString(event.getRequest().getType()) + " timed out"));
+					} else if (response.getErrorStatus() != PDU.noError) {
+						future.completeExceptionally(new IOException(response.getErrorStatusText()));
+					} else {
+						future.complete(response);
+					}
+				}
+			});
+		} catch (IOException ex) {
+			window.release();
+			future.completeExceptionally(ex);
+		}
+	}
+
+	/**
+	 * The requests in flight towards one agent and the requests queued until
+	 * a place in the window is free. A request leaving the window hands its
+	 * place to the oldest queued request, which is then sent on the thread
+	 * releasing the place.
+	 */
+	private class RequestWindow {
+		private final Address address;
+		private final ArrayDeque<Runnable> queued = new ArrayDeque<Runnable>();
+		private final ArrayDeque<CompletableFuture<?>> queuedFutures = new ArrayDeque<CompletableFuture<?>>();
+		private int inFlight;
+		private boolean closed;
+
+		RequestWindow(Address address) {
+			this.address = address;
+		}
+
+		/**
+		 * Send the request now if the window has room, queue it otherwise or
+		 * fail given future if the queue is full or the manager is stopped.
+		 */
+		void submit(Runnable request, CompletableFuture<?> future) {
+			synchronized (this) {
+				if (closed) {
+					future.completeExceptionally(new IOException("Manager is stopped"));
+					return;
+				}
+				if (inFlight >= maxRequestsInFlight) {
+					if (queued.size() >= MAX_QUEUED_REQUESTS) {
+						future.completeExceptionally(new IOException("Too many requests queued for " + address));
+					} else {
+						queued.add(request);
+						queuedFutures.add(future);
+					}
+					return;
+				}
+				inFlight++;
+			}
+			request.run();
+		}
+
+		/**
+		 * Free the place of a request which got its response, timed out or
+		 * could not be sent.
+		 */
+		void release() {
+			Runnable next;
+			synchronized (this) {
+				// the window may have been made smaller meanwhile
+				if (closed || inFlight > maxRequestsInFlight || queued.isEmpty()) {
+					inFlight--;
+					return;
+				}
+				next = queued.poll();
+				queuedFutures.poll();
+			}
+			next.run();
+		}
+
+		/**
+		 * Refuse further requests and fail the queued ones.
+		 */
+		void close() {
+			ArrayDeque<CompletableFuture<?>> failed;
+			synchronized (this) {
+				closed = true;
+				queued.clear();
+				failed = new ArrayDeque<CompletableFuture<?>>(queuedFutures);
+				queuedFutures.clear();
+			}
+			for (CompletableFuture<?> future : failed) {
+				future.completeExceptionally(new IOException("Manager is stopped"));
+			}
+		}
+
+		synchronized int getInFlight() {
+			return inFlight;
+		}
+
+		synchronized int getQueued() {
+			return queued.size();
+		}
+	}
+
+	/**
+	 * Wait for the future and rethrow its failure as runtime exception, the
+	 * way synchronous methods of this class report failures.
+	 */
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause().getMessage(), ex.getCause());
+		}
+	}
+
+	/**
+	 * Fetch the apartment managed objects and its flats table as one
+	 * immutable snapshot. All apartment scalars are fetched with a single GET
+	 * PDU which is sent before the flats table walk starts, so both run at the
+	 * same time and the snapshot costs about one table walk.
+	 * 
+	 * @return the snapshot of apartment
+	 * @throws IOException
+	 *             if anything goes wrong while performing IO operation
+	 */
+	public ApartmentSnapshot getApartmentSnapshot() throws IOException {
+		long startTime = System.nanoTime();
+		CompletableFuture<PDU> scalars = getAsync(APARTMENT_OIDS);
+
+		final List<TableRow> flats = new ArrayList<TableRow>();
+		walkTable(FLAT_COLUMN_OIDS, DEFAULT_MAX_REPETITIONS, 0, new TableRowHandler() {
+			public boolean onRow(TableRow row) {
+				flats.add(row);
+				return true;
+			}
+		});
+
+		PDU response = await(scalars);
+		return new ApartmentSnapshot(
+				response.get(0).getVariable().toString(),
+				response.get(1).getVariable().toInt(),
+				response.get(2).getVariable().toInt(),
+				response.get(3).getVariable().toInt(),
+				response.get(4).getVariable().toInt(),
+				response.get(5).getVariable().toInt(),
+				response.get(6).getVariable().toInt(),
+				response.get(7).getVariable().toInt(),
+				response.get(8).getVariable().toInt(),
+				flats,
+				System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Table listener that converts each {@link TableEvent} to a typed
+	 * {@link TableRow} and stops the walk once the row limit is reached. The
+	 * walk holds one place in request window of the agent until it finishes.
+	 */
+	private class TableWalkListener implements TableListener {
+		private final int rowLimit;
+		private final TableRowHandler handler;
+		private final RequestWindow window;
+		private final CompletableFuture<Integer> future;
+		private int rowCount;
+		private TableEvent error;
+
+		TableWalkListener(int rowLimit, TableRowHandler handler, RequestWindow window, CompletableFuture<Integer> future) {
+			this.rowLimit = rowLimit;
+			this.handler = handler;
+			this.window = window;
+			this.future = future;
+		}
+
+		public synchronized boolean next(TableEvent event) {
+			if (event.isError()) {
+				error = event;
+				return false;
+			}
+			VariableBinding[] columns = event.getColumns();
+			Variable[] values = new Variable[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				values[i] = columns[i] == null ? null : columns[i].getVariable();
+			}
+			rowCount++;
+			return handler.onRow(new TableRow(event.getIndex(), values)) && (rowLimit <= 0 || rowCount < rowLimit);
+		}
+
+		public synchronized void finished(TableEvent event) {
+			if (future.isDone()) {
+				return;
+			}
+			window.release();
+			if (event.isError()) {
+				error = event;
+			}
+			if (error != null && error.getStatus() == TableEvent.STATUS_TIMEOUT) {
+				future.completeExceptionally(new TimeoutException(error.getErrorMessage()));
+			} else if (error != null) {
+				future.completeExceptionally(new IOException(error.getErrorMessage()));
+			} else {
+				future.complete(rowCount);
+			}
+		}
+
+		public boolean isFinished() {
+			return future.isDone();
+		}
 	}
 	
 	/**
 	 * A trap sender for solar energy generation managed object. This method
 	 * should be called to send a trap when solar energy generation value is
-	 * changed.
+	 * changed. The trap is sent with the other traps of this manager within
+	 * the flush interval of its emitter.
 	 * 
 	 * @param oid
 	 *            the solar energy generation managed object OID. Please refer
@@ -202,11 +925,23 @@ public class EnergyMeasurementManager {
 	 *            handled by agent which has access to all updated values of
 	 *            managed object, this value need not to be accurate however
 	 *            should not be null as well
+	 * @see NotificationEmitter
+	 */
+	public void sendSolarEnergyGenerationTrap(OID oid, int value){
+		// the agent adjusts the other generation and storage values of
+		// apartment as well when it handles the trap, which the district
+		// apartment table shows too
+		invalidate(null, APARTMENT_SUBTREE);
+		invalidate(null, MOIdentifiers.DISTRICT_APPT_TABLE_OID);
+		trapSender.sendSolarEnergyGenerationTrap(oid, value);
+	}
+
+	/**
+	 * Return the sender of solar energy generation traps, whose emitter
+	 * reports how the traps were batched.
 	 */
-	public void sendSolarEnergyGenerationTrap(OID oid, String value){
-		SolarEnergyGenerationTrapSender sender = new SolarEnergyGenerationTrapSender();
-		sender.setSnmp(snmp);
-		sender.sendSolarEnergyGenerationTrap(oid, value);
+	public SolarEnergyGenerationTrapSender getTrapSender() {
+		return trapSender;
 	}
 	
 	public static String extractSingleString(ResponseEvent event) {
@@ -221,8 +956,8 @@ public class EnergyMeasurementManager {
 	}
 	
 	public static void main(String args[]) {
-		if (args.length != 1) {
-			System.out.println("Usage: java EnergyMeasurementManager <private_ip_address/port>");
+		if (args.length < 1 || args.length > 2) {
+			System.out.println("Usage: java EnergyMeasurementManager <private_ip_address/port> [cache_ttl_millis]");
 			return;
 		}
 		
@@ -230,6 +965,20 @@ public class EnergyMeasurementManager {
 			String ipAndPort = args[0];
 			BufferedReader brConsoleReader = new BufferedReader(new InputStreamReader(System.in));
 			EnergyMeasurementManager manager = new EnergyMeasurementManager(ipAndPort);
+			if (args.length == 2) {
+				long timeToLive = Long.parseLong(args[1]);
+				ReadCache cache = new ReadCache(ReadCache.DEFAULT_MAX_VALUES, timeToLive);
+				// the apartment identifier does not change while the agent runs
+				cache.setTimeToLive(MOIdentifiers.APPT_IDENTIFIER, 10 * timeToLive);
+				manager.setReadCache(cache);
+				System.out.println("Caching values for " + timeToLive + " ms");
+				// the notifications of agent invalidate the changed values
+				try {
+					manager.listenForTraps(Constants.NOTIFICATION_TARGET);
+				} catch (IOException ex) {
+					System.out.println("Not receiving notifications on " + Constants.NOTIFICATION_TARGET + ": " + ex.getMessage());
+				}
+			}
 
 			int input = 0;
 			while (input != 3) {
@@ -258,41 +1007,25 @@ public class EnergyMeasurementManager {
 	}
 	
 	private void print() throws Exception {
-    	PrintStateOfManagedObject printer = new PrintStateOfManagedObject();
-    	
-		// get default value
-		 String appartmentIdStr = getAsString(new OID(MOIdentifiers.APPT_IDENTIFIER));
-		 String consumptionStr = getAsString(MOIdentifiers.APPT_ENERGY_CONSUMPTION);
-		 String generationStr = getAsString(MOIdentifiers.APPT_ENERGY_GENERATION);
-		 String storageStr = getAsString(MOIdentifiers.APPT_ENERGY_STORAGE);
-		 String generationBySolarStr = getAsString(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR);
-		 String generationByHydroStr = getAsString(MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO);
-
-		 List<List<String>> tableContents = getTableAsStrings(new
-													 OID[]{
-													 new OID(MOIdentifiers.FLAT_BASE_OID + ".1"),
-													 new OID(MOIdentifiers.FLAT_BASE_OID + ".2"),
-													 new OID(MOIdentifiers.FLAT_BASE_OID + ".3"),
-													 new OID(MOIdentifiers.FLAT_BASE_OID + ".4"),
-													 new OID(MOIdentifiers.FLAT_BASE_OID + ".5")});
-		 printer.setAppartmentId(appartmentIdStr);
-		 printer.setConsumption(consumptionStr);
-		 printer.setGeneration(generationStr);
-		 printer.setGenerationByHydro(generationByHydroStr);
-		 printer.setGenerationBySolar(generationBySolarStr);
-		 printer.setStorage(storageStr);
-		 printer.setTableContents(tableContents);
-		 printer.print();  
+		PrintStateOfManagedObject printer = new PrintStateOfManagedObject();
+		printer.setApartmentSnapshot(getApartmentSnapshot());
+		printer.print();  
+		if (readCache != null) {
+			System.out.println(readCache);
+		}
 	}
 	
 	private void runSummerScenario(String generationBySolarValue){
 		try { 
+			int generationBySolar = Integer.parseInt(generationBySolarValue.trim());
 			OID generationBySolarOID = new OID(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR);
-			setAsString(generationBySolarOID, generationBySolarValue);
-			sendSolarEnergyGenerationTrap(generationBySolarOID, generationBySolarValue); 
+			setAsInt(generationBySolarOID, generationBySolar);
+			System.out.println("Sending V2 Trap... ");
+			sendSolarEnergyGenerationTrap(generationBySolarOID, generationBySolar); 
+		} catch (NumberFormatException ex){
+			System.out.println("The energy generated by solar sources must be a integer.");
 		} catch (IOException ex){
 			ex.printStackTrace();
 		}
 	}
 }
-
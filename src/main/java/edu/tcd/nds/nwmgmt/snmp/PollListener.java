@@ -0,0 +1,36 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+
+/**
+ * A callback which receives the results of periodic polls made by
+ * {@link PollingEngine}. The methods are called on the listener thread of
+ * snmp4j and should not block.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public interface PollListener {
+	/**
+	 * Called when an agent answered a poll.
+	 */
+	void polled(Target target, PDU response);
+
+	/**
+	 * Called when a poll of an agent failed or timed out.
+	 */
+	void failed(Target target, Throwable error);
+
+	/**
+	 * Called when all agents of a poll cycle answered or failed.
+	 * 
+	 * @param cycle
+	 *            the number of poll cycle starting from 1
+	 * @param agentCount
+	 *            the number of agents polled in this cycle
+	 * @param durationNanos
+	 *            the time from start of cycle till the last agent answered
+	 */
+	void cycleCompleted(long cycle, int agentCount, long durationNanos);
+}
@@ -0,0 +1,248 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+import edu.tcd.nds.nwmgmt.utils.RateLimiter;
+
+/**
+ * The polling engine polls many agents periodically through the single
+ * {@link org.snmp4j.Snmp} session of one {@link EnergyMeasurementManager}. The
+ * targets of agents are built once when agents are added.
+ *
+ * Each poll of an agent is delayed by a random jitter within the poll cycle so
+ * that agents are not hit all at the same moment, and all polls share one
+ * global rate limit. A poll over the limit is scheduled again at its reserved
+ * slot rather than sleeping, so the single scheduler thread never blocks and
+ * cycles keep being started on time. The engine reports the duration of
+ * every poll cycle, which is the time from start of cycle till the last agent
+ * answered. A cycle that is due while the previous one is still running is
+ * skipped and counted, which tells that the poll interval is too short for the
+ * number of agents.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class PollingEngine {
+	private final EnergyMeasurementManager manager;
+	private final PollListener listener;
+	private final List<Target> targets = new CopyOnWriteArrayList<Target>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private long jitterMillis;
+	private RateLimiter rateLimiter;
+
+	private final AtomicBoolean cycleRunning = new AtomicBoolean();
+	private final AtomicLong cycleCount = new AtomicLong();
+	private final AtomicLong skippedCycleCount = new AtomicLong();
+	private volatile long lastCycleDurationNanos;
+	private volatile long maxCycleDurationNanos;
+
+	/**
+	 * Construct the polling engine which sends its polls using given manager.
+	 *
+	 * @param manager
+	 *            the manager whose session is shared by all polls
+	 * @param listener
+	 *            the callback which receives results of polls
+	 */
+	public PollingEngine(EnergyMeasurementManager manager, PollListener listener) {
+		this.manager = manager;
+		this.listener = listener;
+	}
+
+	/**
+	 * Add an agent to be polled from the next poll cycle on.
+	 *
+	 * @param address
+	 *            the host and port of agent
+	 */
+	public void addAgent(String address) {
+		targets.add(EnergyMeasurementManager.createTarget(address));
+	}
+
+	public int getAgentCount() {
+		return targets.size();
+	}
+
+	/**
+	 * Set the maximum random delay of a poll from the start of poll cycle.
+	 * Must be set before the engine is started.
+	 */
+	public void setJitterMillis(long jitterMillis) {
+		this.jitterMillis = jitterMillis;
+	}
+
+	/**
+	 * Limit the number of polls sent per second over all agents. Must be set
+	 * before the engine is started.
+	 */
+	public void setMaxPollsPerSecond(double maxPollsPerSecond) {
+		this.rateLimiter = new RateLimiter(maxPollsPerSecond);
+	}
+
+	/**
+	 * Start polling all agents for given managed objects every interval.
+	 *
+	 * @param intervalMillis
+	 *            the time between start of two poll cycles
+	 * @param oids
+	 *            the managed objects fetched from each agent with one GET
+	 */
+	public void start(long intervalMillis, final OID... oids) {
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				startCycle(oids);
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop polling, polls already sent are still reported to listener.
+	 */
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	public long getCycleCount() {
+		return cycleCount.get();
+	}
+
+	public long getSkippedCycleCount() {
+		return skippedCycleCount.get();
+	}
+
+	public long getLastCycleDurationNanos() {
+		return lastCycleDurationNanos;
+	}
+
+	public long getMaxCycleDurationNanos() {
+		return maxCycleDurationNanos;
+	}
+
+	private void startCycle(OID[] oids) {
+		List<Target> cycleTargets = new ArrayList<Target>(targets);
+		if (cycleTargets.isEmpty()) {
+			return;
+		}
+		if (!cycleRunning.compareAndSet(false, true)) {
+			skippedCycleCount.incrementAndGet();
+			return;
+		}
+		long cycle = cycleCount.incrementAndGet();
+		long startTime = System.nanoTime();
+		AtomicInteger pending = new AtomicInteger(cycleTargets.size());
+		for (Target target : cycleTargets) {
+			long delay = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis) : 0;
+			scheduler.schedule(new Poll(target, oids, cycle, cycleTargets.size(), startTime, pending), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void pollCompleted(long cycle, int agentCount, long startTime, AtomicInteger pending) {
+		if (pending.decrementAndGet() == 0) {
+			long duration = System.nanoTime() - startTime;
+			lastCycleDurationNanos = duration;
+			maxCycleDurationNanos = Math.max(maxCycleDurationNanos, duration);
+			cycleRunning.set(false);
+			listener.cycleCompleted(cycle, agentCount, duration);
+		}
+	}
+
+	/**
+	 * A poll of one agent within a poll cycle.
+	 */
+	private class Poll implements Runnable {
+		private final Target target;
+		private final OID[] oids;
+		private final long cycle;
+		private final int agentCount;
+		private final long startTime;
+		private final AtomicInteger pending;
+		private boolean reserved;
+
+		Poll(Target target, OID[] oids, long cycle, int agentCount, long startTime, AtomicInteger pending) {
+			this.target = target;
+			this.oids = oids;
+			this.cycle = cycle;
+			this.agentCount = agentCount;
+			this.startTime = startTime;
+			this.pending = pending;
+		}
+
+		public void run() {
+			if (rateLimiter != null && !reserved) {
+				reserved = true;
+				long waitNanos = rateLimiter.reserve();
+				if (waitNanos > 0) {
+					try {
+						scheduler.schedule(this, waitNanos, TimeUnit.NANOSECONDS);
+					} catch (RejectedExecutionException ex) {
+						// the engine was stopped meanwhile
+						listener.failed(target, ex);
+						pollCompleted(cycle, agentCount, startTime, pending);
+					}
+					return;
+				}
+			}
+			manager.getAsync(target, oids).whenComplete(new BiConsumer<PDU, Throwable>() {
+				public void accept(PDU response, Throwable error) {
+					if (error != null) {
+						listener.failed(target, error);
+					} else {
+						listener.polled(target, response);
+					}
+					pollCompleted(cycle, agentCount, startTime, pending);
+				}
+			});
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: java PollingEngine <poll_interval_ms> <private_ip_address/port>...");
+			return;
+		}
+		long intervalMillis = Long.parseLong(args[0]);
+		EnergyMeasurementManager manager = new EnergyMeasurementManager(args[1]);
+		final AtomicLong failures = new AtomicLong();
+		PollingEngine engine = new PollingEngine(manager, new PollListener() {
+			public void polled(Target target, PDU response) {
+				// only cycle durations are printed
+			}
+
+			public void failed(Target target, Throwable error) {
+				failures.incrementAndGet();
+			}
+
+			public void cycleCompleted(long cycle, int agentCount, long durationNanos) {
+				System.out.println("Poll cycle " + cycle + " of " + agentCount + " agent(s) took "
+						+ TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms, failed polls so far: " + failures.get());
+			}
+		});
+		for (int i = 1; i < args.length; i++) {
+			engine.addAgent(args[i]);
+		}
+		engine.setJitterMillis(intervalMillis / 2);
+		engine.start(intervalMillis, MOIdentifiers.APPT_ENERGY_STORAGE, MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+				MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO);
+		while (true) {
+			Thread.sleep(5000);
+		}
+	}
+}
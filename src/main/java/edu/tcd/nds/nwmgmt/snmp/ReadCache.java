@@ -0,0 +1,432 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * A read-through cache of the values the manager fetched, keyed by agent and
+ * OID. A table is cached as a whole once it has been walked completely.
+ *
+ * Every value expires after the time to live of the longest subtree
+ * containing its OID, or after the default time to live. The cache holds a
+ * bounded number of values, a cached table counts one value per row, and
+ * evicts the least recently read entries once it is full. Entries are
+ * invalidated immediately when the manager sets a managed object or receives
+ * a trap for it. The OIDs of cached values are kept sorted per agent, so an
+ * invalidation looks up the changed OID and the values below it directly
+ * instead of scanning the whole cache. A value fetched while an invalidation
+ * happened is not cached, as it may have been read before the change.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ReadCache {
+	public static final int DEFAULT_MAX_VALUES = 10000;
+	public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5000;
+
+	private final int maxValues;
+	private final long defaultTimeToLiveNanos;
+	private volatile Subtree[] subtrees = new Subtree[0];
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+	private final Map<Address, TreeSet<OID>> scalarOids = new HashMap<Address, TreeSet<OID>>();
+	private final Set<Key> tableKeys = new HashSet<Key>();
+	private int valueCount;
+	private long generation;
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder invalidationCount = new LongAdder();
+
+	public ReadCache() {
+		this(DEFAULT_MAX_VALUES, DEFAULT_TIME_TO_LIVE_MILLIS);
+	}
+
+	/**
+	 * @param maxValues
+	 *            the number of values the cache holds at most
+	 * @param defaultTimeToLiveMillis
+	 *            the time to live of values outside any subtree given to
+	 *            {@link #setTimeToLive(OID, long)}
+	 */
+	public ReadCache(int maxValues, long defaultTimeToLiveMillis) {
+		if (maxValues < 1 || defaultTimeToLiveMillis < 0) {
+			throw new IllegalArgumentException("A read cache needs room for one value and a time to live >= 0");
+		}
+		this.maxValues = maxValues;
+		this.defaultTimeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(defaultTimeToLiveMillis);
+	}
+
+	/**
+	 * Set the time to live of values in given subtree, 0 disables caching of
+	 * that subtree. The time to live set earlier for the same subtree is
+	 * replaced, values already cached keep their time to live.
+	 */
+	public synchronized void setTimeToLive(OID subtree, long timeToLiveMillis) {
+		if (timeToLiveMillis < 0) {
+			throw new IllegalArgumentException("The time to live must be >= 0");
+		}
+		Subtree added = new Subtree(new OID(subtree), TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis));
+		for (int i = 0; i < subtrees.length; i++) {
+			if (subtrees[i].oid.equals(subtree)) {
+				Subtree[] updated = subtrees.clone();
+				updated[i] = added;
+				subtrees = updated;
+				return;
+			}
+		}
+		Subtree[] updated = Arrays.copyOf(subtrees, subtrees.length + 1);
+		updated[subtrees.length] = added;
+		subtrees = updated;
+	}
+
+	private long getTimeToLiveNanos(OID oid) {
+		Subtree longest = null;
+		for (Subtree subtree : subtrees) {
+			if (oid.startsWith(subtree.oid) && (longest == null || subtree.oid.size() > longest.oid.size())) {
+				longest = subtree;
+			}
+		}
+		return longest == null ? defaultTimeToLiveNanos : longest.timeToLiveNanos;
+	}
+
+	/**
+	 * Return the generation of the cache, which changes with every
+	 * invalidation. Take it before sending a request and hand it to the put
+	 * methods with the response.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Return the cached values of all given OIDs, or null if any of them is
+	 * not cached. The lookup counts as one hit or one miss per OID.
+	 */
+	public Variable[] get(Address address, OID[] oids) {
+		Variable[] values = new Variable[oids.length];
+		long now = System.nanoTime();
+		synchronized (this) {
+			for (int i = 0; i < oids.length; i++) {
+				Entry entry = getEntry(new Key(address, oids[i], false), now);
+				if (entry == null) {
+					missCount.add(oids.length);
+					return null;
+				}
+				values[i] = (Variable) entry.value;
+			}
+		}
+		hitCount.add(oids.length);
+		return values;
+	}
+
+	/**
+	 * Cache the fetched values unless the cache was invalidated since given
+	 * generation.
+	 */
+	public synchronized void put(Address address, OID[] oids, Variable[] values, long fetchedGeneration) {
+		if (fetchedGeneration != generation) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (int i = 0; i < oids.length; i++) {
+			putEntry(new Key(address, new OID(oids[i]), false), values[i], 1, now);
+		}
+	}
+
+	/**
+	 * Return the cached rows of a completely walked table, or null if the
+	 * table is not cached. The lookup counts as one hit or one miss.
+	 */
+	public List<TableRow> getTable(Address address, OID[] columns) {
+		Entry entry;
+		synchronized (this) {
+			entry = getEntry(new Key(address, columns, true), System.nanoTime());
+		}
+		if (entry == null) {
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		@SuppressWarnings("unchecked")
+		List<TableRow> rows = (List<TableRow>) entry.value;
+		return rows;
+	}
+
+	/**
+	 * Cache the rows of a completely walked table unless the cache was
+	 * invalidated since given generation. A table with more rows than the
+	 * cache holds is not cached.
+	 */
+	public synchronized void putTable(Address address, OID[] columns, List<TableRow> rows, long fetchedGeneration) {
+		if (fetchedGeneration != generation || rows.size() > maxValues) {
+			return;
+		}
+		putEntry(new Key(address, columns.clone(), true), Collections.unmodifiableList(new ArrayList<TableRow>(rows)),
+				Math.max(1, rows.size()), System.nanoTime());
+	}
+
+	private Entry getEntry(Key key, long now) {
+		Entry entry = entries.get(key);
+		if (entry != null && now - entry.expiresNanos >= 0) {
+			entries.remove(key);
+			removed(key, entry);
+			return null;
+		}
+		return entry;
+	}
+
+	private void putEntry(Key key, Object value, int weight, long now) {
+		long timeToLiveNanos = getTimeToLiveNanos(key.oids[0]);
+		if (timeToLiveNanos == 0) {
+			return;
+		}
+		Entry previous = entries.put(key, new Entry(value, weight, now + timeToLiveNanos));
+		if (previous == null) {
+			if (key.table) {
+				tableKeys.add(key);
+			} else {
+				TreeSet<OID> oids = scalarOids.get(key.address);
+				if (oids == null) {
+					oids = new TreeSet<OID>();
+					scalarOids.put(key.address, oids);
+				}
+				oids.add(key.oids[0]);
+			}
+			valueCount += weight;
+		} else {
+			valueCount += weight - previous.weight;
+		}
+
+		// evict least recently read entries, the new entry is the most recent
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (valueCount > maxValues && iterator.hasNext()) {
+			Map.Entry<Key, Entry> eldest = iterator.next();
+			iterator.remove();
+			removed(eldest.getKey(), eldest.getValue());
+			evictionCount.increment();
+		}
+	}
+
+	/**
+	 * Drop given entry, which was already removed from the entries, from the
+	 * OIDs of its agent or the cached tables.
+	 */
+	private void removed(Key key, Entry entry) {
+		valueCount -= entry.weight;
+		if (key.table) {
+			tableKeys.remove(key);
+		} else {
+			TreeSet<OID> oids = scalarOids.get(key.address);
+			oids.remove(key.oids[0]);
+			if (oids.isEmpty()) {
+				scalarOids.remove(key.address);
+			}
+		}
+	}
+
+	/**
+	 * Drop every value of given OID or below it, and every table which
+	 * contains it.
+	 *
+	 * @param address
+	 *            the agent whose values changed, null for all agents
+	 * @param oid
+	 *            the managed object or subtree which changed
+	 */
+	public synchronized void invalidate(Address address, OID oid) {
+		generation++;
+		if (address != null) {
+			invalidateValues(address, oid);
+		} else {
+			for (Address cached : new ArrayList<Address>(scalarOids.keySet())) {
+				invalidateValues(cached, oid);
+			}
+		}
+		if (!tableKeys.isEmpty()) {
+			for (Key key : new ArrayList<Key>(tableKeys)) {
+				if ((address == null || address.equals(key.address)) && key.contains(oid)) {
+					removed(key, entries.remove(key));
+					invalidationCount.increment();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the value of given OID and the values below it, which follow it in
+	 * the sorted OIDs of the agent.
+	 */
+	private void invalidateValues(Address address, OID oid) {
+		TreeSet<OID> oids = scalarOids.get(address);
+		if (oids == null) {
+			return;
+		}
+		for (Iterator<OID> iterator = oids.tailSet(oid, true).iterator(); iterator.hasNext();) {
+			OID cached = iterator.next();
+			if (!cached.startsWith(oid)) {
+				break;
+			}
+			iterator.remove();
+			valueCount -= entries.remove(new Key(address, cached, false)).weight;
+			invalidationCount.increment();
+		}
+		if (oids.isEmpty()) {
+			scalarOids.remove(address);
+		}
+	}
+
+	/**
+	 * Drop all cached values.
+	 */
+	public synchronized void clear() {
+		generation++;
+		entries.clear();
+		scalarOids.clear();
+		tableKeys.clear();
+		valueCount = 0;
+	}
+
+	/**
+	 * Return the number of cached values, a cached table counts one value per
+	 * row.
+	 */
+	public synchronized int size() {
+		return valueCount;
+	}
+
+	public int getMaxValues() {
+		return maxValues;
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	public long getInvalidationCount() {
+		return invalidationCount.sum();
+	}
+
+	/**
+	 * Return the share of lookups served from the cache, 0 if there was no
+	 * lookup yet.
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.sum();
+		long lookups = hits + missCount.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Return the share of lookups which had to be fetched from the agent, 0
+	 * if there was no lookup yet.
+	 */
+	public double getMissRatio() {
+		long misses = missCount.sum();
+		long lookups = hitCount.sum() + misses;
+		return lookups == 0 ? 0 : (double) misses / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "ReadCache[size=" + size() + ",maxValues=" + maxValues + ",hits=" + getHitCount() + ",misses="
+				+ getMissCount() + ",hitRatio=" + String.format("%.3f", getHitRatio()) + ",missRatio="
+				+ String.format("%.3f", getMissRatio()) + ",evictions=" + getEvictionCount() + ",invalidations="
+				+ getInvalidationCount() + "]";
+	}
+
+	/**
+	 * The key of a scalar value or of a table, which is identified by its
+	 * column OIDs.
+	 */
+	private static class Key {
+		private final Address address;
+		private final OID[] oids;
+		private final boolean table;
+		private final int hashCode;
+
+		Key(Address address, OID oid, boolean table) {
+			this(address, new OID[] { oid }, table);
+		}
+
+		Key(Address address, OID[] oids, boolean table) {
+			this.address = address;
+			this.oids = oids;
+			this.table = table;
+			this.hashCode = 31 * (31 * address.hashCode() + Arrays.hashCode(oids)) + (table ? 1 : 0);
+		}
+
+		/**
+		 * Return whether a change of given OID affects this entry, i.e. it is
+		 * a cached value at or below it or a cell of a cached table.
+		 */
+		boolean contains(OID changed) {
+			for (OID oid : oids) {
+				if (oid.startsWith(changed) || (table && changed.startsWith(oid))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return table == other.table && address.equals(other.address) && Arrays.equals(oids, other.oids);
+		}
+	}
+
+	private static class Entry {
+		private final Object value;
+		private final int weight;
+		private final long expiresNanos;
+
+		Entry(Object value, int weight, long expiresNanos) {
+			this.value = value;
+			this.weight = weight;
+			this.expiresNanos = expiresNanos;
+		}
+	}
+
+	private static class Subtree {
+		private final OID oid;
+		private final long timeToLiveNanos;
+
+		Subtree(OID oid, long timeToLiveNanos) {
+			this.oid = oid;
+			this.timeToLiveNanos = timeToLiveNanos;
+		}
+	}
+}
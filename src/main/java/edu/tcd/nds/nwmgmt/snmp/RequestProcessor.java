@@ -0,0 +1,149 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.CommandProcessor;
+import org.snmp4j.agent.mo.snmp.CoexistenceInfo;
+import org.snmp4j.event.CounterEvent;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OctetString;
+
+import edu.tcd.nds.nwmgmt.metrics.RequestMetrics;
+
+/**
+ * The command processor of the agent which processes requests concurrently
+ * instead of one after the other on the thread receiving them. GET and SET
+ * requests go to one {@link RequestQueue}, GETNEXT and GETBULK requests walking
+ * tables go to another, so slow walks do not hold up single reads.
+ *
+ * The number of requests in flight, i.e. queued or being processed, is capped
+ * over both queues. A request beyond the cap or finding its queue full is
+ * dropped without response and counted as silent drop, so the manager times
+ * out and retries while the agent keeps answering the requests it accepted in
+ * time.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RequestProcessor extends CommandProcessor {
+	private final RequestQueue readQueue;
+	private final RequestQueue walkQueue;
+	private final int maxInFlight;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder droppedCount = new LongAdder();
+	private volatile RequestMetrics requestMetrics;
+
+	/**
+	 * @param contextEngineID
+	 *            the engine ID of the agent
+	 * @param readQueue
+	 *            the queue of GET and SET requests
+	 * @param walkQueue
+	 *            the queue of GETNEXT and GETBULK requests
+	 * @param maxInFlight
+	 *            the number of requests which may be queued or processed at
+	 *            once
+	 */
+	public RequestProcessor(OctetString contextEngineID, RequestQueue readQueue, RequestQueue walkQueue,
+			int maxInFlight) {
+		super(contextEngineID);
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one request has to be in flight.");
+		}
+		this.readQueue = readQueue;
+		this.walkQueue = walkQueue;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Queue the request instead of processing it on the thread which received
+	 * it.
+	 */
+	@Override
+	protected void dispatchCommand(final CommandResponderEvent command, final CoexistenceInfo cinfo) {
+		final long receivedNanos = System.nanoTime();
+		if (inFlight.incrementAndGet() > maxInFlight) {
+			inFlight.decrementAndGet();
+			drop();
+			return;
+		}
+		boolean queued = getQueue(command.getPDU()).offer(new Runnable() {
+			public void run() {
+				try {
+					RequestProcessor.super.dispatchCommand(command, cinfo);
+				} finally {
+					inFlight.decrementAndGet();
+				}
+				RequestMetrics metrics = requestMetrics;
+				if (metrics != null) {
+					metrics.record(command.getPDU(), System.nanoTime() - receivedNanos);
+				}
+			}
+		});
+		if (!queued) {
+			inFlight.decrementAndGet();
+			drop();
+		}
+	}
+
+	private RequestQueue getQueue(PDU pdu) {
+		return pdu.getType() == PDU.GETNEXT || pdu.getType() == PDU.GETBULK ? walkQueue : readQueue;
+	}
+
+	private void drop() {
+		droppedCount.increment();
+		fireIncrementCounter(new CounterEvent(this, SnmpConstants.snmpSilentDrops));
+	}
+
+	/**
+	 * Record the latency of every processed request from receiving it until
+	 * it is answered, including the time it was queued.
+	 */
+	public void setRequestMetrics(RequestMetrics requestMetrics) {
+		this.requestMetrics = requestMetrics;
+	}
+
+	/**
+	 * Stop the workers of both queues.
+	 */
+	public void shutdown() {
+		readQueue.shutdown();
+		walkQueue.shutdown();
+	}
+
+	public RequestQueue getReadQueue() {
+		return readQueue;
+	}
+
+	public RequestQueue getWalkQueue() {
+		return walkQueue;
+	}
+
+	/**
+	 * Return the number of requests queued or being processed.
+	 */
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Return the number of requests dropped because of the in-flight cap or a
+	 * full queue.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "RequestProcessor[inFlight=" + getInFlightCount() + ",maxInFlight=" + maxInFlight + ",dropped="
+				+ getDroppedCount() + "," + readQueue + "," + walkQueue + "]";
+	}
+}
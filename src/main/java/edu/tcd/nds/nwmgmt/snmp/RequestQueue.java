@@ -0,0 +1,199 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A queue of requests processed by its own workers, either a bounded pool of
+ * platform threads or a virtual thread per request when the JDK has them.
+ * The queue keeps the metrics of its depth, i.e. the requests which have been
+ * accepted and wait for a worker, and the time they waited. The counters are
+ * striped, so workers counting at the same time do not contend.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RequestQueue {
+	private final String name;
+	private final ExecutorService executor;
+	private final int workerCount;
+	private final int capacity;
+	private final boolean virtual;
+
+	private final AtomicInteger depth = new AtomicInteger();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	private final LongAdder acceptedCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final LongAdder completedCount = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+
+	/**
+	 * Build a queue processed by a fixed number of platform threads.
+	 *
+	 * @param name
+	 *            the name of queue, used for naming its threads
+	 * @param workerCount
+	 *            the number of threads
+	 * @param capacity
+	 *            the number of requests which may wait for a thread, further
+	 *            requests are rejected
+	 */
+	public RequestQueue(final String name, int workerCount, int capacity) {
+		if (workerCount < 1 || capacity < 1) {
+			throw new IllegalArgumentException("A request queue needs at least one worker and a capacity of one.");
+		}
+		this.name = name;
+		this.workerCount = workerCount;
+		this.capacity = capacity;
+		this.virtual = false;
+		this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), new ThreadFactory() {
+					private final AtomicInteger threadNo = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-" + threadNo.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	private RequestQueue(String name, ExecutorService executor) {
+		this.name = name;
+		this.workerCount = 0;
+		this.capacity = Integer.MAX_VALUE;
+		this.virtual = true;
+		this.executor = executor;
+	}
+
+	/**
+	 * Build a queue which starts a virtual thread for every request, the
+	 * number of requests is bounded by the in-flight cap of the
+	 * {@link RequestProcessor} only. Virtual threads need JDK 21 or later.
+	 *
+	 * @return the queue or null if this JDK has no virtual threads
+	 */
+	public static RequestQueue virtual(String name) {
+		try {
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			return new RequestQueue(name, executor);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Queue the request to be run by a worker.
+	 *
+	 * @return false if the queue is full or stopped, the request is not run
+	 */
+	public boolean offer(final Runnable request) {
+		final long queuedNanos = System.nanoTime();
+		int currentDepth = depth.incrementAndGet();
+		acceptedCount.increment();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					depth.decrementAndGet();
+					totalWaitNanos.add(System.nanoTime() - queuedNanos);
+					try {
+						request.run();
+					} finally {
+						completedCount.increment();
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			depth.decrementAndGet();
+			acceptedCount.decrement();
+			rejectedCount.increment();
+			return false;
+		}
+		// only a request which has been queued counts for the maximum
+		int max;
+		while (currentDepth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, currentDepth)) {
+			// another request raised the maximum in between, compare again
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the workers, the requests still waiting are not run.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Return the number of platform threads, 0 if a virtual thread is started
+	 * for each request.
+	 */
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Return the number of requests waiting for a worker.
+	 */
+	public int getDepth() {
+		return depth.get();
+	}
+
+	/**
+	 * Return the highest number of requests which have been waiting at once.
+	 */
+	public int getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	public long getAcceptedCount() {
+		return acceptedCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public long getCompletedCount() {
+		return completedCount.sum();
+	}
+
+	/**
+	 * Return the average time accepted requests waited for a worker in
+	 * microseconds.
+	 */
+	public long getAverageWaitMicros() {
+		long started = acceptedCount.sum() - depth.get();
+		return started <= 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum()) / started;
+	}
+
+	@Override
+	public String toString() {
+		return name + "[workers=" + (virtual ? "virtual" : String.valueOf(workerCount)) + ",depth=" + getDepth()
+				+ ",maxDepth=" + getMaxDepth() + ",accepted=" + getAcceptedCount() + ",rejected="
+				+ getRejectedCount() + ",completed=" + getCompletedCount() + ",averageWaitMicros="
+				+ getAverageWaitMicros() + "]";
+	}
+}
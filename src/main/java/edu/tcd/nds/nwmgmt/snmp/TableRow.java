@@ -0,0 +1,58 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+
+/**
+ * An immutable row of a managed object table as retrieved by the manager. The
+ * values are kept as typed {@link Variable} objects in the order of the
+ * requested columns, a column that has no value in this row is null.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TableRow {
+	private final OID index;
+	private final Variable[] values;
+
+	public TableRow(OID index, Variable[] values) {
+		this.index = index;
+		this.values = values;
+	}
+
+	/**
+	 * @return the index of this row, i.e. the part of instance OID that
+	 *         follows the column OID
+	 */
+	public OID getIndex() {
+		return index;
+	}
+
+	public Variable getValue(int column) {
+		return values[column];
+	}
+
+	/**
+	 * Return the numeric value of given column without any string
+	 * conversion.
+	 * 
+	 * @param column
+	 *            the position of column in requested columns
+	 * @return the value of column as int
+	 */
+	public int getInt(int column) {
+		return values[column].toInt();
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer("TableRow[index=").append(index).append(",values=");
+		for (int i = 0; i < values.length; i++) {
+			buffer.append(i == 0 ? "" : ",").append(values[i]);
+		}
+		return buffer.append("]").toString();
+	}
+}
@@ -0,0 +1,19 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+/**
+ * A callback that receives rows of a table walk one by one as soon as they
+ * arrive at the manager.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public interface TableRowHandler {
+	/**
+	 * Called for every complete row of the table in index order.
+	 * 
+	 * @param row
+	 *            the row with typed values of requested columns
+	 * @return true to continue the walk, false to stop it
+	 */
+	boolean onRow(TableRow row);
+}
@@ -0,0 +1,307 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.snmp4j.agent.DuplicateRegistrationException;
+import org.snmp4j.agent.MOQuery;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.UpdatableManagedObject;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * A managed object server which finds managed objects in a trie of the
+ * sub-identifiers of their OIDs instead of the sorted map of
+ * {@link org.snmp4j.agent.DefaultMOServer}. A lookup walks down the OID of
+ * request, so it takes a step per sub-identifier whatever the number of
+ * registered objects, and the objects following the OID of a GETNEXT request
+ * are found by walking to the next sibling in the trie. A lookup stops at the
+ * first object beyond the scope of query, where the default server goes on
+ * to the end of registry.
+ *
+ * A managed object is keyed by the lower bound of its scope, which covers
+ * the subtree below it, as the scope of a scalar or a table does. Objects of
+ * any other scope or registered in a context other than the default one are
+ * looked up by the default server for as long as they are registered.
+ *
+ * Lookups do not lock, every node publishes its children as a whole, so a
+ * lookup sees a registration either completely or not at all. Registrations
+ * are serialized. The registry of the default server is kept as well, since
+ * persistence and the agent read it.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TrieMOServer extends AgentMOServer {
+	private final Node root = new Node();
+	private final Object registrationLock = new Object();
+	// the objects of other scopes or contexts, which the trie cannot order
+	private final Set<ManagedObject> irregular = new HashSet<ManagedObject>();
+	private volatile boolean fallback;
+	private volatile int size;
+
+	@Override
+	public ManagedObject lookup(MOQuery query) {
+		if (fallback) {
+			return super.lookup(query);
+		}
+		MOScope scope = query.getScope();
+		OID lowerBound = scope.getLowerBound();
+		OID upperBound = scope.getUpperBound();
+		ManagedObject mo = lowerBound == null ? first(root.children, 0) : floor(lowerBound);
+		while (mo != null) {
+			MOScope moScope = mo.getScope();
+			OID key = moScope.getLowerBound();
+			// the objects are in order of their scopes, none after this one overlaps
+			if (upperBound != null && key.compareTo(upperBound) > 0) {
+				return null;
+			}
+			if (scope.isOverlapping(moScope)) {
+				fireQueryEvent(mo, query);
+				if (mo instanceof UpdatableManagedObject) {
+					checkForUpdate((UpdatableManagedObject) mo, query);
+				}
+				if (query.matchesQuery(mo)) {
+					fireLookupEvent(mo, query);
+					return mo;
+				}
+			}
+			mo = next(root, key, 0);
+		}
+		return null;
+	}
+
+	/**
+	 * Return the object whose subtree contains given OID, or else the first
+	 * object after it.
+	 */
+	private ManagedObject floor(OID oid) {
+		Node node = root;
+		for (int depth = 0; depth < oid.size(); depth++) {
+			Children children = node.children;
+			int i = search(children.subids, oid.get(depth));
+			if (i < 0) {
+				break;
+			}
+			node = children.nodes[i];
+			ManagedObject mo = node.mo;
+			if (mo != null) {
+				// registered scopes do not overlap, no other object is on the path
+				return mo;
+			}
+		}
+		return next(root, oid, 0);
+	}
+
+	/**
+	 * Return the first object after given OID below the node at given depth
+	 * of it.
+	 */
+	private static ManagedObject next(Node node, OID oid, int depth) {
+		Children children = node.children;
+		if (depth == oid.size()) {
+			return first(children, 0);
+		}
+		int i = search(children.subids, oid.get(depth));
+		if (i >= 0) {
+			ManagedObject mo = next(children.nodes[i], oid, depth + 1);
+			if (mo != null) {
+				return mo;
+			}
+			return first(children, i + 1);
+		}
+		return first(children, -i - 1);
+	}
+
+	/**
+	 * Return the first object in the subtrees of given children starting at
+	 * given index. A subtree may be empty while its object is unregistered.
+	 */
+	private static ManagedObject first(Children children, int from) {
+		for (int i = from; i < children.nodes.length; i++) {
+			Node node = children.nodes[i];
+			ManagedObject mo = node.mo;
+			if (mo == null) {
+				mo = first(node.children, 0);
+			}
+			if (mo != null) {
+				return mo;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Binary search of a sub-identifier, which compares unsigned like an OID.
+	 *
+	 * @return the index of sub-identifier, or (-(insertion point) - 1)
+	 */
+	private static int search(int[] subids, int subid) {
+		int low = 0;
+		int high = subids.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = Integer.compareUnsigned(subids[middle], subid);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	@Override
+	public void register(ManagedObject mo, OctetString context) throws DuplicateRegistrationException {
+		synchronized (registrationLock) {
+			super.register(mo, context);
+			if (context == null && isSubtree(mo.getScope())) {
+				insert(mo);
+			} else {
+				irregular.add(mo);
+				fallback = true;
+			}
+		}
+	}
+
+	@Override
+	public void unregister(ManagedObject mo, OctetString context) {
+		synchronized (registrationLock) {
+			super.unregister(mo, context);
+			if (irregular.remove(mo)) {
+				fallback = !irregular.isEmpty();
+			} else {
+				remove(mo);
+			}
+		}
+	}
+
+	/**
+	 * Return whether given scope is the subtree below its lower bound.
+	 */
+	private static boolean isSubtree(MOScope scope) {
+		OID lowerBound = scope.getLowerBound();
+		OID upperBound = scope.getUpperBound();
+		return lowerBound != null && lowerBound.size() > 0 && upperBound != null && !scope.isUpperIncluded()
+				&& upperBound.equals(lowerBound.nextPeer());
+	}
+
+	private void insert(ManagedObject mo) {
+		OID key = mo.getScope().getLowerBound();
+		Node node = root;
+		int depth = 0;
+		int i = -1;
+		for (; depth < key.size(); depth++) {
+			i = search(node.children.subids, key.get(depth));
+			if (i < 0) {
+				break;
+			}
+			node = node.children.nodes[i];
+		}
+		if (depth == key.size()) {
+			node.mo = mo;
+		} else {
+			// build the missing path completely before it is published
+			Node path = new Node();
+			path.mo = mo;
+			for (int d = key.size() - 1; d > depth; d--) {
+				Node parent = new Node();
+				parent.children = new Children(new int[] { key.get(d) }, new Node[] { path });
+				path = parent;
+			}
+			node.children = node.children.insert(-i - 1, key.get(depth), path);
+		}
+		size++;
+	}
+
+	private void remove(ManagedObject mo) {
+		OID key = mo.getScope().getLowerBound();
+		Node[] path = new Node[key.size() + 1];
+		int[] indexes = new int[key.size()];
+		path[0] = root;
+		for (int depth = 0; depth < key.size(); depth++) {
+			int i = search(path[depth].children.subids, key.get(depth));
+			if (i < 0) {
+				return;
+			}
+			indexes[depth] = i;
+			path[depth + 1] = path[depth].children.nodes[i];
+		}
+		Node node = path[key.size()];
+		if (node.mo != mo) {
+			return;
+		}
+		node.mo = null;
+		size--;
+		// prune the nodes left without object and children
+		for (int depth = key.size(); depth > 0; depth--) {
+			node = path[depth];
+			if (node.mo != null || node.children.nodes.length > 0) {
+				break;
+			}
+			path[depth - 1].children = path[depth - 1].children.remove(indexes[depth - 1]);
+		}
+	}
+
+	/**
+	 * The number of managed objects in the trie.
+	 */
+	public int getTrieSize() {
+		return size;
+	}
+
+	/**
+	 * Return whether lookups are done by the default server because objects
+	 * the trie cannot hold are registered.
+	 */
+	public boolean isFallback() {
+		return fallback;
+	}
+
+	private static class Node {
+		private volatile ManagedObject mo;
+		private volatile Children children = Children.EMPTY;
+	}
+
+	/**
+	 * The sorted sub-identifiers of the children of a node and their nodes,
+	 * never changed once published.
+	 */
+	private static class Children {
+		private static final Children EMPTY = new Children(new int[0], new Node[0]);
+
+		private final int[] subids;
+		private final Node[] nodes;
+
+		Children(int[] subids, Node[] nodes) {
+			this.subids = subids;
+			this.nodes = nodes;
+		}
+
+		Children insert(int index, int subid, Node node) {
+			int[] insertedSubids = new int[subids.length + 1];
+			Node[] insertedNodes = new Node[nodes.length + 1];
+			System.arraycopy(subids, 0, insertedSubids, 0, index);
+			System.arraycopy(nodes, 0, insertedNodes, 0, index);
+			insertedSubids[index] = subid;
+			insertedNodes[index] = node;
+			System.arraycopy(subids, index, insertedSubids, index + 1, subids.length - index);
+			System.arraycopy(nodes, index, insertedNodes, index + 1, nodes.length - index);
+			return new Children(insertedSubids, insertedNodes);
+		}
+
+		Children remove(int index) {
+			int[] removedSubids = new int[subids.length - 1];
+			Node[] removedNodes = new Node[nodes.length - 1];
+			System.arraycopy(subids, 0, removedSubids, 0, index);
+			System.arraycopy(nodes, 0, removedNodes, 0, index);
+			System.arraycopy(subids, index + 1, removedSubids, index, subids.length - index - 1);
+			System.arraycopy(nodes, index + 1, removedNodes, index, nodes.length - index - 1);
+			return new Children(removedSubids, removedNodes);
+		}
+	}
+}
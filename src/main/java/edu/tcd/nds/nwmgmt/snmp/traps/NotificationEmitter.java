@@ -0,0 +1,257 @@
+package edu.tcd.nds.nwmgmt.snmp.traps;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.utils.Constants;
+
+/**
+ * An emitter of V2 notifications which batches changed values. The changes
+ * emitted within a flush interval are sent as variable bindings of a single
+ * notification, a batch is sent earlier once it is full. A change of an OID
+ * which is already in the batch replaces its value, so the notification
+ * carries the latest value of every OID.
+ *
+ * The target, the PDU and a fixed number of variable bindings are built once
+ * and reused for every notification, so emitting an int value does not
+ * allocate. The notification is encoded before send returns, therefore the
+ * bindings can be refilled right after. The OID of a binding shares the
+ * value of the emitted OID, which must not be changed until it is flushed.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class NotificationEmitter {
+	public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+	public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+
+	private final Snmp snmp;
+	private final CommunityTarget target;
+	private final PDU pdu = new PDU();
+	private final VariableBinding[] batch;
+	private final long flushIntervalMillis;
+	private final ScheduledExecutorService flushTimer;
+	private int batchSize;
+
+	private long notificationCount;
+	private long bindingCount;
+	private long coalescedCount;
+	private long fullBatchCount;
+	private long failedCount;
+	private int maxBatchSize;
+
+	/**
+	 * Build the emitter with default batch size and flush interval.
+	 */
+	public NotificationEmitter(Snmp snmp, Address address) {
+		this(snmp, address, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param snmp
+	 *            the session the notifications are sent with
+	 * @param address
+	 *            the address of the notification receiver
+	 * @param maxBatchSize
+	 *            the number of variable bindings of a notification at most
+	 * @param flushIntervalMillis
+	 *            the time a change may wait for further changes in
+	 *            milliseconds, 0 sends every change at once
+	 */
+	public NotificationEmitter(Snmp snmp, Address address, int maxBatchSize, long flushIntervalMillis) {
+		if (maxBatchSize < 1 || flushIntervalMillis < 0) {
+			throw new IllegalArgumentException("A notification needs at least one binding and a flush interval >= 0");
+		}
+		this.snmp = snmp;
+		this.flushIntervalMillis = flushIntervalMillis;
+
+		target = new CommunityTarget();
+		target.setCommunity(new OctetString(Constants.COMMUNITY));
+		target.setVersion(SnmpConstants.version2c);
+		target.setAddress(address);
+		target.setRetries(2);
+		target.setTimeout(5000);
+		pdu.setType(PDU.NOTIFICATION);
+
+		batch = new VariableBinding[maxBatchSize];
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = new VariableBinding(new OID(), new Integer32());
+		}
+
+		if (flushIntervalMillis > 0) {
+			flushTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NotificationEmitter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			flushTimer.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			flushTimer = null;
+		}
+	}
+
+	/**
+	 * Emit the changed int value of given OID with the next notification.
+	 */
+	public synchronized void emit(OID oid, int value) {
+		VariableBinding binding = getBinding(oid);
+		Variable variable = binding.getVariable();
+		if (variable instanceof Integer32) {
+			((Integer32) variable).setValue(value);
+		} else {
+			binding.setVariable(new Integer32(value));
+		}
+		emitted();
+	}
+
+	/**
+	 * Emit the changed value of given OID with the next notification. The
+	 * value is copied.
+	 */
+	public synchronized void emit(OID oid, Variable value) {
+		getBinding(oid).setVariable(value);
+		emitted();
+	}
+
+	/**
+	 * Return the binding of given OID in the batch, a free binding if the OID
+	 * is not in the batch yet.
+	 */
+	private VariableBinding getBinding(OID oid) {
+		for (int i = 0; i < batchSize; i++) {
+			if (batch[i].getOid().equals(oid)) {
+				coalescedCount++;
+				return batch[i];
+			}
+		}
+		VariableBinding binding = batch[batchSize++];
+		binding.getOid().setValue(oid.getValue());
+		return binding;
+	}
+
+	private void emitted() {
+		if (flushTimer == null) {
+			flush();
+		} else if (batchSize == batch.length) {
+			fullBatchCount++;
+			flush();
+		}
+	}
+
+	/**
+	 * Send the changes emitted so far as one notification.
+	 */
+	public synchronized void flush() {
+		if (batchSize == 0) {
+			return;
+		}
+		pdu.clear();
+		for (int i = 0; i < batchSize; i++) {
+			pdu.add(batch[i]);
+		}
+		try {
+			snmp.send(pdu, target);
+		} catch (IOException ex) {
+			failedCount++;
+			ex.printStackTrace();
+		}
+		notificationCount++;
+		bindingCount += batchSize;
+		maxBatchSize = Math.max(maxBatchSize, batchSize);
+		batchSize = 0;
+	}
+
+	/**
+	 * Send the pending changes and stop flushing, the session is not closed.
+	 */
+	public synchronized void close() {
+		if (flushTimer != null) {
+			flushTimer.shutdownNow();
+		}
+		flush();
+	}
+
+	public long getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	/**
+	 * The number of notifications sent so far.
+	 */
+	public synchronized long getNotificationCount() {
+		return notificationCount;
+	}
+
+	/**
+	 * The number of variable bindings sent so far.
+	 */
+	public synchronized long getBindingCount() {
+		return bindingCount;
+	}
+
+	/**
+	 * The number of changes replaced by a later change of same OID before
+	 * they were sent.
+	 */
+	public synchronized long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * The number of notifications sent before the flush interval because
+	 * their batch was full.
+	 */
+	public synchronized long getFullBatchCount() {
+		return fullBatchCount;
+	}
+
+	/**
+	 * The number of notifications which could not be sent.
+	 */
+	public synchronized long getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * The largest number of variable bindings sent in one notification.
+	 */
+	public synchronized int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * The average number of variable bindings per notification, 0 if none
+	 * has been sent.
+	 */
+	public synchronized double getAverageBatchSize() {
+		return notificationCount == 0 ? 0 : (double) bindingCount / notificationCount;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "NotificationEmitter[target=" + target.getAddress() + ",notifications=" + notificationCount
+				+ ",bindings=" + bindingCount + ",averageBatchSize=" + String.format("%.2f", getAverageBatchSize())
+				+ ",maxBatchSize=" + maxBatchSize + ",fullBatches=" + fullBatchCount + ",coalesced="
+				+ coalescedCount + ",failed=" + failedCount + "]";
+	}
+}
@@ -1,20 +1,18 @@
 package edu.tcd.nds.nwmgmt.snmp.traps;
 
 import java.io.IOException;
-import java.util.Vector;
 
 import org.snmp4j.CommandResponder;
 import org.snmp4j.CommandResponderEvent;
 import org.snmp4j.CommunityTarget;
 import org.snmp4j.MessageDispatcher;
 import org.snmp4j.MessageDispatcherImpl;
-import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
 import org.snmp4j.mp.MPv1;
 import org.snmp4j.mp.MPv2c;
 import org.snmp4j.security.Priv3DES;
 import org.snmp4j.security.SecurityProtocols;
-import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Address;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.TcpAddress;
 import org.snmp4j.smi.TransportIpAddress;
@@ -27,6 +25,7 @@ import org.snmp4j.util.MultiThreadedMessageDispatcher;
 import org.snmp4j.util.ThreadPool;
 
 import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.EnergyBalance;
 import edu.tcd.nds.nwmgmt.utils.Constants;
 import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
 
@@ -44,16 +43,26 @@ import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
  * @author Sachin Hadke and Farhan Ahmad
  *
  */
-public class SolarEnergyGenerationTrapReceiver implements CommandResponder, Runnable {
+public class SolarEnergyGenerationTrapReceiver implements CommandResponder, TrapHandler, Runnable {
 	public static final String SOLAR_ENERGY_GENERATION_TRAP_PORT = "2002";
 	public static final String SOLAR_ENERGY_GENERATION_TRAP_HOST = "localhost";
+	/**
+	 * Traps of same managed object from the same sender received within this
+	 * window are collapsed into the latest one, which is then handled once.
+	 */
+	public static final long DEFAULT_COALESCING_WINDOW_MILLIS = 1000;
 	private Apartment apartment;
+	private final TrapDispatcher dispatcher = new TrapDispatcher();
+	private Snmp snmp;
+	private ThreadPool threadPool;
+	private boolean closed;
 	
 	/**
 	 * Default constructor
 	 */
 	public SolarEnergyGenerationTrapReceiver(){
-		// default constructor
+		dispatcher.addRoute(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, this);
+		dispatcher.setCoalescingWindowMillis(DEFAULT_COALESCING_WINDOW_MILLIS);
 	}
 	
 	/**
@@ -63,9 +72,24 @@ public class SolarEnergyGenerationTrapReceiver implements CommandResponder, Runn
 	 *            the {@link Apartment} model object
 	 */
 	public SolarEnergyGenerationTrapReceiver(Apartment apartment){
+		this();
 		this.apartment = apartment;
 	}
 	
+	/**
+	 * Construct a trap receiver of {@link Apartment} model object which
+	 * collapses the traps received within given window.
+	 * 
+	 * @param apartment
+	 *            the {@link Apartment} model object
+	 * @param coalescingWindowMillis
+	 *            the window length in milliseconds, zero handles every trap
+	 */
+	public SolarEnergyGenerationTrapReceiver(Apartment apartment, long coalescingWindowMillis){
+		this(apartment);
+		dispatcher.setCoalescingWindowMillis(coalescingWindowMillis);
+	}
+	
 	public void run(){
 		try {
 			listen(new UdpAddress(SOLAR_ENERGY_GENERATION_TRAP_HOST+"/"+SOLAR_ENERGY_GENERATION_TRAP_PORT));
@@ -75,9 +99,13 @@ public class SolarEnergyGenerationTrapReceiver implements CommandResponder, Runn
 	}
 
 	/**
-	 * Trap listener
+	 * Trap listener, which listens on given address until the receiver is
+	 * shut down. It returns at once if the receiver is shut down already.
 	 */
 	public synchronized void listen(TransportIpAddress address) throws IOException {
+		if (closed) {
+			return;
+		}
 		AbstractTransportMapping transport;
 		if (address instanceof TcpAddress) {
 			transport = new DefaultTcpTransportMapping((TcpAddress) address);
@@ -85,7 +113,7 @@ public class SolarEnergyGenerationTrapReceiver implements CommandResponder, Runn
 			transport = new DefaultUdpTransportMapping((UdpAddress) address);
 		}
 
-		ThreadPool threadPool = ThreadPool.create("DispatcherPool", 5);
+		threadPool = ThreadPool.create("DispatcherPool", 5);
 		MessageDispatcher mDispathcher = new MultiThreadedMessageDispatcher(threadPool, new MessageDispatcherImpl());
 
 		// add message processing models
@@ -100,85 +128,115 @@ public class SolarEnergyGenerationTrapReceiver implements CommandResponder, Runn
 		CommunityTarget target = new CommunityTarget();
 		target.setCommunity(new OctetString(Constants.COMMUNITY));
 
-		Snmp snmp = new Snmp(mDispathcher, transport);
+		snmp = new Snmp(mDispathcher, transport);
 		snmp.addCommandResponder(this);
 
 		transport.listen();
 		System.out.println("Listening on " + address);
 
 		try {
-			this.wait();
+			while (!closed) {
+				this.wait();
+			}
 		} catch (InterruptedException ex) {
 			Thread.currentThread().interrupt();
 		}
 	}
 	
+	/**
+	 * Return true once the receiver listens on its address and until it is
+	 * shut down.
+	 */
+	public synchronized boolean isListening() {
+		return snmp != null && !closed;
+	}
+	
 	/**
 	 * This method will be called whenever a pdu is received on the given port
-	 * specified in the listen() method
+	 * specified in the listen() method. Every variable binding of the pdu is
+	 * routed by the {@link TrapDispatcher}, so traps are not serialized here.
 	 */
-	public synchronized void processPdu(CommandResponderEvent cmdRespEvent) {
-		System.out.println("Received PDU for SolarEnergyGenerationTrap handler...");
-		PDU pdu = cmdRespEvent.getPDU();
-		if (pdu != null) {
-			Vector<VariableBinding> bindings = pdu.getVariableBindings();
-			VariableBinding binding = bindings.get(0);
-			OID oid = binding.getOid(); 
-			if(oid.equals(new OID(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR))){
-				adjustEnergyGenerationMOValues();
-			} else {
-				System.out.println("Some other OID. Trap notification is not for solar energy generation, skipping.");
+	public void processPdu(CommandResponderEvent cmdRespEvent) {
+		dispatcher.processPdu(cmdRespEvent);
+	}
+
+	/**
+	 * Stop listening, which releases the port and lets the thread waiting in
+	 * {@link #listen(TransportIpAddress)} return, and stop the dispatcher of
+	 * this receiver, traps not yet handled are dropped. Shutting down again
+	 * does nothing.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (snmp != null) {
+				try {
+					snmp.close();
+				} catch (IOException ex) {
+					ex.printStackTrace();
+				}
+				threadPool.stop();
 			}
+			notifyAll();
 		}
+		dispatcher.shutdown();
+	}
+
+	/**
+	 * Return the dispatcher of this receiver, further handlers can be routed
+	 * through it.
+	 */
+	public TrapDispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * Handle the latest solar energy generation binding of a coalescing window
+	 * routed by the dispatcher.
+	 */
+	public void handleTrap(Address peer, VariableBinding binding) {
+		adjustEnergyGenerationMOValues();
 	}
 	
 	/**
-	 * According to scenario update values of other managed objects.
+	 * According to scenario update values of other managed objects. The
+	 * adjusted balance is derived from one record and replaces it only if no
+	 * other update came in between, otherwise it is derived again.
 	 */
 	private void adjustEnergyGenerationMOValues(){
-		String generatedBySolarStr = apartment.getEnergyGenerationBySolarMO().getValue().toString();
-		String generatedByHydroStr = apartment.getEnergyGenerationByHydroMO().getValue().toString();
-		String energyStorageStr = apartment.getEnergyStorageMO().getValue().toString();
-		String totalEnergyGenerationStr = apartment.getEnergyGenerationMO().getValue().toString();
-		
-		int generatedBySolarInt = 0;
-		int generationByHydroInt = 0;
-		int energyStorageInt = 0;
-		int totalEnergyGenerationInt = 0;
-
-		// convert string to int
-		try{
-			generatedBySolarInt = Integer.parseInt(generatedBySolarStr);
-			generationByHydroInt = Integer.parseInt(generatedByHydroStr);
-			energyStorageInt = Integer.parseInt(energyStorageStr);
-			totalEnergyGenerationInt = Integer.parseInt(totalEnergyGenerationStr);
-		} catch (NumberFormatException ex){
-			System.out.println("The value set for energy generated by hydro, solar or storage capacity is not a integer.");
-		}
+		EnergyBalance balance;
+		EnergyBalance adjusted;
+		do {
+			balance = apartment.getEnergyBalance();
+			adjusted = adjustEnergyBalance(balance);
+		} while (adjusted != balance && !apartment.compareAndSetEnergyBalance(balance, adjusted));
+	}
+	
+	/**
+	 * Derive the adjusted balance from given record without side effects, it
+	 * is called again whenever the compare-and-set has to be retried.
+	 */
+	private EnergyBalance adjustEnergyBalance(EnergyBalance balance){
+		int generatedBySolarInt = balance.getGenerationBySolar();
+		int generationByHydroInt = balance.getGenerationByHydro();
+		int energyStorageInt = balance.getStorage();
+		int totalEnergyGenerationInt = balance.getGeneration();
 		
 		int energySurplus = (generatedBySolarInt + generationByHydroInt + energyStorageInt) - totalEnergyGenerationInt;
-		float energySurplusSign = Math.signum(energySurplus);
-		if(energySurplusSign == 1.0) { // total energy generated is in surplus
-			System.out.println("energy generated by all sources is in surplus than what is needed.");
+		if(energySurplus > 0) { // total energy generated is in surplus
 			int energySurplusAfterStorage = energySurplus - energyStorageInt;
-			float energySurplusAfterStorageSign = Math.signum(energySurplusAfterStorage);
-			if(energySurplusAfterStorageSign == 1.0){ // energy generated by solar is in surplus
-				System.out.println("energy generated by solar can be used to replace energy utilization from storage.");
-				apartment.setStorageMOValue("0");
-				apartment.setGenerationByHydroMOValue(""+(generationByHydroInt-energySurplusAfterStorage));
-			} else if(energySurplusSign == 0){ // all good, no changes needed.
-				// do nothing
-				System.out.println("energy generated by all sources is exactly what is needed.");
+			if(energySurplusAfterStorage > 0){ // energy generated by solar can replace the storage
+				return balance.withStorageAndHydro(0, generationByHydroInt-energySurplusAfterStorage);
 			}
-		} else if(energySurplusSign == -1.0){ // total energy generated is in dearth 
-			System.out.println("energy generated by all sources is in dearth than what is needed.");
+		} else if(energySurplus < 0){ // total energy generated is in dearth 
 			energyStorageInt = 10; // update storage
 			generationByHydroInt = totalEnergyGenerationInt - (energyStorageInt + generatedBySolarInt); //update hydro 
-			apartment.setStorageMOValue(""+energyStorageInt);
-			apartment.setGenerationByHydroMOValue(""+generationByHydroInt);
-		} else if(energySurplusSign == 0){ // all good, no changes needed.
-			// do nothing
-			System.out.println("energy generated by all sources is exactly what is needed.");
+			return balance.withStorageAndHydro(energyStorageInt, generationByHydroInt);
 		}
+		// all good, no changes needed
+		return balance;
 	}
-}
\ No newline at end of file
+}
@@ -1,15 +1,8 @@
 package edu.tcd.nds.nwmgmt.snmp.traps;
 
-import org.snmp4j.CommunityTarget;
-import org.snmp4j.PDU;
 import org.snmp4j.Snmp;
-import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.smi.OID;
-import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.UdpAddress;
-import org.snmp4j.smi.VariableBinding;
-
-import edu.tcd.nds.nwmgmt.utils.Constants;
 
 /**
  * The implementation of solar energy generation trap sender. The basic
@@ -17,6 +10,10 @@ import edu.tcd.nds.nwmgmt.utils.Constants;
  * class uses localhost and 2002 port for sending PDU notification. Therefore,
  * make sure that host and port combination is not already in use.
  * 
+ * The traps are sent by one {@link NotificationEmitter} built when the
+ * session is set, so the changes sent within its flush interval go out as
+ * one notification.
+ * 
  * @author Sachin Hadke and Farhan Ahmad
  *
  */
@@ -24,37 +21,41 @@ public class SolarEnergyGenerationTrapSender {
 	public static final String SOLAR_ENERGY_GENERATION_TRAP_HOST = "127.0.0.1";
 	public static final String SOLAR_ENERGY_GENERATION_TRAP_PORT = "2002";
 
-	private Snmp snmp;
+	private NotificationEmitter emitter;
 	
 	public void setSnmp(Snmp snmp){
-		this.snmp = snmp;
+		if (emitter != null) {
+			emitter.close();
+		}
+		this.emitter = new NotificationEmitter(snmp,
+				new UdpAddress(SOLAR_ENERGY_GENERATION_TRAP_HOST + "/" + SOLAR_ENERGY_GENERATION_TRAP_PORT));
 	}
 
 	/**
-	 * This methods sends the V1 trap to the Localhost in port
+	 * This methods sends the V2 trap to the Localhost in port
 	 * SolarEnergyGenerationTrapReceiver.SOLAR_ENERGY_GENERATION_TRAP_PORT
+	 * with the next flush of emitter.
 	 */
-	public void sendSolarEnergyGenerationTrap(OID oid, String value) {
-		try {
-			// Create Target
-			CommunityTarget cTarget = new CommunityTarget();
-			cTarget.setCommunity(new OctetString(Constants.COMMUNITY));
-			cTarget.setVersion(SnmpConstants.version2c);
-			cTarget.setAddress(new UdpAddress(SOLAR_ENERGY_GENERATION_TRAP_HOST + "/" + SOLAR_ENERGY_GENERATION_TRAP_PORT));
-			cTarget.setRetries(2);
-			cTarget.setTimeout(5000);
-
-			// Create PDU for V2
-			PDU pdu = new PDU();
-			pdu.add(new VariableBinding(oid, new OctetString(value)));
-			pdu.setType(PDU.NOTIFICATION);
-
-			// Send the PDU
-			System.out.println("Sending V2 Trap... ");
-			snmp.send(pdu, cTarget);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	public void sendSolarEnergyGenerationTrap(OID oid, int value) {
+		emitter.emit(oid, value);
+	}
+
+	/**
+	 * Send the traps which wait for the next flush now.
+	 */
+	public void flush() {
+		emitter.flush();
+	}
+
+	/**
+	 * Send the waiting traps and stop the emitter.
+	 */
+	public void close() {
+		emitter.close();
+	}
+
+	public NotificationEmitter getEmitter() {
+		return emitter;
 	}
 
-}
\ No newline at end of file
+}
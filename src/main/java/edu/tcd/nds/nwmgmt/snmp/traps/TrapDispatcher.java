@@ -0,0 +1,408 @@
+package edu.tcd.nds.nwmgmt.snmp.traps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The trap dispatcher routes every variable binding of a received trap to the
+ * {@link TrapHandler} registered for the longest OID subtree that contains the
+ * binding OID.
+ *
+ * Bindings are handed to handlers through a fixed number of lanes. All
+ * bindings of same OID from the same peer go to the same lane and are handled
+ * in the order they were received, while lanes are drained in parallel by the
+ * worker threads.
+ * The handoff to a lane is lock-free, the thread of snmp4j which received the
+ * trap only appends to a queue and never waits for a handler. Routes are kept
+ * in an array which is replaced on change, therefore routing needs no lock
+ * either.
+ *
+ * Optionally bindings are coalesced before they are handed to a lane. The
+ * first binding of an OID from a peer opens a window, bindings of same OID
+ * from the same peer received within the window only replace the pending
+ * one, and at the end of the window the latest binding is handled once. This
+ * absorbs notification storms of devices which report every second, while
+ * the bindings of different devices are all handled. A binding pending when
+ * the window is set to zero is handled before the next binding of its OID
+ * from its peer.
+ *
+ * The worker and timer threads are daemon threads, so a dispatcher which is
+ * not shut down does not keep the JVM alive.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TrapDispatcher implements CommandResponder {
+	public static final int DEFAULT_WORKER_COUNT = 4;
+	private static final int LANES_PER_WORKER = 4;
+
+	private volatile Route[] routes = new Route[0];
+	private final Lane[] lanes;
+	private final ExecutorService workers;
+
+	private volatile long coalescingWindowMillis;
+	private final ConcurrentMap<PendingKey, Delivery> pending = new ConcurrentHashMap<PendingKey, Delivery>();
+	private ScheduledExecutorService coalescingTimer;
+
+	private final LongAdder receivedCount = new LongAdder();
+	private final LongAdder coalescedCount = new LongAdder();
+	private final LongAdder processedCount = new LongAdder();
+	private final LongAdder unroutedCount = new LongAdder();
+
+	/**
+	 * Construct the dispatcher with default number of worker threads.
+	 */
+	public TrapDispatcher() {
+		this(DEFAULT_WORKER_COUNT);
+	}
+
+	/**
+	 * Construct the dispatcher with given number of worker threads.
+	 *
+	 * @param workerCount
+	 *            the number of threads which run the handlers
+	 */
+	public TrapDispatcher(int workerCount) {
+		if (workerCount <= 0) {
+			throw new IllegalArgumentException("Number of trap workers must be positive.");
+		}
+		workers = Executors.newFixedThreadPool(workerCount, daemonThreads("TrapWorker"));
+		lanes = new Lane[workerCount * LANES_PER_WORKER];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * Set the window in which bindings of same OID from the same peer are
+	 * collapsed into the latest one. Zero, which is the default, hands every binding to its
+	 * handler.
+	 *
+	 * @param coalescingWindowMillis
+	 *            the window length in milliseconds
+	 */
+	public synchronized void setCoalescingWindowMillis(long coalescingWindowMillis) {
+		if (coalescingWindowMillis < 0) {
+			throw new IllegalArgumentException("Coalescing window must not be negative.");
+		}
+		if (coalescingWindowMillis > 0 && coalescingTimer == null) {
+			coalescingTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("TrapCoalescing"));
+		}
+		this.coalescingWindowMillis = coalescingWindowMillis;
+	}
+
+	public long getCoalescingWindowMillis() {
+		return coalescingWindowMillis;
+	}
+
+	/**
+	 * Route the bindings under given OID subtree to the handler. A route for
+	 * the same subtree is replaced.
+	 *
+	 * @param subtree
+	 *            the OID prefix of bindings handled by the handler
+	 * @param handler
+	 *            the handler of the bindings
+	 */
+	public synchronized void addRoute(OID subtree, TrapHandler handler) {
+		List<Route> newRoutes = new ArrayList<Route>();
+		for (Route route : routes) {
+			if (!route.subtree.equals(subtree)) {
+				newRoutes.add(route);
+			}
+		}
+		newRoutes.add(new Route(new OID(subtree), handler));
+		// the longest prefix is tried first
+		Collections.sort(newRoutes, new Comparator<Route>() {
+			public int compare(Route r1, Route r2) {
+				return r2.subtree.size() - r1.subtree.size();
+			}
+		});
+		routes = newRoutes.toArray(new Route[newRoutes.size()]);
+	}
+
+	/**
+	 * Remove the route of given OID subtree.
+	 *
+	 * @return true if there was such route
+	 */
+	public synchronized boolean removeRoute(OID subtree) {
+		List<Route> newRoutes = new ArrayList<Route>();
+		for (Route route : routes) {
+			if (!route.subtree.equals(subtree)) {
+				newRoutes.add(route);
+			}
+		}
+		boolean removed = newRoutes.size() < routes.length;
+		routes = newRoutes.toArray(new Route[newRoutes.size()]);
+		return removed;
+	}
+
+	/**
+	 * Find the handler of the longest subtree which contains given OID.
+	 *
+	 * @return the handler or null if the OID is not routed
+	 */
+	public TrapHandler route(OID oid) {
+		for (Route route : routes) {
+			if (oid.startsWith(route.subtree)) {
+				return route.handler;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Dispatch every variable binding of the received trap to its handler.
+	 */
+	public void processPdu(CommandResponderEvent event) {
+		PDU pdu = event.getPDU();
+		if (pdu == null) {
+			return;
+		}
+		Address peer = event.getPeerAddress();
+		for (int i = 0; i < pdu.size(); i++) {
+			VariableBinding binding = pdu.get(i);
+			TrapHandler handler = route(binding.getOid());
+			if (handler == null) {
+				unroutedCount.increment();
+				continue;
+			}
+			receivedCount.increment();
+			Delivery delivery = new Delivery(handler, peer, binding);
+			if (coalescingWindowMillis > 0) {
+				coalesce(delivery);
+			} else if (!pending.isEmpty()) {
+				submitAfterPending(delivery);
+			} else {
+				lanes[laneOf(peer, binding.getOid())].submit(delivery);
+			}
+		}
+	}
+
+	/**
+	 * Submit given delivery after the binding of its peer and OID still
+	 * pending from a window which was open when the window was set to zero.
+	 * The timer of that window submits the pending binding under the same
+	 * lock of the pending map, so it is submitted once and always before the
+	 * delivery.
+	 */
+	private void submitAfterPending(final Delivery delivery) {
+		final Lane lane = lanes[laneOf(delivery.peer, delivery.binding.getOid())];
+		pending.compute(new PendingKey(delivery.peer, delivery.binding.getOid()),
+				new BiFunction<PendingKey, Delivery, Delivery>() {
+					public Delivery apply(PendingKey key, Delivery earlier) {
+						if (earlier != null) {
+							lane.submit(earlier);
+						}
+						lane.submit(delivery);
+						return null;
+					}
+				});
+	}
+
+	private void coalesce(Delivery delivery) {
+		final OID oid = delivery.binding.getOid();
+		final PendingKey key = new PendingKey(delivery.peer, oid);
+		final Lane lane = lanes[laneOf(delivery.peer, oid)];
+		if (pending.put(key, delivery) != null) {
+			// replaced the binding of an open window
+			coalescedCount.increment();
+			return;
+		}
+		try {
+			coalescingTimer.schedule(new Runnable() {
+				public void run() {
+					pending.computeIfPresent(key, new BiFunction<PendingKey, Delivery, Delivery>() {
+						public Delivery apply(PendingKey key, Delivery latest) {
+							lane.submit(latest);
+							return null;
+						}
+					});
+				}
+			}, coalescingWindowMillis, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ex) {
+			// dispatcher is shut down
+			pending.remove(key);
+		}
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Return the lane of the bindings of given OID from given peer, the same
+	 * lane whether the bindings are coalesced or not.
+	 */
+	private int laneOf(Address peer, OID oid) {
+		int hash = 0;
+		for (int i = 0; i < oid.size(); i++) {
+			hash = 31 * hash + oid.get(i);
+		}
+		hash = 31 * hash + (peer == null ? 0 : peer.hashCode());
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % lanes.length;
+	}
+
+	/**
+	 * The number of routed bindings received so far.
+	 */
+	public long getReceivedCount() {
+		return receivedCount.sum();
+	}
+
+	/**
+	 * The number of bindings replaced by a later binding of same OID from the
+	 * same peer within the coalescing window.
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.sum();
+	}
+
+	/**
+	 * The number of bindings handled by handlers so far.
+	 */
+	public long getProcessedCount() {
+		return processedCount.sum();
+	}
+
+	/**
+	 * The number of bindings dropped so far because no route matched.
+	 */
+	public long getUnroutedCount() {
+		return unroutedCount.sum();
+	}
+
+	/**
+	 * Stop the worker threads, bindings not yet handled are dropped.
+	 */
+	public synchronized void shutdown() {
+		if (coalescingTimer != null) {
+			coalescingTimer.shutdownNow();
+		}
+		workers.shutdownNow();
+	}
+
+	private static class Route {
+		private final OID subtree;
+		private final TrapHandler handler;
+
+		Route(OID subtree, TrapHandler handler) {
+			this.subtree = subtree;
+			this.handler = handler;
+		}
+	}
+
+	/**
+	 * The peer and OID of a binding waiting for the end of its coalescing
+	 * window.
+	 */
+	private static class PendingKey {
+		private final Address peer;
+		private final OID oid;
+
+		PendingKey(Address peer, OID oid) {
+			this.peer = peer;
+			this.oid = oid;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PendingKey)) {
+				return false;
+			}
+			PendingKey other = (PendingKey) obj;
+			return oid.equals(other.oid) && (peer == null ? other.peer == null : peer.equals(other.peer));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * oid.hashCode() + (peer == null ? 0 : peer.hashCode());
+		}
+	}
+
+	private static class Delivery {
+		private final TrapHandler handler;
+		private final Address peer;
+		private final VariableBinding binding;
+
+		Delivery(TrapHandler handler, Address peer, VariableBinding binding) {
+			this.handler = handler;
+			this.peer = peer;
+			this.binding = binding;
+		}
+	}
+
+	/**
+	 * A queue of deliveries drained by at most one worker at a time, which
+	 * keeps the order of deliveries of the lane.
+	 */
+	private class Lane implements Runnable {
+		private final Queue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		void submit(Delivery delivery) {
+			queue.offer(delivery);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					workers.execute(this);
+				} catch (RejectedExecutionException ex) {
+					// dispatcher is shut down, the lane is never drained again
+				}
+			}
+		}
+
+		public void run() {
+			Delivery delivery;
+			while ((delivery = queue.poll()) != null) {
+				try {
+					delivery.handler.handleTrap(delivery.peer, delivery.binding);
+					processedCount.increment();
+				} catch (RuntimeException ex) {
+					ex.printStackTrace();
+				}
+			}
+			scheduled.set(false);
+			// a delivery may have been queued after the last poll
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package edu.tcd.nds.nwmgmt.snmp.traps;
+
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * A handler of trap variable bindings whose OID falls under the subtree the
+ * handler is routed for in {@link TrapDispatcher}. Bindings of same OID are
+ * handed to the handler one after another in the order they were received,
+ * bindings of different OIDs may be handled in parallel.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public interface TrapHandler {
+	/**
+	 * Handle one variable binding of a received trap.
+	 *
+	 * @param peer
+	 *            the address of the trap sender
+	 * @param binding
+	 *            the variable binding routed to this handler
+	 */
+	void handleTrap(Address peer, VariableBinding binding);
+}
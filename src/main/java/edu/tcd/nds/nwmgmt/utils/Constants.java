@@ -2,5 +2,23 @@ package edu.tcd.nds.nwmgmt.utils;
 
 public class Constants {
 	public static final String COMMUNITY = "public";
+	public static final String CHANGE_LOG_DIRECTORY = "changelog";
+	public static final String MODEL_SNAPSHOT_FILE = "model.snapshot";
+	/** the number of worker threads of each request queue of agent */
+	public static final int REQUEST_WORKERS = 4;
+	/** the number of requests which may wait in each request queue of agent */
+	public static final int REQUEST_QUEUE_CAPACITY = 256;
+	/** the number of requests the agent has queued or is processing at most */
+	public static final int MAX_IN_FLIGHT_REQUESTS = 384;
+	/** the local port on which the agent writes its metrics as plain text */
+	public static final int METRICS_PORT = 2003;
+	/** the address the agent sends its notifications to, further targets can be added */
+	public static final String NOTIFICATION_TARGET = "127.0.0.1/2162";
+	/** the time between two notifications of one rule of agent at least */
+	public static final long NOTIFICATION_MIN_INTERVAL_MILLIS = 1000;
+	/** the total consumption of a flat above which the agent notifies */
+	public static final int FLAT_CONSUMPTION_BUDGET = 50;
+	/** the number of previous values of every flat measurement kept in the off-heap store of agent */
+	public static final int RECENT_MEASUREMENT_VALUES = 4;
 
 }
@@ -0,0 +1,269 @@
+package edu.tcd.nds.nwmgmt.utils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementManager;
+import edu.tcd.nds.nwmgmt.snmp.TableRow;
+import edu.tcd.nds.nwmgmt.snmp.TableRowHandler;
+import edu.tcd.nds.nwmgmt.snmp.traps.NotificationEmitter;
+
+/**
+ * Load generator which runs a number of virtual managers against one agent to
+ * find the load at which the agent saturates. Every virtual manager is an
+ * {@link EnergyMeasurementManager} with its own session, and together they
+ * issue a mix of GETs, flats table walks, SETs and solar energy generation
+ * traps at the target rate.
+ *
+ * The load is open-loop: operations are issued at their scheduled time
+ * whether or not earlier operations have been answered, and the latency is
+ * measured from the scheduled time. A slow agent therefore shows up in the
+ * latency instead of silently lowering the rate. Traps are not answered, for
+ * them the time to hand the trap to the emitter of manager is reported.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class LoadGenerator {
+	public static final int GET = 0;
+	public static final int WALK = 1;
+	public static final int SET = 2;
+	public static final int TRAP = 3;
+	private static final String[] OPERATION_NAMES = { "GET", "WALK", "SET", "TRAP" };
+	private static final int[] DEFAULT_MIX = { 70, 10, 15, 5 };
+	private static final int MAX_REQUESTS_IN_FLIGHT = 4096;
+	private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+
+	private final String address;
+	private final int managerCount;
+	private final double ratePerSecond;
+	private final int[] mix;
+	private final int mixTotal;
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATION_NAMES.length];
+	private final AtomicLong[] errors = new AtomicLong[OPERATION_NAMES.length];
+	private final AtomicLong[] timeouts = new AtomicLong[OPERATION_NAMES.length];
+	private final AtomicLong outstanding = new AtomicLong();
+	private long trapNotificationCount;
+	private long trapBindingCount;
+
+	/**
+	 * @param address
+	 *            the host and port of agent
+	 * @param managerCount
+	 *            the number of virtual managers
+	 * @param ratePerSecond
+	 *            the number of operations issued per second by all managers
+	 * @param mix
+	 *            the weights of GET, WALK, SET and TRAP operations
+	 */
+	public LoadGenerator(String address, int managerCount, double ratePerSecond, int[] mix) {
+		if (managerCount < 1 || ratePerSecond <= 0) {
+			throw new IllegalArgumentException("Number of managers and rate must be positive.");
+		}
+		if (mix.length != OPERATION_NAMES.length) {
+			throw new IllegalArgumentException("The mix needs a weight for each of GET, WALK, SET and TRAP.");
+		}
+		int total = 0;
+		for (int weight : mix) {
+			if (weight < 0) {
+				throw new IllegalArgumentException("The weights of mix must not be negative.");
+			}
+			total += weight;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("At least one weight of mix must be positive.");
+		}
+		this.address = address;
+		this.managerCount = managerCount;
+		this.ratePerSecond = ratePerSecond;
+		this.mix = mix.clone();
+		this.mixTotal = total;
+		for (int i = 0; i < OPERATION_NAMES.length; i++) {
+			latencies[i] = new LatencyHistogram();
+			errors[i] = new AtomicLong();
+			timeouts[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Generate load for given time and wait for outstanding responses.
+	 *
+	 * @param durationSeconds
+	 *            the time for which operations are issued
+	 */
+	public void run(long durationSeconds) throws InterruptedException {
+		EnergyMeasurementManager[] managers = new EnergyMeasurementManager[managerCount];
+		Thread[] threads = new Thread[managerCount];
+		long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) * managerCount / ratePerSecond);
+		long startTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long endTime = startTime + TimeUnit.SECONDS.toNanos(durationSeconds);
+		for (int i = 0; i < managerCount; i++) {
+			managers[i] = new EnergyMeasurementManager(address);
+			managers[i].setMaxRequestsInFlight(MAX_REQUESTS_IN_FLIGHT);
+			// spread the managers evenly within one interval
+			threads[i] = new Thread(new VirtualManager(managers[i], startTime + i * intervalNanos / managerCount,
+					endTime, intervalNanos), "VirtualManager-" + i);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+		while (outstanding.get() > 0 && System.currentTimeMillis() < drainDeadline) {
+			Thread.sleep(10);
+		}
+		for (EnergyMeasurementManager manager : managers) {
+			try {
+				manager.stop();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			NotificationEmitter emitter = manager.getTrapSender().getEmitter();
+			trapNotificationCount += emitter.getNotificationCount();
+			trapBindingCount += emitter.getBindingCount();
+		}
+	}
+
+	/**
+	 * Print count, errors, timeouts and latency percentiles of each
+	 * operation.
+	 */
+	public void printReport(long durationSeconds) {
+		System.out.println(String.format("%-6s %10s %8s %9s %10s %10s %10s %10s", "Op", "Count", "Errors",
+				"Timeouts", "p50(us)", "p99(us)", "p99.9(us)", "max(us)"));
+		long total = 0;
+		for (int i = 0; i < OPERATION_NAMES.length; i++) {
+			LatencyHistogram histogram = latencies[i];
+			long count = histogram.getCount() + errors[i].get() + timeouts[i].get();
+			total += count;
+			System.out.println(String.format("%-6s %10d %8d %9d %10d %10d %10d %10d", OPERATION_NAMES[i], count,
+					errors[i].get(), timeouts[i].get(), histogram.getPercentileMicros(50),
+					histogram.getPercentileMicros(99), histogram.getPercentileMicros(99.9), histogram.getMaxMicros()));
+		}
+		System.out.println(String.format("Target rate %.1f/s, completed %.1f/s, %d still outstanding.", ratePerSecond,
+				(double) total / durationSeconds, outstanding.get()));
+		if (trapNotificationCount > 0) {
+			System.out.println(String.format("Traps sent as %d notifications of %.2f bindings on average.",
+					trapNotificationCount, (double) trapBindingCount / trapNotificationCount));
+		}
+	}
+
+	private int nextOperation() {
+		int pick = ThreadLocalRandom.current().nextInt(mixTotal);
+		for (int i = 0; i < mix.length; i++) {
+			pick -= mix[i];
+			if (pick < 0) {
+				return i;
+			}
+		}
+		return GET;
+	}
+
+	/**
+	 * Record the outcome of an operation scheduled at given time.
+	 */
+	private void completed(int operation, long scheduledTime, Throwable error) {
+		outstanding.decrementAndGet();
+		if (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		if (error instanceof TimeoutException) {
+			timeouts[operation].incrementAndGet();
+		} else if (error != null) {
+			errors[operation].incrementAndGet();
+		} else {
+			latencies[operation].record(System.nanoTime() - scheduledTime);
+		}
+	}
+
+	/**
+	 * A virtual manager which issues one operation every interval.
+	 */
+	private class VirtualManager implements Runnable {
+		private final EnergyMeasurementManager manager;
+		private final long startTime;
+		private final long endTime;
+		private final long intervalNanos;
+
+		VirtualManager(EnergyMeasurementManager manager, long startTime, long endTime, long intervalNanos) {
+			this.manager = manager;
+			this.startTime = startTime;
+			this.endTime = endTime;
+			this.intervalNanos = intervalNanos;
+		}
+
+		public void run() {
+			for (long n = 0;; n++) {
+				long scheduledTime = startTime + n * intervalNanos;
+				if (scheduledTime >= endTime) {
+					return;
+				}
+				long waitNanos;
+				while ((waitNanos = scheduledTime - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(waitNanos);
+				}
+				issue(nextOperation(), scheduledTime);
+			}
+		}
+
+		private void issue(final int operation, final long scheduledTime) {
+			outstanding.incrementAndGet();
+			BiConsumer<Object, Throwable> outcome = new BiConsumer<Object, Throwable>() {
+				public void accept(Object result, Throwable error) {
+					completed(operation, scheduledTime, error);
+				}
+			};
+			int solarValue = 20 + ThreadLocalRandom.current().nextInt(40);
+			switch (operation) {
+			case GET:
+				manager.getAsync(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR).whenComplete(outcome);
+				break;
+			case WALK:
+				manager.walkTableAsync(EnergyMeasurementManager.FLAT_COLUMN_OIDS,
+						EnergyMeasurementManager.DEFAULT_MAX_REPETITIONS, 0, new TableRowHandler() {
+							public boolean onRow(TableRow row) {
+								return true;
+							}
+						}).whenComplete(outcome);
+				break;
+			case SET:
+				manager.setAsync(new VariableBinding(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR,
+						new Integer32(solarValue))).whenComplete(outcome);
+				break;
+			default:
+				manager.sendSolarEnergyGenerationTrap(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR, solarValue);
+				completed(operation, scheduledTime, null);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length != 4 && args.length != 5) {
+			System.out.println("Usage: java LoadGenerator <private_ip_address/port> <number_of_managers> "
+					+ "<operations_per_second> <duration_seconds> [get,walk,set,trap weights e.g. 70,10,15,5]");
+			return;
+		}
+		int[] mix = DEFAULT_MIX;
+		if (args.length == 5) {
+			String[] weights = args[4].split(",");
+			mix = new int[weights.length];
+			for (int i = 0; i < weights.length; i++) {
+				mix[i] = Integer.parseInt(weights[i].trim());
+			}
+		}
+		long durationSeconds = Long.parseLong(args[3]);
+		LoadGenerator generator = new LoadGenerator(args[0], Integer.parseInt(args[1]), Double.parseDouble(args[2]), mix);
+		generator.run(durationSeconds);
+		generator.printReport(durationSeconds);
+	}
+}
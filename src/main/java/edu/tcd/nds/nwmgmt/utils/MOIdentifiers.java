@@ -9,6 +9,35 @@ public class MOIdentifiers {
 	public static final OID APPT_ENERGY_STORAGE = new OID(".1.3.6.1.2.1.2.4.1");
 	public static final OID APPT_ENERGY_GENERATION_BY_SOLAR = new OID(".1.3.6.1.2.1.2.5.1");
 	public static final OID APPT_ENERGY_GENERATION_BY_HYDRO = new OID(".1.3.6.1.2.1.2.6.1");
+	// totals over the flats of apartment, the total consumption is APPT_ENERGY_CONSUMPTION
+	public static final OID APPT_ENERGY_CONSUMPTION_BY_HEATING_COOLING = new OID(".1.3.6.1.2.1.2.7.1");
+	public static final OID APPT_ENERGY_CONSUMPTION_BY_LIGHTING = new OID(".1.3.6.1.2.1.2.8.1");
+	public static final OID APPT_ENERGY_CONSUMPTION_BY_MISC = new OID(".1.3.6.1.2.1.2.9.1");
 
 	public static final OID FLAT_BASE_OID = new OID(".1.3.6.1.2.1.3.1.1");
+
+	// the objects added to the apartment and flats are kept under the private enterprise arc of the project,
+	// apart from the standard groups of MIB-2, one subtree per table or group
+	public static final OID ENTERPRISE_OID = new OID(".1.3.6.1.4.1.60601");
+
+	// district tables, apartment table is indexed by apartment number and flat table by apartment and flat number
+	public static final OID DISTRICT_APPT_TABLE_OID = new OID(".1.3.6.1.4.1.60601.1.1.1");
+	public static final OID DISTRICT_FLAT_TABLE_OID = new OID(".1.3.6.1.4.1.60601.2.1.1");
+
+	// history tables, series table is indexed by series number and history table by series number, second and sample number
+	public static final OID HISTORY_SERIES_TABLE_OID = new OID(".1.3.6.1.4.1.60601.3.1.1");
+	public static final OID HISTORY_TABLE_OID = new OID(".1.3.6.1.4.1.60601.3.2.1");
+
+	// metrics tables of agent, request table indexed by row number of PDU type or subtree and value table by metric number
+	public static final OID METRICS_REQUEST_TABLE_OID = new OID(".1.3.6.1.4.1.60601.4.1.1");
+	public static final OID METRICS_VALUE_TABLE_OID = new OID(".1.3.6.1.4.1.60601.4.2.1");
+
+	// notifications sent by the rules of agent with the changed measurement, the rule name and its limit
+	public static final OID THRESHOLD_NOTIFICATION_OID = new OID(".1.3.6.1.4.1.60601.5.0.1");
+	public static final OID DELTA_NOTIFICATION_OID = new OID(".1.3.6.1.4.1.60601.5.0.2");
+	public static final OID NOTIFICATION_RULE_NAME_OID = new OID(".1.3.6.1.4.1.60601.5.1.0");
+	public static final OID NOTIFICATION_RULE_LIMIT_OID = new OID(".1.3.6.1.4.1.60601.5.2.0");
+
+	// recent values of flat measurements indexed by flat number, column of flats table and position, oldest first
+	public static final OID FLAT_RECENT_VALUES_TABLE_OID = new OID(".1.3.6.1.4.1.60601.6.1.1");
 }
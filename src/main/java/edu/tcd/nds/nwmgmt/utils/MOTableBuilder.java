@@ -7,9 +7,11 @@ import org.snmp4j.agent.MOAccess;
 import org.snmp4j.agent.mo.DefaultMOMutableRow2PC;
 import org.snmp4j.agent.mo.DefaultMOTable;
 import org.snmp4j.agent.mo.MOColumn;
+import org.snmp4j.agent.mo.MOMutableColumn;
 import org.snmp4j.agent.mo.MOMutableTableModel;
 import org.snmp4j.agent.mo.MOTable;
 import org.snmp4j.agent.mo.MOTableIndex;
+import org.snmp4j.agent.mo.MOTableModel;
 import org.snmp4j.agent.mo.MOTableSubIndex;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.SMIConstants;
@@ -17,8 +19,7 @@ import org.snmp4j.smi.Variable;
 
 public class MOTableBuilder {
 
-	private MOTableSubIndex[] subIndexes = new MOTableSubIndex[] { new MOTableSubIndex(SMIConstants.SYNTAX_INTEGER) };
-	private MOTableIndex indexDef = new MOTableIndex(subIndexes, false);
+	private MOTableIndex indexDef;
 
 	private final List<MOColumn> columns = new ArrayList<MOColumn>();
 	private final List<Variable[]> tableRows = new ArrayList<Variable[]>();
@@ -34,13 +35,28 @@ public class MOTableBuilder {
 	 * Specified oid is the root oid of this table
 	 */
 	public MOTableBuilder(OID oid) {
+		this(oid, 1);
+	}
+
+	/**
+	 * Specified oid is the root oid of this table which is indexed by given
+	 * number of integer sub-indexes, e.g. 2 for a table of flats indexed by
+	 * apartment number and flat number.
+	 */
+	public MOTableBuilder(OID oid, int subIndexCount) {
 		this.tableRootOid = oid;
+		MOTableSubIndex[] subIndexes = new MOTableSubIndex[subIndexCount];
+		for (int i = 0; i < subIndexCount; i++) {
+			subIndexes[i] = new MOTableSubIndex(SMIConstants.SYNTAX_INTEGER);
+		}
+		this.indexDef = new MOTableIndex(subIndexes, false);
 	}
 
 	/**
 	 * Adds all column types {@link MOColumn} to this table.
 	 * Important to understand that you must add all types here before
-	 * adding any row values
+	 * adding any row values. A column with write access is added as
+	 * {@link MOMutableColumn} so that it accepts SET requests.
 	 * 
 	 * @param syntax use {@link SMIConstants}
 	 * @param access
@@ -48,10 +64,28 @@ public class MOTableBuilder {
 	 */
 	public MOTableBuilder addColumnType(int syntax, MOAccess access) {
 		colTypeCnt++;
-		columns.add(new MOColumn(colTypeCnt, syntax, access));
+		if (access.isAccessibleForWrite()) {
+			columns.add(new MOMutableColumn(colTypeCnt, syntax, access));
+		} else {
+			columns.add(new MOColumn(colTypeCnt, syntax, access));
+		}
 		return this;
 	}
 
+	/**
+	 * Return the index of the table, for a table class built by the caller.
+	 */
+	public MOTableIndex getIndexDef() {
+		return indexDef;
+	}
+
+	/**
+	 * Return the columns added so far, for a table class built by the caller.
+	 */
+	public MOColumn[] getColumns() {
+		return columns.toArray(new MOColumn[0]);
+	}
+
 	public MOTableBuilder addRowValue(Variable variable) {
 		if (tableRows.size() == currentRow) {
 			tableRows.add(new Variable[columns.size()]);
@@ -77,4 +111,15 @@ public class MOTableBuilder {
 		ifTable.setVolatile(true);
 		return ifTable;
 	}
+
+	/**
+	 * Build the table over given model instead of the default one, e.g. a
+	 * model which computes its rows when they are read. Row values added to
+	 * this builder are ignored.
+	 */
+	public MOTable build(MOTableModel model) {
+		DefaultMOTable table = new DefaultMOTable(tableRootOid, indexDef, columns.toArray(new MOColumn[0]), model);
+		table.setVolatile(true);
+		return table;
+	}
 }
@@ -2,20 +2,13 @@ package edu.tcd.nds.nwmgmt.utils;
 
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.List;
-
-import org.snmp4j.smi.OID;
 
+import edu.tcd.nds.nwmgmt.snmp.ApartmentSnapshot;
 import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementManager;
+import edu.tcd.nds.nwmgmt.snmp.TableRow;
 
 public class PrintStateOfManagedObject {
-	private String appartmentId;
-	private String consumption;
-	private String generation;
-	private String storage;
-	private String generationBySolar;
-	private String generationByHydro;
-	private List<List<String>> tableContents;
+	private ApartmentSnapshot snapshot;
 
 	public void print() {
 		StringBuffer buffer = new StringBuffer();
@@ -24,53 +17,32 @@ public class PrintStateOfManagedObject {
 		buffer.append("\n+++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
 
 		buffer.append("\n\n\n+++ APPARTMENT MANAGED OBJECT +++");
-		buffer.append("\nApartment Id: " + appartmentId);
-		buffer.append("\nApartment energy consumption: "+ consumption);
-		buffer.append("\nApartment energy generation: " + generation);
-		buffer.append("\n ++ Apartment energy storage: " + storage);
-		buffer.append("\n ++ Apartment energy generation by solar: "+ generationBySolar);
-		buffer.append("\n ++ Apartment energy generation by hydro: "+ generationByHydro);
+		buffer.append("\nApartment Id: " + snapshot.getDeviceId());
+		buffer.append("\nApartment energy consumption: "+ snapshot.getConsumption());
+		buffer.append("\n ++ Apartment energy consumption by heating and cooling: "+ snapshot.getConsumptionByHeatingCooling());
+		buffer.append("\n ++ Apartment energy consumption by lighting: "+ snapshot.getConsumptionByLighting());
+		buffer.append("\n ++ Apartment energy consumption by miscellaneous: "+ snapshot.getConsumptionByMisc());
+		buffer.append("\nApartment energy generation: " + snapshot.getGeneration());
+		buffer.append("\n ++ Apartment energy storage: " + snapshot.getStorage());
+		buffer.append("\n ++ Apartment energy generation by solar: "+ snapshot.getGenerationBySolar());
+		buffer.append("\n ++ Apartment energy generation by hydro: "+ snapshot.getGenerationByHydro());
 
 		buffer.append("\n\n\n+++ FLATS MANAGED OBJECT +++");
-		for (Iterator<List<String>> iterator = tableContents.iterator(); iterator.hasNext();) {
+		for (Iterator<TableRow> iterator = snapshot.getFlats().iterator(); iterator.hasNext();) {
 			buffer.append("\n\n+++ FLAT MANAGED OBJECT +++");
-			List<String> list = (List<String>) iterator.next();
-			Object[] values = list.toArray();
-			buffer.append("\nFlat Id: " + values[0]);
-			buffer.append("\nTotal energy consumption of flat: "+ values[1]);
-			buffer.append("\n ++ Total energy consumption of flat by heating and cooling: "+ values[2]);
-			buffer.append("\n ++ Total energy consumption of flat by lighting : "+ values[3]);
-			buffer.append("\n ++ Total energy consumption of flat by miscellaneous : "+ values[4]);
+			TableRow row = iterator.next();
+			buffer.append("\nFlat Id: " + row.getValue(0));
+			buffer.append("\nTotal energy consumption of flat: "+ row.getValue(1));
+			buffer.append("\n ++ Total energy consumption of flat by heating and cooling: "+ row.getValue(2));
+			buffer.append("\n ++ Total energy consumption of flat by lighting : "+ row.getValue(3));
+			buffer.append("\n ++ Total energy consumption of flat by miscellaneous : "+ row.getValue(4));
 		}
+		buffer.append("\n\nState fetched in " + (snapshot.getLatencyNanos() / 1000) + " us");
 		System.out.println(buffer.toString());
 	}
 	
-	public void setAppartmentId(String appartmentId) {
-		this.appartmentId = appartmentId;
-	}
-
-	public void setConsumption(String consumption) {
-		this.consumption = consumption;
-	}
-
-	public void setGeneration(String generation) {
-		this.generation = generation;
-	}
-
-	public void setStorage(String storage) {
-		this.storage = storage;
-	}
-
-	public void setGenerationBySolar(String generationBySolar) {
-		this.generationBySolar = generationBySolar;
-	}
-
-	public void setGenerationByHydro(String generationByHydro) {
-		this.generationByHydro = generationByHydro;
-	}
-
-	public void setTableContents(List<List<String>> tableContents) {
-		this.tableContents = tableContents;
+	public void setApartmentSnapshot(ApartmentSnapshot snapshot) {
+		this.snapshot = snapshot;
 	}
 
 	public static void main(String[] args) {
@@ -83,38 +55,9 @@ public class PrintStateOfManagedObject {
 		EnergyMeasurementManager manager = new EnergyMeasurementManager(ipAndPort);
 		PrintStateOfManagedObject printer = new PrintStateOfManagedObject();
 		
-		
-		manager = new EnergyMeasurementManager(ipAndPort);
-		OID appartmentId = new OID(MOIdentifiers.APPT_IDENTIFIER);
-		OID consumption = new OID(MOIdentifiers.APPT_ENERGY_CONSUMPTION);
-		OID generation = new OID(MOIdentifiers.APPT_ENERGY_GENERATION);
-		OID storage = new OID(MOIdentifiers.APPT_ENERGY_STORAGE);
-		OID generationBySolar = new OID(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR);
-		OID generationByHydro = new OID(MOIdentifiers.APPT_ENERGY_GENERATION_BY_HYDRO);
-		
 		try {
-			String appartmentIdStr = manager.getAsString(appartmentId);
-			String consumptionStr = manager.getAsString(consumption);
-			String generationStr = manager.getAsString(generation);
-			String storageStr = manager.getAsString(storage);
-			String generationBySolarStr = manager.getAsString(generationBySolar);
-			String generationByHydroStr = manager.getAsString(generationByHydro);
-
-			List<List<String>> tableContents = manager.getTableAsStrings(new OID[]{
-	    			new OID(MOIdentifiers.FLAT_BASE_OID + ".1"),
-	    			new OID(MOIdentifiers.FLAT_BASE_OID + ".2"),
-	    			new OID(MOIdentifiers.FLAT_BASE_OID + ".3"),
-	    			new OID(MOIdentifiers.FLAT_BASE_OID + ".4"),
-	    			new OID(MOIdentifiers.FLAT_BASE_OID + ".5")});
-			
-			
-			printer.setAppartmentId(appartmentIdStr);
-			printer.setConsumption(consumptionStr);
-			printer.setGeneration(generationStr);
-			printer.setGenerationByHydro(generationByHydroStr);
-			printer.setGenerationBySolar(generationBySolarStr);
-			printer.setStorage(storageStr);
-			printer.setTableContents(tableContents);
+			printer.setApartmentSnapshot(manager.getApartmentSnapshot());
+			printer.print();
 		} catch (IOException e) {
 			e.printStackTrace();
 		} finally {
@@ -124,6 +67,5 @@ public class PrintStateOfManagedObject {
 				e.printStackTrace();
 			}
 		}
-		printer.print();
 	}
 }
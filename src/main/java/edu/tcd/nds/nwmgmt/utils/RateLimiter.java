@@ -0,0 +1,61 @@
+package edu.tcd.nds.nwmgmt.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simple rate limiter which spaces permits evenly in time. Each caller
+ * reserves the next free time slot without locking and either sleeps until
+ * its slot is due or schedules its work at that time. Unused slots are not saved up, so an idle limiter does not allow a
+ * burst afterwards.
+ * 
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RateLimiter {
+	private final long intervalNanos;
+	private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+	/**
+	 * @param permitsPerSecond
+	 *            the number of permits handed out per second
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("The number of permits per second must be > 0");
+		}
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+	}
+
+	/**
+	 * Block until the next permit is available.
+	 * 
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public void acquire() throws InterruptedException {
+		long waitNanos = reserve();
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Reserve the next permit without waiting for it.
+	 * 
+	 * @return the nanoseconds till the reserved permit is due, 0 if it is due
+	 *         now
+	 */
+	public long reserve() {
+		long now = System.nanoTime();
+		long slot;
+		while (true) {
+			long next = nextSlot.get();
+			slot = Math.max(next, now);
+			if (nextSlot.compareAndSet(next, slot + intervalNanos)) {
+				break;
+			}
+		}
+		return slot - now;
+	}
+}
@@ -16,11 +16,12 @@ public class SimulateSummarScenario {
 		
 		EnergyMeasurementManager manager = null;
 		OID generationBySolarOID = new OID(MOIdentifiers.APPT_ENERGY_GENERATION_BY_SOLAR);
-		String generationBySolarValue = "40";
+		int generationBySolarValue = 40;
 		
 		try { 
 			manager = new EnergyMeasurementManager(ipWithPort);
-			manager.setAsString(generationBySolarOID, generationBySolarValue);
+			manager.setAsInt(generationBySolarOID, generationBySolarValue);
+			System.out.println("Sending V2 Trap... ");
 			manager.sendSolarEnergyGenerationTrap(generationBySolarOID, generationBySolarValue); // solar power generation increases from 20 to 40 during summer
 		} catch (IOException ex){
 			ex.printStackTrace();
@@ -0,0 +1,89 @@
+package edu.tcd.nds.nwmgmt.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementAgent;
+import edu.tcd.nds.nwmgmt.snmp.EnergyMeasurementManager;
+
+/**
+ * Measure the time from launching an agent until it answers its first GET
+ * request. The agent is started in a separate JVM with the class path of this
+ * one and polled every few milliseconds. The agent is then stopped, which
+ * writes its model snapshot, so with more than one run the first run shows
+ * the start from defaults and the following runs the start from snapshot.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TimeToFirstResponse {
+	private static final long POLL_TIMEOUT_MILLIS = 20;
+	private static final long MAX_WAIT_MILLIS = 120000;
+
+	private final String address;
+	private final int apartmentCount;
+
+	public TimeToFirstResponse(String address, int apartmentCount) {
+		this.address = address;
+		this.apartmentCount = apartmentCount;
+	}
+
+	/**
+	 * Launch the agent, wait for its first response and stop it.
+	 *
+	 * @return the time to first response in milliseconds
+	 */
+	public long measure() throws IOException, InterruptedException {
+		EnergyMeasurementManager manager = new EnergyMeasurementManager(address);
+		Target target = EnergyMeasurementManager.createTarget(address);
+		target.setTimeout(POLL_TIMEOUT_MILLIS);
+		target.setRetries(0);
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				EnergyMeasurementAgent.class.getName(), address, String.valueOf(apartmentCount));
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		long startTime = System.nanoTime();
+		Process agent = builder.start();
+		try {
+			while (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < MAX_WAIT_MILLIS) {
+				if (!agent.isAlive()) {
+					throw new IllegalStateException("The agent stopped with exit code " + agent.exitValue());
+				}
+				try {
+					PDU response = manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER).get();
+					if (response != null && response.getErrorStatus() == PDU.noError) {
+						return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+					}
+				} catch (ExecutionException e) {
+					// not listening yet, poll again
+				}
+			}
+			throw new IllegalStateException("The agent did not answer within " + MAX_WAIT_MILLIS + " ms.");
+		} finally {
+			manager.stop();
+			agent.destroy();
+			agent.waitFor();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 2 && args.length != 3) {
+			System.out.println("Usage: java TimeToFirstResponse <private_ip_address/port> <number_of_apartments> [runs]");
+			return;
+		}
+		int runs = args.length == 3 ? Integer.parseInt(args[2]) : 1;
+		TimeToFirstResponse timer = new TimeToFirstResponse(args[0], Integer.parseInt(args[1]));
+		for (int i = 1; i <= runs; i++) {
+			boolean fromSnapshot = new File(Constants.MODEL_SNAPSHOT_FILE).exists();
+			long millis = timer.measure();
+			System.out.println("Run " + i + ": time to first response " + millis + " ms"
+					+ (fromSnapshot ? " (from snapshot)" : " (from defaults)"));
+		}
+	}
+}
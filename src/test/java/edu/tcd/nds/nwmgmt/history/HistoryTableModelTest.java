@@ -0,0 +1,97 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.OID;
+
+/**
+ * The rows of the history table decoded from the series in batches.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class HistoryTableModelTest {
+
+	@Test
+	public void iteratorPagesThroughEverySeries() {
+		HistoryTableModel model = new HistoryTableModel(createSeries());
+		List<OID> indexes = indexesOf(model.iterator());
+		assertEquals(model.getRowCount(), indexes.size());
+		assertEquals(expectedIndexes(), indexes);
+		assertEquals(indexes.get(0), model.firstIndex());
+		assertEquals(indexes.get(indexes.size() - 1), model.lastIndex());
+	}
+
+	@Test
+	public void tailIteratorStartsAtLowerBound() {
+		HistoryTableModel model = new HistoryTableModel(createSeries());
+		List<OID> all = expectedIndexes();
+		for (int i = 0; i < all.size(); i += 5) {
+			OID index = all.get(i);
+			assertEquals(all.subList(i, all.size()), indexesOf(model.tailIterator(index)));
+			// an index below a row sorts after that row
+			OID below = new OID(index);
+			below.append(0);
+			assertEquals(all.subList(i + 1, all.size()), indexesOf(model.tailIterator(below)));
+		}
+		// series 2 from its last second on
+		List<OID> tail = indexesOf(model.tailIterator(new OID(new int[] { 2, 66 })));
+		assertEquals(all.subList(all.size() - 2, all.size()), tail);
+		assertFalse(model.tailIterator(new OID(new int[] { 3 })).hasNext());
+	}
+
+	@Test
+	public void getRowChecksSecondOfSample() {
+		HistoryTableModel model = new HistoryTableModel(createSeries());
+		MOTableRow row = model.getRow(new OID(new int[] { 1, 2, 7 }));
+		assertEquals(2007L, row.getValue(0).toLong());
+		assertEquals(7, row.getValue(1).toInt());
+		assertNull(model.getRow(new OID(new int[] { 1, 3, 7 })));
+		assertNull(model.getRow(new OID(new int[] { 3, 2, 7 })));
+	}
+
+	/**
+	 * Two series of more samples than a batch, three samples per second. The
+	 * ring of series 2 has overwritten its first samples.
+	 */
+	private static List<TimeSeries> createSeries() {
+		List<TimeSeries> series = new ArrayList<TimeSeries>();
+		series.add(new TimeSeries(16, 64));
+		series.add(new TimeSeries(3, 5));
+		for (int i = 0; i < 40; i++) {
+			series.get(0).append(1000 * (i / 3) + i, i);
+		}
+		for (int i = 0; i < 200; i++) {
+			series.get(1).append(1000 * (i / 3) + i % 3, -i);
+		}
+		return series;
+	}
+
+	private static List<OID> expectedIndexes() {
+		List<TimeSeries> series = createSeries();
+		List<OID> indexes = new ArrayList<OID>();
+		for (int seriesNo = 1; seriesNo <= series.size(); seriesNo++) {
+			for (Sample sample : series.get(seriesNo - 1).query(Long.MIN_VALUE, Long.MAX_VALUE)) {
+				indexes.add(new OID(new int[] { seriesNo, (int) (sample.getTimeMillis() / 1000),
+						(int) sample.getSampleNo() }));
+			}
+		}
+		return indexes;
+	}
+
+	private static List<OID> indexesOf(Iterator<?> rows) {
+		List<OID> indexes = new ArrayList<OID>();
+		while (rows.hasNext()) {
+			indexes.add(((MOTableRow) rows.next()).getIndex());
+		}
+		return indexes;
+	}
+}
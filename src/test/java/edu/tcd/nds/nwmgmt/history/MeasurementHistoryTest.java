@@ -0,0 +1,73 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.models.Flat;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The history of the measurements of every apartment of a district.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class MeasurementHistoryTest {
+
+	@Test
+	public void apartmentsOfDistrictKeepSeriesOfTheirOwn() {
+		District district = new District();
+		Apartment first = createApartment("Apartment_1");
+		Apartment second = createApartment("Apartment_2");
+		district.addApartment(first);
+		district.addApartment(second);
+		MeasurementHistory history = new MeasurementHistory();
+		history.track(first);
+		history.track(second, second.getApartmentNo());
+		int seriesCount = history.getSeriesCount();
+
+		second.setStorageMOValue(5);
+		second.setMeasurement(new OID(MOIdentifiers.FLAT_BASE_OID + ".2.1"), 40);
+		// storage, flat consumption and consumption total of second apartment
+		assertEquals(seriesCount + 3, history.getSeriesCount());
+		assertValues(history, MOIdentifiers.APPT_ENERGY_STORAGE, 10);
+		assertValues(history, new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + ".4.2"), 5);
+		assertValues(history, new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + ".2.2"), 40);
+		assertValues(history, new OID(MOIdentifiers.FLAT_BASE_OID + ".2.1"), 30);
+		assertValues(history, new OID(MOIdentifiers.DISTRICT_FLAT_TABLE_OID + ".2.2.1"), 40);
+
+		first.setStorageMOValue(7);
+		assertValues(history, MOIdentifiers.APPT_ENERGY_STORAGE, 10, 7);
+		assertValues(history, new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + ".4.2"), 5);
+	}
+
+	private static void assertValues(MeasurementHistory history, OID oid, long... values) {
+		List<Sample> samples = history.query(oid, 0, Long.MAX_VALUE);
+		assertEquals(values.length, samples.size());
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], samples.get(i).getValue());
+		}
+	}
+
+	private static Apartment createApartment(String deviceId) {
+		Apartment apartment = new Apartment();
+		apartment.setDeviceIdMOValue(deviceId);
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		Flat flat = new Flat();
+		flat.setDeviceIdValue("FlatNo_1");
+		flat.setEnergyConsumptionMOValue(30);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+		flat.setEnergyConsumptionByLightingMOValue(5);
+		flat.setEnergyConsumptionByMiscMOValue(10);
+		apartment.addFlat(flat);
+		return apartment;
+	}
+}
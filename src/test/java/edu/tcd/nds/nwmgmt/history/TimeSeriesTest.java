@@ -0,0 +1,119 @@
+package edu.tcd.nds.nwmgmt.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The round trip of samples through the compressed blocks of a time series.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TimeSeriesTest {
+
+	@Test
+	public void valuesNeedingAll64BitsRoundTrip() {
+		long[] values = { 0, Long.MIN_VALUE, Long.MAX_VALUE, -1, 1, 0x8000000000000001L, 0x7FFFFFFFFFFFFFFEL,
+				Long.MIN_VALUE, 0x5555555555555555L, 0xAAAAAAAAAAAAAAAAL, 42 };
+		TimeSeries series = new TimeSeries(2, 64);
+		List<Sample> expected = new ArrayList<Sample>();
+		for (int i = 0; i < values.length; i++) {
+			series.append(1000 * i, values[i]);
+			expected.add(new Sample(i, 1000 * i, values[i]));
+		}
+		assertSamples(expected, series.query(Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void negativeDeltasRoundTrip() {
+		// every range of the delta of delta, down to a step back in time
+		long[] times = { 1000000, 1010000, 1019999, 1029934, 1039804, 1049548, 1059035, 1066474, 1066474, 1066475,
+				1066475, 1066475, 5000000, 5000001, 5000001 };
+		long[] values = { 5, -5, -6, 100, -100000, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, -1, 0, -3, 7, -7, 0,
+				Long.MIN_VALUE };
+		TimeSeries series = new TimeSeries(2, 64);
+		List<Sample> expected = new ArrayList<Sample>();
+		for (int i = 0; i < times.length; i++) {
+			series.append(times[i], values[i]);
+			expected.add(new Sample(i, times[i], values[i]));
+		}
+		// a time before the previous one is taken as the previous time
+		series.append(4000000, 9);
+		expected.add(new Sample(times.length, times[times.length - 1], 9));
+		assertSamples(expected, series.query(Long.MIN_VALUE, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void fullRingKeepsMostRecentBlocks() {
+		TimeSeries series = new TimeSeries(3, 5);
+		Random random = new Random(7);
+		List<Sample> appended = new ArrayList<Sample>();
+		long time = 0;
+		for (int i = 0; i < 500; i++) {
+			time += random.nextInt(3000);
+			long value = random.nextLong() >> random.nextInt(64);
+			series.append(time, value);
+			appended.add(new Sample(i, time, value));
+		}
+		assertEquals(500, series.getSampleCount());
+		int size = series.size();
+		assertTrue(size > 0 && size < 500);
+
+		List<Sample> held = series.query(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertSamples(appended.subList(500 - size, 500), held);
+		assertNull(series.getSample(500 - size - 1));
+		assertSamples(appended.subList(499, 500), listOf(series.last()));
+		assertSamples(appended.subList(500 - size, 501 - size), listOf(series.getSample(500 - size)));
+	}
+
+	@Test
+	public void samplesFromPagesThroughAllSamples() {
+		TimeSeries series = new TimeSeries(4, 5);
+		List<Sample> appended = new ArrayList<Sample>();
+		for (int i = 0; i < 120; i++) {
+			// several samples share a second
+			long time = 1000 * (i / 3) + i % 3;
+			series.append(time, i);
+			appended.add(new Sample(i, time, i));
+		}
+		int size = series.size();
+		List<Sample> paged = new ArrayList<Sample>();
+		long second = 0;
+		long sampleNo = 0;
+		List<Sample> page;
+		while (!(page = series.samplesFrom(second, sampleNo, 7)).isEmpty()) {
+			assertTrue(page.size() <= 7);
+			paged.addAll(page);
+			Sample last = page.get(page.size() - 1);
+			second = last.getTimeMillis() / 1000;
+			sampleNo = last.getSampleNo() + 1;
+		}
+		assertSamples(appended.subList(120 - size, 120), paged);
+
+		// a page starting inside a second skips the earlier samples of that second
+		Sample from = appended.get(118);
+		assertSamples(appended.subList(118, 120), series.samplesFrom(from.getTimeMillis() / 1000, 118, 10));
+	}
+
+	private static List<Sample> listOf(Sample sample) {
+		List<Sample> samples = new ArrayList<Sample>();
+		samples.add(sample);
+		return samples;
+	}
+
+	static void assertSamples(List<Sample> expected, List<Sample> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("sample number", expected.get(i).getSampleNo(), actual.get(i).getSampleNo());
+			assertEquals("time of sample " + i, expected.get(i).getTimeMillis(), actual.get(i).getTimeMillis());
+			assertEquals("value of sample " + i, expected.get(i).getValue(), actual.get(i).getValue());
+		}
+	}
+}
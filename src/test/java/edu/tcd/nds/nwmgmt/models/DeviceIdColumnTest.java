@@ -0,0 +1,100 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The device ids of a flats table packed into one byte array.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class DeviceIdColumnTest {
+
+	@Test
+	public void idsAreInsertedAndRemovedAtEndsAndInMiddle() {
+		DeviceIdColumn column = new DeviceIdColumn(2);
+		List<String> ids = new ArrayList<String>();
+		insert(column, ids, 0, "FlatNo_2");
+		insert(column, ids, 1, "FlatNo_4");
+		insert(column, ids, 0, "FlatNo_1");
+		insert(column, ids, 2, "FlatNo_3");
+		insert(column, ids, 4, "FlatNo_5");
+		assertIds(column, ids);
+
+		remove(column, ids, 0);
+		remove(column, ids, 1);
+		remove(column, ids, 2);
+		assertIds(column, ids);
+		insert(column, ids, 1, "");
+		assertIds(column, ids);
+	}
+
+	@Test
+	public void changedIdsKeepTheirPositions() {
+		DeviceIdColumn column = new DeviceIdColumn(4);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 4; i++) {
+			insert(column, ids, i, "FlatNo_" + i);
+		}
+		// a shorter id stays in place, a longer one is appended
+		set(column, ids, 1, "F1");
+		set(column, ids, 2, "Flat number two of the apartment");
+		assertIds(column, ids);
+
+		// ids growing again and again leave space behind which is packed
+		for (int i = 0; i < 200; i++) {
+			StringBuilder id = new StringBuilder("FlatNo_" + (i % 4));
+			for (int j = 0; j < i % 30; j++) {
+				id.append('x');
+			}
+			set(column, ids, i % 4, id.toString());
+			assertIds(column, ids);
+		}
+	}
+
+	@Test
+	public void appendedIdsFollowInsertedOnes() {
+		DeviceIdColumn column = new DeviceIdColumn(1);
+		List<String> ids = new ArrayList<String>();
+		insert(column, ids, 0, "FlatNo_1");
+		byte[] bytes = "FlatNo_2Flat3FlatNo_4".getBytes();
+		column.appendAll(bytes, new int[] { 8, 5, 8 }, 3);
+		ids.add("FlatNo_2");
+		ids.add("Flat3");
+		ids.add("FlatNo_4");
+		assertIds(column, ids);
+
+		// removing every id frees the whole array
+		while (!ids.isEmpty()) {
+			remove(column, ids, ids.size() - 1);
+		}
+		insert(column, ids, 0, "FlatNo_1");
+		assertIds(column, ids);
+	}
+
+	private static void insert(DeviceIdColumn column, List<String> ids, int position, String id) {
+		column.insert(position, id.getBytes());
+		ids.add(position, id);
+	}
+
+	private static void set(DeviceIdColumn column, List<String> ids, int position, String id) {
+		column.set(position, id.getBytes());
+		ids.set(position, id);
+	}
+
+	private static void remove(DeviceIdColumn column, List<String> ids, int position) {
+		column.remove(position);
+		ids.remove(position);
+	}
+
+	private static void assertIds(DeviceIdColumn column, List<String> ids) {
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(ids.get(i), new String(column.get(i)));
+		}
+	}
+}
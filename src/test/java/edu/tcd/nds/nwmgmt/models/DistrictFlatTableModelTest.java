@@ -0,0 +1,172 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.mo.MOMutableTableRow;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.agent.request.SnmpRequest;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The flat table of a district, a view on the flats tables of its
+ * apartments.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class DistrictFlatTableModelTest {
+	// the consumption column of the flat table
+	private static final int CONSUMPTION = 2;
+
+	private District district;
+	private MOTable flatsTable;
+	private MOTableModel model;
+
+	@Before
+	public void createDistrict() {
+		district = new District();
+		for (int i = 1; i <= 3; i++) {
+			district.addApartment(DistrictTest.createApartment("Apartment_" + i));
+		}
+		// apartment 2 keeps its first and last flat only
+		Apartment apartment = district.getApartment(2);
+		for (int flatNo = 2; flatNo <= 4; flatNo++) {
+			assertTrue(apartment.removeFlat(apartment.getFlat(flatNo)));
+		}
+		flatsTable = district.getFlatsTable();
+		model = flatsTable.getModel();
+	}
+
+	@Test
+	public void rowsFollowApartmentsAndFlats() {
+		assertEquals("[1.1, 1.2, 1.3, 1.4, 1.5, 2.1, 2.5, 3.1, 3.2, 3.3, 3.4, 3.5]",
+				indexes(model.iterator()).toString());
+		assertEquals(12, model.getRowCount());
+		assertTrue(model.containsRow(index(2, 5)));
+		assertFalse(model.containsRow(index(2, 3)));
+		assertFalse(model.containsRow(index(4, 1)));
+		assertFalse(model.containsRow(new OID(new int[] { 2 })));
+		assertNull(model.getRow(index(2, 3)));
+		assertEquals(index(1, 1), model.firstIndex());
+		assertEquals(index(3, 5), model.lastIndex());
+
+		// a flat added to or removed from an apartment is seen by the district
+		Apartment apartment = district.getApartment(2);
+		Flat flat = new Flat();
+		flat.setDeviceIdValue("FlatNo_6");
+		flat.setEnergyConsumptionMOValue(60);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(30);
+		flat.setEnergyConsumptionByLightingMOValue(20);
+		flat.setEnergyConsumptionByMiscMOValue(10);
+		apartment.addFlat(flat);
+		assertEquals(60, model.getRow(index(2, 6)).getValue(CONSUMPTION - 1).toInt());
+		district.getApartment(3).removeAllFlats();
+		assertEquals(index(2, 6), model.lastIndex());
+		assertEquals(8, model.getRowCount());
+	}
+
+	@Test
+	public void tailIteratorStartsAtLowerBound() {
+		assertEquals("[1.1, 1.2]", first(null));
+		assertEquals("[2.1, 2.5]", first(new OID(new int[] { 2 })));
+		assertEquals("[2.1, 2.5]", first(index(2, 1)));
+		assertEquals("[2.5, 3.1]", first(index(2, 2)));
+		// an index below a row sorts after that row
+		assertEquals("[3.1, 3.2]", first(new OID(new int[] { 2, 5, 0 })));
+		assertEquals("[3.1, 3.2]", first(index(2, 6)));
+		assertEquals("[]", first(new OID(new int[] { 4 })));
+		assertEquals("[]", first(new OID(new int[] { -1, 1 })));
+	}
+
+	@Test
+	public void getNextCrossesApartments() {
+		assertEquals(cell(CONSUMPTION, 2, 1), next(cell(CONSUMPTION, 1, 5)).getOid());
+		VariableBinding next = next(cell(CONSUMPTION, 2, 1));
+		assertEquals(cell(CONSUMPTION, 2, 5), next.getOid());
+		assertEquals(30, next.getVariable().toInt());
+		assertEquals(cell(CONSUMPTION, 2, 5), next(cell(CONSUMPTION, 2, 2)).getOid());
+		// after the last flat of the district the next column starts
+		assertEquals(cell(CONSUMPTION + 1, 1, 1), next(cell(CONSUMPTION, 3, 5)).getOid());
+	}
+
+	@Test
+	public void rowReadsAndWritesFlatOfApartment() {
+		Apartment apartment = district.getApartment(2);
+		MOTableRow row = model.getRow(index(2, 5));
+		((MOMutableTableRow) row).setValue(CONSUMPTION - 1, new Gauge32(40));
+		assertEquals(40, apartment.getFlat(5).getEnergyConsumptionMOValue());
+		assertEquals(70, apartment.getConsumptionMOValue());
+
+		apartment.setMeasurement(new OID(MOIdentifiers.FLAT_BASE_OID + "." + CONSUMPTION + ".5"), 45);
+		assertEquals(45, row.getValue(CONSUMPTION - 1).toInt());
+		// the other apartments are not changed
+		assertEquals(150, district.getApartment(1).getConsumptionMOValue());
+		assertEquals(30, model.getRow(index(1, 5)).getValue(CONSUMPTION - 1).toInt());
+	}
+
+	/**
+	 * Return the indexes of the first two rows from given lower bound on.
+	 */
+	private String first(OID lowerBound) {
+		Iterator<?> rows = model.tailIterator(lowerBound);
+		List<String> indexes = new ArrayList<String>();
+		for (int i = 0; i < 2 && rows.hasNext(); i++) {
+			indexes.add(((MOTableRow) rows.next()).getIndex().toString());
+		}
+		return indexes.toString();
+	}
+
+	private static List<String> indexes(Iterator<?> rows) {
+		List<String> indexes = new ArrayList<String>();
+		while (rows.hasNext()) {
+			indexes.add(((MOTableRow) rows.next()).getIndex().toString());
+		}
+		return indexes;
+	}
+
+	/**
+	 * Run a GETNEXT of given OID on the flat table of district.
+	 *
+	 * @return the binding of the next cell
+	 */
+	private VariableBinding next(OID oid) {
+		PDU pdu = new PDU();
+		pdu.setType(PDU.GETNEXT);
+		pdu.add(new VariableBinding(oid, new Null()));
+		SnmpRequest request = new SnmpRequest(new CommandResponderEvent(new MessageDispatcherImpl(), null, null,
+				MessageProcessingModel.MPv2c, 0, null, 0, null, pdu, 0, null), null);
+		SubRequest subRequest = (SubRequest) request.iterator().next();
+		subRequest.setTargetMO(flatsTable);
+		assertTrue(flatsTable.next(subRequest));
+		return subRequest.getVariableBinding();
+	}
+
+	private static OID index(int apartmentNo, int flatNo) {
+		return new OID(new int[] { apartmentNo, flatNo });
+	}
+
+	private static OID cell(int column, int apartmentNo, int flatNo) {
+		return new OID(MOIdentifiers.DISTRICT_FLAT_TABLE_OID + "." + column + "." + apartmentNo + "." + flatNo);
+	}
+}
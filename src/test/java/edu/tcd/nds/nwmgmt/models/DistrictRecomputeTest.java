@@ -0,0 +1,250 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.request.SnmpRequest;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * Requests on the apartment table and the recompute of a district running
+ * while the apartments change from several threads.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class DistrictRecomputeTest {
+	// the columns of the apartment table
+	private static final int STORAGE = 4;
+	private static final int SOLAR = 5;
+	private static final int HYDRO = 6;
+
+	private static final int THREAD_COUNT = 4;
+	private static final int FLAT_COUNT = 5;
+
+	@Test
+	public void getOfRowNeverSeesHalfOfSet() throws Exception {
+		District district = new District();
+		district.addApartment(DistrictTest.createApartment("Apartment_1"));
+		final Apartment apartment = district.getApartment(1);
+		final ManagedObject apartmentsTable = district.getApartmentsTable();
+		set(apartmentsTable, 0);
+		final long version = apartment.getEnergyBalance().getVersion();
+		final int setCount = 2000;
+		final AtomicInteger getCount = new AtomicInteger();
+		final ConcurrentLinkedQueue<String> halfSets = new ConcurrentLinkedQueue<String>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		final CountDownLatch writersDone = new CountDownLatch(THREAD_COUNT);
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final int writerNo = i;
+			threads.add(new Thread() {
+				public void run() {
+					for (int j = 1; j <= setCount; j++) {
+						set(apartmentsTable, writerNo * setCount + j);
+					}
+					writersDone.countDown();
+				}
+			});
+			threads.add(new Thread() {
+				public void run() {
+					do {
+						SnmpRequest get = request(apartmentsTable, PDU.GET, DistrictTest.binding(STORAGE, 1, 0),
+								DistrictTest.binding(SOLAR, 1, 0), DistrictTest.binding(HYDRO, 1, 0));
+						for (int k = 0; k < get.size(); k++) {
+							apartmentsTable.get(get.get(k));
+						}
+						int storage = value(get, 0);
+						if (storage != value(get, 1) || storage != value(get, 2)) {
+							halfSets.add(storage + "," + value(get, 1) + "," + value(get, 2));
+						}
+						getCount.incrementAndGet();
+					} while (writersDone.getCount() > 0);
+				}
+			});
+		}
+		runAll(threads);
+
+		assertTrue(halfSets.toString(), halfSets.isEmpty());
+		assertTrue(getCount.get() >= THREAD_COUNT);
+		// every SET is published by one compare-and-set and none is lost
+		assertEquals(version + THREAD_COUNT * setCount, apartment.getEnergyBalance().getVersion());
+		int storage = apartment.getStorageMOValue();
+		assertTrue(storage % setCount == 0 && storage > 0);
+		assertEquals(storage, apartment.getGenerationBySolarMOValue());
+		assertEquals(storage, apartment.getGenerationByHydroMOValue());
+	}
+
+	@Test
+	public void recomputeKeepsChangesMadeWhileItRuns() throws Exception {
+		final District district = new District();
+		final int apartmentCount = 2 * DistrictRecompute.APARTMENTS_PER_TASK + 8;
+		for (int i = 1; i <= apartmentCount; i++) {
+			district.addApartment(DistrictTest.createApartment("Apartment_" + i));
+		}
+		// the last values written to the storage and flats of every apartment
+		final int[] storages = new int[apartmentCount + 1];
+		final int[][] consumptions = new int[apartmentCount + 1][FLAT_COUNT + 1];
+		for (int apartmentNo = 1; apartmentNo <= apartmentCount; apartmentNo++) {
+			storages[apartmentNo] = 10;
+			for (int flatNo = 1; flatNo <= FLAT_COUNT; flatNo++) {
+				consumptions[apartmentNo][flatNo] = 30;
+			}
+		}
+		final ForkJoinPool pool = new ForkJoinPool(THREAD_COUNT);
+		final AtomicInteger recomputeCount = new AtomicInteger();
+		final CountDownLatch recomputing = new CountDownLatch(1);
+		final CountDownLatch writersDone = new CountDownLatch(THREAD_COUNT);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(new Thread() {
+			public void run() {
+				do {
+					DistrictBalance balance = district.recompute(pool);
+					assertEquals(apartmentCount, balance.getApartmentCount());
+					assertEquals(apartmentCount * FLAT_COUNT, balance.getFlatCount());
+					recomputeCount.incrementAndGet();
+					recomputing.countDown();
+				} while (writersDone.getCount() > 0);
+			}
+		});
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final int writerNo = i;
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						recomputing.await(5, TimeUnit.SECONDS);
+						// every writer changes apartments of its own, a change
+						// lost to a recompute is seen by the next iteration
+						for (int j = 1; j <= 500; j++) {
+							for (int apartmentNo = writerNo + 1; apartmentNo <= apartmentCount;
+									apartmentNo += THREAD_COUNT) {
+								Apartment apartment = district.getApartment(apartmentNo);
+								assertEquals(storages[apartmentNo], apartment.getStorageMOValue());
+								assertEquals(sum(consumptions[apartmentNo]), apartment.getConsumptionMOValue());
+								int flatNo = j % FLAT_COUNT + 1;
+								apartment.setMeasurement(new OID(MOIdentifiers.FLAT_BASE_OID + ".2." + flatNo), j);
+								consumptions[apartmentNo][flatNo] = j;
+								apartment.setStorageMOValue(j);
+								storages[apartmentNo] = j;
+							}
+						}
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					} finally {
+						writersDone.countDown();
+					}
+				}
+			});
+		}
+		runAll(threads);
+		assertTrue(recomputeCount.get() > 1);
+
+		for (int apartmentNo = 1; apartmentNo <= apartmentCount; apartmentNo++) {
+			Apartment apartment = district.getApartment(apartmentNo);
+			for (int flatNo = 1; flatNo <= FLAT_COUNT; flatNo++) {
+				assertEquals(consumptions[apartmentNo][flatNo],
+						apartment.getFlat(flatNo).getEnergyConsumptionMOValue());
+			}
+			assertEquals(sum(consumptions[apartmentNo]), apartment.getConsumptionMOValue());
+			assertEquals(storages[apartmentNo], apartment.getStorageMOValue());
+		}
+
+		// a recompute after the writes derives the totals of the district
+		DistrictBalance balance = district.recompute(pool);
+		long consumption = 0;
+		long generation = 0;
+		for (Apartment apartment : district.getApartments()) {
+			assertEquals(apartment.getGenerationBySolarMOValue() + apartment.getGenerationByHydroMOValue()
+					+ apartment.getStorageMOValue(), apartment.getGenerationMOValue());
+			consumption += apartment.getConsumptionMOValue();
+			generation += apartment.getGenerationMOValue();
+		}
+		assertEquals(consumption, balance.getConsumption());
+		assertEquals(generation, balance.getGeneration());
+		assertSame(balance, district.getDistrictBalance());
+		pool.shutdown();
+	}
+
+	/**
+	 * Set the storage, solar and hydro columns of apartment 1 to given value
+	 * by one SET request.
+	 */
+	private static void set(ManagedObject apartmentsTable, int value) {
+		SnmpRequest set = request(apartmentsTable, PDU.SET, DistrictTest.binding(STORAGE, 1, value),
+				DistrictTest.binding(SOLAR, 1, value), DistrictTest.binding(HYDRO, 1, value));
+		for (int i = 0; i < set.size(); i++) {
+			apartmentsTable.commit(set.get(i));
+		}
+	}
+
+	private static int sum(int[] values) {
+		int sum = 0;
+		for (int value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static int value(SnmpRequest request, int index) {
+		return request.get(index).getVariableBinding().getVariable().toInt();
+	}
+
+	private static SnmpRequest request(ManagedObject apartmentsTable, int type, VariableBinding... bindings) {
+		PDU pdu = new PDU();
+		pdu.setType(type);
+		for (VariableBinding binding : bindings) {
+			pdu.add(binding);
+		}
+		SnmpRequest request = new SnmpRequest(new CommandResponderEvent(new MessageDispatcherImpl(), null, null,
+				MessageProcessingModel.MPv2c, 0, null, 0, null, pdu, 0, null), null);
+		for (Iterator<?> subRequests = request.iterator(); subRequests.hasNext();) {
+			((SubRequest) subRequests.next()).setTargetMO(apartmentsTable);
+		}
+		return request;
+	}
+
+	/**
+	 * Start given threads and wait for them, an error of a thread fails the
+	 * test.
+	 */
+	private static void runAll(List<Thread> threads) throws InterruptedException {
+		final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+		for (Thread thread : threads) {
+			thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+				public void uncaughtException(Thread thread, Throwable error) {
+					errors.add(error);
+				}
+			});
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join(30000);
+			assertFalse(thread.isAlive());
+		}
+		if (!errors.isEmpty()) {
+			throw new AssertionError(errors.peek());
+		}
+	}
+}
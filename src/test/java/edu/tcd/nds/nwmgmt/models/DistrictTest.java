@@ -0,0 +1,145 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.request.SnmpRequest;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The apartment table of a district, driven with requests of the agent
+ * framework.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class DistrictTest {
+	// the columns of the apartment table
+	private static final int GENERATION = 3;
+	private static final int STORAGE = 4;
+	private static final int SOLAR = 5;
+	private static final int HYDRO = 6;
+
+	private District district;
+	private ManagedObject apartmentsTable;
+
+	@Before
+	public void createDistrict() {
+		district = new District();
+		for (int i = 1; i <= 3; i++) {
+			district.addApartment(createApartment("Apartment_" + i));
+		}
+		apartmentsTable = district.getApartmentsTable();
+	}
+
+	@Test
+	public void setOfRowIsPublishedOnce() {
+		Apartment apartment = district.getApartment(2);
+		long version = apartment.getEnergyBalance().getVersion();
+		SnmpRequest set = request(PDU.SET, binding(STORAGE, 2, 7), binding(SOLAR, 2, 30), binding(HYDRO, 2, 110));
+		for (int i = 0; i < set.size(); i++) {
+			// nothing is published before the last column commits
+			assertEquals(version, apartment.getEnergyBalance().getVersion());
+			apartmentsTable.commit(set.get(i));
+		}
+		EnergyBalance balance = apartment.getEnergyBalance();
+		assertEquals(version + 1, balance.getVersion());
+		assertEquals(7, balance.getStorage());
+		assertEquals(30, balance.getGenerationBySolar());
+		assertEquals(110, balance.getGenerationByHydro());
+	}
+
+	@Test
+	public void setOfRowAndScalarsIsPublishedOnce() {
+		Apartment apartment = district.getApartment(1);
+		long version = apartment.getEnergyBalance().getVersion();
+		SnmpRequest set = request(PDU.SET, binding(STORAGE, 1, 7),
+				new VariableBinding(apartment.getEnergyGenerationByHydroMO().getOid(), new Integer32(110)));
+		set.get(0).setTargetMO(apartmentsTable);
+		set.get(1).setTargetMO(apartment.getEnergyGenerationByHydroMO());
+		apartmentsTable.commit(set.get(0));
+		assertEquals(version, apartment.getEnergyBalance().getVersion());
+		apartment.getEnergyGenerationByHydroMO().commit(set.get(1));
+		assertEquals(version + 1, apartment.getEnergyBalance().getVersion());
+		assertEquals(7, apartment.getStorageMOValue());
+		assertEquals(110, apartment.getGenerationByHydroMOValue());
+	}
+
+	@Test
+	public void getOfRowReadsOneRecord() {
+		Apartment apartment = district.getApartment(3);
+		SnmpRequest get = request(PDU.GET, binding(STORAGE, 3, 0), binding(HYDRO, 3, 0));
+		apartmentsTable.get(get.get(0));
+		apartment.setStorageMOValue(99);
+		apartment.setGenerationByHydroMOValue(99);
+		apartmentsTable.get(get.get(1));
+		assertEquals(10, get.get(0).getVariableBinding().getVariable().toInt());
+		assertEquals(120, get.get(1).getVariableBinding().getVariable().toInt());
+
+		// a request of its own sees the change
+		SnmpRequest next = request(PDU.GETNEXT, binding(GENERATION, 2, 0), binding(STORAGE, 2, 0));
+		apartmentsTable.next(next.get(0));
+		apartment.setStorageMOValue(50);
+		apartmentsTable.next(next.get(1));
+		assertEquals(cell(GENERATION, 3), next.get(0).getVariableBinding().getOid());
+		assertEquals(cell(STORAGE, 3), next.get(1).getVariableBinding().getOid());
+		assertEquals(99, next.get(1).getVariableBinding().getVariable().toInt());
+	}
+
+	static Apartment createApartment(String deviceId) {
+		Apartment apartment = new Apartment();
+		apartment.setDeviceIdMOValue(deviceId);
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		for (int i = 1; i < 6; i++) {
+			Flat flat = new Flat();
+			flat.setDeviceIdValue("FlatNo_" + i);
+			flat.setEnergyConsumptionMOValue(30);
+			flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+			flat.setEnergyConsumptionByLightingMOValue(5);
+			flat.setEnergyConsumptionByMiscMOValue(10);
+			apartment.addFlat(flat);
+		}
+		return apartment;
+	}
+
+	/**
+	 * Build a request of given type whose sub-requests target the apartment
+	 * table.
+	 */
+	SnmpRequest request(int type, VariableBinding... bindings) {
+		PDU pdu = new PDU();
+		pdu.setType(type);
+		for (VariableBinding binding : bindings) {
+			pdu.add(binding);
+		}
+		SnmpRequest request = new SnmpRequest(new CommandResponderEvent(new MessageDispatcherImpl(), null, null,
+				MessageProcessingModel.MPv2c, 0, null, 0, null, pdu, 0, null), null);
+		for (Iterator<?> subRequests = request.iterator(); subRequests.hasNext();) {
+			((SubRequest) subRequests.next()).setTargetMO(apartmentsTable);
+		}
+		return request;
+	}
+
+	static VariableBinding binding(int column, int apartmentNo, int value) {
+		return new VariableBinding(cell(column, apartmentNo), new Integer32(value));
+	}
+
+	static OID cell(int column, int apartmentNo) {
+		return new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + "." + column + "." + apartmentNo);
+	}
+}
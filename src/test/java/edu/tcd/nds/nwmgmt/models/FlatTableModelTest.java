@@ -0,0 +1,237 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.agent.mo.DefaultMOTableRow;
+import org.snmp4j.agent.mo.MOTable;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.agent.request.SnmpRequest;
+import org.snmp4j.agent.request.SubRequest;
+import org.snmp4j.mp.MessageProcessingModel;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The flats table of an apartment kept in sorted arrays by the
+ * {@link FlatTableModel} and its rows.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class FlatTableModelTest {
+	// the consumption column of the flats table
+	private static final int CONSUMPTION = 2;
+
+	private Apartment apartment;
+	private FlatTableModel model;
+
+	@Before
+	public void createApartment() {
+		apartment = new Apartment();
+		apartment.setDeviceIdMOValue("Apartment_1");
+		model = apartment.getFlatsModel();
+	}
+
+	@Test
+	public void addRowOfExistingFlatReturnsPreviousValues() {
+		assertNull(model.addRow(row(2, "FlatNo_2", 30)));
+		MOTableRow previous = model.addRow(row(2, "Flat_2", 40));
+		assertEquals(new OID(new int[] { 2 }), previous.getIndex());
+		assertEquals(new OctetString("FlatNo_2"), previous.getValue(0));
+		assertEquals(30, previous.getValue(1).toInt());
+		assertEquals(new OctetString("Flat_2"), model.getValue(2, 0));
+		assertEquals(40, model.getValue(2, 1).toInt());
+		assertEquals(1, model.getRowCount());
+		assertEquals(40, apartment.getConsumptionMOValue());
+	}
+
+	@Test
+	public void flatsAreKeptSortedAsUnsignedNumbers() {
+		int highFlatNo = 0x80000000;
+		model.addRow(row(5, "FlatNo_5", 50));
+		model.addRow(row(highFlatNo, "FlatNo_High", 70));
+		model.addRow(row(1, "FlatNo_1", 10));
+		model.addRow(row(3, "FlatNo_3", 30));
+
+		assertEquals("[1, 3, 5, 2147483648]", flatNos(model.iterator()).toString());
+		assertTrue(model.containsRow(index(3)));
+		assertFalse(model.containsRow(index(2)));
+		assertFalse(model.containsRow(new OID(new int[] { 3, 1 })));
+		assertNull(model.getRow(index(4)));
+		assertNull(model.getValue(4, CONSUMPTION - 1));
+		assertEquals(index(1), model.firstIndex());
+		assertEquals(index(highFlatNo), model.lastIndex());
+		assertEquals(new OctetString("FlatNo_High"), model.getRow(index(highFlatNo)).getValue(0));
+		assertEquals(70, model.getValue(highFlatNo, CONSUMPTION - 1).toInt());
+		assertEquals(30, model.getRow(index(3)).getValue(CONSUMPTION - 1).toInt());
+	}
+
+	@Test
+	public void tailIteratorStartsAtLowerBound() {
+		model.addRow(row(2, "FlatNo_2", 20));
+		model.addRow(row(4, "FlatNo_4", 40));
+		model.addRow(row(6, "FlatNo_6", 60));
+
+		assertEquals("[2, 4, 6]", flatNos(model.tailIterator(null)).toString());
+		assertEquals("[2, 4, 6]", flatNos(model.tailIterator(new OID())).toString());
+		assertEquals("[4, 6]", flatNos(model.tailIterator(index(4))).toString());
+		assertEquals("[4, 6]", flatNos(model.tailIterator(index(3))).toString());
+		// an index below a row sorts after that row
+		assertEquals("[6]", flatNos(model.tailIterator(new OID(new int[] { 4, 0 }))).toString());
+		assertEquals("[]", flatNos(model.tailIterator(index(7))).toString());
+		assertEquals("[]", flatNos(model.tailIterator(new OID(new int[] { -1, 1 }))).toString());
+
+		// the iterator looks up the next flat on every step
+		Iterator<?> rows = model.tailIterator(index(3));
+		assertEquals(index(4), ((MOTableRow) rows.next()).getIndex());
+		model.removeRow(index(6));
+		model.addRow(row(5, "FlatNo_5", 50));
+		assertEquals(index(5), ((MOTableRow) rows.next()).getIndex());
+		assertFalse(rows.hasNext());
+	}
+
+	@Test
+	public void getNextSkipsMissingFlats() {
+		model.addRow(row(1, "FlatNo_1", 10));
+		model.addRow(row(4, "FlatNo_4", 40));
+		model.addRow(row(9, "FlatNo_9", 90));
+		MOTable flatsTable = apartment.getFlatsTable();
+
+		VariableBinding next = next(flatsTable, cell(CONSUMPTION, 1));
+		assertEquals(cell(CONSUMPTION, 4), next.getOid());
+		assertEquals(40, next.getVariable().toInt());
+		assertEquals(cell(CONSUMPTION, 9), next(flatsTable, cell(CONSUMPTION, 5)).getOid());
+		OID column = new OID(MOIdentifiers.FLAT_BASE_OID + "." + CONSUMPTION);
+		assertEquals(cell(CONSUMPTION, 1), next(flatsTable, column).getOid());
+		// after the last flat the next column starts
+		next = next(flatsTable, cell(CONSUMPTION, 9));
+		assertEquals(cell(CONSUMPTION + 1, 1), next.getOid());
+
+		model.removeRow(index(4));
+		assertEquals(cell(CONSUMPTION, 9), next(flatsTable, cell(CONSUMPTION, 1)).getOid());
+	}
+
+	@Test
+	public void flatsAreAddedAndRemovedAtEndsAndInMiddle() {
+		model.addRow(row(2, "FlatNo_2", 20));
+		model.addRow(row(4, "FlatNo_4", 40));
+		model.addRow(row(6, "FlatNo_6", 60));
+		model.addRow(row(1, "FlatNo_1", 10));
+		model.addRow(row(5, "FlatNo_5", 50));
+		model.addRow(row(8, "FlatNo_8", 80));
+		assertEquals("[1, 2, 4, 5, 6, 8]", flatNos(model.iterator()).toString());
+		assertFlats(1, 2, 4, 5, 6, 8);
+
+		MOTableRow removed = model.removeRow(index(1));
+		assertEquals(new OctetString("FlatNo_1"), removed.getValue(0));
+		assertEquals(10, removed.getValue(CONSUMPTION - 1).toInt());
+		assertEquals(50, model.removeRow(index(5)).getValue(CONSUMPTION - 1).toInt());
+		assertEquals(80, model.removeRow(index(8)).getValue(CONSUMPTION - 1).toInt());
+		assertNull(model.removeRow(index(5)));
+		assertEquals("[2, 4, 6]", flatNos(model.iterator()).toString());
+		assertFlats(2, 4, 6);
+
+		// the arrays grow past their initial capacity
+		for (int flatNo = 100; flatNo > 6; flatNo--) {
+			model.addRow(row(flatNo, "FlatNo_" + flatNo, flatNo * 10));
+		}
+		assertEquals(97, model.getRowCount());
+		assertEquals(index(2), model.firstIndex());
+		assertEquals(index(100), model.lastIndex());
+		model.clear();
+		assertEquals(0, model.getRowCount());
+		assertEquals(0, apartment.getConsumptionMOValue());
+	}
+
+	@Test
+	public void rowIsViewOnItsFlat() {
+		model.addRow(row(3, "FlatNo_3", 30));
+		MOTableRow row = model.getRow(index(3));
+		((FlatTableRow) row).setValue(CONSUMPTION - 1, new Gauge32(35));
+		assertEquals(35, model.getValue(3, CONSUMPTION - 1).toInt());
+		assertEquals(35, apartment.getConsumptionMOValue());
+		model.setValue(3, 0, new OctetString("Flat_3"));
+		assertEquals(new OctetString("Flat_3"), row.getValue(0));
+		assertEquals(FlatTableModel.COLUMN_COUNT, row.size());
+
+		// a row of removed flat reads null
+		model.removeRow(index(3));
+		assertNull(row.getValue(0));
+		assertNull(row.getValue(CONSUMPTION - 1));
+	}
+
+	/**
+	 * Check the device id and consumption of given flats and the consumption
+	 * total of apartment.
+	 */
+	private void assertFlats(int... flatNos) {
+		int total = 0;
+		for (int flatNo : flatNos) {
+			assertEquals(new OctetString("FlatNo_" + flatNo), model.getValue(flatNo, 0));
+			assertEquals(flatNo * 10, model.getValue(flatNo, CONSUMPTION - 1).toInt());
+			total += flatNo * 10;
+		}
+		assertEquals(flatNos.length, model.getRowCount());
+		assertEquals(total, apartment.getConsumptionMOValue());
+	}
+
+	private static List<Long> flatNos(Iterator<?> rows) {
+		List<Long> flatNos = new ArrayList<Long>();
+		while (rows.hasNext()) {
+			flatNos.add(((MOTableRow) rows.next()).getIndex().getUnsigned(0));
+		}
+		return flatNos;
+	}
+
+	/**
+	 * Run a GETNEXT of given OID on the flats table.
+	 *
+	 * @return the binding of the next cell
+	 */
+	private static VariableBinding next(MOTable flatsTable, OID oid) {
+		PDU pdu = new PDU();
+		pdu.setType(PDU.GETNEXT);
+		pdu.add(new VariableBinding(oid, new Null()));
+		SnmpRequest request = new SnmpRequest(new CommandResponderEvent(new MessageDispatcherImpl(), null, null,
+				MessageProcessingModel.MPv2c, 0, null, 0, null, pdu, 0, null), null);
+		SubRequest subRequest = (SubRequest) request.iterator().next();
+		subRequest.setTargetMO(flatsTable);
+		assertTrue(flatsTable.next(subRequest));
+		return subRequest.getVariableBinding();
+	}
+
+	private static OID index(int flatNo) {
+		return new OID(new int[] { flatNo });
+	}
+
+	private static OID cell(int column, int flatNo) {
+		return new OID(MOIdentifiers.FLAT_BASE_OID + "." + column + "." + flatNo);
+	}
+
+	/**
+	 * A row of given flat whose measurement columns hold the consumption,
+	 * e.g. as a SET request creates it.
+	 */
+	static MOTableRow row(int flatNo, String deviceId, int consumption) {
+		return new DefaultMOTableRow(new OID(new int[] { flatNo }), new Variable[] { new OctetString(deviceId),
+				new Gauge32(consumption), new Gauge32(0), new Gauge32(0), new Gauge32(0) });
+	}
+}
@@ -0,0 +1,78 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Gauge32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Variable;
+
+/**
+ * The validation of flat objects added to an apartment and the types of
+ * their values.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class FlatTest {
+
+	@Test
+	public void flatWithUnsetMeasurementIsInvalid() {
+		Flat flat = new Flat();
+		flat.setDeviceIdValue("FlatNo_1");
+		flat.setEnergyConsumptionMOValue(30);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+		flat.setEnergyConsumptionByLightingMOValue(5);
+		assertEquals(Flat.UNSET, flat.getEnergyConsumptionByMiscMOValue());
+		assertFalse(flat.isValid());
+
+		Apartment apartment = new Apartment();
+		try {
+			apartment.addFlat(flat);
+			fail("Flat without consumption by misc was added");
+		} catch (IllegalArgumentException ex) {
+			assertEquals(0, apartment.getFlatCount());
+		}
+
+		// zero is a measurement like any other
+		flat.setEnergyConsumptionByMiscMOValue(0);
+		assertTrue(flat.isValid());
+		apartment.addFlat(flat);
+		assertEquals(1, apartment.getFlatCount());
+	}
+
+	@Test
+	public void valuesRoundTripAsIntegers() {
+		Apartment apartment = new Apartment();
+		apartment.setDeviceIdMOValue("Apartment_1");
+		MOScalar[] scalars = { apartment.getEnergyStorageMO(), apartment.getEnergyGenerationMO(),
+				apartment.getEnergyGenerationBySolarMO(), apartment.getEnergyGenerationByHydroMO() };
+		for (int i = 0; i < scalars.length; i++) {
+			scalars[i].setValue(new Integer32(40 + i));
+			Variable value = scalars[i].getValue();
+			assertTrue(value instanceof Integer32);
+			assertEquals(new Integer32(40 + i), value);
+		}
+		assertEquals(40, apartment.getStorageMOValue());
+
+		Flat flat = new Flat();
+		flat.setDeviceIdValue("FlatNo_1");
+		flat.setEnergyConsumptionMOValue(30);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+		flat.setEnergyConsumptionByLightingMOValue(5);
+		flat.setEnergyConsumptionByMiscMOValue(10);
+		apartment.addFlat(flat);
+		FlatTableModel model = apartment.getFlatsModel();
+		for (int column = 1; column < 5; column++) {
+			assertTrue(model.setValue(flat.getFlatNo(), column, new Integer32(50 + column)));
+			// the measurement columns of flats table are of syntax Gauge32
+			assertEquals(new Gauge32(50 + column), model.getValue(flat.getFlatNo(), column));
+		}
+		assertEquals(51, model.getFlat(flat.getFlatNo()).getEnergyConsumptionMOValue());
+		assertTrue(apartment.getEnergyConsumptionMO().getValue() instanceof Integer32);
+	}
+}
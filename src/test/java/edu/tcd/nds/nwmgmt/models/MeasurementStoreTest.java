@@ -0,0 +1,161 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The records of the heap and off-heap measurement stores across the
+ * boundaries of their chunks and the rings of recent values.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class MeasurementStoreTest {
+
+	@Test
+	public void chunksFollowEachOther() {
+		int expectedChunk = 0;
+		int expectedOffset = 0;
+		for (int slot = 0; slot < 3 * MeasurementStore.MAX_CHUNK_RECORDS; slot++) {
+			if (expectedOffset == MeasurementStore.chunkRecords(expectedChunk)) {
+				expectedChunk++;
+				expectedOffset = 0;
+			}
+			assertEquals("chunk of " + slot, expectedChunk, MeasurementStore.chunkOf(slot));
+			assertEquals("offset of " + slot, expectedOffset, MeasurementStore.offsetOf(slot));
+			expectedOffset++;
+		}
+		assertEquals(MeasurementStore.MAX_CHUNK_RECORDS, MeasurementStore.chunkRecords(expectedChunk));
+	}
+
+	@Test
+	public void heapStoreReusesFreedRecords() {
+		assertReusesFreedRecords(new HeapMeasurementStore());
+		assertReusesFreedRecords(new HeapMeasurementStore(3));
+	}
+
+	@Test
+	public void offHeapStoreReusesFreedRecords() {
+		assertReusesFreedRecords(new OffHeapMeasurementStore());
+		assertReusesFreedRecords(new OffHeapMeasurementStore(3));
+	}
+
+	@Test
+	public void heapStoreKeepsRecentValues() {
+		assertRecentValues(new HeapMeasurementStore(3));
+	}
+
+	@Test
+	public void offHeapStoreKeepsRecentValues() {
+		assertRecentValues(new OffHeapMeasurementStore(3));
+	}
+
+	@Test
+	public void storeWithoutRingReturnsCurrentValue() {
+		MeasurementStore store = new OffHeapMeasurementStore();
+		int slot = store.allocate(new int[] { 1, 2, 3, 4 });
+		store.set(slot, 2, 30);
+		assertArrayEquals(new int[] { 30 }, store.getRecent(slot, 2));
+		assertEquals(16, store.getRecordSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void tooManyRecentValuesAreRejected() {
+		new HeapMeasurementStore(MeasurementStore.MAX_RECENT_VALUES + 1);
+	}
+
+	/**
+	 * Allocate records over several chunks, free records on both sides of
+	 * chunk boundaries and allocate them again.
+	 */
+	private static void assertReusesFreedRecords(MeasurementStore store) {
+		int count = 3 * MeasurementStore.MAX_CHUNK_RECORDS / 2;
+		for (int i = 0; i < count; i++) {
+			assertEquals(i, store.allocate(values(i)));
+		}
+		int capacity = store.getCapacity();
+		assertTrue(capacity >= count);
+
+		Set<Integer> freed = new HashSet<Integer>();
+		for (int boundary = 8; boundary < count; boundary += MeasurementStore.chunkRecords(
+				MeasurementStore.chunkOf(boundary))) {
+			freed.add(boundary - 1);
+			freed.add(boundary);
+		}
+		freed.add(count - 1);
+		for (int slot : freed) {
+			store.free(slot);
+		}
+		assertEquals(count - freed.size(), store.getRecordCount());
+
+		Set<Integer> reused = new HashSet<Integer>();
+		for (int i = 0; i < freed.size(); i++) {
+			int slot = store.allocate(values(-i));
+			reused.add(slot);
+			for (int column = 0; column < MeasurementStore.MEASUREMENT_COUNT; column++) {
+				assertArrayEquals(new int[] { -i * 10 + column }, store.getRecent(slot, column));
+			}
+		}
+		assertEquals(freed, reused);
+		assertEquals(capacity, store.getCapacity());
+		assertEquals(count, store.getRecordCount());
+
+		// the records kept are untouched
+		for (int slot = 0; slot < count; slot++) {
+			if (!freed.contains(slot)) {
+				for (int column = 0; column < MeasurementStore.MEASUREMENT_COUNT; column++) {
+					assertEquals(slot * 10 + column, store.get(slot, column));
+				}
+			}
+		}
+		// the next record after the reused ones is a new one
+		assertEquals(count, store.allocate(values(0)));
+	}
+
+	private static void assertRecentValues(MeasurementStore store) {
+		int first = store.allocate(new int[] { 0, 0, 0, 0 });
+		int slot = store.allocate(new int[] { 0, 100, 0, 0 });
+		assertArrayEquals(new int[] { 0 }, store.getRecent(slot, 0));
+
+		assertEquals(0, store.set(slot, 0, 1));
+		assertEquals(1, store.set(slot, 0, 2));
+		assertArrayEquals(new int[] { 0, 1, 2 }, store.getRecent(slot, 0));
+		// an unchanged value is not kept again
+		store.set(slot, 0, 2);
+		assertArrayEquals(new int[] { 0, 1, 2 }, store.getRecent(slot, 0));
+
+		// the ring wraps around more than once and drops the oldest values
+		for (int value = 3; value <= 10; value++) {
+			store.set(slot, 0, value);
+			int kept = Math.min(value, 3);
+			int[] expected = new int[kept + 1];
+			for (int i = 0; i <= kept; i++) {
+				expected[i] = value - kept + i;
+			}
+			assertArrayEquals("after " + value, expected, store.getRecent(slot, 0));
+		}
+
+		// the columns and records have rings of their own
+		store.set(slot, 1, -5);
+		assertArrayEquals(new int[] { 100, -5 }, store.getRecent(slot, 1));
+		assertArrayEquals(new int[] { 0 }, store.getRecent(slot, 3));
+		assertArrayEquals(new int[] { 0 }, store.getRecent(first, 0));
+
+		// a freed record comes back without previous values
+		store.free(slot);
+		assertEquals(slot, store.allocate(new int[] { 7, 7, 7, 7 }));
+		assertArrayEquals(new int[] { 7 }, store.getRecent(slot, 0));
+		store.set(slot, 0, 8);
+		assertArrayEquals(new int[] { 7, 8 }, store.getRecent(slot, 0));
+	}
+
+	private static int[] values(int i) {
+		return new int[] { i * 10, i * 10 + 1, i * 10 + 2, i * 10 + 3 };
+	}
+}
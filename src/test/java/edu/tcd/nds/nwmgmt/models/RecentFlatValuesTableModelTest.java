@@ -0,0 +1,95 @@
+package edu.tcd.nds.nwmgmt.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.snmp4j.agent.mo.MOTableModel;
+import org.snmp4j.agent.mo.MOTableRow;
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The recent values of flat measurements served from the measurement store
+ * of an apartment.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RecentFlatValuesTableModelTest {
+
+	@Test
+	public void rowsFollowRecentValuesOfFlats() {
+		Apartment apartment = createApartment();
+		for (int value = 31; value <= 34; value++) {
+			apartment.setMeasurement(cell(2, 1), value);
+		}
+		apartment.setMeasurement(cell(5, 2), 11);
+		assertArrayEquals(new int[] { 32, 33, 34 }, apartment.getRecentFlatValues(1, 2));
+		assertArrayEquals(new int[] { 10, 11 }, apartment.getRecentFlatValues(2, 5));
+		assertNull(apartment.getRecentFlatValues(1, 1));
+		assertNull(apartment.getRecentFlatValues(3, 2));
+
+		MOTableModel model = apartment.getRecentFlatValuesTable().getModel();
+		List<OID> indexes = indexesOf(model.iterator());
+		// two flats, four measurements each, the changed ones with previous values
+		assertEquals(2 * 4 + 2 + 1, indexes.size());
+		assertEquals(indexes.size(), model.getRowCount());
+		assertEquals(new OID(new int[] { 1, 2, 1 }), indexes.get(0));
+		assertEquals(new OID(new int[] { 1, 2, 3 }), indexes.get(2));
+		assertEquals(new OID(new int[] { 2, 5, 2 }), model.lastIndex());
+		assertEquals(34, model.getRow(new OID(new int[] { 1, 2, 3 })).getValue(0).toInt());
+		assertEquals(32, model.getRow(new OID(new int[] { 1, 2, 1 })).getValue(0).toInt());
+		assertNull(model.getRow(new OID(new int[] { 1, 2, 4 })));
+
+		for (int i = 0; i < indexes.size(); i++) {
+			assertEquals(indexes.subList(i, indexes.size()), indexesOf(model.tailIterator(indexes.get(i))));
+			OID below = new OID(indexes.get(i));
+			below.append(0);
+			assertEquals(indexes.subList(i + 1, indexes.size()), indexesOf(model.tailIterator(below)));
+		}
+		assertEquals(indexes.subList(3, indexes.size()), indexesOf(model.tailIterator(new OID(new int[] { 1, 3 }))));
+		assertEquals(indexes.subList(6, indexes.size()), indexesOf(model.tailIterator(new OID(new int[] { 2 }))));
+		assertFalse(model.tailIterator(new OID(new int[] { 3 })).hasNext());
+	}
+
+	private static Apartment createApartment() {
+		Apartment apartment = new Apartment(new HeapMeasurementStore(2));
+		apartment.setDeviceIdMOValue("apartment");
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		for (int i = 1; i <= 2; i++) {
+			Flat flat = new Flat();
+			flat.setDeviceIdValue("FlatNo_" + i);
+			flat.setEnergyConsumptionMOValue(30);
+			flat.setEnergyConsumptionByHeatingCoolingMOValue(15);
+			flat.setEnergyConsumptionByLightingMOValue(5);
+			flat.setEnergyConsumptionByMiscMOValue(10);
+			apartment.addFlat(flat);
+		}
+		return apartment;
+	}
+
+	private static OID cell(int column, int flatNo) {
+		OID oid = new OID(MOIdentifiers.FLAT_BASE_OID);
+		oid.append(column);
+		oid.append(flatNo);
+		return oid;
+	}
+
+	private static List<OID> indexesOf(Iterator<?> rows) {
+		List<OID> indexes = new ArrayList<OID>();
+		while (rows.hasNext()) {
+			indexes.add(((MOTableRow) rows.next()).getIndex());
+		}
+		return indexes;
+	}
+}
@@ -0,0 +1,78 @@
+package edu.tcd.nds.nwmgmt.notifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.snmp4j.smi.OID;
+
+/**
+ * The matching and rate limiting of notification rules.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class NotificationRuleTest {
+	private static final OID COLUMN = new OID("1.3.6.1.2.1.3.1.1.2");
+	private static final OID FLAT_1 = new OID("1.3.6.1.2.1.3.1.1.2.1");
+	private static final OID FLAT_2 = new OID("1.3.6.1.2.1.3.1.1.2.2");
+
+	@Test
+	public void thresholdMatchesOncePerCrossing() {
+		NotificationRule rule = new NotificationRule("budget", COLUMN, NotificationRule.ABOVE, 50, 0);
+		rule.seed(FLAT_1, 30);
+		assertFalse(rule.evaluate(FLAT_1, 40));
+		assertTrue(rule.evaluate(FLAT_1, 60));
+		assertFalse(rule.evaluate(FLAT_1, 70));
+		assertFalse(rule.evaluate(FLAT_1, 20));
+		assertTrue(rule.evaluate(FLAT_1, 55));
+		assertEquals(2, rule.getMatchedCount());
+	}
+
+	@Test
+	public void seededBeyondThresholdDoesNotMatch() {
+		NotificationRule rule = new NotificationRule("empty", COLUMN, NotificationRule.BELOW, 1, 0);
+		rule.seed(FLAT_1, 0);
+		assertFalse(rule.evaluate(FLAT_1, 0));
+		assertFalse(rule.evaluate(FLAT_1, 5));
+		assertTrue(rule.evaluate(FLAT_1, 0));
+	}
+
+	@Test
+	public void subtreeRuleLimitsEveryMeasurementOnItsOwn() {
+		NotificationRule rule = new NotificationRule("budget", COLUMN, NotificationRule.ABOVE, 50, 60000);
+		rule.seed(FLAT_1, 30);
+		rule.seed(FLAT_2, 30);
+		assertTrue(rule.evaluate(FLAT_1, 60));
+		assertTrue(rule.evaluate(FLAT_2, 60));
+		assertEquals(0, rule.getSuppressedCount());
+	}
+
+	@Test
+	public void suppressedCrossingStaysArmed() throws InterruptedException {
+		NotificationRule rule = new NotificationRule("budget", COLUMN, NotificationRule.ABOVE, 50, 200);
+		rule.seed(FLAT_1, 30);
+		assertTrue(rule.evaluate(FLAT_1, 60));
+		assertFalse(rule.evaluate(FLAT_1, 20));
+		assertFalse(rule.evaluate(FLAT_1, 60));
+		assertEquals(1, rule.getSuppressedCount());
+		Thread.sleep(250);
+		// still beyond the limit, the suppressed crossing is notified now
+		assertTrue(rule.evaluate(FLAT_1, 61));
+		assertFalse(rule.evaluate(FLAT_1, 62));
+	}
+
+	@Test
+	public void suppressedDeltaKeepsItsStartingPoint() throws InterruptedException {
+		NotificationRule rule = new NotificationRule("solar", COLUMN, NotificationRule.DELTA, 10, 200);
+		assertFalse(rule.evaluate(FLAT_1, 20));
+		assertTrue(rule.evaluate(FLAT_1, 30));
+		assertFalse(rule.evaluate(FLAT_1, 40));
+		Thread.sleep(250);
+		assertTrue(rule.evaluate(FLAT_1, 41));
+		assertFalse(rule.evaluate(FLAT_1, 45));
+		assertEquals(3, rule.getMatchedCount());
+		assertEquals(1, rule.getSuppressedCount());
+	}
+}
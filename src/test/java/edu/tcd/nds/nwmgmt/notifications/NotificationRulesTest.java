@@ -0,0 +1,125 @@
+package edu.tcd.nds.nwmgmt.notifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.agent.BaseAgent;
+import org.snmp4j.agent.NotificationOriginator;
+import org.snmp4j.agent.mo.snmp.SnmpCommunityMIB;
+import org.snmp4j.agent.mo.snmp.SnmpNotificationMIB;
+import org.snmp4j.agent.mo.snmp.SnmpTargetMIB;
+import org.snmp4j.agent.mo.snmp.VacmMIB;
+import org.snmp4j.security.USM;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.VariableBinding;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.District;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The notification rules evaluated for every apartment of a district.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class NotificationRulesTest {
+	private final BlockingQueue<VariableBinding> notified = new LinkedBlockingQueue<VariableBinding>();
+	private NotificationRules rules;
+
+	@Before
+	public void createRules() {
+		rules = new NotificationRules(new TestAgent(new NotificationOriginator() {
+			public Object notify(OctetString context, OID notificationID, VariableBinding[] bindings) {
+				notified.add(bindings[0]);
+				return null;
+			}
+
+			public Object notify(OctetString context, OID notificationID, TimeTicks sysUpTime,
+					VariableBinding[] bindings) {
+				return notify(context, notificationID, bindings);
+			}
+		}));
+		rules.addRule(new NotificationRule("storage.empty", MOIdentifiers.APPT_ENERGY_STORAGE, NotificationRule.BELOW,
+				1, 0));
+	}
+
+	@After
+	public void shutdown() {
+		rules.shutdown();
+	}
+
+	@Test
+	public void rulesApplyToEveryApartmentOfDistrict() throws InterruptedException {
+		District district = new District();
+		Apartment first = createApartment("Apartment_1");
+		Apartment second = createApartment("Apartment_2");
+		district.addApartment(first);
+		district.addApartment(second);
+		rules.track(first);
+		rules.track(second, second.getApartmentNo());
+
+		second.setStorageMOValue(0);
+		assertEquals(new OID(MOIdentifiers.DISTRICT_APPT_TABLE_OID + ".4.2"), notified.poll(5, TimeUnit.SECONDS).getOid());
+		// the storage of first apartment has a state of its own
+		first.setStorageMOValue(0);
+		VariableBinding binding = notified.poll(5, TimeUnit.SECONDS);
+		assertEquals(MOIdentifiers.APPT_ENERGY_STORAGE, binding.getOid());
+		assertEquals(0, binding.getVariable().toInt());
+		assertNull(notified.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	private static Apartment createApartment(String deviceId) {
+		Apartment apartment = new Apartment();
+		apartment.setDeviceIdMOValue(deviceId);
+		apartment.setStorageMOValue(10);
+		apartment.setGenerationByHydroMOValue(120);
+		apartment.setGenerationBySolarMOValue(20);
+		return apartment;
+	}
+
+	/**
+	 * An agent which is not started, its notifications go to given
+	 * originator.
+	 */
+	private static class TestAgent extends BaseAgent {
+		private final NotificationOriginator originator;
+
+		TestAgent(NotificationOriginator originator) {
+			super((String) null);
+			this.originator = originator;
+		}
+
+		@Override
+		public NotificationOriginator getNotificationOriginator() {
+			return originator;
+		}
+
+		protected void registerManagedObjects() {
+		}
+
+		protected void unregisterManagedObjects() {
+		}
+
+		protected void addUsmUser(USM usm) {
+		}
+
+		protected void addNotificationTargets(SnmpTargetMIB targetMIB, SnmpNotificationMIB notificationMIB) {
+		}
+
+		protected void addViews(VacmMIB vacmMIB) {
+		}
+
+		protected void addCommunities(SnmpCommunityMIB communityMIB) {
+		}
+	}
+}
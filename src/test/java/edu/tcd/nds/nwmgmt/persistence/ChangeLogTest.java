@@ -0,0 +1,157 @@
+package edu.tcd.nds.nwmgmt.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.snmp4j.smi.OID;
+
+import edu.tcd.nds.nwmgmt.models.MeasurementListener;
+
+/**
+ * The replay of a change log after a crash, a rollover and a compaction.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ChangeLogTest {
+	private static final int SEGMENT_SIZE = 1024;
+	private static final int SEGMENT_HEADER_SIZE = 16;
+	/** header, time, number of sub-identifiers, value and the 11 sub-identifiers of a cell OID */
+	private static final int RECORD_SIZE = 8 + 8 + 2 + 4 + 4 * 11;
+	private static final int RECORDS_PER_SEGMENT = (SEGMENT_SIZE - SEGMENT_HEADER_SIZE) / RECORD_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replayStopsAtTruncatedRecordAndGoesOnWithNextSegment() throws IOException {
+		File directory = folder.newFolder("truncated");
+		ChangeLog log = open(directory, 10);
+		int count = RECORDS_PER_SEGMENT + 5;
+		for (int i = 0; i < count; i++) {
+			log.append(i, cell(i), i);
+		}
+		log.close();
+
+		int lost = RECORDS_PER_SEGMENT - 1;
+		RandomAccessFile segment = new RandomAccessFile(segmentFile(directory, 1), "rw");
+		try {
+			segment.setLength(SEGMENT_HEADER_SIZE + lost * RECORD_SIZE + RECORD_SIZE / 2);
+		} finally {
+			segment.close();
+		}
+
+		Recorder recorder = new Recorder();
+		assertEquals(count - 1, new ChangeLog(directory, SEGMENT_SIZE, 10, 10).replay(recorder));
+		for (int i = 0; i < count; i++) {
+			assertEquals(i == lost ? null : Integer.valueOf(i), recorder.values.get(cell(i)));
+		}
+	}
+
+	@Test
+	public void rolloverPastMaxSegmentsKeepsLatestValues() throws IOException {
+		File directory = folder.newFolder("rollover");
+		ChangeLog log = open(directory, 2);
+		Map<OID, Integer> expected = new HashMap<OID, Integer>();
+		int count = RECORDS_PER_SEGMENT * 8;
+		for (int i = 0; i < count; i++) {
+			log.append(i, cell(i % 10), i);
+			expected.put(cell(i % 10), i);
+		}
+		// waits for the compactions started by the rollovers
+		log.close();
+
+		assertTrue(new File(directory, "snapshot.bin").exists());
+		assertFalse(segmentFile(directory, 1).exists());
+		assertTrue(segmentCount(directory) < 8);
+
+		log = new ChangeLog(directory, SEGMENT_SIZE, 2, 10);
+		Recorder recorder = new Recorder();
+		log.replay(recorder);
+		assertEquals(expected, recorder.values);
+
+		// the log goes on after the snapshot and keeps the values from before
+		log.open();
+		log.append(count, cell(0), -1);
+		expected.put(cell(0), -1);
+		log.close();
+		recorder = new Recorder();
+		new ChangeLog(directory, SEGMENT_SIZE, 2, 10).replay(recorder);
+		assertEquals(expected, recorder.values);
+	}
+
+	@Test
+	public void replayIgnoresSegmentsLeftByInterruptedCompaction() throws IOException {
+		File stale = folder.newFolder("stale");
+		ChangeLog log = open(stale, 10);
+		log.append(0, cell(1), 1);
+		log.close();
+
+		File directory = folder.newFolder("compacted");
+		log = open(directory, 1);
+		int count = RECORDS_PER_SEGMENT * 3;
+		for (int i = 0; i < count; i++) {
+			log.append(i, cell(i % 10), i);
+		}
+		log.append(count, cell(1), 99);
+		log.close();
+		assertFalse(segmentFile(directory, 1).exists());
+
+		// a compaction which wrote its snapshot and stopped before deleting
+		// the segments, and one which stopped while writing its snapshot
+		Files.copy(segmentFile(stale, 1).toPath(), segmentFile(directory, 1).toPath());
+		FileOutputStream partial = new FileOutputStream(new File(directory, "snapshot.bin.tmp"));
+		partial.write(new byte[] { 0x45, 0x4d });
+		partial.close();
+
+		Recorder recorder = new Recorder();
+		new ChangeLog(directory, SEGMENT_SIZE, 1, 10).replay(recorder);
+		assertEquals(Integer.valueOf(99), recorder.values.get(cell(1)));
+		assertFalse(segmentFile(directory, 1).exists());
+	}
+
+	private static ChangeLog open(File directory, int maxSegments) throws IOException {
+		ChangeLog log = new ChangeLog(directory, SEGMENT_SIZE, maxSegments, 10);
+		log.replay(new Recorder());
+		log.open();
+		return log;
+	}
+
+	private static OID cell(int flatNo) {
+		return new OID("1.3.6.1.2.1.3.1.1.2." + (flatNo + 1));
+	}
+
+	private static File segmentFile(File directory, long segment) {
+		return new File(directory, String.format("changes-%010d.log", segment));
+	}
+
+	private static int segmentCount(File directory) {
+		int count = 0;
+		for (String name : directory.list()) {
+			if (name.startsWith("changes-")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static class Recorder implements MeasurementListener {
+		final Map<OID, Integer> values = new HashMap<OID, Integer>();
+
+		public void measurementChanged(OID oid, int value) {
+			values.put(oid, value);
+		}
+	}
+}
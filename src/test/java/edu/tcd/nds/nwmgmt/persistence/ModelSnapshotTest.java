@@ -0,0 +1,118 @@
+package edu.tcd.nds.nwmgmt.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.tcd.nds.nwmgmt.models.Apartment;
+import edu.tcd.nds.nwmgmt.models.Flat;
+import edu.tcd.nds.nwmgmt.models.MeasurementStore;
+import edu.tcd.nds.nwmgmt.models.OffHeapMeasurementStore;
+
+/**
+ * The apartments and flats loaded column by column from a snapshot.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ModelSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void loadsFlatsIntoHeapStores() throws IOException {
+		assertLoaded(null);
+	}
+
+	@Test
+	public void loadsFlatsIntoSharedStore() throws IOException {
+		OffHeapMeasurementStore store = new OffHeapMeasurementStore(2);
+		assertLoaded(store);
+		assertEquals(5 + 1, store.getRecordCount());
+	}
+
+	@Test
+	public void flatsOutOfOrderAreAddedOneByOne() {
+		Apartment apartment = new Apartment();
+		apartment.addFlat(flat(5, "FlatNo_5", 50));
+		byte[] deviceIds = "FlatNo_7FlatNo_2FlatNo_7".getBytes();
+		int[] measurements = new int[3 * MeasurementStore.MEASUREMENT_COUNT];
+		for (int i = 0; i < measurements.length; i++) {
+			measurements[i] = 10 * (i / MeasurementStore.MEASUREMENT_COUNT + 1) + i % MeasurementStore.MEASUREMENT_COUNT;
+		}
+		apartment.addFlats(3, new int[] { 7, 2, 7 }, deviceIds, new int[] { 8, 8, 8 }, measurements);
+		assertEquals(3, apartment.getFlatCount());
+		assertEquals("FlatNo_2", apartment.getFlat(2).getDeviceIdValue());
+		assertEquals(20, apartment.getFlat(2).getEnergyConsumptionMOValue());
+		// the second flat 7 is skipped
+		assertEquals(10, apartment.getFlat(7).getEnergyConsumptionMOValue());
+		assertEquals(50 + 20 + 10, apartment.getConsumptionMOValue());
+	}
+
+	private void assertLoaded(MeasurementStore store) throws IOException {
+		List<Apartment> apartments = new ArrayList<Apartment>();
+		for (int n = 1; n <= 3; n++) {
+			Apartment apartment = store == null ? new Apartment() : new Apartment(store);
+			apartment.setApartmentNo(n);
+			apartment.setDeviceIdMOValue("apartment" + n);
+			apartment.setStorageMOValue(n);
+			apartment.setGenerationBySolarMOValue(20);
+			apartment.setGenerationByHydroMOValue(100);
+			apartment.setGenerationMOValue(120 + n);
+			// no flats in the second apartment, fewer in the third than the first
+			for (int i = 1; i <= (n == 2 ? 0 : 7 - 2 * n); i++) {
+				apartment.addFlat(flat(i * 3, "FlatNo_" + n + "_" + i + (i == 2 ? "_longer" : ""), n * 100 + i));
+			}
+			apartments.add(apartment);
+		}
+		File file = new File(folder.getRoot(), "model.snapshot");
+		ModelSnapshot.write(file, apartments);
+		for (Apartment apartment : apartments) {
+			apartment.removeAllFlats();
+		}
+
+		List<Apartment> loaded = ModelSnapshot.load(file, store);
+		assertEquals(apartments.size(), loaded.size());
+		for (int n = 1; n <= 3; n++) {
+			Apartment apartment = loaded.get(n - 1);
+			int flatCount = n == 2 ? 0 : 7 - 2 * n;
+			assertEquals(n, apartment.getApartmentNo());
+			assertEquals("apartment" + n, apartment.getDeviceIdMO().getValue().toString());
+			assertEquals(n, apartment.getStorageMOValue());
+			assertEquals(120 + n, apartment.getGenerationMOValue());
+			assertEquals(flatCount, apartment.getFlatCount());
+			int consumption = 0;
+			for (int i = 1; i <= flatCount; i++) {
+				Flat flat = apartment.getFlat(i * 3);
+				assertEquals("FlatNo_" + n + "_" + i + (i == 2 ? "_longer" : ""), flat.getDeviceIdValue());
+				assertEquals(n * 100 + i, flat.getEnergyConsumptionMOValue());
+				assertEquals(n * 100 + i + 1, flat.getEnergyConsumptionByHeatingCoolingMOValue());
+				assertEquals(n * 100 + i + 2, flat.getEnergyConsumptionByLightingMOValue());
+				assertEquals(n * 100 + i + 3, flat.getEnergyConsumptionByMiscMOValue());
+				consumption += n * 100 + i;
+			}
+			assertNull(apartment.getFlat(1));
+			assertEquals(consumption, apartment.getConsumptionMOValue());
+		}
+	}
+
+	private static Flat flat(int flatNo, String deviceId, int consumption) {
+		Flat flat = new Flat();
+		flat.setFlatNo(flatNo);
+		flat.setDeviceIdValue(deviceId);
+		flat.setEnergyConsumptionMOValue(consumption);
+		flat.setEnergyConsumptionByHeatingCoolingMOValue(consumption + 1);
+		flat.setEnergyConsumptionByLightingMOValue(consumption + 2);
+		flat.setEnergyConsumptionByMiscMOValue(consumption + 3);
+		return flat;
+	}
+}
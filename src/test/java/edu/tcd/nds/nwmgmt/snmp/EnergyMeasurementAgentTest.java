@@ -0,0 +1,49 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import org.junit.Test;
+
+import edu.tcd.nds.nwmgmt.snmp.traps.SolarEnergyGenerationTrapReceiver;
+import edu.tcd.nds.nwmgmt.utils.Constants;
+
+/**
+ * Stopping an agent releases everything it started.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class EnergyMeasurementAgentTest {
+
+	@Test
+	public void agentRestartsOnSameAddresses() throws Exception {
+		DatagramSocket free = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		String address = "127.0.0.1/" + free.getLocalPort();
+		free.close();
+
+		for (int i = 0; i < 2; i++) {
+			EnergyMeasurementAgent agent = new EnergyMeasurementAgent(address, 1,
+					EnergyMeasurementAgent.createRequestProcessor(1, false));
+			agent.start();
+			SolarEnergyGenerationTrapReceiver trapReceiver = agent.getTrapReceiver();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!trapReceiver.isListening() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(trapReceiver.isListening());
+			agent.stop();
+			agent.stop();
+			assertFalse(trapReceiver.isListening());
+		}
+
+		// the ports of the trap receiver and the metrics are free again
+		new DatagramSocket(Integer.parseInt(SolarEnergyGenerationTrapReceiver.SOLAR_ENERGY_GENERATION_TRAP_PORT),
+				InetAddress.getByName(SolarEnergyGenerationTrapReceiver.SOLAR_ENERGY_GENERATION_TRAP_HOST)).close();
+		new ServerSocket(Constants.METRICS_PORT, 16, InetAddress.getLoopbackAddress()).close();
+	}
+}
@@ -0,0 +1,134 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.Target;
+
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The window of requests in flight towards an agent which never answers.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class EnergyMeasurementManagerTest {
+	private DatagramSocket silentAgent;
+	private EnergyMeasurementManager manager;
+	private Target target;
+
+	@Before
+	public void start() throws Exception {
+		silentAgent = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+		String address = "127.0.0.1/" + silentAgent.getLocalPort();
+		manager = new EnergyMeasurementManager(address);
+		target = EnergyMeasurementManager.createTarget(address);
+		target.setRetries(0);
+		target.setTimeout(200);
+	}
+
+	@After
+	public void stop() throws IOException {
+		manager.stop();
+		silentAgent.close();
+	}
+
+	@Test
+	public void fullWindowQueuesRequestsWithoutBlocking() throws Exception {
+		target.setTimeout(500);
+		manager.setMaxRequestsInFlight(2);
+		List<CompletableFuture<PDU>> futures = new ArrayList<CompletableFuture<PDU>>();
+		final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+		for (int i = 0; i < 5; i++) {
+			final int requestNo = i;
+			futures.add(manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER).whenComplete(
+					new BiConsumer<PDU, Throwable>() {
+						public void accept(PDU response, Throwable error) {
+							completed.add(requestNo);
+						}
+					}));
+		}
+		// the calls returned while three requests wait for a place
+		for (CompletableFuture<PDU> future : futures) {
+			assertFalse(future.isDone());
+		}
+		assertEquals(2, manager.getRequestsInFlight(target));
+		assertEquals(3, manager.getRequestsQueued(target));
+
+		// the window shrinks as the requests in flight leave it
+		manager.setMaxRequestsInFlight(1);
+		assertEquals(2, manager.getRequestsInFlight(target));
+		for (CompletableFuture<PDU> future : futures) {
+			assertTimedOut(future);
+			assertTrue(manager.getRequestsInFlight(target) <= 2);
+		}
+		assertEquals(0, manager.getRequestsInFlight(target));
+		assertEquals(0, manager.getRequestsQueued(target));
+		// the queued requests are sent one by one, oldest first, once both
+		// requests in flight left the window
+		assertEquals(new HashSet<Integer>(Arrays.asList(0, 1)), new HashSet<Integer>(completed.subList(0, 2)));
+		assertEquals(Arrays.asList(2, 3, 4), completed.subList(2, 5));
+	}
+
+	@Test
+	public void fullQueueFailsRequest() throws Exception {
+		target.setTimeout(5000);
+		manager.setMaxRequestsInFlight(1);
+		List<CompletableFuture<PDU>> futures = new ArrayList<CompletableFuture<PDU>>();
+		for (int i = 0; i < 1 + EnergyMeasurementManager.MAX_QUEUED_REQUESTS; i++) {
+			futures.add(manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER));
+		}
+		CompletableFuture<PDU> rejected = manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER);
+		assertTrue(rejected.isCompletedExceptionally());
+		for (CompletableFuture<PDU> future : futures) {
+			assertFalse(future.isDone());
+		}
+		assertEquals(1, manager.getRequestsInFlight(target));
+		assertEquals(EnergyMeasurementManager.MAX_QUEUED_REQUESTS, manager.getRequestsQueued(target));
+	}
+
+	@Test
+	public void stopFailsQueuedRequests() throws Exception {
+		target.setTimeout(5000);
+		manager.setMaxRequestsInFlight(1);
+		List<CompletableFuture<PDU>> futures = new ArrayList<CompletableFuture<PDU>>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER));
+		}
+		manager.stop();
+		for (CompletableFuture<PDU> future : futures) {
+			assertTrue(future.isCompletedExceptionally());
+		}
+		assertEquals(0, manager.getRequestsInFlight(target));
+		assertTrue(manager.getAsync(target, MOIdentifiers.APPT_IDENTIFIER).isCompletedExceptionally());
+	}
+
+	private static void assertTimedOut(CompletableFuture<PDU> future) throws InterruptedException {
+		try {
+			future.get();
+		} catch (ExecutionException ex) {
+			assertTrue(ex.getCause() instanceof TimeoutException);
+			return;
+		}
+		throw new AssertionError("Request to silent agent was answered");
+	}
+}
@@ -0,0 +1,80 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+
+/**
+ * The time to live of subtrees and the invalidation of cached values.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class ReadCacheTest {
+	private static final Address AGENT = new UdpAddress("127.0.0.1/16100");
+	private static final Address OTHER_AGENT = new UdpAddress("127.0.0.1/16101");
+
+	@Test
+	public void timeToLiveOfSubtreeIsReplaced() {
+		ReadCache cache = new ReadCache(10, 60000);
+		cache.setTimeToLive(new OID("1.3.6.1.2.1.2"), 60000);
+		cache.setTimeToLive(new OID("1.3.6.1.2.1.2"), 0);
+		put(cache, AGENT, "1.3.6.1.2.1.2.1.1.0");
+		assertEquals(0, cache.size());
+		cache.setTimeToLive(new OID("1.3.6.1.2.1.2"), 60000);
+		put(cache, AGENT, "1.3.6.1.2.1.2.1.1.0");
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void invalidationDropsValueAndValuesBelowIt() {
+		ReadCache cache = new ReadCache(10, 60000);
+		put(cache, AGENT, "1.3.6.1.2.1.2.1");
+		put(cache, AGENT, "1.3.6.1.2.1.2.1.5.0");
+		put(cache, AGENT, "1.3.6.1.2.1.2.10.0");
+		put(cache, AGENT, "1.3.6.1.2.1.3.0");
+		put(cache, OTHER_AGENT, "1.3.6.1.2.1.2.1.5.0");
+
+		cache.invalidate(AGENT, new OID("1.3.6.1.2.1.2.1"));
+		assertEquals(2, cache.getInvalidationCount());
+		assertNull(get(cache, AGENT, "1.3.6.1.2.1.2.1"));
+		assertNull(get(cache, AGENT, "1.3.6.1.2.1.2.1.5.0"));
+		assertNotNull(get(cache, AGENT, "1.3.6.1.2.1.2.10.0"));
+		assertNotNull(get(cache, AGENT, "1.3.6.1.2.1.3.0"));
+		assertNotNull(get(cache, OTHER_AGENT, "1.3.6.1.2.1.2.1.5.0"));
+
+		cache.invalidate(null, new OID("1.3.6.1.2.1.2"));
+		assertEquals(1, cache.size());
+		assertNotNull(get(cache, AGENT, "1.3.6.1.2.1.3.0"));
+	}
+
+	@Test
+	public void invalidationOfCellDropsTable() {
+		ReadCache cache = new ReadCache(10, 60000);
+		OID[] columns = { new OID("1.3.6.1.2.1.2.3.1.2"), new OID("1.3.6.1.2.1.2.3.1.3") };
+		cache.putTable(AGENT, columns, Collections.<TableRow> emptyList(), cache.getGeneration());
+		put(cache, AGENT, "1.3.6.1.2.1.2.1.5.0");
+		assertNotNull(cache.getTable(AGENT, columns));
+
+		cache.invalidate(AGENT, new OID("1.3.6.1.2.1.2.3.1.3.4"));
+		assertNull(cache.getTable(AGENT, columns));
+		assertEquals(1, cache.size());
+	}
+
+	private static void put(ReadCache cache, Address address, String oid) {
+		cache.put(address, new OID[] { new OID(oid) }, new Variable[] { new Integer32(1) }, cache.getGeneration());
+	}
+
+	private static Variable[] get(ReadCache cache, Address address, String oid) {
+		return cache.get(address, new OID[] { new OID(oid) });
+	}
+}
@@ -0,0 +1,55 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * The metrics of the depth of a request queue.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class RequestQueueTest {
+
+	@Test
+	public void rejectedRequestDoesNotRaiseMaxDepth() throws InterruptedException {
+		RequestQueue queue = new RequestQueue("test", 1, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		try {
+			assertTrue(queue.offer(new Runnable() {
+				public void run() {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			// the worker is busy, one request waits and the next is rejected
+			assertTrue(queue.offer(new Runnable() {
+				public void run() {
+				}
+			}));
+			assertFalse(queue.offer(new Runnable() {
+				public void run() {
+				}
+			}));
+			assertEquals(1, queue.getDepth());
+			assertEquals(1, queue.getMaxDepth());
+			assertEquals(2, queue.getAcceptedCount());
+			assertEquals(1, queue.getRejectedCount());
+		} finally {
+			release.countDown();
+			queue.shutdown();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package edu.tcd.nds.nwmgmt.snmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.snmp4j.agent.DefaultMOContextScope;
+import org.snmp4j.agent.DefaultMOQuery;
+import org.snmp4j.agent.DefaultMOScope;
+import org.snmp4j.agent.DefaultMOServer;
+import org.snmp4j.agent.MOContextScope;
+import org.snmp4j.agent.MOScope;
+import org.snmp4j.agent.MOServer;
+import org.snmp4j.agent.ManagedObject;
+import org.snmp4j.agent.mo.MOAccessImpl;
+import org.snmp4j.agent.mo.MOScalar;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import edu.tcd.nds.nwmgmt.utils.Constants;
+import edu.tcd.nds.nwmgmt.utils.MOIdentifiers;
+
+/**
+ * The trie server finds the same managed objects as the default server over
+ * the registry of a started agent serving a district.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TrieMOServerTest {
+	private static final OctetString CONTEXT = new OctetString(Constants.COMMUNITY);
+
+	private static EnergyMeasurementAgent agent;
+	private static TrieMOServer trie;
+
+	@BeforeClass
+	public static void startAgent() throws Exception {
+		trie = new TrieMOServer();
+		agent = new EnergyMeasurementAgent("127.0.0.1/0", 3, EnergyMeasurementAgent.createRequestProcessor(1, false),
+				trie);
+		agent.start();
+	}
+
+	@AfterClass
+	public static void stopAgent() {
+		agent.stop();
+	}
+
+	@Test
+	public void agentRegistryFitsTheTrie() {
+		assertFalse(trie.isFallback());
+		assertEquals(trie.getRegistry().size(), trie.getTrieSize());
+	}
+
+	@Test
+	public void getAndGetNextFindSameObjects() throws Exception {
+		assertEquivalent(copyRegistry());
+	}
+
+	@Test
+	public void unregisteredSubtreeIsPruned() throws Exception {
+		DefaultMOServer reference = copyRegistry();
+		int size = trie.getTrieSize();
+		MOScalar deep = new MOScalar(new OID("1.3.6.1.4.1.99999.1.2.3.0"), MOAccessImpl.ACCESS_READ_ONLY,
+				new Integer32(1));
+		trie.register(deep, null);
+		reference.register(deep, null);
+		assertEquals(size + 1, trie.getTrieSize());
+		assertEquivalent(reference);
+
+		ManagedObject flats = agent.getServer().getManagedObject(MOIdentifiers.DISTRICT_FLAT_TABLE_OID.successor(),
+				null);
+		assertNotNull(flats);
+		trie.unregister(deep, null);
+		reference.unregister(deep, null);
+		trie.unregister(flats, null);
+		reference.unregister(flats, null);
+		try {
+			assertEquals(size - 1, trie.getTrieSize());
+			assertEquivalent(reference);
+		} finally {
+			trie.register(flats, null);
+		}
+		assertEquals(size, trie.getTrieSize());
+		assertEquivalent(copyRegistry());
+	}
+
+	@Test
+	public void objectOfOtherScopeSwitchesToDefaultServer() throws Exception {
+		final OID oid = new OID("1.3.6.1.4.1.99999.2.0");
+		// a scalar whose scope is its instance only, not the subtree below it
+		MOScalar instance = new MOScalar(oid, MOAccessImpl.ACCESS_READ_ONLY, new Integer32(1)) {
+			@Override
+			public OID getUpperBound() {
+				return oid;
+			}
+
+			@Override
+			public boolean isUpperIncluded() {
+				return true;
+			}
+		};
+		int size = trie.getTrieSize();
+		trie.register(instance, null);
+		try {
+			assertTrue(trie.isFallback());
+			assertEquals(size, trie.getTrieSize());
+			assertEquivalent(copyRegistry());
+			assertSame(instance, lookup(trie, CONTEXT, oid, true));
+		} finally {
+			trie.unregister(instance, null);
+		}
+		assertFalse(trie.isFallback());
+		assertEquivalent(copyRegistry());
+	}
+
+	@Test
+	public void objectOfOtherContextSwitchesToDefaultServer() throws Exception {
+		OctetString other = new OctetString("other");
+		MOScalar scalar = new MOScalar(new OID("1.3.6.1.4.1.99999.3.0"), MOAccessImpl.ACCESS_READ_ONLY,
+				new Integer32(1));
+		trie.register(scalar, other);
+		try {
+			assertTrue(trie.isFallback());
+		} finally {
+			trie.unregister(scalar, other);
+		}
+		assertFalse(trie.isFallback());
+		assertEquivalent(copyRegistry());
+	}
+
+	/**
+	 * Return a default server holding the objects registered with the trie
+	 * server, which updates the updatable objects like the trie server does.
+	 */
+	private static DefaultMOServer copyRegistry() throws Exception {
+		DefaultMOServer reference = new DefaultMOServer();
+		reference.setUpdateStrategy(trie.getUpdateStrategy());
+		for (Iterator<?> entries = trie.getRegistry().entrySet().iterator(); entries.hasNext();) {
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries.next();
+			OctetString context = entry.getKey() instanceof MOContextScope
+					? ((MOContextScope) entry.getKey()).getContext() : null;
+			reference.register((ManagedObject) entry.getValue(), context);
+		}
+		return reference;
+	}
+
+	/**
+	 * Walk the whole tree with both servers, and GET and GETNEXT every
+	 * instance, every bound of a registered object and the OIDs next to them.
+	 */
+	private static void assertEquivalent(DefaultMOServer reference) {
+		// the trie server first, whose lookup listeners fill the rows of the
+		// log tables of agent when they are looked up
+		List<OID> walked = walk(trie);
+		assertEquals(walk(reference), walked);
+		List<OID> oids = new ArrayList<OID>(walked);
+		for (Iterator<?> scopes = reference.getRegistry().keySet().iterator(); scopes.hasNext();) {
+			MOScope scope = (MOScope) scopes.next();
+			oids.add(scope.getLowerBound());
+			oids.add(scope.getLowerBound().successor());
+			oids.add(scope.getLowerBound().predecessor());
+			if (scope.getUpperBound() != null) {
+				oids.add(scope.getUpperBound());
+			}
+		}
+		oids.add(new OID());
+		oids.add(new OID("0"));
+		oids.add(new OID("2"));
+		for (OID oid : oids) {
+			assertSame("GET " + oid, lookup(reference, CONTEXT, oid, true), lookup(trie, CONTEXT, oid, true));
+			assertSame("GETNEXT " + oid, lookup(reference, CONTEXT, oid, false), lookup(trie, CONTEXT, oid, false));
+		}
+	}
+
+	private static ManagedObject lookup(MOServer server, OctetString context, OID oid, boolean exact) {
+		DefaultMOContextScope scope = exact ? new DefaultMOContextScope(context, oid, true, oid, true)
+				: new DefaultMOContextScope(context, oid, false, null, false);
+		return server.lookup(new DefaultMOQuery(scope));
+	}
+
+	/**
+	 * Return the instances found by GETNEXT from the first one to the end.
+	 */
+	private static List<OID> walk(MOServer server) {
+		List<OID> instances = new ArrayList<OID>();
+		MOScope scope = new DefaultMOScope(new OID(), true, null, false);
+		ManagedObject mo;
+		while ((mo = server.lookup(new DefaultMOQuery(new DefaultMOContextScope(CONTEXT, scope)))) != null) {
+			OID next = mo.find(scope);
+			if (next == null) {
+				// nothing in range of this object, go on after it
+				scope = new DefaultMOScope(mo.getScope().getUpperBound(), !mo.getScope().isUpperIncluded(), null,
+						false);
+			} else {
+				instances.add(next);
+				scope = new DefaultMOScope(next, false, null, false);
+			}
+		}
+		return instances;
+	}
+}
@@ -0,0 +1,146 @@
+package edu.tcd.nds.nwmgmt.snmp.traps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * The coalescing of bindings of one OID by the peers which sent them and the
+ * order in which the bindings of a peer are handled.
+ *
+ * @author Sachin Hadke and Farhan Ahmad
+ *
+ */
+public class TrapDispatcherTest {
+	private static final OID SOLAR = new OID("1.3.6.1.2.1.2.1.5.0");
+
+	private final TrapDispatcher dispatcher = new TrapDispatcher(1);
+
+	@After
+	public void shutdown() {
+		dispatcher.shutdown();
+	}
+
+	@Test
+	public void bindingsOfEveryPeerAreHandled() throws Exception {
+		final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(2);
+		dispatcher.addRoute(new OID("1.3.6.1.2.1.2"), new TrapHandler() {
+			public void handleTrap(Address peer, VariableBinding binding) {
+				handled.add(peer + "=" + binding.getVariable().toInt());
+				done.countDown();
+			}
+		});
+		dispatcher.setCoalescingWindowMillis(200);
+		Address first = new UdpAddress("127.0.0.1/3001");
+		Address second = new UdpAddress("127.0.0.1/3002");
+		dispatcher.processPdu(trap(first, 1));
+		dispatcher.processPdu(trap(second, 10));
+		dispatcher.processPdu(trap(first, 2));
+		dispatcher.processPdu(trap(first, 3));
+		dispatcher.processPdu(trap(second, 20));
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Collections.sort(handled);
+		assertEquals("[127.0.0.1/3001=3, 127.0.0.1/3002=20]", handled.toString());
+		assertEquals(5, dispatcher.getReceivedCount());
+		assertEquals(3, dispatcher.getCoalescedCount());
+	}
+
+	@Test
+	public void bindingsOfPeerAreHandledInOrderWithoutWindow() throws Exception {
+		TrapDispatcher parallel = new TrapDispatcher(4);
+		try {
+			final int count = 1000;
+			final List<Address> peers = new ArrayList<Address>();
+			for (int i = 0; i < 8; i++) {
+				peers.add(new UdpAddress("127.0.0.1/" + (3001 + i)));
+			}
+			final List<List<Integer>> handled = new ArrayList<List<Integer>>();
+			for (int i = 0; i < peers.size(); i++) {
+				handled.add(Collections.synchronizedList(new ArrayList<Integer>()));
+			}
+			final CountDownLatch done = new CountDownLatch(count * peers.size());
+			parallel.addRoute(new OID("1.3.6.1.2.1.2"), new TrapHandler() {
+				public void handleTrap(Address peer, VariableBinding binding) {
+					handled.get(peers.indexOf(peer)).add(binding.getVariable().toInt());
+					done.countDown();
+				}
+			});
+			for (int value = 0; value < count; value++) {
+				for (Address peer : peers) {
+					parallel.processPdu(trap(peer, value));
+				}
+			}
+
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			for (List<Integer> values : handled) {
+				assertEquals(count, values.size());
+				for (int value = 0; value < count; value++) {
+					assertEquals(value, values.get(value).intValue());
+				}
+			}
+		} finally {
+			parallel.shutdown();
+		}
+	}
+
+	@Test
+	public void pendingBindingIsHandledFirstWhenWindowIsClosed() throws Exception {
+		final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(2);
+		dispatcher.addRoute(SOLAR, new TrapHandler() {
+			public void handleTrap(Address peer, VariableBinding binding) {
+				handled.add(binding.getVariable().toInt());
+				done.countDown();
+			}
+		});
+		Address peer = new UdpAddress("127.0.0.1/3001");
+		dispatcher.setCoalescingWindowMillis(500);
+		dispatcher.processPdu(trap(peer, 1));
+		dispatcher.setCoalescingWindowMillis(0);
+		dispatcher.processPdu(trap(peer, 2));
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("[1, 2]", handled.toString());
+	}
+
+	@Test
+	public void workersDoNotKeepJvmAlive() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final boolean[] daemon = new boolean[1];
+		dispatcher.addRoute(SOLAR, new TrapHandler() {
+			public void handleTrap(Address peer, VariableBinding binding) {
+				daemon[0] = Thread.currentThread().isDaemon();
+				done.countDown();
+			}
+		});
+		dispatcher.setCoalescingWindowMillis(1);
+		dispatcher.processPdu(trap(new UdpAddress("127.0.0.1/3001"), 1));
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(daemon[0]);
+	}
+
+	private static CommandResponderEvent trap(Address peer, int value) {
+		PDU pdu = new PDU();
+		pdu.setType(PDU.NOTIFICATION);
+		pdu.add(new VariableBinding(SOLAR, new Integer32(value)));
+		return new CommandResponderEvent(new MessageDispatcherImpl(), null, peer, 0, 0, null, 0, null, pdu, 0, null);
+	}
+}